@@ -1,5 +1,7 @@
 package cn.edu.bjtu.cit.bss;
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
 import java.util.*;
 import org.apache.commons.math.complex.*;
 import pp.util.BLAS;
@@ -9,6 +11,13 @@ import cn.edu.bjtu.cit.bss.util.*;
 /**
  * <h1>Description</h1>
  * Abstract class for mixing and demixing model.
+ * <br>
+ * Models can be saved in a binary format: a 32 bytes header of 8 big endian 
+ * ints: magic number, format version, payload type, number of sources, 
+ * number of sensors, fft block size, filter length, reserved, followed by the 
+ * payload as big endian doubles. Complex matrices of frequency bins are 
+ * stored bin by bin, row by row, with real and imaginary parts interleaved. 
+ * Time domain filters are stored as [sensor index][source index][tap index].
  * <h1>abstract</h1>
  * <h1>keywords</h1>
  * @author nay0648<br>
@@ -20,6 +29,17 @@ public abstract class BSSModel implements Serializable
 {
 private static final long serialVersionUID=-1230079485615357764L;
 private static final int BUFFER_SIZE=1024;
+private static final int BINARY_MAGIC=0x4253534d;//"BSSM"
+private static final int BINARY_VERSION=1;//binary format version
+private static final int HEADER_SIZE=32;//header size in bytes
+/**
+ * binary payload of complex matrices for frequency bins
+ */
+public static final int COMPLEX_MATRICES=0;
+/**
+ * binary payload of time domain filters
+ */
+public static final int TD_FILTERS=1;
 
 	/**
 	 * get number of sources
@@ -118,7 +138,8 @@ private static final int BUFFER_SIZE=1024;
 	}
 	
 	/**
-	 * apply frequency domain filters to signal's STFT stream
+	 * apply frequency domain filters to signal's STFT stream, input streams 
+	 * must be STFT of real signals
 	 * @param in
 	 * STFT streams for input signals
 	 * @param out
@@ -127,60 +148,27 @@ private static final int BUFFER_SIZE=1024;
 	 */
 	public void applyFDFilters(SignalSource[] in,SignalSink[] out) throws IOException
 	{
-	Complex[][][] fdf;
-	Complex[][] framein;
-	Complex[] tempadd,tempmul;
-			
-		fdf=fdFilters();//get frequency domain filters
+		applyFDFilters(in,out,1);
+	}
 	
-		/*
-		 * check compatibility
-		 */
-		if(in.length!=fdf[0].length) throw new IllegalArgumentException(
-				"number of input channels not match: "+in.length+", "+fdf[0].length);
-		if(out.length!=fdf.length) throw new IllegalArgumentException(
-				"number of output channels not match: "+out.length+", "+fdf.length);
-
-		/*
-		 * calculate estimated data
-		 */	
-		framein=new Complex[fdf[0].length][fftSize()];
-		tempadd=new Complex[fftSize()];
-		tempmul=new Complex[fftSize()];
-		
-eof:	for(;;)
-		{
-			//read frame from sensor stft files	
-			for(int inidx=0;inidx<framein.length;inidx++)
-			{
-				try
-				{
-					in[inidx].readFrame(framein[inidx]);
-				}
-				catch(EOFException e)
-				{
-					break eof;
-				}
-			}
-
-			//calculate mixed frames for each output
-			for(int outidx=0;outidx<fdf.length;outidx++)
-			{
-				Arrays.fill(tempadd,Complex.ZERO);
-				
-				for(int inidx=0;inidx<fdf[outidx].length;inidx++)
-				{
-					/*
-					 * entry multiplication in frequency equals convolution 
-					 * with periodic padding in time domain
-					 */
-					tempmul=BLAS.entryMultiply(fdf[outidx][inidx],framein[inidx],tempmul);
-					tempadd=BLAS.add(tempadd,tempmul,tempadd);
-				}
-				
-				out[outidx].writeFrame(tempadd);
-			}
-		}
+	/**
+	 * apply frequency domain filters to signal's STFT stream, input streams 
+	 * must be STFT of real signals
+	 * @param in
+	 * STFT streams for input signals
+	 * @param out
+	 * STFT streams for output signals
+	 * @param parallelism
+	 * number of threads, 1 for sequential
+	 * @throws IOException
+	 */
+	public void applyFDFilters(SignalSource[] in,SignalSink[] out,int parallelism) throws IOException
+	{
+	FDFilterEngine engine;
+	
+		engine=new FDFilterEngine(fdFilters());
+		engine.setParallelism(parallelism);
+		engine.apply(in,out);
 	}
 	
 	/**
@@ -239,7 +227,8 @@ eof:	for(;;)
 	}
 	
 	/**
-	 * load complex matrices from file
+	 * load complex matrices from file, both text format and binary format are 
+	 * supported
 	 * @param path
 	 * matrix file path
 	 * @return
@@ -247,6 +236,20 @@ eof:	for(;;)
 	 * @throws IOException
 	 */
 	public static Complex[][][] loadComplexMatrices(File path) throws IOException
+	{
+		if(isBinaryModel(path)) return loadBinaryComplexMatrices(path,false);
+		else return loadTextComplexMatrices(path);
+	}
+	
+	/**
+	 * load complex matrices from file in text format
+	 * @param path
+	 * matrix file path
+	 * @return
+	 * complex matrices of each frequency bin
+	 * @throws IOException
+	 */
+	private static Complex[][][] loadTextComplexMatrices(File path) throws IOException
 	{
 	BufferedReader in=null;
 	List<Complex[][]> matrixl;//used to hold demixing matrix for each bin
@@ -291,6 +294,241 @@ eof:	for(;;)
 		return matrices;
 	}
 	
+	/**
+	 * see if a file is a model in binary format
+	 * @param path
+	 * file path
+	 * @return
+	 * @throws IOException
+	 */
+	public static boolean isBinaryModel(File path) throws IOException
+	{
+	DataInputStream in=null;
+	
+		if(path.length()<HEADER_SIZE) return false;
+		try
+		{
+			in=new DataInputStream(new FileInputStream(path));
+			return in.readInt()==BINARY_MAGIC;
+		}
+		finally
+		{
+			try
+			{
+				if(in!=null) in.close();
+			}
+			catch(IOException e)
+			{}
+		}
+	}
+	
+	/**
+	 * read the header of a model in binary format without loading the payload
+	 * @param path
+	 * file path
+	 * @return
+	 * {payload type, number of sources, number of sensors, fft block size, 
+	 * filter length}
+	 * @throws IOException
+	 */
+	public static int[] readBinaryHeader(File path) throws IOException
+	{
+	DataInputStream in=null;
+	int[] header;
+	
+		try
+		{
+			in=new DataInputStream(new FileInputStream(path));
+			if(in.readInt()!=BINARY_MAGIC) throw new IOException("not a binary model file: "+path);
+			if(in.readInt()!=BINARY_VERSION) throw new IOException("unsupported binary model version: "+path);
+			
+			header=new int[5];
+			for(int i=0;i<header.length;i++) header[i]=in.readInt();
+			return header;
+		}
+		finally
+		{
+			try
+			{
+				if(in!=null) in.close();
+			}
+			catch(IOException e)
+			{}
+		}
+	}
+	
+	/**
+	 * open a binary model file and write its header
+	 * @param path
+	 * file path
+	 * @param type
+	 * payload type
+	 * @param nsources
+	 * number of sources
+	 * @param msensors
+	 * number of sensors
+	 * @param fftsize
+	 * fft block size
+	 * @param len
+	 * filter length, 0 if not used
+	 * @return
+	 * stream positioned at the payload
+	 * @throws IOException
+	 */
+	protected static DataOutputStream openBinaryModel(File path,int type,int nsources,int msensors,int fftsize,int len) throws IOException
+	{
+	DataOutputStream out;
+	
+		out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path),1<<16));
+		out.writeInt(BINARY_MAGIC);
+		out.writeInt(BINARY_VERSION);
+		out.writeInt(type);
+		out.writeInt(nsources);
+		out.writeInt(msensors);
+		out.writeInt(fftsize);
+		out.writeInt(len);
+		out.writeInt(0);
+		return out;
+	}
+	
+	/**
+	 * read a binary model file
+	 * @param path
+	 * file path
+	 * @param type
+	 * required payload type
+	 * @param mapped
+	 * true to memory map the file, false to read it into heap
+	 * @param header
+	 * space for {number of sources, number of sensors, fft block size, filter length}
+	 * @return
+	 * The file content positioned at the payload. A mapped buffer must be 
+	 * released by MappedSignalSource.unmap after the payload is decoded.
+	 * @throws IOException
+	 */
+	protected static ByteBuffer readBinaryModel(File path,int type,boolean mapped,int[] header) throws IOException
+	{
+	RandomAccessFile file=null;
+	FileChannel channel;
+	ByteBuffer buffer;
+	
+		try
+		{
+			file=new RandomAccessFile(path,"r");
+			channel=file.getChannel();
+			if(channel.size()>Integer.MAX_VALUE) throw new IOException("binary model file is too large: "+path);
+			if(mapped) buffer=channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+			else
+			{
+				buffer=ByteBuffer.allocate((int)channel.size());
+				while(buffer.hasRemaining()) 
+					if(channel.read(buffer)<0) throw new EOFException("unexpected end of file: "+path);
+				buffer.flip();
+			}
+		}
+		finally
+		{
+			//mapped buffer is still valid after the file is closed
+			if(file!=null) file.close();
+		}
+
+		try
+		{
+			if(buffer.remaining()<HEADER_SIZE||buffer.getInt()!=BINARY_MAGIC) 
+				throw new IOException("not a binary model file: "+path);
+			if(buffer.getInt()!=BINARY_VERSION) throw new IOException("unsupported binary model version: "+path);
+			if(buffer.getInt()!=type) throw new IOException("binary model type not match: "+path);
+			for(int i=0;i<header.length;i++) header[i]=buffer.getInt();
+			buffer.position(HEADER_SIZE);
+		}
+		catch(IOException e)
+		{
+			if(buffer instanceof MappedByteBuffer) MappedSignalSource.unmap((MappedByteBuffer)buffer);
+			throw e;
+		}
+		
+		return buffer;
+	}
+	
+	/**
+	 * save complex matrices of frequency bins in binary format
+	 * @param path
+	 * file path
+	 * @param matrices
+	 * [bin index][row][column], number of bins must be fftsize/2+1
+	 * @throws IOException
+	 */
+	public static void saveBinaryComplexMatrices(File path,Complex[][][] matrices) throws IOException
+	{
+	DataOutputStream out=null;
+	
+		try
+		{
+			out=openBinaryModel(path,COMPLEX_MATRICES,
+					matrices[0].length,matrices[0][0].length,(matrices.length-1)*2,0);
+			for(Complex[][] m:matrices) 
+				for(Complex[] row:m) 
+					for(Complex z:row) 
+					{
+						out.writeDouble(z.getReal());
+						out.writeDouble(z.getImaginary());
+					}
+			out.flush();
+		}
+		finally
+		{
+			try
+			{
+				if(out!=null) out.close();
+			}
+			catch(IOException e)
+			{}
+		}
+	}
+	
+	/**
+	 * load complex matrices of frequency bins in binary format
+	 * @param path
+	 * file path
+	 * @param mapped
+	 * true to memory map the file, false to read it into heap
+	 * @return
+	 * [bin index][row][column]
+	 * @throws IOException
+	 */
+	public static Complex[][][] loadBinaryComplexMatrices(File path,boolean mapped) throws IOException
+	{
+	int[] header;
+	ByteBuffer buffer;
+	DoubleBuffer payload;
+	Complex[][][] matrices;
+	double[] row;
+	
+		header=new int[4];
+		buffer=readBinaryModel(path,COMPLEX_MATRICES,mapped,header);
+		try
+		{
+			payload=buffer.asDoubleBuffer();
+			if(payload.remaining()!=(long)(header[2]/2+1)*header[0]*header[1]*2) 
+				throw new IOException("binary model size not match: "+path);
+
+			matrices=new Complex[header[2]/2+1][header[0]][header[1]];
+			row=new double[2*header[1]];
+			for(Complex[][] m:matrices) 
+				for(Complex[] mrow:m) 
+				{
+					payload.get(row);
+					for(int j=0;j<mrow.length;j++) mrow[j]=new Complex(row[2*j],row[2*j+1]);
+				}
+			return matrices;
+		}
+		finally
+		{
+			//all data are copied, release the mapping at once
+			if(buffer instanceof MappedByteBuffer) MappedSignalSource.unmap((MappedByteBuffer)buffer);
+		}
+	}
+	
 	/**
 	 * visualize filters
 	 */
@@ -327,4 +565,87 @@ eof:	for(;;)
 		
 		Util.plotSignals(envelop);
 	}
+	
+	/**
+	 * see if two demixing models have the same demixing matrices
+	 * @param m1
+	 * a model
+	 * @param m2
+	 * another model
+	 * @return
+	 */
+	private static boolean sameDemixingMatrices(DemixingModel m1,DemixingModel m2)
+	{
+		if(m1.fftSize()!=m2.fftSize()) return false;
+		for(int binidx=0;binidx<m1.fftSize()/2+1;binidx++) 
+			if(!Arrays.deepEquals(m1.getDemixingMatrix(binidx),m2.getDemixingMatrix(binidx))) return false;
+		return true;
+	}
+	
+	public static void main(String[] args) throws IOException
+	{
+	int n=8,fftsize=8192,repeat=5;
+	DemixingModel demixm,demixm2=null;
+	MixingModel mixm,mixm2=null;
+	double[][][] tdmixf;
+	File text,binary;
+	long t1,t2;
+	
+		text=File.createTempFile("demix",".txt");
+		binary=File.createTempFile("demix",".dat");
+		try
+		{
+			demixm=new DemixingModel(n,n,fftsize);
+			for(int binidx=0;binidx<fftsize/2+1;binidx++) 
+				demixm.setDemixingMatrix(binidx,BLAS.randComplexMatrix(n,n));
+			
+			System.out.println(n+" x "+n+" demixing model, fft size "+fftsize);
+			System.out.println("format, save (ms), load (ms), file size (bytes), identical");
+
+			t1=System.currentTimeMillis();
+			for(int i=0;i<repeat;i++) demixm.save(text);
+			t1=System.currentTimeMillis()-t1;
+			t2=System.currentTimeMillis();
+			for(int i=0;i<repeat;i++) demixm2=new DemixingModel(text);
+			t2=System.currentTimeMillis()-t2;
+			System.out.println("text, "+t1/repeat+", "+t2/repeat+", "+text.length()+", "+
+					sameDemixingMatrices(demixm,demixm2));
+
+			t1=System.currentTimeMillis();
+			for(int i=0;i<repeat;i++) demixm.saveBinary(binary);
+			t1=System.currentTimeMillis()-t1;
+			t2=System.currentTimeMillis();
+			for(int i=0;i<repeat;i++) demixm2=new DemixingModel(binary);
+			t2=System.currentTimeMillis()-t2;
+			System.out.println("binary, "+t1/repeat+", "+t2/repeat+", "+binary.length()+", "+
+					sameDemixingMatrices(demixm,demixm2));
+
+			t2=System.currentTimeMillis();
+			for(int i=0;i<repeat;i++) demixm2=new DemixingModel(binary,true);
+			t2=System.currentTimeMillis()-t2;
+			System.out.println("binary mapped, -, "+t2/repeat+", "+binary.length()+", "+
+					sameDemixingMatrices(demixm,demixm2));
+			
+			/*
+			 * mixing model
+			 */
+			tdmixf=new double[n][n][];
+			for(double[][] hj:tdmixf) 
+				for(int i=0;i<hj.length;i++) hj[i]=BLAS.randVector(fftsize/2);
+			mixm=new MixingModel(tdmixf,fftsize);
+			t1=System.currentTimeMillis();
+			for(int i=0;i<repeat;i++) mixm.save(binary);
+			t1=System.currentTimeMillis()-t1;
+			t2=System.currentTimeMillis();
+			for(int i=0;i<repeat;i++) mixm2=new MixingModel(binary);
+			t2=System.currentTimeMillis()-t2;
+			System.out.println("binary mixing model, "+t1/repeat+", "+t2/repeat+", "+binary.length()+", "+
+					Arrays.deepEquals(mixm.tdFilters(),mixm2.tdFilters()));
+		}
+		finally
+		{
+			text.delete();
+			binary.delete();
+		}
+	}
 }
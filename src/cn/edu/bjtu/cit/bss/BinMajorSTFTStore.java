@@ -0,0 +1,537 @@
+package cn.edu.bjtu.cit.bss;
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import javax.sound.sampled.*;
+import org.apache.commons.math.complex.*;
+import pp.util.BLAS;
+import pp.util.ComplexBLAS;
+import cn.edu.bjtu.cit.bss.signalio.*;
+
+/**
+ * <h1>Description</h1>
+ * Sensor STFT data stored in bin-major order: frequency bin, channel, stft frame,
+ * so data in a frequency bin is a single contiguous block of the file. The file
+ * starts with a header: magic number, format version, fft size, number of bins,
+ * number of channels and number of stft frames, each one is an int. Then each
+ * T-F point is saved as two doubles: real part and imaginary part. The store is
+ * generated from the frame-major stft files after STFT by a single blocked pass.
+ * A store has one file pointer and one bin buffer, so reading methods are
+ * synchronized, threads reading in parallel should open their own stores.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 17, 2026 8:21:37 PM, revision:
+ */
+public class BinMajorSTFTStore implements Serializable
+{
+private static final long serialVersionUID=-3160285466709211318L;
+/**
+ * magic number of the bin-major format: "BSTF"
+ */
+public static final int MAGIC=0x42535446;
+/**
+ * current format version
+ */
+public static final int VERSION=1;
+private static final int HEADER_SIZE=6*4;//header size in bytes
+private transient RandomAccessFile in;//underlying file
+private int fftsize;//fft block size
+private int numbins;//number of frequency bins
+private int numchannels;//number of channels
+private int numframes;//number of stft frames
+private transient byte[] bytes;//buffer for a frequency bin
+private transient DoubleBuffer dbuffer;//double view of the bin buffer
+
+	/**
+	 * @param path
+	 * file path of the bin-major store
+	 * @throws IOException
+	 */
+	public BinMajorSTFTStore(File path) throws IOException
+	{
+	int magic,version;
+	long binbytes;
+
+		in=new RandomAccessFile(path,"r");
+
+		/*
+		 * read the header
+		 */
+		magic=in.readInt();
+		if(magic!=MAGIC)
+		{
+			in.close();
+			throw new DataFormatException("not a bin-major stft file: "+Integer.toHexString(magic));
+		}
+		version=in.readInt();
+		if(version!=VERSION)
+		{
+			in.close();
+			throw new DataFormatException("unsupported bin-major format version: "+version);
+		}
+		fftsize=in.readInt();
+		numbins=in.readInt();
+		numchannels=in.readInt();
+		numframes=in.readInt();
+
+		if(numbins!=fftsize/2+1)
+		{
+			in.close();
+			throw new DataFormatException(
+					"number of bins not match: "+numbins+", fft size: "+fftsize);
+		}
+		if(in.length()<HEADER_SIZE+(long)numbins*numchannels*numframes*16)
+		{
+			in.close();
+			throw new DataFormatException("bin-major stft file is truncated: "+path);
+		}
+
+		binbytes=(long)numchannels*numframes*16;
+		if(binbytes>Integer.MAX_VALUE)
+		{
+			in.close();
+			throw new DataFormatException("frequency bin is too large to be loaded: "+binbytes+" bytes");
+		}
+		bytes=new byte[(int)binbytes];
+		dbuffer=ByteBuffer.wrap(bytes).asDoubleBuffer();
+	}
+
+	/**
+	 * <h1>Description</h1>
+	 * Write complex data into a bin-major file frequency bin by frequency bin, 
+	 * from the lowest frequency to the highest frequency. Used for data which 
+	 * is generated bin by bin, such as preprocessed sensor data.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 18, 2026 9:12:46 AM, revision:
+	 */
+	public static class Writer implements Closeable
+	{
+	private DataOutputStream out;//underlying file
+	private int numbins;//number of frequency bins
+	private int numchannels;//number of channels
+	private int numframes;//number of stft frames
+	private int binswritten=0;//number of frequency bins already written
+	private byte[] row;//buffer for a channel of a frequency bin
+	private DoubleBuffer drow;//double view of the row buffer
+	
+		/**
+		 * @param path
+		 * destination file path
+		 * @param fftsize
+		 * fft block size
+		 * @param numchannels
+		 * number of channels
+		 * @param numframes
+		 * number of stft frames
+		 * @throws IOException
+		 */
+		public Writer(File path,int fftsize,int numchannels,int numframes) throws IOException
+		{
+			if(numchannels<1||numframes<1) throw new IllegalArgumentException(
+					"illegal data size: "+numchannels+" x "+numframes);
+			numbins=fftsize/2+1;
+			this.numchannels=numchannels;
+			this.numframes=numframes;
+			row=new byte[numframes*16];
+			drow=ByteBuffer.wrap(row).asDoubleBuffer();
+			
+			out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(fftsize);
+			out.writeInt(numbins);
+			out.writeInt(numchannels);
+			out.writeInt(numframes);
+		}
+		
+		/**
+		 * write data of the next frequency bin
+		 * @param data
+		 * data of a frequency bin, [channel index][stft frame index]
+		 * @throws IOException
+		 */
+		public void writeBin(Complex[][] data) throws IOException
+		{
+			if(binswritten>=numbins) throw new IllegalStateException(
+					"all frequency bins are already written: "+numbins);
+			if(data.length!=numchannels||data[0].length!=numframes) throw new IllegalArgumentException(
+					"data size not match: "+data.length+" x "+data[0].length+
+					", required: "+numchannels+" x "+numframes);
+			
+			for(Complex[] ch:data) 
+			{
+				drow.clear();
+				for(Complex c:ch) 
+				{
+					drow.put(c.getReal());
+					drow.put(c.getImaginary());
+				}
+				out.write(row);
+			}
+			binswritten++;
+		}
+		
+		/**
+		 * get the number of frequency bins already written
+		 * @return
+		 */
+		public int numBinsWritten()
+		{
+			return binswritten;
+		}
+		
+		public void close() throws IOException
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Generate bin-major store from frame-major stft files in a single pass. 
+	 * Frames of all channels are read together, a block of frames is scattered 
+	 * into per bin rows in memory, then each row is written to its own region 
+	 * of the file, so each stft frame is read only once.
+	 * @param fdbss
+	 * bss algorithm reference, stft must be performed first
+	 * @param path
+	 * destination file path
+	 * @param maxbuffersize
+	 * Max size of the transposition buffer in bytes. The number of stft frames 
+	 * transposed at once is derived from it, a frame takes number of bins x 
+	 * number of channels x 16 bytes. At least one frame is buffered.
+	 * @throws IOException
+	 */
+	public static void transpose(FDBSS fdbss,File path,long maxbuffersize) throws IOException
+	{
+	int fftsize,numbins,numchannels,numframes,blocksize,len=0,tau0=0;
+	long framebytes;
+	SignalSource[] sources;
+	double[] real,imag;
+	Complex[] frame;
+	byte[] block;//[bin][channel][frame in block][re, im]
+	DoubleBuffer dblock;
+	RandomAccessFile out=null;
+
+		if(maxbuffersize<1) throw new IllegalArgumentException(
+				"buffer size must be positive: "+maxbuffersize);
+		fftsize=fdbss.fftSize();
+		numbins=fftsize/2+1;
+		numchannels=fdbss.numSensors();
+		numframes=numSTFTFrames(fdbss);
+
+		framebytes=(long)numbins*numchannels*16;
+		if(framebytes>Integer.MAX_VALUE) throw new IllegalArgumentException(
+				"stft frame is too large to be transposed: "+framebytes+" bytes");
+		blocksize=(int)Math.max(1,Math.min(maxbuffersize,Integer.MAX_VALUE)/framebytes);
+		blocksize=Math.max(1,Math.min(blocksize,numframes));
+
+		real=new double[numbins];
+		imag=new double[numbins];
+		frame=new Complex[fftsize];
+		block=new byte[(int)(framebytes*blocksize)];
+		dblock=ByteBuffer.wrap(block).asDoubleBuffer();
+		sources=new SignalSource[numchannels];
+
+		try
+		{
+			for(int m=0;m<numchannels;m++) sources[m]=fdbss.openSTFTSource(m);
+			
+			out=new RandomAccessFile(path,"rw");
+			out.setLength(HEADER_SIZE+(long)numbins*numchannels*numframes*16);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(fftsize);
+			out.writeInt(numbins);
+			out.writeInt(numchannels);
+			out.writeInt(numframes);
+
+			for(int tau=0;tau<numframes;tau++)
+			{
+				/*
+				 * scatter a frame of each channel into rows
+				 */
+				for(int m=0;m<numchannels;m++)
+				{
+					if(sources[m] instanceof HalfSpectrumSignalSource)
+						((HalfSpectrumSignalSource)sources[m]).readHalfFrame(real,imag);
+					else
+					{
+						sources[m].readFrame(frame);
+						for(int binidx=0;binidx<numbins;binidx++)
+						{
+							real[binidx]=frame[binidx].getReal();
+							imag[binidx]=frame[binidx].getImaginary();
+						}
+					}
+
+					for(int binidx=0,idx=((m*blocksize)+len)*2;binidx<numbins;binidx++,idx+=numchannels*blocksize*2)
+					{
+						dblock.put(idx,real[binidx]);
+						dblock.put(idx+1,imag[binidx]);
+					}
+				}
+				len++;
+
+				/*
+				 * write rows of the block to their own regions
+				 */
+				if(len==blocksize||tau==numframes-1)
+				{
+					for(int row=0;row<numbins*numchannels;row++)
+					{
+						out.seek(HEADER_SIZE+((long)row*numframes+tau0)*16);
+						out.write(block,row*blocksize*16,len*16);
+					}
+					tau0+=len;
+					len=0;
+				}
+			}
+
+			//all channels must have the same number of frames
+			for(int m=0;m<numchannels;m++)
+				try
+				{
+					sources[m].readFrame(frame);
+					throw new IllegalStateException(
+							"number of stft frames not match: channel "+m+" has more than "+numframes);
+				}
+				catch(EOFException e)
+				{}
+		}
+		catch(EOFException e)
+		{
+			throw new IllegalStateException("number of stft frames not match, expected: "+numframes,e);
+		}
+		finally
+		{
+			for(SignalSource source:sources)
+				try
+				{
+					if(source!=null) source.close();
+				}
+				catch(IOException e)
+				{}
+			try
+			{
+				if(out!=null) out.close();
+			}
+			catch(IOException e)
+			{}
+		}
+	}
+
+	/**
+	 * Get the number of stft frames of the first channel. It is calculated by 
+	 * the file length for half spectrum files, other formats are counted by 
+	 * reading frames.
+	 * @param fdbss
+	 * bss algorithm reference, stft must be performed first
+	 * @return
+	 * @throws IOException
+	 */
+	private static int numSTFTFrames(FDBSS fdbss) throws IOException
+	{
+	File stftfile;
+	SignalSource source=null;
+	Complex[] frame;
+	int numframes=0;
+
+		stftfile=fdbss.stftFile(0);
+		if(HalfSpectrumSignalSource.isHalfSpectrumFile(stftfile)) 
+			return (int)((stftfile.length()-HalfSpectrumSignalSource.HEADER_SIZE)/
+					((fdbss.fftSize()/2+1)*16L));
+
+		frame=new Complex[fdbss.fftSize()];
+		try
+		{
+			source=fdbss.openSTFTSource(0);
+			for(;;numframes++) source.readFrame(frame);
+		}
+		catch(EOFException e)
+		{
+			return numframes;
+		}
+		finally
+		{
+			if(source!=null) source.close();
+		}
+	}
+
+	/**
+	 * get fft block size
+	 * @return
+	 */
+	public int fftSize()
+	{
+		return fftsize;
+	}
+
+	/**
+	 * get number of channels
+	 * @return
+	 */
+	public int numChannels()
+	{
+		return numchannels;
+	}
+
+	/**
+	 * get number of stft frames
+	 * @return
+	 */
+	public int numSTFTFrames()
+	{
+		return numframes;
+	}
+
+	/**
+	 * read a frequency bin into the bin buffer
+	 * @param binidx
+	 * frequency bin index
+	 * @throws IOException
+	 */
+	private synchronized void loadBin(int binidx) throws IOException
+	{
+		if(binidx<0||binidx>=numbins) throw new IndexOutOfBoundsException(
+				"frequency bin index out of bounds: "+binidx+", [0, "+(numbins-1)+"]");
+		in.seek(HEADER_SIZE+(long)binidx*bytes.length);
+		in.readFully(bytes);
+		dbuffer.clear();
+	}
+
+	/**
+	 * get data in a frequency bin
+	 * @param binidx
+	 * frequency bin index
+	 * @param buffer
+	 * space used to store data, null to allocate new space
+	 * @return
+	 * @throws IOException
+	 */
+	public synchronized Complex[][] binData(int binidx,Complex[][] buffer) throws IOException
+	{
+	double real,imag;
+
+		if(buffer==null) buffer=new Complex[numchannels][numframes];
+		else BLAS.checkDestinationSize(buffer,numchannels,numframes);
+
+		loadBin(binidx);
+		for(int m=0;m<numchannels;m++)
+			for(int tau=0;tau<numframes;tau++)
+			{
+				real=dbuffer.get();
+				imag=dbuffer.get();
+				buffer[m][tau]=new Complex(real,imag);
+			}
+
+		return buffer;
+	}
+
+	/**
+	 * get data in a frequency bin in split complex format
+	 * @param binidx
+	 * frequency bin index
+	 * @param buffer
+	 * space used to store data: [2][number of channels][number of stft frames],
+	 * null to allocate new space
+	 * @return
+	 * @throws IOException
+	 */
+	public synchronized double[][][] splitBinData(int binidx,double[][][] buffer) throws IOException
+	{
+		if(buffer==null) buffer=ComplexBLAS.newMatrix(numchannels,numframes);
+		else ComplexBLAS.checkDestinationSize(buffer,numchannels,numframes);
+
+		loadBin(binidx);
+		for(int m=0;m<numchannels;m++)
+			for(int tau=0;tau<numframes;tau++)
+			{
+				buffer[0][m][tau]=dbuffer.get();
+				buffer[1][m][tau]=dbuffer.get();
+			}
+
+		return buffer;
+	}
+
+	/**
+	 * close the underlying file
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException
+	{
+		in.close();
+	}
+
+	public static void main(String[] args) throws IOException, UnsupportedAudioFileException
+	{
+	FDBSS fdbss;
+	SignalMixer mixer;
+	Complex[][] bindata=null;
+	int numbins;
+	int[] order;
+	Random rand;
+	long t;
+
+		fdbss=new FDBSS(new File("temp"));
+		fdbss.setParameter(FDBSS.Parameter.stft_size,"2048");
+		fdbss.setParameter(FDBSS.Parameter.fft_size,"4096");
+		fdbss.setParameter(FDBSS.Parameter.stft_layout,"frame");
+
+		mixer=new SignalMixer(
+				new WaveSource(new File("data/rsm2_mA.wav"),true),
+				new WaveSource(new File("data/rsm2_mB.wav"),true));
+		fdbss.stft(mixer);
+		mixer.close();
+		numbins=fdbss.fftSize()/2+1;
+
+		/*
+		 * visit order used by alignment: random bins
+		 */
+		order=new int[numbins];
+		for(int i=0;i<order.length;i++) order[i]=i;
+		rand=new Random(0);
+		for(int i=order.length-1;i>0;i--)
+		{
+		int j,temp;
+
+			j=rand.nextInt(i+1);
+			temp=order[i];order[i]=order[j];order[j]=temp;
+		}
+
+		/*
+		 * frame-major files and the T-F buffer
+		 */
+		t=System.currentTimeMillis();
+		for(int binidx=0;binidx<numbins;binidx++) bindata=fdbss.binData(binidx,bindata);
+		System.out.println("frame-major, sequential: "+(System.currentTimeMillis()-t)+" ms");
+		t=System.currentTimeMillis();
+		for(int i=0;i<Math.min(order.length,100);i++) bindata=fdbss.binData(order[i],bindata);
+		System.out.println("frame-major, 100 random bins: "+(System.currentTimeMillis()-t)+" ms");
+		fdbss.setParameter(FDBSS.Parameter.memory_mapped,"true");
+		t=System.currentTimeMillis();
+		for(int i=0;i<Math.min(order.length,100);i++) bindata=fdbss.binData(order[i],bindata);
+		System.out.println("frame-major, memory mapped, 100 random bins: "+(System.currentTimeMillis()-t)+" ms");
+		fdbss.setParameter(FDBSS.Parameter.memory_mapped,"false");
+
+		/*
+		 * bin-major store, including the transposition
+		 */
+		fdbss.setParameter(FDBSS.Parameter.stft_layout,"bin");
+		t=System.currentTimeMillis();
+		fdbss.prepareBinMajorSTFT();
+		System.out.println("transpose: "+(System.currentTimeMillis()-t)+" ms");
+		t=System.currentTimeMillis();
+		for(int binidx=0;binidx<numbins;binidx++) bindata=fdbss.binData(binidx,bindata);
+		System.out.println("bin-major, sequential: "+(System.currentTimeMillis()-t)+" ms");
+		t=System.currentTimeMillis();
+		for(int i=0;i<Math.min(order.length,100);i++) bindata=fdbss.binData(order[i],bindata);
+		System.out.println("bin-major, 100 random bins: "+(System.currentTimeMillis()-t)+" ms");
+	}
+}
@@ -1,10 +1,13 @@
 package cn.edu.bjtu.cit.bss;
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 import org.apache.commons.math.complex.*;
 import cn.edu.bjtu.cit.bss.ica.*;
 import cn.edu.bjtu.cit.bss.preprocess.*;
 import pp.util.BLAS;
+import pp.util.ComplexBLAS;
 
 /**
  * <h1>Description</h1>
@@ -23,6 +26,8 @@ private static final String LOGGER_NAME="cn.edu.bjtu.cit.bss";
 private ICA ica;//the ICA algorithm
 private int icaretry=10;//number of retry times when ica not converge
 private double seeddelta=2;//perturbation add to the initial seed when retry ica
+private int parallelism=1;//number of threads used to apply ICA on frequency bins, 1 for sequential
+private int batchsize=0;//number of frequency bins solved at once by BatchCFastICA, 0 for bin by bin
 
 	public CommonICAStep()
 	{}
@@ -61,6 +66,56 @@ private double seeddelta=2;//perturbation add to the initial seed when retry ica
 		}
 	}
 	
+	/**
+	 * get number of threads used to apply ICA on frequency bins
+	 * @return
+	 */
+	public int parallelism()
+	{
+		return parallelism;
+	}
+	
+	/**
+	 * Set number of threads used to apply ICA on frequency bins. If it is larger 
+	 * than 1, frequency bins are partitioned into the same number of contiguous 
+	 * chunks, each chunk is seeded from its own first bin and processed on a 
+	 * fork-join pool.
+	 * @param parallelism
+	 * number of threads, 1 for sequential
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if(parallelism<1) throw new IllegalArgumentException(
+				"parallelism must be positive: "+parallelism);
+		this.parallelism=parallelism;
+	}
+	
+	/**
+	 * get the number of frequency bins solved at once by the batched kernel
+	 * @return
+	 * 0 for bin by bin
+	 */
+	public int batchSize()
+	{
+		return batchsize;
+	}
+	
+	/**
+	 * Set the number of frequency bins solved at once by the batched kernel. 
+	 * It only works for CFastICA with symmetric decorrelation. Bins of a batch 
+	 * are seeded by the demixing matrix of the last bin of the previous batch, 
+	 * and solved by BatchCFastICA with the same parallelism, bins not converged 
+	 * are retried bin by bin.
+	 * @param batchsize
+	 * number of frequency bins, 0 for bin by bin
+	 */
+	public void setBatchSize(int batchsize)
+	{
+		if(batchsize<0) throw new IllegalArgumentException(
+				"batch size must not be negative: "+batchsize);
+		this.batchsize=batchsize;
+	}
+	
 	/**
 	 * add a small perturbation to the seed used in ICA
 	 * @param seed
@@ -106,6 +161,7 @@ private double seeddelta=2;//perturbation add to the initial seed when retry ica
 	boolean converged;//true if the ICA algorithm is converged
 	Complex[][] demix;//demixing matrix for frequency bin data
 	Complex[][] nextseed;//seed for next bin
+	Complex[][] sigsp;//preprocessed signals, reused as the buffer for next bin
 
 		/**
 		 * @param converged
@@ -114,12 +170,15 @@ private double seeddelta=2;//perturbation add to the initial seed when retry ica
 		 * demixing matrix for frequency bin data
 		 * @param nextseed
 		 * seed for next bin
+		 * @param sigsp
+		 * preprocessed signals
 		 */
-		public ICAStepResults(boolean converged,Complex[][] demix,Complex[][] nextseed)
+		public ICAStepResults(boolean converged,Complex[][] demix,Complex[][] nextseed,Complex[][] sigsp)
 		{
 			this.converged=converged;
 			this.demix=demix;
 			this.nextseed=nextseed;
+			this.sigsp=sigsp;
 		}
 	}
 	
@@ -135,6 +194,24 @@ private double seeddelta=2;//perturbation add to the initial seed when retry ica
 	 * ICA not converge after retries
 	 */
 	public Complex[][] applyICAPreprocessed(Complex[][] sigsp,Complex[][] seed)
+	{
+		return applyICAPreprocessed(ica,sigsp,seed);
+	}
+	
+	/**
+	 * Apply ICA on already preprocessed bin data, all retries reuse the same 
+	 * preprocessed data, ICA algorithms never modify it.
+	 * @param ica
+	 * the ICA algorithm instance used
+	 * @param sigsp
+	 * already preprocessed data
+	 * @param seed
+	 * initial seeds
+	 * @return
+	 * @throws AlgorithmNotConvergeException
+	 * ICA not converge after retries
+	 */
+	private Complex[][] applyICAPreprocessed(ICA ica,Complex[][] sigsp,Complex[][] seed)
 	{
 	Complex[][] seed2;//seed bakup
 	Complex[][] demixp=null;//demixing matrix for preprocessed signals
@@ -182,7 +259,25 @@ private double seeddelta=2;//perturbation add to the initial seed when retry ica
 	 */
 	public ICAStepResults applyICA(Complex[][] sigs,Complex[][] seed)
 	{
-	Preprocessor preprocessor;
+		return applyICA(this.preprocessor(),ica,sigs,seed,null);
+	}
+	
+	/**
+	 * apply ica for a frequency bin with designated preprocessor and ICA instance
+	 * @param preprocessor
+	 * preprocessor used
+	 * @param ica
+	 * ICA algorithm used
+	 * @param sigs
+	 * signals of a frequency bin, will not be modified
+	 * @param seed
+	 * initial seeds
+	 * @param buffer
+	 * space for preprocessed signals, null to allocate new space
+	 * @return
+	 */
+	private ICAStepResults applyICA(Preprocessor preprocessor,ICA ica,Complex[][] sigs,Complex[][] seed,Complex[][] buffer)
+	{
 	Complex[][] sigsp;//preprocessed signals
 	Complex[][] demixp=null;//demixing matrix for preprocessed signals
 	Complex[][] demix;//demixing matrix for original signals
@@ -192,13 +287,12 @@ private double seeddelta=2;//perturbation add to the initial seed when retry ica
 		/*
 		 * preprocessing, number of seeds implies number of output channels
 		 */
-		preprocessor=this.preprocessor();
-		sigsp=preprocessor.preprocess(sigs,seed.length);
+		sigsp=preprocessor.preprocess(sigs,seed.length,buffer);
 
 		//calculate the demixing matrix for preprocessed signals
 		try
 		{
-			demixp=applyICAPreprocessed(sigsp,seed);
+			demixp=applyICAPreprocessed(ica,sigsp,seed);
 			converged=true;
 			/*
 			 * Algorithm converged, use demixing matrix as the seed for the next bin. 
@@ -218,7 +312,7 @@ private double seeddelta=2;//perturbation add to the initial seed when retry ica
 		//demixing matrix for original input
 		demix=BLAS.multiply(demixp,preprocessor.transferMatrix(),null);
 		
-		return new ICAStepResults(converged,demix,nextseed);
+		return new ICAStepResults(converged,demix,nextseed,sigsp);
 	}
 	
 	public DemixingModel applyICA()
@@ -226,13 +320,42 @@ private double seeddelta=2;//perturbation add to the initial seed when retry ica
 	Logger logger;
 	FDBSSAlgorithm fdbss;
 	DemixingModel model;
+	long t;
+	
+		logger=Logger.getLogger(LOGGER_NAME);
+		fdbss=this.getFDBSSAlgorithm();
+		model=new DemixingModel(fdbss.numSources(),fdbss.numSensors(),fdbss.fftSize());
+		
+		t=System.currentTimeMillis();
+		if(batchsize>0&&ica instanceof CFastICA&&
+				((CFastICA)ica).decorrelation()==CFastICA.Decorrelation.symmetric) batchedICA(model);
+		else if(parallelism<=1) sequentialICA(model);
+		else parallelICA(model);
+		t=System.currentTimeMillis()-t;
+		
+		logger.info("ICA on "+(fdbss.fftSize()/2+1)+" frequency bins finished in "+
+				t+" ms with parallelism "+parallelism+", batch size "+batchsize);
+		return model;
+	}
+	
+	/**
+	 * apply ICA on frequency bins one by one, the demixing matrix of a bin is 
+	 * used as the seed of the next bin
+	 * @param model
+	 * demixing model used to store results
+	 */
+	private void sequentialICA(DemixingModel model)
+	{
+	Logger logger;
+	FDBSSAlgorithm fdbss;
 	ICAStepResults icares;
 	Complex[][] buffer=null;//bin data buffer
+	Complex[][] sigsp=null;//preprocessed data buffer
 	Complex[][] seed;//seed for ica
+	long t;
 					
 		logger=Logger.getLogger(LOGGER_NAME);
 		fdbss=this.getFDBSSAlgorithm();
-		model=new DemixingModel(fdbss.numSources(),fdbss.numSensors(),fdbss.fftSize());
 		
 		/*
 		 * generate fixed initial seeds
@@ -252,20 +375,252 @@ private double seeddelta=2;//perturbation add to the initial seed when retry ica
 			 * load data
 			 */
 			logger.info("apply ICA on frequency bin "+binidx);
+			t=System.currentTimeMillis();
 			buffer=fdbss.binData(binidx,buffer);
 
 			/*
 			 * apply ica
 			 */
-			icares=applyICA(buffer,seed);
+			icares=applyICA(this.preprocessor(),ica,buffer,seed,sigsp);
+			sigsp=icares.sigsp;
 			seed=icares.nextseed;
 			if(!icares.converged) logger.warning(
 					"ICA not converge after "+icaretry+" retries for bin "+binidx);
 			
 			//get the demixing matrix for current frequency bin
 			model.setDemixingMatrix(binidx,icares.demix);
+			
+			t=System.currentTimeMillis()-t;
+			logger.info("frequency bin "+binidx+" finished in "+t+" ms");
 		}
+	}
+	
+	/**
+	 * Apply ICA on batches of frequency bins by BatchCFastICA. Bins of a batch 
+	 * are preprocessed one by one, and solved at once with the demixing matrix 
+	 * of the last bin of the previous batch as the seed. Bins not converged 
+	 * are retried with perturbed seeds bin by bin.
+	 * @param model
+	 * demixing model used to store results
+	 */
+	private void batchedICA(DemixingModel model)
+	{
+	Logger logger;
+	FDBSSAlgorithm fdbss;
+	BatchCFastICA batch;
+	BatchCFastICA.BinBuffer buffer=null;
+	Preprocessor preprocessor;
+	int numbins,size;
+	Complex[][] bindata=null,seed;
+	double[][][][] sigsp;//preprocessed bin data in split complex format
+	Complex[][][] transfer,seeds,demixp;
+	int[] numit;
+	Complex[][] demix;
+	long t;
+	
+		logger=Logger.getLogger(LOGGER_NAME);
+		fdbss=this.getFDBSSAlgorithm();
+		preprocessor=this.preprocessor();
+		batch=new BatchCFastICA((CFastICA)ica);
+		batch.setParallelism(parallelism);
+		numbins=fdbss.fftSize()/2+1;
+		
+		sigsp=new double[batchsize][][][];
+		transfer=new Complex[batchsize][][];
+		seed=BLAS.eyeComplex(fdbss.numSources(),fdbss.numSources());
+		
+		for(int offset=0;offset<numbins;offset+=batchsize)
+		{
+			t=System.currentTimeMillis();
+			size=Math.min(batchsize,numbins-offset);
+			
+			/*
+			 * load and preprocess bin data of this batch, number of seeds 
+			 * implies number of output channels
+			 */
+			for(int k=0;k<size;k++)
+			{
+				bindata=fdbss.binData(offset+k,bindata);
+				sigsp[k]=preprocessor.splitPreprocess(bindata,seed.length,sigsp[k]);
+				transfer[k]=BLAS.copy(preprocessor.transferMatrix(),null);
+			}
+			if(buffer==null||buffer.numBins()!=size||buffer.numFrames()!=sigsp[0][0][0].length) 
+				buffer=new BatchCFastICA.BinBuffer(size,seed.length,sigsp[0][0][0].length);
+			for(int k=0;k<size;k++) buffer.setBinData(k,sigsp[k]);
+			
+			seeds=new Complex[size][][];
+			Arrays.fill(seeds,seed);
+			numit=new int[size];
+			demixp=batch.demixingMatricesPreprocessed(buffer,seeds,numit);
+			
+			for(int k=0;k<size;k++)
+			{
+				if(demixp[k]==null)
+				{
+					try
+					{
+						demixp[k]=applyICAPreprocessed(ica,ComplexBLAS.build(sigsp[k],null),seed);
+						numit[k]=0;
+					}
+					catch(AlgorithmNotConvergeException e)
+					{
+						logger.warning("ICA not converge after "+icaretry+" retries for bin "+(offset+k));
+						//use identity demixing matrix instead
+						demixp[k]=BLAS.eyeComplex(seed.length,seed.length);
+						numit[k]=-1;
+					}
+				}
+				
+				//demixing matrix for original input
+				demix=BLAS.multiply(demixp[k],transfer[k],null);
+				model.setDemixingMatrix(offset+k,demix);
+			}
+			
+			/*
+			 * Seed for the next batch. Seed is used as column vector, while demix 
+			 * matrix is used as row vector, thus conjugate is required.
+			 */
+			for(int k=size-1;k>=0;k--) 
+				if(numit[k]>=0)
+				{
+					seed=BLAS.conjugate(demixp[k],null);
+					break;
+				}
+			
+			t=System.currentTimeMillis()-t;
+			logger.info("frequency bins ["+offset+", "+(offset+size)+") finished in "+t+" ms");
+		}
+	}
+	
+	/**
+	 * Partition frequency bins into contiguous chunks and apply ICA on them 
+	 * concurrently. Bin data buffers are not thread safe, so each task loads a 
+	 * window of consecutive bins while holding the lock of the fdbss algorithm, 
+	 * the window is as large as the algorithm loads from storage at once, so 
+	 * tasks do not evict the buffered bins of each other.
+	 * @param model
+	 * demixing model used to store results
+	 */
+	private void parallelICA(DemixingModel model)
+	{
+	int numbins,numchunks,chunksize;
+	List<ChunkTask> tasks;
+	ForkJoinPool pool;
+	
+		numbins=this.getFDBSSAlgorithm().fftSize()/2+1;
+		numchunks=Math.min(parallelism,numbins);
+		chunksize=(int)Math.ceil((double)numbins/numchunks);
+		
+		tasks=new ArrayList<ChunkTask>(numchunks);
+		for(int offset=0;offset<numbins;offset+=chunksize) 
+			tasks.add(new ChunkTask(model,offset,Math.min(offset+chunksize,numbins)));
 
-		return model;
+		pool=new ForkJoinPool(parallelism);
+		try
+		{
+			for(ChunkTask task:tasks) pool.execute(task);
+			//results are written into the model by each task
+			for(ChunkTask task:tasks) task.join();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * <h1>Description</h1>
+	 * Apply ICA on a contiguous chunk of frequency bins, the chunk is seeded 
+	 * from its own first bin, with its own preprocessor and ICA instance.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 17, 2026 10:12:40 AM, revision:
+	 */
+	private class ChunkTask extends RecursiveAction
+	{
+	private static final long serialVersionUID=-2716013985226354120L;
+	private DemixingModel model;//used to store results
+	private int binstart;//the first frequency bin index, inclusive
+	private int binend;//the last frequency bin index, exclusive
+	
+		/**
+		 * @param model
+		 * demixing model used to store results
+		 * @param binstart
+		 * the first frequency bin index, inclusive
+		 * @param binend
+		 * the last frequency bin index, exclusive
+		 */
+		public ChunkTask(DemixingModel model,int binstart,int binend)
+		{
+			this.model=model;
+			this.binstart=binstart;
+			this.binend=binend;
+		}
+		
+		protected void compute()
+		{
+		Logger logger;
+		FDBSSAlgorithm fdbss;
+		Preprocessor preprocessor;
+		ICA ica2;
+		Complex[][][] window;//bin data of the current window
+		Complex[][] sigsp=null;//preprocessed data buffer
+		Complex[][] seed;
+		ICAStepResults icares;
+		int winend;
+		long t;
+		
+			logger=Logger.getLogger(LOGGER_NAME);
+			fdbss=getFDBSSAlgorithm();
+			
+			/*
+			 * preprocessor and ICA keep states of the last invocation, 
+			 * so each chunk needs its own instance
+			 */
+			synchronized(CommonICAStep.this)
+			{
+				preprocessor=preprocessor().copy();
+				ica2=ica.copy();
+			}
+			
+			seed=BLAS.eyeComplex(fdbss.numSources(),fdbss.numSources());
+			window=new Complex[Math.min(Math.max(fdbss.binDataWindow(),1),binend-binstart)][][];
+			for(int winstart=binstart;winstart<binend;winstart=winend)
+			{
+				winend=Math.min(winstart+window.length,binend);
+				
+				//load the whole window at once
+				synchronized(fdbss)
+				{
+					for(int binidx=winstart;binidx<winend;binidx++) 
+						window[binidx-winstart]=fdbss.binData(binidx,window[binidx-winstart]);
+				}
+				
+				for(int binidx=winstart;binidx<winend;binidx++)
+				{
+					t=System.currentTimeMillis();
+					
+					icares=applyICA(preprocessor,ica2,window[binidx-winstart],seed,sigsp);
+					sigsp=icares.sigsp;
+					seed=icares.nextseed;
+					if(!icares.converged) logger.warning(
+							"ICA not converge after "+icaretry+" retries for bin "+binidx);
+				
+					//different tasks write to different bins
+					synchronized(model)
+					{
+						model.setDemixingMatrix(binidx,icares.demix);
+					}
+				
+					t=System.currentTimeMillis()-t;
+					logger.info("frequency bin "+binidx+" finished in "+t+" ms, chunk ["+
+							binstart+", "+binend+")");
+				}
+			}
+		}
 	}
 }
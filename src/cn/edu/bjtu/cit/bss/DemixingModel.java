@@ -2,7 +2,9 @@ package cn.edu.bjtu.cit.bss;
 import java.io.*;
 import org.apache.commons.math.complex.*;
 import pp.util.BLAS;
+import pp.util.ComplexBLAS;
 import cn.edu.bjtu.cit.bss.util.*;
+import cn.edu.bjtu.cit.bss.signalio.*;
 
 /**
  * <h1>Description</h1>
@@ -62,16 +64,30 @@ private int msensors;//number of sensors
 	}
 	
 	/**
-	 * load the demixing model from file
+	 * load the demixing model from file, in text format or binary format
 	 * @param path
 	 * file path
 	 * @throws IOException
 	 */
 	public DemixingModel(File path) throws IOException
+	{
+		this(path,false);
+	}
+	
+	/**
+	 * load the demixing model from file, in text format or binary format
+	 * @param path
+	 * file path
+	 * @param mapped
+	 * true to memory map binary files
+	 * @throws IOException
+	 */
+	public DemixingModel(File path,boolean mapped) throws IOException
 	{
 	Complex[][][] temp;
 	
-		temp=BSSModel.loadComplexMatrices(path);
+		if(BSSModel.isBinaryModel(path)) temp=BSSModel.loadBinaryComplexMatrices(path,mapped);
+		else temp=BSSModel.loadComplexMatrices(path);
 		
 		this.nsources=temp[0].length;
 		this.msensors=temp[0][0].length;	
@@ -126,6 +142,31 @@ private int msensors;//number of sensors
 		fddemixm[binidx]=demix;
 	}
 	
+	/**
+	 * copy demixing matrix of a frequency bin into split complex format
+	 * @param binidx
+	 * frequency bin index, the maximum size is fftsize/2+1
+	 * @param dest
+	 * destination in split complex format, null to allocate new space
+	 * @return
+	 */
+	public double[][][] getDemixingMatrix(int binidx,double[][][] dest)
+	{
+		return ComplexBLAS.split(fddemixm[binidx],dest);
+	}
+	
+	/**
+	 * set demixing matrix for a frequency bin from split complex format, data is copied
+	 * @param binidx
+	 * frequency bin index, the maximum size is fftsize/2+1
+	 * @param demix
+	 * corresponding demixing matrix in split complex format
+	 */
+	public void setDemixingMatrix(int binidx,double[][][] demix)
+	{
+		setDemixingMatrix(binidx,ComplexBLAS.build(demix,null));
+	}
+	
 	public String toString()
 	{
 	StringBuilder s;
@@ -174,6 +215,17 @@ private int msensors;//number of sensors
 		}
 	}
 	
+	/**
+	 * save the demixing model into file in binary format
+	 * @param path
+	 * destination file path
+	 * @throws IOException
+	 */
+	public void saveBinary(File path) throws IOException
+	{
+		BSSModel.saveBinaryComplexMatrices(path,fddemixm);
+	}
+	
 	/**
 	 * estimate the ideal mixing model corresponds to this demixing model
 	 * @return
@@ -232,6 +284,61 @@ private int msensors;//number of sensors
 		return fddemixf;
 	}
 	
+	/**
+	 * Get smoothed frequency domain demixing filters of the half spectrum in 
+	 * split format, the same as bins 0..fftsize/2 of fdFilters().
+	 * @return
+	 * [real or imaginary part][source index][sensor index][bin index]
+	 */
+	private double[][][][] halfFDFilters()
+	{
+	double[][][][] fddemixf;
+	double[][][] demix;
+	double[] f,temp;
+	int numbins;
+	
+		numbins=fddemixm.length;
+		fddemixf=new double[2][numSources()][numSensors()][numbins];
+		demix=ComplexBLAS.newMatrix(numSources(),numSensors());
+		for(int binidx=0;binidx<numbins;binidx++) 
+		{
+			getDemixingMatrix(binidx,demix);
+			for(int part=0;part<2;part++) 
+				for(int sourcei=0;sourcei<demix[part].length;sourcei++) 
+					for(int sensorj=0;sensorj<demix[part][sourcei].length;sensorj++) 
+						fddemixf[part][sourcei][sensorj][binidx]=demix[part][sourcei][sensorj];
+		}
+		
+		/*
+		 * spectral smoothing, real and imaginary parts are smoothed separately
+		 */
+		temp=new double[numbins];
+		for(int part=0;part<2;part++) 
+			for(int sourcei=0;sourcei<fddemixf[part].length;sourcei++) 
+				for(int sensorj=0;sensorj<fddemixf[part][sourcei].length;sensorj++) 
+				{
+					f=fddemixf[part][sourcei][sensorj];
+					System.arraycopy(f,0,temp,0,numbins);
+					for(int binidx=0;binidx<numbins;binidx++) 
+						f[binidx]=(temp[Math.max(binidx-1,0)]+temp[binidx]*2+
+								temp[Math.min(binidx+1,numbins-1)])*(1.0/4.0);
+				}
+		
+		return fddemixf;
+	}
+	
+	public void applyFDFilters(SignalSource[] in,SignalSink[] out,int parallelism) throws IOException
+	{
+	double[][][][] fddemixf;
+	FDFilterEngine engine;
+	
+		//build filters from the split demixing matrices, not expanded to the full band
+		fddemixf=halfFDFilters();
+		engine=new FDFilterEngine(fddemixf[0],fddemixf[1],fftSize());
+		engine.setParallelism(parallelism);
+		engine.apply(in,out);
+	}
+	
 	/**
 	 * perform spectral smoothing, see: Hiroshi Sawada et al. SPECTRAL SMOOTHING 
 	 * FOR FREQUENCY-DOMAIN BLIND SOURCE SEPARATION, International Workshop on Acoustic 
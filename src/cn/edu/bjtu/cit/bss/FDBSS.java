@@ -2,6 +2,7 @@ package cn.edu.bjtu.cit.bss;
 import java.io.*;
 import java.awt.image.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 import java.util.logging.*;
 import java.util.regex.*;
 import javax.sound.sampled.*;
@@ -29,12 +30,15 @@ public class FDBSS extends FDBSSAlgorithm
 {
 private static final long serialVersionUID=6156713960690500066L;
 private static final String LOGGER_NAME="cn.edu.bjtu.cit.bss";
+private static final long TRANSPOSE_BUFFER_SIZE=64L*1024*1024;//max bytes of the buffer used to generate the bin-major store
 
 /*
  * file prefix
  */
 private static final String STFT_PREFIX="stftx";//stft file prefix
 private static final String EST_STFT_PREFIX="stfty";//estimated stft file prefix
+private static final String BIN_MAJOR_STFT_FILE="binstftx.dat";//bin-major sensor stft file name
+private static final String FEATURE_STORE_FILE="features.dat";//memory mapped features for alignment
 private static final String EST_PREFIX="y";//estimated source signal file prefix
 
 /*
@@ -42,6 +46,10 @@ private static final String EST_PREFIX="y";//estimated source signal file prefix
  * Save intermediate data in text format is mainly for experimental purpose.
  */
 private boolean rawformat=true;
+private boolean mappedio=false;//true to read raw stft files by memory mapping
+private String featurestoremode="none";//where features for alignment are precomputed: none, memory, mapped
+private boolean binarymodel=true;//true to save demixing models in binary format, false in text format
+private AtomicLong binreads=new AtomicLong();//number of frequency bins loaded
 private int nsources=0;//designated number of sources, 0 to auto detect
 
 /*
@@ -49,6 +57,9 @@ private int nsources=0;//designated number of sources, 0 to auto detect
  */
 private int tfbuffersize=300;//number of frequency bins buffered
 private TFBuffer tfbuffer;
+//true to also store sensor stft data in bin-major order after STFT
+private boolean binmajor=false;
+private transient BinMajorSTFTStore binstore;//opened bin-major store
 
 /*
  * for instantaneous ICA
@@ -56,6 +67,10 @@ private TFBuffer tfbuffer;
 private String preprocessorname="cn.edu.bjtu.cit.bss.preprocess.Whitening";//preprocessor name for ICA
 private String icaname="cn.edu.bjtu.cit.bss.ica.CFastICA";//ICA algorithm name
 private ICAStep icastep;//ICA in frequency domain BSS
+private int icaparallelism=1;//number of threads used by instantaneous ICA, 1 for sequential
+private int icabatchsize=0;//number of frequency bins solved at once by instantaneous ICA, 0 for bin by bin
+private int icaminibatchsize=0;//number of frames in a mini-batch of Infomax ICA, 0 for full-batch
+private int icamemorybudget=0;//heap budget in megabytes for frequency bin data in IVA, 0 for unlimited
 
 private AlignPolicy apolicy;//used to solve the permutation and the scaling ambiguity
 private ScalingPolicy spolicy;//solve the scaling ambiguity
@@ -145,7 +160,54 @@ private File workingdir;//working directories for temp files
 		/**
 		 * Align policy used to solve the permutation and scaling ambiguities.
 		 */
-		align_policy
+		align_policy,
+		/**
+		 * Number of threads used to apply instantaneous ICA on frequency bins, 
+		 * to update frequency bins of a clique in FastIVA, or to precompute 
+		 * features for alignment, 1 for sequential.
+		 */
+		ica_parallelism,
+		/**
+		 * Number of frequency bins solved at once by the batched CFastICA kernel, 
+		 * 0 for bin by bin. Bins of a batch are seeded by the last bin of the 
+		 * previous batch.
+		 */
+		ica_batch_size,
+		/**
+		 * Number of frames in a mini-batch of InfomaxICA and ScaledInfomaxICA, 
+		 * 0 for full-batch. The mini-batch grows if the validation objective 
+		 * stalls, see MiniBatchNaturalGradient.
+		 */
+		ica_minibatch_size,
+		/**
+		 * Heap budget in megabytes for frequency bin data used by FastIVA, 0 for 
+		 * unlimited. If it is exceeded, preprocessed data are spilled to the 
+		 * working directory and only the active subband is kept in memory.
+		 */
+		ica_memory_budget,
+		/**
+		 * Layout of sensor STFT data used by frequency bin access: frame for 
+		 * frame-major files cached by the T-F buffer, bin for an additional 
+		 * bin-major file generated after STFT.
+		 */
+		stft_layout,
+		/**
+		 * True to read raw STFT files by memory mapping, false to read by streams.
+		 */
+		memory_mapped,
+		/**
+		 * Where features used in alignment are precomputed before alignment: none 
+		 * to calculate features from frequency bin data on each request, memory 
+		 * for heap buffers, mapped for a memory mapped file in the working directory. 
+		 * Features of all bins cost two doubles per source and frame, so they are 
+		 * only precomputed on request.
+		 */
+		feature_store,
+		/**
+		 * Format of demixing models saved in the working directory: binary for 
+		 * the compact binary format, text for the human readable text format.
+		 */
+		model_format
 	}
 	
 	/**
@@ -172,6 +234,22 @@ private File workingdir;//working directories for temp files
 				return icaname;
 			case align_policy:
 				return apolicy.getClass().getName();
+			case ica_parallelism:
+				return Integer.toString(icaparallelism);
+			case ica_batch_size:
+				return Integer.toString(icabatchsize);
+			case ica_minibatch_size:
+				return Integer.toString(icaminibatchsize);
+			case ica_memory_budget:
+				return Integer.toString(icamemorybudget);
+			case stft_layout:
+				return binmajor?"bin":"frame";
+			case memory_mapped:
+				return Boolean.toString(mappedio);
+			case feature_store:
+				return featurestoremode;
+			case model_format:
+				return binarymodel?"binary":"text";
 			default: throw new IllegalArgumentException("unknown parameter: "+key);
 		}
 	}
@@ -244,6 +322,9 @@ private File workingdir;//working directories for temp files
 						icastep.setFDBSSAlgorithm(this);
 						icastep.setPreprocessor(preprocessorname);
 						((CommonICAStep)icastep).setICA(value);
+						((CommonICAStep)icastep).setParallelism(icaparallelism);
+						((CommonICAStep)icastep).setBatchSize(icabatchsize);
+						setMiniBatch(((CommonICAStep)icastep).icaAlgorithm(),icaminibatchsize);
 					}
 					
 					//is an iva
@@ -252,6 +333,11 @@ private File workingdir;//working directories for temp files
 						icastep=(ICAStep)rawica;
 						icastep.setFDBSSAlgorithm(this);
 						icastep.setPreprocessor(preprocessorname);
+						if(icastep instanceof FastIVA) 
+						{
+							((FastIVA)icastep).setParallelism(icaparallelism);
+							((FastIVA)icastep).setMemoryBudget(icamemorybudget*1024L*1024L);
+						}
 					}
 					else throw new IllegalArgumentException("unknown ICA: "+value);
 					
@@ -293,9 +379,109 @@ private File workingdir;//working directories for temp files
 				}
 			}break;
 			
+			//number of threads for instantaneous ICA
+			case ica_parallelism:
+			{
+			int p;
+			
+				p=Integer.parseInt(value);
+				if(p<1) throw new IllegalArgumentException("parallelism must be positive: "+value);
+				icaparallelism=p;
+				if(icastep instanceof CommonICAStep) ((CommonICAStep)icastep).setParallelism(p);
+				else if(icastep instanceof FastIVA) ((FastIVA)icastep).setParallelism(p);
+			}break;
+			
+			//number of frequency bins solved at once by instantaneous ICA
+			case ica_batch_size:
+			{
+			int size;
+			
+				size=Integer.parseInt(value);
+				if(size<0) throw new IllegalArgumentException("batch size must not be negative: "+value);
+				icabatchsize=size;
+				if(icastep instanceof CommonICAStep) ((CommonICAStep)icastep).setBatchSize(size);
+			}break;
+			
+			//number of frames in a mini-batch of Infomax ICA
+			case ica_minibatch_size:
+			{
+			int size;
+			
+				size=Integer.parseInt(value);
+				if(size<0) throw new IllegalArgumentException("mini-batch size must not be negative: "+value);
+				icaminibatchsize=size;
+				if(icastep instanceof CommonICAStep) setMiniBatch(((CommonICAStep)icastep).icaAlgorithm(),size);
+			}break;
+			
+			//heap budget for frequency bin data in IVA
+			case ica_memory_budget:
+			{
+			int mb;
+			
+				mb=Integer.parseInt(value);
+				if(mb<0) throw new IllegalArgumentException("memory budget must not be negative: "+value);
+				icamemorybudget=mb;
+				if(icastep instanceof FastIVA) ((FastIVA)icastep).setMemoryBudget(mb*1024L*1024L);
+			}break;
+			
+			//layout of sensor stft data
+			case stft_layout:
+			{
+				if("bin".equals(value)) binmajor=true;
+				else if("frame".equals(value)) 
+				{
+					binmajor=false;
+					closeBinMajorSTFT();
+				}
+				else throw new IllegalArgumentException("unknown stft layout: "+value);
+			}break;
+			
+			//read raw stft files by memory mapping
+			case memory_mapped:
+				mappedio=Boolean.parseBoolean(value);
+				break;
+			
+			//precompute features for alignment
+			case feature_store:
+			{
+				if("none".equals(value)||"memory".equals(value)||"mapped".equals(value)) 
+					featurestoremode=value;
+				else throw new IllegalArgumentException("unknown feature store: "+value);
+			}break;
+			
+			//format of saved demixing models
+			case model_format:
+			{
+				if("binary".equals(value)) binarymodel=true;
+				else if("text".equals(value)) binarymodel=false;
+				else throw new IllegalArgumentException("unknown model format: "+value);
+			}break;
+			
 			default: throw new IllegalArgumentException("unknown parameter: "+key);
 		}
 	}
+	
+	/**
+	 * set the mini-batch mode of Infomax like ICA algorithms, other algorithms 
+	 * are not affected
+	 * @param ica
+	 * an ICA algorithm
+	 * @param size
+	 * number of frames in a mini-batch, 0 for full-batch
+	 */
+	private static void setMiniBatch(ICA ica,int size)
+	{
+	MiniBatchNaturalGradient minibatch=null;
+	
+		if(size>0)
+		{
+			minibatch=new MiniBatchNaturalGradient();
+			minibatch.setBatchSize(size);
+		}
+		
+		if(ica instanceof InfomaxICA) ((InfomaxICA)ica).setMiniBatch(minibatch);
+		else if(ica instanceof ScaledInfomaxICA) ((ScaledInfomaxICA)ica).setMiniBatch(minibatch);
+	}
 
 	/**
 	 * get working directory for temp files
@@ -317,6 +503,34 @@ private File workingdir;//working directories for temp files
 			if(f.isFile()) f.delete();
 	}
 	
+	/**
+	 * get file path used to map precomputed features for alignment
+	 * @return
+	 */
+	public File featureStoreFile()
+	{
+		return new File(workingdir,FEATURE_STORE_FILE);
+	}
+	
+	/**
+	 * get the number of frequency bins loaded by binData and splitBinData, 
+	 * can be used to measure the data access of each stage
+	 * @return
+	 */
+	public long numBinDataReads()
+	{
+		return binreads.get();
+	}
+	
+	/**
+	 * get file path used to store sensor stft data in bin-major order
+	 * @return
+	 */
+	public File binMajorSTFTFile()
+	{
+		return new File(workingdir,BIN_MAJOR_STFT_FILE);
+	}
+	
 	/**
 	 * get file path used to store stft for input signals
 	 * @param index
@@ -347,7 +561,7 @@ private File workingdir;//working directories for temp files
 	 */
 	public File demixFile()
 	{
-		return new File(workingdir,"demix.txt");
+		return modelFile("demix");
 	}
 	
 	/**
@@ -356,7 +570,7 @@ private File workingdir;//working directories for temp files
 	 */
 	public File alignedDemixFile()
 	{
-		return new File(workingdir,"demixp.txt");
+		return modelFile("demixp");
 	}
 	
 	/**
@@ -366,7 +580,56 @@ private File workingdir;//working directories for temp files
 	 */
 	public File alignedAndScaledDemixFile()
 	{
-		return new File(workingdir,"demixps.txt");
+		return modelFile("demixps");
+	}
+	
+	/**
+	 * get the demixing model file path according to the model format
+	 * @param name
+	 * file name without extension
+	 * @return
+	 */
+	private File modelFile(String name)
+	{
+		if(binarymodel) return new File(workingdir,name+".dat");
+		else return new File(workingdir,name+".txt");
+	}
+	
+	/**
+	 * get an existing demixing model file, models saved in the other format 
+	 * by previous runs are also accepted
+	 * @param path
+	 * model file path in current format
+	 * @return
+	 */
+	private File existingModelFile(File path)
+	{
+	String name;
+	File other;
+	
+		if(path.exists()) return path;
+		
+		name=path.getName();
+		name=name.substring(0,name.lastIndexOf('.'));
+		if(binarymodel) other=new File(workingdir,name+".txt");
+		else other=new File(workingdir,name+".dat");
+		
+		if(other.exists()) return other;
+		else return path;
+	}
+	
+	/**
+	 * save a demixing model according to the model format
+	 * @param model
+	 * demixing model
+	 * @param path
+	 * destination file path
+	 * @throws IOException
+	 */
+	private void saveDemixingModel(DemixingModel model,File path) throws IOException
+	{
+		if(binarymodel) model.saveBinary(path);
+		else model.save(path);
 	}
 	
 	/**
@@ -379,13 +642,18 @@ private File workingdir;//working directories for temp files
 	BufferedReader in=null;
 	int count=0;
 	boolean startcount=false;
+	File path;
 	
 		try
 		{
+			path=existingModelFile(demixFile());
+			//binary models have the number of sources in header
+			if(BSSModel.isBinaryModel(path)) return BSSModel.readBinaryHeader(path)[1];
+			
 			/*
 			 * count the row number of the real part of the demixing matrices
 			 */
-			in=new BufferedReader(new InputStreamReader(new FileInputStream(demixFile())));
+			in=new BufferedReader(new InputStreamReader(new FileInputStream(path)));
 			for(String ts=null;(ts=in.readLine())!=null;)
 			{
 				ts=ts.trim();
@@ -437,6 +705,41 @@ private File workingdir;//working directories for temp files
 		return count;
 	}
 	
+	/**
+	 * Open a raw stft file for input. STFT files are saved in half spectrum 
+	 * format, old files with full frames are also supported. Files are read 
+	 * by memory mapping if it is selected.
+	 * @param path
+	 * file path
+	 * @param fftsize
+	 * fft block size
+	 * @return
+	 * @throws IOException
+	 */
+	private SignalSource openRawSTFTSource(File path,int fftsize) throws IOException
+	{
+	SignalSource source;
+	
+		if(HalfSpectrumSignalSource.isHalfSpectrumFile(path)) 
+		{
+			if(mappedio) source=new HalfSpectrumSignalSource(path);
+			else source=new HalfSpectrumSignalSource(
+					new BufferedInputStream(new FileInputStream(path)));
+			if(source.numChannels()!=fftsize) 
+			{
+				source.close();
+				throw new IllegalStateException(
+						"channel size and fft size not match: "+source.numChannels()+", "+fftsize);
+			}
+		}
+		//full frames
+		else if(mappedio) source=new MappedSignalSource(path,fftsize);
+		else source=new RawSignalSource(
+				new BufferedInputStream(new FileInputStream(path)),fftsize);
+		
+		return source;
+	}
+	
 	/**
 	 * open stft file for input
 	 * @param chidx
@@ -449,9 +752,7 @@ private File workingdir;//working directories for temp files
 	SignalSource source;
 		
 		//number of channels is fft block size
-		if(rawformat) source=new RawSignalSource(
-				new BufferedInputStream(new FileInputStream(stftFile(chidx))),
-				this.fftSize());
+		if(rawformat) source=openRawSTFTSource(stftFile(chidx),this.fftSize());
 		else 
 		{
 			source=new ComplexTextSignalSource(new FileInputStream(stftFile(chidx)));
@@ -471,7 +772,7 @@ private File workingdir;//working directories for temp files
 	 */
 	private SignalSink openSTFTSink(int chidx) throws IOException
 	{
-		if(rawformat) return new RawSignalSink(
+		if(rawformat) return new HalfSpectrumSignalSink(
 				new BufferedOutputStream(new FileOutputStream(stftFile(chidx))),
 				this.fftSize());
 		else return new ComplexTextSignalSink(
@@ -480,7 +781,8 @@ private File workingdir;//working directories for temp files
 	}
 	
 	/**
-	 * open estimated stft file for input
+	 * open estimated stft file for input, estimated stft files are written 
+	 * by demixSTFT() first if they do not exist
 	 * @param chidx
 	 * output channel index
 	 * @return
@@ -490,9 +792,9 @@ private File workingdir;//working directories for temp files
 	{
 	SignalSource source;
 		
-		if(rawformat) source=new RawSignalSource(
-				new BufferedInputStream(new FileInputStream(estimatedSTFTFile(chidx))),
-				this.fftSize());
+		if(!estimatedSTFTFile(chidx).exists()) demixSTFT();
+		
+		if(rawformat) source=openRawSTFTSource(estimatedSTFTFile(chidx),this.fftSize());
 		else
 		{
 			source=new ComplexTextSignalSource(new FileInputStream(estimatedSTFTFile(chidx)));
@@ -512,7 +814,7 @@ private File workingdir;//working directories for temp files
 	 */
 	private SignalSink openEstimatedSTFTSink(int chidx) throws IOException
 	{
-		if(rawformat) return new RawSignalSink(
+		if(rawformat) return new HalfSpectrumSignalSink(
 				new BufferedOutputStream(new FileOutputStream(estimatedSTFTFile(chidx))),
 				this.fftSize());
 		else return new ComplexTextSignalSink(
@@ -550,8 +852,7 @@ private File workingdir;//working directories for temp files
 			/*
 			 * load data
 			 */
-			if(rawformat) source=new RawSignalSource(
-					new BufferedInputStream(new FileInputStream(path)),numchin);
+			if(rawformat) source=openRawSTFTSource(path,numchin);
 			else 
 			{	
 				source=new ComplexTextSignalSource(new FileInputStream(path));
@@ -585,13 +886,67 @@ private File workingdir;//working directories for temp files
 		return tfbuffer;
 	}
 	
+	/**
+	 * Generate the bin-major copy of sensor stft data from stft files, 
+	 * it is called after STFT if bin-major layout is selected.
+	 * @throws IOException
+	 */
+	public void prepareBinMajorSTFT() throws IOException
+	{
+		closeBinMajorSTFT();
+		BinMajorSTFTStore.transpose(this,binMajorSTFTFile(),TRANSPOSE_BUFFER_SIZE);
+	}
+	
+	/**
+	 * get the bin-major store
+	 * @return
+	 * null if bin-major layout is not selected or not generated
+	 * @throws IOException
+	 */
+	private BinMajorSTFTStore binMajorSTFT() throws IOException
+	{
+		if(!binmajor) return null;
+		if(binstore==null&&binMajorSTFTFile().exists()) 
+			binstore=new BinMajorSTFTStore(binMajorSTFTFile());
+		return binstore;
+	}
+	
+	/**
+	 * close the bin-major store if it is opened
+	 */
+	private void closeBinMajorSTFT()
+	{
+		if(binstore!=null) 
+		{
+			try
+			{
+				binstore.close();
+			}
+			catch(IOException e)
+			{}
+			binstore=null;
+		}
+	}
+	
+	public int binDataWindow()
+	{
+		//the bin-major store reads each bin directly
+		if(binmajor&&binMajorSTFTFile().exists()) return 1;
+		//the t-f buffer loads this many bins in one pass over the stft files
+		else return tfbuffersize;
+	}
+	
 	public Complex[][] binData(int binidx,Complex[][] buffer)
 	{
 	Complex[][] bindata;
+	BinMajorSTFTStore store;
 		
+		binreads.incrementAndGet();
 		try
 		{
-			bindata=tfBuffer().binData(binidx,buffer);
+			store=binMajorSTFT();
+			if(store!=null) bindata=store.binData(binidx,buffer);
+			else bindata=tfBuffer().binData(binidx,buffer);
 		}
 		catch(IOException e)
 		{
@@ -601,6 +956,27 @@ private File workingdir;//working directories for temp files
 		return bindata;
 	}
 	
+	public double[][][] splitBinData(int binidx,double[][][] buffer)
+	{
+	BinMajorSTFTStore store;
+	
+		try
+		{
+			store=binMajorSTFT();
+			if(store!=null) 
+			{
+				binreads.incrementAndGet();
+				return store.splitBinData(binidx,buffer);
+			}
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException("failed to load frequency bin: "+binidx,e);
+		}
+		//counted by binData
+		return super.splitBinData(binidx,buffer);
+	}
+	
 	/**
 	 * Perform stft on input signals, output data will be saved as: stft0.dat, 
 	 * stft1.dat... in working directory.
@@ -618,6 +994,7 @@ private File workingdir;//working directories for temp files
 	
 		try
 		{
+			closeBinMajorSTFT();
 			clearWorkingDirectory();//delete old temp files
 
 			/*
@@ -648,6 +1025,8 @@ private File workingdir;//working directories for temp files
 					catch(IOException e)
 					{}
 		}
+		
+		if(binmajor) prepareBinMajorSTFT();
 
 		return segs;
 	}
@@ -662,7 +1041,7 @@ private File workingdir;//working directories for temp files
 	{
 	File path;
 	
-		path=alignedAndScaledDemixFile();
+		path=existingModelFile(alignedAndScaledDemixFile());
 		if(!path.exists()) return null;
 		else return new DemixingModel(path);
 	}
@@ -677,14 +1056,26 @@ private File workingdir;//working directories for temp files
 	{
 	File path;
 		
-		path=demixFile();
+		path=existingModelFile(demixFile());
 		if(!path.exists()) return null;
 		else return new DemixingModel(path);		
 	}
 	
 	/**
-	 * separate mixed stft data by frequency domain demixing filters, and output 
-	 * estimated source's stft data files as eststftx.dat in working directory.
+	 * delete estimated stft files, they are out of date once the demixing 
+	 * model is changed
+	 */
+	private void deleteEstimatedSTFT()
+	{
+		for(File f:workingdir.listFiles()) 
+			if(f.getName().startsWith(EST_STFT_PREFIX)) f.delete();
+	}
+	
+	/**
+	 * Separate mixed stft data by frequency domain demixing filters, and output 
+	 * estimated source's stft data files as stftyx.dat in working directory. 
+	 * Only needed by consumers of estimated stft data, estimated signals are 
+	 * demixed from sensor stft data directly by demixSignals(SignalSink[]).
 	 * @throws IOException
 	 */
 	public void demixSTFT() throws IOException
@@ -701,9 +1092,7 @@ private File workingdir;//working directories for temp files
 			model=loadDemixingModel();
 			if(model==null) throw new IllegalStateException("demixing model are not calculated");
 
-			//delete old estimated stft files
-			for(File f:workingdir.listFiles()) 
-				if(f.getName().startsWith(EST_STFT_PREFIX)) f.delete();
+			deleteEstimatedSTFT();
 		
 			/*
 			 * open signal streams
@@ -721,7 +1110,7 @@ private File workingdir;//working directories for temp files
 			/*
 			 * demix in frequency domain
 			 */
-			model.applyFDFilters(stftx,stfty);
+			model.applyFDFilters(stftx,stfty,icaparallelism);
 			for(SignalSink y:stfty) y.flush();
 		}
 		finally
@@ -746,6 +1135,61 @@ private File workingdir;//working directories for temp files
 		}
 	}
 	
+	/**
+	 * Demix sensor stft data and perform istft in a single pass, estimated 
+	 * source's stft files are not used. Each sensor frame is read once, and 
+	 * only a frame for each channel is kept in memory, unless ica parallelism 
+	 * is enabled, then a batch of frames are buffered to be demixed in parallel.
+	 * @param y
+	 * output streams for estimated sources, each one for a single channel 
+	 * signal, they are flushed but not closed, null to skip a source
+	 * @throws IOException
+	 */
+	public void demixSignals(SignalSink[] y) throws IOException
+	{
+	DemixingModel model;
+	FDFilterEngine engine;
+	ShortTimeFourierTransformer stft;
+	SignalSource[] stftx=null;
+	ISTFTSink[] isink;
+	
+		model=loadDemixingModel();
+		if(model==null) throw new IllegalStateException("demixing model are not calculated");
+		if(y.length!=model.numSources()) throw new IllegalArgumentException(
+				"number of output streams not match: "+y.length+", "+model.numSources());
+		
+		engine=new FDFilterEngine(model);
+		engine.setParallelism(icaparallelism);
+		if(icaparallelism<=1) engine.setBatchSize(1);
+		
+		stft=this.stfTransformer();
+		isink=new ISTFTSink[y.length];
+		for(int sourcei=0;sourcei<isink.length;sourcei++) 
+			if(y[sourcei]!=null) isink[sourcei]=new ISTFTSink(stft,false,y[sourcei]);
+		
+		try
+		{
+			stftx=new SignalSource[this.numSensors()];
+			for(int sensorj=0;sensorj<stftx.length;sensorj++) 
+				stftx[sensorj]=openSTFTSource(sensorj);
+			
+			engine.apply(stftx,isink);
+			for(ISTFTSink temp:isink) 
+				if(temp!=null) temp.flush();
+		}
+		finally
+		{
+			if(stftx!=null) 
+				for(SignalSource temp:stftx) 
+					try
+					{
+						if(temp!=null) temp.close();
+					}
+					catch(IOException e)
+					{}
+		}
+	}
+	
 	public DemixingModel estimateDemixingModel(SignalSource x) throws IOException
 	{
 		// TODO Auto-generated method stub
@@ -770,6 +1214,7 @@ private File workingdir;//working directories for temp files
 	ArraySignalSource[] fds2;
 	SignalSink[] fdx;
 	
+		closeBinMajorSTFT();
 		clearWorkingDirectory();//clear temp results of last separation
 	
 		/*
@@ -807,6 +1252,8 @@ private File workingdir;//working directories for temp files
 			fdx[m].flush();
 			fdx[m].close();
 		}
+		
+		if(binmajor) prepareBinMajorSTFT();
 	}
 
 	/**
@@ -834,7 +1281,9 @@ private File workingdir;//working directories for temp files
 		 */
 		align,
 		/**
-		 * calculate estimated source's stft data by demixing filters
+		 * Write estimated source's stft files by demixing filters, only needed 
+		 * if estimated stft data are used, e.g. in evaluation. Estimated 
+		 * signals are demixed on demand in a single pass without these files.
 		 */
 		demix
 	}
@@ -857,6 +1306,9 @@ private File workingdir;//working directories for temp files
 		for(Operation op:ops) opset.add(op);
 		logger=Logger.getLogger(LOGGER_NAME);
 		
+		//estimated stft files of the last demixing model
+		if(opset.contains(Operation.ica)||opset.contains(Operation.align)) deleteEstimatedSTFT();
+		
 		/*
 		 * step 1:
 		 * perform stft transform
@@ -888,7 +1340,7 @@ private File workingdir;//working directories for temp files
 			model=icastep.applyICA();
 			
 			//save the demixing model
-			model.save(demixFile());
+			saveDemixingModel(model,demixFile());
 		}
 		
 		/*
@@ -897,23 +1349,51 @@ private File workingdir;//working directories for temp files
 		 */
 		if(opset.contains(Operation.align))
 		{	
-		DemixingModel model;		
+		DemixingModel model;
+		FeatureStore store=null;
+		long reads,t;
 		
 			logger.info("align demixing matrices with policy: "+apolicy.getClass().getName());
 			
-			model=new DemixingModel(demixFile());
+			model=new DemixingModel(existingModelFile(demixFile()));
+			reads=numBinDataReads();
+			
+			/*
+			 * precompute features used by align policies
+			 */
+			if(!"none".equals(featurestoremode)) 
+			{
+				t=System.currentTimeMillis();
+				store=new FeatureStore(
+						this,
+						model,
+						"mapped".equals(featurestoremode)?featureStoreFile():null,
+						icaparallelism);
+				t=System.currentTimeMillis()-t;
+				logger.info("features of "+store.numBins()+" frequency bins precomputed in "+t+" ms");
+			}
 			
 			/*
 			 * solve the permutation ambiguity and save result
 			 */
-			apolicy.align(model);
-			model.save(alignedDemixFile());
+			this.setFeatureStore(store);
+			try
+			{
+				apolicy.align(model);
+			}
+			finally
+			{
+				this.setFeatureStore(null);
+				if(store!=null) store.close();
+			}
+			saveDemixingModel(model,alignedDemixFile());
+			logger.info("alignment loaded "+(numBinDataReads()-reads)+" frequency bins");
 			
 			/*
 			 * solve the scaling ambiguity and save result
 			 */
 			spolicy.rescale(model);
-			model.save(alignedAndScaledDemixFile());
+			saveDemixingModel(model,alignedAndScaledDemixFile());
 		}
 		
 		/*
@@ -928,7 +1408,8 @@ private File workingdir;//working directories for temp files
 	}
 	
 	/**
-	 * perform convolutive blind source separation in frequency domain
+	 * Perform convolutive blind source separation in frequency domain, the 
+	 * demixing model is estimated, estimated signals are demixed on demand.
 	 * @param sigs
 	 * multichannel input signals
 	 * @throws IOException
@@ -938,8 +1419,7 @@ private File workingdir;//working directories for temp files
 		separate(sigs,
 				Operation.stft,
 				Operation.ica,
-				Operation.align,
-				Operation.demix);
+				Operation.align);
 	}
 	
 	/**
@@ -1047,55 +1527,114 @@ private File workingdir;//working directories for temp files
 	}
 	
 	/**
-	 * get estimated sources, mainly for experiment
+	 * get an estimated source, demixed from sensor stft data in a single pass 
+	 * as estimatedSourceSignals(), mainly for experiment
 	 * @param sourceidx
 	 * source index
 	 * @return
 	 */
 	public double[] estimatedSourceSignal(int sourceidx)
 	{
-	SignalSource ss=null;
-	Complex[][] stfty=null;
-	double[] y=null;
-			
+	SampleSink[] sinks;
+	
+		sinks=new SampleSink[numSources()];
+		sinks[sourceidx]=new SampleSink();
 		try
 		{
-			ss=openEstimatedSTFTSource(sourceidx);
-			stfty=ss.toArray(stfty);
-			y=this.stfTransformer().istft(stfty);
+			demixSignals(sinks);
 		}
 		catch(IOException e)
 		{
 			throw new RuntimeException("failed to load estimated source: "+sourceidx,e);
 		}
-		finally
-		{
-			try
-			{
-				if(ss!=null) ss.close();
-			}
-			catch(IOException e)
-			{}
-		}
-
-		return y;
+		return sinks[sourceidx].toArray();
 	}
 	
 	/**
-	 * get estimated sources for experiment
+	 * get estimated sources for experiment, demixed from sensor stft data in 
+	 * a single pass
 	 * @return
 	 * each row for a channel
 	 */
 	public double[][] estimatedSourceSignals()
 	{
+	SampleSink[] sinks;
 	double[][] esty;
 	
-		esty=new double[numSources()][];
-		for(int sourcei=0;sourcei<esty.length;sourcei++) 
-			esty[sourcei]=estimatedSourceSignal(sourcei);
+		sinks=new SampleSink[numSources()];
+		for(int sourcei=0;sourcei<sinks.length;sourcei++) sinks[sourcei]=new SampleSink();
+		
+		try
+		{
+			demixSignals(sinks);
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException("failed to load estimated sources",e);
+		}
+		
+		esty=new double[sinks.length][];
+		for(int sourcei=0;sourcei<esty.length;sourcei++) esty[sourcei]=sinks[sourcei].toArray();
 		return esty;
 	}
 	
+	/**
+	 * <h1>Description</h1>
+	 * Collect samples of a single channel real signal into a primitive array.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 27, 2026 10:21:46 AM, revision:
+	 */
+	private static class SampleSink extends SignalSink
+	{
+	private double[] data=new double[4096];//collected samples
+	private int size=0;//number of samples
+	
+		public int numChannels()
+		{
+			return 1;
+		}
+		
+		public void writeFrame(double[] frame) throws IOException
+		{
+			this.checkFrameSize(frame.length);
+			if(size>=data.length) data=Arrays.copyOf(data,data.length*2);
+			data[size++]=frame[0];
+		}
+		
+		public void writeFrame(Complex[] frame) throws IOException
+		{
+			this.checkFrameSize(frame.length);
+			if(size>=data.length) data=Arrays.copyOf(data,data.length*2);
+			data[size++]=frame[0].getReal();
+		}
+		
+		public void writeSamples(double[] buffer,int offset,int len) throws IOException
+		{
+			if(size+len>data.length) data=Arrays.copyOf(data,Math.max(data.length*2,size+len));
+			System.arraycopy(buffer,offset,data,size,len);
+			size+=len;
+		}
+		
+		public void flush() throws IOException
+		{}
+		
+		public void close() throws IOException
+		{}
+		
+		/**
+		 * get collected samples
+		 * @return
+		 */
+		public double[] toArray()
+		{
+			return Arrays.copyOf(data,size);
+		}
+	}
+	
 	/**
 	 * output estimated source signals into file, named as: y0.wav(txt), y1.wav(txt)...
 	 * @param destpath
@@ -1108,8 +1647,7 @@ private File workingdir;//working directories for temp files
 	{
 	Pattern p;
 	Matcher m;
-	SignalSource source;
-	SignalSink sink;
+	SignalSink[] sinks;
 	
 		/*
 		 * delete old estimated signal files
@@ -1123,19 +1661,35 @@ private File workingdir;//working directories for temp files
 			if(m.find()) f.delete();
 		}
 		
-		for(int sourcei=0;sourcei<this.numSources();sourcei++)
+		sinks=new SignalSink[this.numSources()];
+		try
 		{
-			source=openEstimatedSTFTSource(sourcei);
+			for(int sourcei=0;sourcei<sinks.length;sourcei++)
+			{
+				if(format==null) sinks[sourcei]=new TextSignalSink(new BufferedOutputStream(
+						new FileOutputStream(new File(destpath,EST_PREFIX+sourcei+".txt"))),1);
+				else sinks[sourcei]=new WaveSink(format,new File(destpath,EST_PREFIX+sourcei+".wav"));
+			}
 			
-			if(format==null) sink=new TextSignalSink(new BufferedOutputStream(
-					new FileOutputStream(new File(destpath,EST_PREFIX+sourcei+".txt"))),1);
-			else sink=new WaveSink(format,new File(destpath,EST_PREFIX+sourcei+".wav"));
+			//demix and output all sources in a single pass
+			demixSignals(sinks);
 			
-			stfTransformer().istft(source,sink,false);
-				
-			source.close();
-			sink.flush();
-			sink.close();
+			//wave headers are written when closed
+			for(int sourcei=0;sourcei<sinks.length;sourcei++) 
+			{
+				sinks[sourcei].close();
+				sinks[sourcei]=null;
+			}
+		}
+		finally
+		{
+			for(SignalSink temp:sinks) 
+				try
+				{
+					if(temp!=null) temp.close();
+				}
+				catch(IOException e)
+				{}
 		}
 	}
 	
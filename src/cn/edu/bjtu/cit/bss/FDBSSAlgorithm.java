@@ -1,6 +1,8 @@
 package cn.edu.bjtu.cit.bss;
 import java.io.*;
 import org.apache.commons.math.complex.*;
+import pp.util.ComplexBLAS;
+import cn.edu.bjtu.cit.bss.align.*;
 import cn.edu.bjtu.cit.bss.signalio.*;
 import cn.edu.bjtu.cit.bss.util.*;
 
@@ -19,6 +21,7 @@ public abstract class FDBSSAlgorithm implements Serializable
 private static final long serialVersionUID=5782785655914151281L;
 //used to perform stft and inverse stft, with initial parameters
 private ShortTimeFourierTransformer stft=new ShortTimeFourierTransformer(1024,1024*7/8,2048,null);
+private transient FeatureStore featurestore=null;//precomputed features used in alignment, null if not available
 	
 	/**
 	 * set parameters for STFT
@@ -93,6 +96,51 @@ private ShortTimeFourierTransformer stft=new ShortTimeFourierTransformer(1024,10
 	 */
 	public abstract Complex[][] binData(int binidx,Complex[][] buffer);
 	
+	/**
+	 * Get the number of consecutive frequency bins binData loads from storage 
+	 * at once. Threads sharing the algorithm should load this many bins in one 
+	 * locked section, rather than interleaving single bins from distant places.
+	 * @return
+	 */
+	public int binDataWindow()
+	{
+		return 1;
+	}
+	
+	/**
+	 * load data in a frequency bin in split complex format
+	 * @param binidx
+	 * frequency bin index
+	 * @param buffer
+	 * space used to store data in split complex format: [2][number of sensors]
+	 * [number of stft frames], null to allocate new space
+	 * @return
+	 */
+	public double[][][] splitBinData(int binidx,double[][][] buffer)
+	{
+		return ComplexBLAS.split(binData(binidx,null),buffer);
+	}
+	
+	/**
+	 * get precomputed features used in alignment
+	 * @return
+	 * null if not available
+	 */
+	public FeatureStore featureStore()
+	{
+		return featurestore;
+	}
+	
+	/**
+	 * set precomputed features used in alignment
+	 * @param store
+	 * a feature store, null to calculate features from frequency bin data
+	 */
+	public void setFeatureStore(FeatureStore store)
+	{
+		featurestore=store;
+	}
+	
 	/**
 	 * estimate demixing filters from observed signals
 	 * @param x
@@ -0,0 +1,452 @@
+package cn.edu.bjtu.cit.bss;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.apache.commons.math.complex.*;
+import pp.util.BLAS;
+import cn.edu.bjtu.cit.bss.util.*;
+import cn.edu.bjtu.cit.bss.signalio.*;
+
+/**
+ * <h1>Description</h1>
+ * Apply a bank of frequency domain filters to STFT streams. Filters and frames
+ * are kept in split primitive arrays of the half spectrum: bins 0..fftsize/2,
+ * the other half is the complex conjugate counterpart for real signals, and is
+ * rebuilt only if an output stream requires full frames. Frames are read in
+ * batches, the output channels and frames of a batch are processed in
+ * parallel, then written to the output streams in order.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 19, 2026 10:14:32 AM, revision:
+ */
+public class FDFilterEngine implements Serializable
+{
+private static final long serialVersionUID=-1796025874738513617L;
+private int fftsize;//fft block size
+private int numbins;//number of bins in half spectrum
+private double[][][] hreal,himag;//filters, [output][input][bin]
+private int batchsize=64;//number of frames processed in a batch
+private int parallelism=1;//number of threads, 1 for sequential
+
+	/**
+	 * @param fdf
+	 * frequency domain filters, [output channel][input channel][bin], only
+	 * bins 0..fftsize/2 are used
+	 */
+	public FDFilterEngine(Complex[][][] fdf)
+	{
+		fftsize=fdf[0][0].length;
+		numbins=fftsize/2+1;
+		hreal=new double[fdf.length][fdf[0].length][numbins];
+		himag=new double[fdf.length][fdf[0].length][numbins];
+
+		for(int outidx=0;outidx<fdf.length;outidx++)
+			for(int inidx=0;inidx<fdf[outidx].length;inidx++)
+			{
+				if(fdf[outidx][inidx].length!=fftsize) throw new IllegalArgumentException(
+						"filter length not match: "+fdf[outidx][inidx].length+", "+fftsize);
+				for(int binidx=0;binidx<numbins;binidx++)
+				{
+					hreal[outidx][inidx][binidx]=fdf[outidx][inidx][binidx].getReal();
+					himag[outidx][inidx][binidx]=fdf[outidx][inidx][binidx].getImaginary();
+				}
+			}
+	}
+
+	/**
+	 * @param hreal
+	 * real part of the filters in half spectrum, [output channel][input 
+	 * channel][bin], data is not copied
+	 * @param himag
+	 * imaginary part of the filters in half spectrum
+	 * @param fftsize
+	 * fft block size
+	 */
+	public FDFilterEngine(double[][][] hreal,double[][][] himag,int fftsize)
+	{
+		this.fftsize=fftsize;
+		numbins=fftsize/2+1;
+		this.hreal=hreal;
+		this.himag=himag;
+
+		for(int outidx=0;outidx<hreal.length;outidx++)
+			for(int inidx=0;inidx<hreal[outidx].length;inidx++)
+				if(hreal[outidx][inidx].length!=numbins||himag[outidx][inidx].length!=numbins) 
+					throw new IllegalArgumentException(
+							"filter length not match: "+hreal[outidx][inidx].length+", "+numbins);
+	}
+
+	/**
+	 * @param model
+	 * mixing or demixing model
+	 */
+	public FDFilterEngine(BSSModel model)
+	{
+		this(model.fdFilters());
+	}
+
+	/**
+	 * get fft block size
+	 * @return
+	 */
+	public int fftSize()
+	{
+		return fftsize;
+	}
+
+	/**
+	 * get the number of input channels
+	 * @return
+	 */
+	public int numInputChannels()
+	{
+		return hreal[0].length;
+	}
+
+	/**
+	 * get the number of output channels
+	 * @return
+	 */
+	public int numOutputChannels()
+	{
+		return hreal.length;
+	}
+
+	/**
+	 * get the number of frames processed in a batch
+	 * @return
+	 */
+	public int batchSize()
+	{
+		return batchsize;
+	}
+
+	/**
+	 * set the number of frames processed in a batch
+	 * @param batchsize
+	 * number of frames
+	 */
+	public void setBatchSize(int batchsize)
+	{
+		if(batchsize<1) throw new IllegalArgumentException(
+				"batch size must be positive: "+batchsize);
+		this.batchsize=batchsize;
+	}
+
+	/**
+	 * get the number of threads
+	 * @return
+	 */
+	public int parallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * set the number of threads
+	 * @param parallelism
+	 * number of threads, 1 for sequential
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if(parallelism<1) throw new IllegalArgumentException(
+				"parallelism must be positive: "+parallelism);
+		this.parallelism=parallelism;
+	}
+
+	/**
+	 * Apply filters to STFT streams of real signals, until one of the input
+	 * streams reaches its end. Output streams are not flushed or closed.
+	 * @param in
+	 * STFT streams for input channels
+	 * @param out
+	 * STFT streams for output channels, null to skip a channel
+	 * @throws IOException
+	 */
+	public void apply(SignalSource[] in,SignalSink[] out) throws IOException
+	{
+	double[][][] xreal,ximag;//input frames, [input][frame][bin]
+	double[][][] yreal,yimag;//output frames, [output][frame][bin]
+	Complex[] cframe=null;
+	int numframes;
+	List<FilterTask> tasks;
+	ForkJoinPool pool=null;
+
+		if(in.length!=numInputChannels()) throw new IllegalArgumentException(
+				"number of input channels not match: "+in.length+", "+numInputChannels());
+		if(out.length!=numOutputChannels()) throw new IllegalArgumentException(
+				"number of output channels not match: "+out.length+", "+numOutputChannels());
+
+		xreal=new double[in.length][batchsize][numbins];
+		ximag=new double[in.length][batchsize][numbins];
+		yreal=new double[out.length][batchsize][numbins];
+		yimag=new double[out.length][batchsize][numbins];
+
+		if(parallelism>1) pool=new ForkJoinPool(parallelism);
+		try
+		{
+			for(;;)
+			{
+				/*
+				 * read a batch of frames
+				 */
+				numframes=0;
+eof:			for(;numframes<batchsize;numframes++)
+					for(int inidx=0;inidx<in.length;inidx++)
+						try
+						{
+							if(in[inidx] instanceof HalfSpectrumSignalSource)
+								((HalfSpectrumSignalSource)in[inidx]).readHalfFrame(
+										xreal[inidx][numframes],ximag[inidx][numframes]);
+							else
+							{
+								if(cframe==null) cframe=new Complex[fftsize];
+								in[inidx].readFrame(cframe);
+								for(int binidx=0;binidx<numbins;binidx++)
+								{
+									xreal[inidx][numframes][binidx]=cframe[binidx].getReal();
+									ximag[inidx][numframes][binidx]=cframe[binidx].getImaginary();
+								}
+							}
+						}
+						catch(EOFException e)
+						{
+							break eof;
+						}
+				if(numframes==0) break;
+
+				/*
+				 * filter
+				 */
+				tasks=tasks(xreal,ximag,yreal,yimag,numframes,out);
+				if(pool==null) for(FilterTask task:tasks) task.invoke();
+				else
+				{
+					for(FilterTask task:tasks) pool.execute(task);
+					for(FilterTask task:tasks) task.join();
+				}
+
+				/*
+				 * write results
+				 */
+				for(int frameidx=0;frameidx<numframes;frameidx++)
+					for(int outidx=0;outidx<out.length;outidx++)
+						if(out[outidx]!=null) 
+							writeFrame(out[outidx],yreal[outidx][frameidx],yimag[outidx][frameidx]);
+
+				if(numframes<batchsize) break;
+			}
+		}
+		finally
+		{
+			if(pool!=null) pool.shutdown();
+		}
+	}
+
+	/**
+	 * divide a batch into tasks by output channels and frame blocks
+	 * @param xreal
+	 * real part of input frames
+	 * @param ximag
+	 * imaginary part of input frames
+	 * @param yreal
+	 * real part of output frames
+	 * @param yimag
+	 * imaginary part of output frames
+	 * @param numframes
+	 * number of frames in this batch
+	 * @param out
+	 * output streams, skipped channels are not calculated
+	 * @return
+	 */
+	private List<FilterTask> tasks(double[][][] xreal,double[][][] ximag,double[][][] yreal,double[][][] yimag,
+			int numframes,SignalSink[] out)
+	{
+	List<FilterTask> tasks;
+	int numblocks,blocksize;
+
+		//enough tasks to keep all threads busy
+		numblocks=Math.min(numframes,Math.max(1,(parallelism+hreal.length-1)/hreal.length));
+		blocksize=(int)Math.ceil((double)numframes/numblocks);
+
+		tasks=new ArrayList<FilterTask>(hreal.length*numblocks);
+		for(int outidx=0;outidx<hreal.length;outidx++)
+			for(int start=0;start<numframes&&out[outidx]!=null;start+=blocksize)
+				tasks.add(new FilterTask(xreal,ximag,yreal[outidx],yimag[outidx],
+						outidx,start,Math.min(start+blocksize,numframes)));
+		return tasks;
+	}
+
+	/**
+	 * write a frame to an output stream
+	 * @param out
+	 * output stream
+	 * @param real
+	 * real part of the half spectrum
+	 * @param imag
+	 * imaginary part of the half spectrum
+	 * @throws IOException
+	 */
+	private void writeFrame(SignalSink out,double[] real,double[] imag) throws IOException
+	{
+		if(out instanceof HalfSpectrumSignalSink)
+			((HalfSpectrumSignalSink)out).writeHalfFrame(real,imag);
+		//perform istft directly
+		else if(out instanceof ISTFTSink)
+			((ISTFTSink)out).writeHalfFrame(real,imag);
+		else out.writeFrame(RealFFT.fullFrame(real,imag,null));
+	}
+
+	/**
+	 * <h1>Description</h1>
+	 * Calculate an output channel for a block of frames: y=sum_j h_j.*x_j.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 19, 2026 10:52:07 AM, revision:
+	 */
+	private class FilterTask extends RecursiveAction
+	{
+	private static final long serialVersionUID=2204516296722719414L;
+	private double[][][] xreal,ximag;//input frames
+	private double[][] yreal,yimag;//output frames of this channel
+	private int outidx;//output channel index
+	private int start;//the first frame, inclusive
+	private int end;//the last frame, exclusive
+
+		/**
+		 * @param xreal
+		 * real part of input frames, [input][frame][bin]
+		 * @param ximag
+		 * imaginary part of input frames, [input][frame][bin]
+		 * @param yreal
+		 * real part of output frames, [frame][bin]
+		 * @param yimag
+		 * imaginary part of output frames, [frame][bin]
+		 * @param outidx
+		 * output channel index
+		 * @param start
+		 * the first frame, inclusive
+		 * @param end
+		 * the last frame, exclusive
+		 */
+		public FilterTask(double[][][] xreal,double[][][] ximag,double[][] yreal,double[][] yimag,
+				int outidx,int start,int end)
+		{
+			this.xreal=xreal;
+			this.ximag=ximag;
+			this.yreal=yreal;
+			this.yimag=yimag;
+			this.outidx=outidx;
+			this.start=start;
+			this.end=end;
+		}
+
+		protected void compute()
+		{
+		double[] hr,hi,xr,xi,yr,yi;
+
+			for(int frameidx=start;frameidx<end;frameidx++)
+			{
+				yr=yreal[frameidx];
+				yi=yimag[frameidx];
+				Arrays.fill(yr,0);
+				Arrays.fill(yi,0);
+
+				for(int inidx=0;inidx<xreal.length;inidx++)
+				{
+					hr=hreal[outidx][inidx];
+					hi=himag[outidx][inidx];
+					xr=xreal[inidx][frameidx];
+					xi=ximag[inidx][frameidx];
+
+					for(int binidx=0;binidx<yr.length;binidx++)
+					{
+						yr[binidx]+=hr[binidx]*xr[binidx]-hi[binidx]*xi[binidx];
+						yi[binidx]+=hr[binidx]*xi[binidx]+hi[binidx]*xr[binidx];
+					}
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+	int n=4,fftsize=1024,numframes=1000;
+	DemixingModel model;
+	Complex[][][] fdf;
+	Complex[][][] stft;//[sensor][bin][frame]
+	Complex[] frame,sum;
+	Complex[][] y1,y2;
+	SignalSource[] in;
+	SignalSink[] out;
+	FDFilterEngine engine;
+	long t1,t2;
+	double maxdiff=0;
+
+		model=new DemixingModel(n,n,fftsize);
+		for(int binidx=0;binidx<fftsize/2+1;binidx++)
+			model.setDemixingMatrix(binidx,BLAS.randComplexMatrix(n,n));
+		fdf=model.fdFilters();
+
+		/*
+		 * stft of random real signals
+		 */
+		stft=new Complex[n][fftsize][numframes];
+		for(int sensorj=0;sensorj<n;sensorj++)
+			for(int tau=0;tau<numframes;tau++)
+			{
+				frame=SpectralAnalyzer.fft(BLAS.randVector(fftsize));
+				for(int binidx=0;binidx<fftsize;binidx++) stft[sensorj][binidx][tau]=frame[binidx];
+			}
+
+		/*
+		 * the Complex based implementation
+		 */
+		t1=System.currentTimeMillis();
+		y1=new Complex[n*numframes][];
+		frame=new Complex[fftsize];
+		for(int tau=0;tau<numframes;tau++)
+			for(int outidx=0;outidx<n;outidx++)
+			{
+				sum=new Complex[fftsize];
+				Arrays.fill(sum,Complex.ZERO);
+				for(int inidx=0;inidx<n;inidx++)
+				{
+					for(int binidx=0;binidx<fftsize;binidx++) frame[binidx]=stft[inidx][binidx][tau];
+					BLAS.add(sum,BLAS.entryMultiply(fdf[outidx][inidx],frame,frame),sum);
+				}
+				y1[outidx*numframes+tau]=sum;
+			}
+		t1=System.currentTimeMillis()-t1;
+
+		/*
+		 * the primitive engine
+		 */
+		engine=new FDFilterEngine(fdf);
+		engine.setParallelism(Runtime.getRuntime().availableProcessors());
+		in=new SignalSource[n];
+		out=new SignalSink[n];
+		for(int j=0;j<n;j++) in[j]=new ArraySignalSource(stft[j]);
+		for(int i=0;i<n;i++) out[i]=new ArraySignalSink(fftsize);
+		t2=System.currentTimeMillis();
+		engine.apply(in,out);
+		t2=System.currentTimeMillis()-t2;
+
+		for(int i=0;i<n;i++)
+		{
+			y2=((ArraySignalSink)out[i]).toArray((Complex[][])null);
+			for(int binidx=0;binidx<fftsize;binidx++)
+				for(int tau=0;tau<numframes;tau++)
+					maxdiff=Math.max(maxdiff,y1[i*numframes+tau][binidx].subtract(y2[binidx][tau]).abs());
+		}
+
+		System.out.println(n+" x "+n+", fft size "+fftsize+", "+numframes+" frames");
+		System.out.println("complex: "+t1+" ms, primitive: "+t2+" ms, max difference: "+maxdiff);
+	}
+}
@@ -1,5 +1,6 @@
 package cn.edu.bjtu.cit.bss;
 import java.io.*;
+import java.nio.*;
 import java.util.*;
 import org.apache.commons.math.complex.*;
 import pp.util.BLAS;
@@ -39,6 +40,31 @@ private int fftsize;//fft block size
 		this.fftsize=fftsize;
 	}
 
+	/**
+	 * load the mixing model from file in binary format
+	 * @param path
+	 * file path
+	 * @throws IOException
+	 */
+	public MixingModel(File path) throws IOException
+	{
+	int[] header;
+	DoubleBuffer payload;
+	
+		header=new int[4];
+		payload=BSSModel.readBinaryModel(path,BSSModel.TD_FILTERS,false,header).asDoubleBuffer();
+		if(payload.remaining()!=(long)header[0]*header[1]*header[3]) 
+			throw new IOException("binary model size not match: "+path);
+		
+		tdmixf=new double[header[1]][header[0]][header[3]];
+		for(double[][] hj:tdmixf) 
+			for(double[] h:hj) payload.get(h);
+		
+		if(!SpectralAnalyzer.isPowerOf2(header[2])) throw new IOException(
+				"fft size must be powers of 2: "+header[2]);
+		fftsize=header[2];
+	}
+
 	public int numSources()
 	{
 		return tdmixf[0].length;
@@ -79,6 +105,40 @@ private int fftsize;//fft block size
 		return fdmixf;
 	}
 	
+	/**
+	 * save the mixing model into file in binary format
+	 * @param path
+	 * destination file path
+	 * @throws IOException
+	 */
+	public void save(File path) throws IOException
+	{
+	DataOutputStream out=null;
+	
+		try
+		{
+			out=BSSModel.openBinaryModel(path,BSSModel.TD_FILTERS,
+					numSources(),numSensors(),fftsize,tdmixf[0][0].length);
+			for(double[][] hj:tdmixf) 
+				for(double[] h:hj) 
+				{
+					if(h.length!=tdmixf[0][0].length) throw new IllegalStateException(
+							"filter length not match: "+h.length+", "+tdmixf[0][0].length);
+					for(double d:h) out.writeDouble(d);
+				}
+			out.flush();
+		}
+		finally
+		{
+			try
+			{
+				if(out!=null) out.close();
+			}
+			catch(IOException e)
+			{}
+		}
+	}
+	
 	/**
 	 * get the ideal demixing model corresponds to this mixing model
 	 * @return
@@ -114,7 +174,7 @@ private int fftsize;//fft block size
 	DemixingModel demixm;
 //	EvalModel evalm;
 	
-		room=new VirtualRoom(new File("data/VirtualRooms/2x2/SawadaRoom.txt"));
+		room=RIRCache.defaultCache().loadVirtualRoom(new File("data/VirtualRooms/2x2/SawadaRoom.txt"));
 		mixm=new MixingModel(room.tdFilters(),2048);
 		mixm.visualize();
 //		mixm.fdVisualize();
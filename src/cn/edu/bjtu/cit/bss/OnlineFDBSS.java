@@ -0,0 +1,778 @@
+package cn.edu.bjtu.cit.bss;
+import java.io.*;
+import java.util.*;
+import java.util.logging.*;
+import javax.sound.sampled.*;
+import org.apache.commons.math.complex.*;
+import pp.util.BLAS;
+import pp.util.ComplexBLAS;
+import cn.edu.bjtu.cit.bss.align.*;
+import cn.edu.bjtu.cit.bss.signalio.*;
+import cn.edu.bjtu.cit.bss.util.*;
+
+/**
+ * <h1>Description</h1>
+ * Block-online frequency domain BSS. Sensor signals are consumed frame by frame,
+ * only the latest STFT frames in a sliding window are kept. Demixing matrices of
+ * each frequency bin are updated by the natural gradient rule over the window
+ * periodically, with the polar nonlinearity y/|y|. The permutation ambiguity is
+ * solved by clustering the amplitude envelopes of frequency bins in the window,
+ * the scaling ambiguity is solved by projection back onto a reference sensor.
+ * Separated signals are output with a latency of one STFT frame, memory used is
+ * independent of the input length. The number of sources equals to the number
+ * of sensors.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 17, 2026 9:47:03 PM, revision:
+ */
+public class OnlineFDBSS extends FDBSSAlgorithm
+{
+private static final long serialVersionUID=-2371658427905563471L;
+private static final String LOGGER_NAME="cn.edu.bjtu.cit.bss";
+private static final double EPS=1e-12;//used to avoid dividing zero
+private int windowsize=128;//number of stft frames in the sliding window
+private int updateinterval=16;//number of stft frames between two updates
+private int numiterations=4;//natural gradient iterations for each update
+private double eta=0.1;//learning step size
+private int refsensor=0;//reference sensor for projection back
+/*
+ * states of the separation
+ */
+private int numsensors=0;//number of sensors
+private double[][][][] xwin;//stft frames in the window, [bin][real, imag][sensor][ring index]
+private int numframes=0;//number of valid frames in the window
+private int head=0;//ring index for the next frame
+private long frameidx=0;//number of stft frames processed
+private double[][][][] demix;//demixing matrices, [bin][real, imag][source][sensor]
+private double[][][] scale;//projection back factors, [bin][real, imag][source]
+private boolean[] initialized;//true if demixing matrix of a bin is initialized
+private double[][][] env;//normalized envelopes in the window, [bin][source][frame]
+private List<int[]> perms;//all source permutations
+/*
+ * workspace
+ */
+private transient double[][] xv,yv,phiy;//vectors
+private transient double[][][] eye,rm,dw,temp,inv,work;//matrices
+
+	/**
+	 * get the number of stft frames in the sliding window
+	 * @return
+	 */
+	public int getWindowSize()
+	{
+		return windowsize;
+	}
+
+	/**
+	 * set the number of stft frames in the sliding window
+	 * @param windowsize
+	 * number of frames
+	 */
+	public void setWindowSize(int windowsize)
+	{
+		if(windowsize<2) throw new IllegalArgumentException("window size too small: "+windowsize);
+		this.windowsize=windowsize;
+	}
+
+	/**
+	 * get the number of stft frames between two updates
+	 * @return
+	 */
+	public int getUpdateInterval()
+	{
+		return updateinterval;
+	}
+
+	/**
+	 * set the number of stft frames between two updates
+	 * @param updateinterval
+	 * number of frames
+	 */
+	public void setUpdateInterval(int updateinterval)
+	{
+		if(updateinterval<1) throw new IllegalArgumentException(
+				"update interval must be positive: "+updateinterval);
+		this.updateinterval=updateinterval;
+	}
+
+	/**
+	 * get the number of natural gradient iterations for each update
+	 * @return
+	 */
+	public int getNumIterations()
+	{
+		return numiterations;
+	}
+
+	/**
+	 * set the number of natural gradient iterations for each update
+	 * @param numiterations
+	 * number of iterations
+	 */
+	public void setNumIterations(int numiterations)
+	{
+		if(numiterations<1) throw new IllegalArgumentException(
+				"number of iterations must be positive: "+numiterations);
+		this.numiterations=numiterations;
+	}
+
+	/**
+	 * get the learning step size
+	 * @return
+	 */
+	public double getStepSize()
+	{
+		return eta;
+	}
+
+	/**
+	 * set the learning step size
+	 * @param eta
+	 * step size
+	 */
+	public void setStepSize(double eta)
+	{
+		if(eta<=0) throw new IllegalArgumentException("step size must be positive: "+eta);
+		this.eta=eta;
+	}
+
+	/**
+	 * get the reference sensor index used to solve the scaling ambiguity
+	 * @return
+	 */
+	public int getReferenceSensor()
+	{
+		return refsensor;
+	}
+
+	/**
+	 * set the reference sensor index used to solve the scaling ambiguity
+	 * @param refsensor
+	 * sensor index
+	 */
+	public void setReferenceSensor(int refsensor)
+	{
+		if(refsensor<0) throw new IllegalArgumentException("illegal sensor index: "+refsensor);
+		this.refsensor=refsensor;
+	}
+
+	public int numSources()
+	{
+		return numsensors;
+	}
+
+	public int numSensors()
+	{
+		return numsensors;
+	}
+
+	/**
+	 * get number of stft frames in the sliding window
+	 * @return
+	 */
+	public int numSTFTFrames()
+	{
+		return numframes;
+	}
+
+	/**
+	 * get data of a frequency bin in the sliding window, frames are in time order
+	 */
+	public Complex[][] binData(int binidx,Complex[][] buffer)
+	{
+	int idx;
+
+		if(xwin==null) throw new IllegalStateException("no data available");
+		if(buffer==null) buffer=new Complex[numsensors][numframes];
+		else BLAS.checkDestinationSize(buffer,numsensors,numframes);
+
+		for(int tau=0;tau<numframes;tau++)
+		{
+			idx=ringIndex(tau);
+			for(int m=0;m<numsensors;m++)
+				buffer[m][tau]=new Complex(xwin[binidx][0][m][idx],xwin[binidx][1][m][idx]);
+		}
+
+		return buffer;
+	}
+
+	/**
+	 * get the ring index of a frame in the window
+	 * @param tau
+	 * frame index in the window, 0 for the oldest frame
+	 * @return
+	 */
+	private int ringIndex(int tau)
+	{
+		return (head-numframes+tau+windowsize)%windowsize;
+	}
+
+	/**
+	 * reset states for a new separation
+	 * @param numsensors
+	 * number of sensors
+	 */
+	private void reset(int numsensors)
+	{
+	int numbins;
+
+		if(refsensor>=numsensors) throw new IllegalArgumentException(
+				"reference sensor index out of bounds: "+refsensor+", "+numsensors);
+		this.numsensors=numsensors;
+		numbins=fftSize()/2+1;
+
+		xwin=new double[numbins][2][numsensors][windowsize];
+		numframes=0;
+		head=0;
+		frameidx=0;
+
+		/*
+		 * demixing matrices are identities before the first update
+		 */
+		demix=new double[numbins][][][];
+		scale=new double[numbins][2][numsensors];
+		for(int binidx=0;binidx<numbins;binidx++)
+		{
+			demix[binidx]=ComplexBLAS.eye(ComplexBLAS.newMatrix(numsensors,numsensors));
+			Arrays.fill(scale[binidx][0],1);
+		}
+		initialized=new boolean[numbins];
+		env=new double[numbins][numsensors][windowsize];
+		perms=AlignPolicy.indexPermutation(numsensors);
+
+		xv=ComplexBLAS.newVector(numsensors);
+		yv=ComplexBLAS.newVector(numsensors);
+		phiy=ComplexBLAS.newVector(numsensors);
+		eye=ComplexBLAS.eye(ComplexBLAS.newMatrix(numsensors,numsensors));
+		rm=ComplexBLAS.newMatrix(numsensors,numsensors);
+		dw=ComplexBLAS.newMatrix(numsensors,numsensors);
+		temp=ComplexBLAS.newMatrix(numsensors,numsensors);
+		inv=ComplexBLAS.newMatrix(numsensors,numsensors);
+		work=ComplexBLAS.newMatrix(numsensors,numsensors);
+	}
+
+	/**
+	 * put a new stft frame into the sliding window, the oldest one is dropped
+	 * @param real
+	 * real part of the half spectrum, [sensor][bin]
+	 * @param imag
+	 * imaginary part of the half spectrum, [sensor][bin]
+	 */
+	private void pushFrame(double[][] real,double[][] imag)
+	{
+		for(int binidx=0;binidx<xwin.length;binidx++)
+			for(int m=0;m<numsensors;m++)
+			{
+				xwin[binidx][0][m][head]=real[m][binidx];
+				xwin[binidx][1][m][head]=imag[m][binidx];
+			}
+
+		head=(head+1)%windowsize;
+		if(numframes<windowsize) numframes++;
+		frameidx++;
+	}
+
+	/**
+	 * load a frame of a frequency bin from the window into the sensor vector
+	 * @param binidx
+	 * frequency bin index
+	 * @param idx
+	 * ring index
+	 */
+	private void loadFrame(int binidx,int idx)
+	{
+		for(int m=0;m<numsensors;m++)
+		{
+			xv[0][m]=xwin[binidx][0][m][idx];
+			xv[1][m]=xwin[binidx][1][m][idx];
+		}
+	}
+
+	/**
+	 * initialize the demixing matrix of a frequency bin by normalizing sensor powers
+	 * @param binidx
+	 * frequency bin index
+	 */
+	private void initDemixingMatrix(int binidx)
+	{
+	double p;
+	int idx;
+
+		ComplexBLAS.eye(demix[binidx]);
+		for(int m=0;m<numsensors;m++)
+		{
+			p=0;
+			for(int tau=0;tau<numframes;tau++)
+			{
+				idx=ringIndex(tau);
+				p+=xwin[binidx][0][m][idx]*xwin[binidx][0][m][idx]+
+						xwin[binidx][1][m][idx]*xwin[binidx][1][m][idx];
+			}
+			demix[binidx][0][m][m]=1.0/Math.sqrt(p/numframes+EPS);
+		}
+		initialized[binidx]=true;
+	}
+
+	/**
+	 * update the demixing matrix of a frequency bin by natural gradient:
+	 * W=W+eta*(I-E[phi(y)y^H])W
+	 * @param binidx
+	 * frequency bin index
+	 */
+	private void naturalGradient(int binidx)
+	{
+	double[][][] w;
+	double abs;
+
+		w=demix[binidx];
+
+		for(int it=0;it<numiterations;it++)
+		{
+			/*
+			 * E[phi(y)y^H]
+			 */
+			for(double[] row:rm[0]) Arrays.fill(row,0);
+			for(double[] row:rm[1]) Arrays.fill(row,0);
+			for(int tau=0;tau<numframes;tau++)
+			{
+				loadFrame(binidx,ringIndex(tau));
+				ComplexBLAS.multiply(w,xv,yv);
+
+				//polar nonlinearity
+				for(int i=0;i<numsensors;i++)
+				{
+					abs=Math.sqrt(yv[0][i]*yv[0][i]+yv[1][i]*yv[1][i])+EPS;
+					phiy[0][i]=yv[0][i]/abs;
+					phiy[1][i]=yv[1][i]/abs;
+				}
+
+				//accumulate the outer product
+				for(int i=0;i<numsensors;i++)
+					for(int j=0;j<numsensors;j++)
+					{
+						rm[0][i][j]+=phiy[0][i]*yv[0][j]+phiy[1][i]*yv[1][j];
+						rm[1][i][j]+=phiy[1][i]*yv[0][j]-phiy[0][i]*yv[1][j];
+					}
+			}
+			ComplexBLAS.scalarMultiply(1.0/numframes,rm,rm);
+
+			/*
+			 * the new demixing matrix
+			 */
+			ComplexBLAS.substract(eye,rm,temp);
+			ComplexBLAS.multiply(temp,w,dw);
+			ComplexBLAS.scalarMultiply(eta,dw,dw);
+			ComplexBLAS.add(w,dw,w);
+		}
+	}
+
+	/**
+	 * calculate normalized amplitude envelopes of the estimated sources in the window
+	 * @param binidx
+	 * frequency bin index
+	 */
+	private void envelope(int binidx)
+	{
+	double[] e;
+	double mean,norm;
+
+		for(int tau=0;tau<numframes;tau++)
+		{
+			loadFrame(binidx,ringIndex(tau));
+			ComplexBLAS.multiply(demix[binidx],xv,yv);
+			for(int i=0;i<numsensors;i++)
+				env[binidx][i][tau]=Math.sqrt(yv[0][i]*yv[0][i]+yv[1][i]*yv[1][i]);
+		}
+
+		//zero mean and unit norm
+		for(int i=0;i<numsensors;i++)
+		{
+			e=env[binidx][i];
+
+			mean=0;
+			for(int tau=0;tau<numframes;tau++) mean+=e[tau];
+			mean/=numframes;
+
+			norm=0;
+			for(int tau=0;tau<numframes;tau++)
+			{
+				e[tau]-=mean;
+				norm+=e[tau]*e[tau];
+			}
+			norm=Math.sqrt(norm)+EPS;
+			for(int tau=0;tau<numframes;tau++) e[tau]/=norm;
+		}
+	}
+
+	/**
+	 * Solve the permutation ambiguity by clustering envelopes: the centroid of
+	 * each source is the average envelope of all frequency bins, and each bin
+	 * selects the permutation best correlated with the centroids.
+	 */
+	private void alignPermutation()
+	{
+	double[][] centroid;
+	double corr,maxcorr;
+	int[] best;
+	double[][][] w;
+	double[][] er;
+
+		for(int binidx=0;binidx<env.length;binidx++) envelope(binidx);
+		centroid=new double[numsensors][numframes];
+		er=new double[numsensors][];
+
+		for(int pass=0;pass<2;pass++)
+		{
+			for(double[] c:centroid) Arrays.fill(c,0);
+			for(int binidx=0;binidx<env.length;binidx++)
+				for(int i=0;i<numsensors;i++)
+					for(int tau=0;tau<numframes;tau++) centroid[i][tau]+=env[binidx][i][tau];
+
+			for(int binidx=0;binidx<env.length;binidx++)
+			{
+				/*
+				 * find the best permutation
+				 */
+				best=null;
+				maxcorr=Double.NEGATIVE_INFINITY;
+				for(int[] p:perms)
+				{
+					corr=0;
+					for(int i=0;i<numsensors;i++)
+						for(int tau=0;tau<numframes;tau++)
+							corr+=env[binidx][p[i]][tau]*centroid[i][tau];
+					if(corr>maxcorr)
+					{
+						maxcorr=corr;
+						best=p;
+					}
+				}
+
+				/*
+				 * rearrange rows of the demixing matrix, row i comes from row best[i]
+				 */
+				w=demix[binidx];
+				for(int part=0;part<2;part++)
+				{
+					for(int i=0;i<numsensors;i++) er[i]=w[part][best[i]];
+					for(int i=0;i<numsensors;i++) w[part][i]=er[i];
+				}
+				for(int i=0;i<numsensors;i++) er[i]=env[binidx][best[i]];
+				for(int i=0;i<numsensors;i++) env[binidx][i]=er[i];
+			}
+		}
+	}
+
+	/**
+	 * calculate projection back factors of a frequency bin, the factor of source i
+	 * is the entry (reference sensor, i) of the inverse demixing matrix
+	 * @param binidx
+	 * frequency bin index
+	 */
+	private void projectionBack(int binidx)
+	{
+		if(ComplexBLAS.inv(demix[binidx],inv,work)==null)
+		{
+			//singular, keep the scale unchanged
+			Arrays.fill(scale[binidx][0],1);
+			Arrays.fill(scale[binidx][1],0);
+			return;
+		}
+
+		for(int i=0;i<numsensors;i++)
+		{
+			scale[binidx][0][i]=inv[0][refsensor][i];
+			scale[binidx][1][i]=inv[1][refsensor][i];
+		}
+	}
+
+	/**
+	 * update demixing matrices of all frequency bins by data in the window
+	 */
+	private void update()
+	{
+		for(int binidx=0;binidx<demix.length;binidx++)
+		{
+			if(!initialized[binidx]) initDemixingMatrix(binidx);
+			naturalGradient(binidx);
+		}
+		alignPermutation();
+		for(int binidx=0;binidx<demix.length;binidx++) projectionBack(binidx);
+	}
+
+	/**
+	 * demix the latest frame in the window
+	 * @param yreal
+	 * space for the real part of the estimated half spectrum, [source][bin]
+	 * @param yimag
+	 * space for the imaginary part of the estimated half spectrum, [source][bin]
+	 */
+	private void demixFrame(double[][] yreal,double[][] yimag)
+	{
+	int idx;
+	double sr,si;
+
+		idx=(head-1+windowsize)%windowsize;
+		for(int binidx=0;binidx<demix.length;binidx++)
+		{
+			loadFrame(binidx,idx);
+			ComplexBLAS.multiply(demix[binidx],xv,yv);
+			for(int i=0;i<numsensors;i++)
+			{
+				sr=scale[binidx][0][i];
+				si=scale[binidx][1][i];
+				yreal[i][binidx]=sr*yv[0][i]-si*yv[1][i];
+				yimag[i][binidx]=sr*yv[1][i]+si*yv[0][i];
+			}
+		}
+	}
+
+	/**
+	 * get current demixing model, projection back factors are applied
+	 * @return
+	 */
+	public DemixingModel demixingModel()
+	{
+	DemixingModel model;
+	double[][][] w;
+
+		if(demix==null) throw new IllegalStateException("no demixing model available");
+		model=new DemixingModel(numsensors,numsensors,fftSize());
+		w=ComplexBLAS.newMatrix(numsensors,numsensors);
+
+		for(int binidx=0;binidx<demix.length;binidx++)
+		{
+			for(int i=0;i<numsensors;i++)
+				for(int j=0;j<numsensors;j++)
+				{
+					w[0][i][j]=scale[binidx][0][i]*demix[binidx][0][i][j]-
+							scale[binidx][1][i]*demix[binidx][1][i][j];
+					w[1][i][j]=scale[binidx][0][i]*demix[binidx][1][i][j]+
+							scale[binidx][1][i]*demix[binidx][0][i][j];
+				}
+			model.setDemixingMatrix(binidx,w);
+		}
+
+		return model;
+	}
+
+	/**
+	 * process the input signals frame by frame
+	 * @param x
+	 * sensor signals
+	 * @param y
+	 * destination for estimated signals, null to only estimate the demixing model
+	 * @return
+	 * @throws IOException
+	 */
+	private DemixingModel process(SignalSource x,SignalSink y) throws IOException
+	{
+	Logger logger;
+	ShortTimeFourierTransformer stft;
+	ShortTimeFourierTransformer.MultichannelSTFTIterator it;
+	double[][] real,imag,yreal,yimag;
+	Complex[] frame;
+	SampleQueue[] queues=null;
+	ISTFTSink[] istft=null;
+	int numbins;
+
+		reset(x.numChannels());
+		if(y!=null&&y.numChannels()!=numSources()) throw new IllegalArgumentException(
+				"number of sources not match: "+y.numChannels()+", "+numSources());
+
+		logger=Logger.getLogger(LOGGER_NAME);
+		logger.info("online separation with "+
+				this.stftSize()+" STFT block size, "+
+				this.stftOverlap()+" STFT overlap, "+
+				this.fftSize()+" FFT block size, "+
+				windowsize+" frames window, update every "+updateinterval+" frames");
+
+		stft=this.stfTransformer();
+		numbins=fftSize()/2+1;
+		real=new double[numsensors][numbins];
+		imag=new double[numsensors][numbins];
+		yreal=new double[numsensors][numbins];
+		yimag=new double[numsensors][numbins];
+		frame=new Complex[fftSize()];
+
+		/*
+		 * istft for each source
+		 */
+		if(y!=null)
+		{
+			queues=new SampleQueue[numsensors];
+			istft=new ISTFTSink[numsensors];
+			for(int i=0;i<numsensors;i++)
+			{
+				queues[i]=new SampleQueue(fftSize());
+				istft[i]=new ISTFTSink(stft,false,queues[i]);
+			}
+		}
+
+		for(it=stft.multichannelSTFTIterator(x);it.hasNext();)
+		{
+			it.next(real,imag);
+			pushFrame(real,imag);
+			if(frameidx%updateinterval==0) update();
+
+			if(y!=null)
+			{
+				demixFrame(yreal,yimag);
+				for(int i=0;i<numsensors;i++)
+					istft[i].writeFrame(RealFFT.fullFrame(yreal[i],yimag[i],frame));
+				drain(queues,y);
+			}
+		}
+
+		/*
+		 * output the last overlapped part
+		 */
+		if(y!=null)
+		{
+			for(ISTFTSink sink:istft) sink.flush();
+			drain(queues,y);
+		}
+
+		logger.info(frameidx+" STFT frames processed");
+		return demixingModel();
+	}
+
+	/**
+	 * output buffered samples of all sources
+	 * @param queues
+	 * sample queue for each source
+	 * @param y
+	 * destination
+	 * @throws IOException
+	 */
+	private void drain(SampleQueue[] queues,SignalSink y) throws IOException
+	{
+	double[] frame;
+
+		frame=new double[queues.length];
+		for(int t=0;t<queues[0].size();t++)
+		{
+			for(int i=0;i<queues.length;i++) frame[i]=queues[i].get(t);
+			y.writeFrame(frame);
+		}
+		for(SampleQueue q:queues) q.clear();
+	}
+
+	public DemixingModel estimateDemixingModel(SignalSource x) throws IOException
+	{
+		return process(x,null);
+	}
+
+	public DemixingModel separate(SignalSource x,SignalSink y) throws IOException
+	{
+		return process(x,y);
+	}
+
+	/**
+	 * <h1>Description</h1>
+	 * Single channel sink used to collect istft output of a source between two frames.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 17, 2026 10:12:30 PM, revision:
+	 */
+	private static class SampleQueue extends SignalSink
+	{
+	private double[] samples;//buffered samples
+	private int size=0;//number of buffered samples
+
+		/**
+		 * @param capacity
+		 * initial capacity
+		 */
+		public SampleQueue(int capacity)
+		{
+			samples=new double[capacity];
+		}
+
+		public int numChannels()
+		{
+			return 1;
+		}
+
+		/**
+		 * get number of buffered samples
+		 * @return
+		 */
+		public int size()
+		{
+			return size;
+		}
+
+		/**
+		 * get a buffered sample
+		 * @param idx
+		 * sample index
+		 * @return
+		 */
+		public double get(int idx)
+		{
+			return samples[idx];
+		}
+
+		/**
+		 * remove all buffered samples
+		 */
+		public void clear()
+		{
+			size=0;
+		}
+
+		public void writeFrame(double[] frame) throws IOException
+		{
+			this.checkFrameSize(frame.length);
+			if(size>=samples.length) samples=Arrays.copyOf(samples,samples.length*2);
+			samples[size++]=frame[0];
+		}
+
+		public void writeFrame(Complex[] frame) throws IOException
+		{
+			this.checkFrameSize(frame.length);
+			if(size>=samples.length) samples=Arrays.copyOf(samples,samples.length*2);
+			samples[size++]=frame[0].getReal();
+		}
+
+		public void flush() throws IOException
+		{}
+
+		public void close() throws IOException
+		{}
+	}
+
+	public static void main(String[] args) throws IOException, UnsupportedAudioFileException
+	{
+	OnlineFDBSS foo;
+	WaveSource[] sigs;
+	SignalMixer mixer;
+	WaveSink sink;
+	long t;
+
+		foo=new OnlineFDBSS();
+		foo.setSTFTParameters(512,512*3/4,1024);
+
+		sigs=new WaveSource[2];
+		sigs[0]=new WaveSource(new File("data/rsm2_mA.wav"),true);
+		sigs[1]=new WaveSource(new File("data/rsm2_mB.wav"),true);
+		mixer=new SignalMixer(sigs);
+		sink=new WaveSink(sigs[0].audioFormat().getSampleRate(),16,sigs.length,
+				new File("/home/nay0648/online.wav"));
+
+		t=System.currentTimeMillis();
+		foo.separate(mixer,sink);
+		System.out.println("time spent: "+(System.currentTimeMillis()-t)+" ms");
+
+		mixer.close();
+		sink.flush();
+		sink.close();
+	}
+}
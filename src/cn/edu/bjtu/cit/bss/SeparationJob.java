@@ -0,0 +1,555 @@
+package cn.edu.bjtu.cit.bss;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.sound.sampled.*;
+import cn.edu.bjtu.cit.bss.FDBSS.Operation;
+import cn.edu.bjtu.cit.bss.signalio.*;
+
+/**
+ * <h1>Description</h1>
+ * A separation task submitted to SeparationScheduler. The input is a set of
+ * wave files, each one for a sensor, or a single multichannel wave file.
+ * Estimated sources are written to the destination directory as y0.wav, y1.wav...
+ * in the audio format of the first input. The job runs FDBSS in its own working
+ * directory assigned by the scheduler, selected operations are performed one by
+ * one, so the progress can be queried from other threads. The demix operation
+ * demixes sensor STFT data and outputs wave files in a single pass, estimated
+ * STFT files are not written.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 19, 2026 3:21:40 PM, revision:
+ */
+public class SeparationJob implements Serializable
+{
+private static final long serialVersionUID=-3372517026113808493L;
+private static final int COMPLEX_BYTES=40;//estimated heap size of a boxed complex number and its reference
+private String name;//job name
+private File[] inputs;//input wave files
+private File destpath;//output directory
+private Map<FDBSS.Parameter,String> params=new EnumMap<FDBSS.Parameter,String>(FDBSS.Parameter.class);
+private Operation[] ops=Operation.values();//selected operations
+private long diskestimate=0;//designated disk usage in bytes, 0 to estimate
+private long heapestimate=0;//designated heap usage in bytes, 0 to estimate
+private boolean keepworkingdir=false;//true to keep the working directory after finished
+
+/*
+ * runtime status, updated by the worker thread
+ */
+private volatile State state=State.created;
+private volatile Operation currentop=null;//operation in progress
+private volatile int numcompleted=0;//number of completed operations
+private volatile Throwable error=null;//the cause of failure
+private volatile long starttime=0,endtime=0;//in milliseconds
+private volatile boolean cancelled=false;
+private volatile File workingdir=null;//assigned by the scheduler
+private transient volatile Future<?> future=null;//the corresponding task in the thread pool
+private transient CountDownLatch done=new CountDownLatch(1);
+
+	/**
+	 * <h1>Description</h1>
+	 * Job states.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 19, 2026 3:26:02 PM, revision:
+	 */
+	public enum State
+	{
+		/**
+		 * not submitted
+		 */
+		created,
+		/**
+		 * waiting for a worker thread
+		 */
+		queued,
+		/**
+		 * waiting for disk and heap budget
+		 */
+		waiting,
+		/**
+		 * performing operations
+		 */
+		running,
+		/**
+		 * all operations are finished
+		 */
+		finished,
+		/**
+		 * terminated by exceptions
+		 */
+		failed,
+		/**
+		 * cancelled before finished
+		 */
+		cancelled
+	}
+
+	/**
+	 * @param name
+	 * job name, used to name the working directory
+	 * @param destpath
+	 * output directory for estimated sources
+	 * @param inputs
+	 * input wave files, each one for a sensor, or a single multichannel file
+	 */
+	public SeparationJob(String name,File destpath,File... inputs)
+	{
+		if(inputs.length==0) throw new IllegalArgumentException("no input files");
+		this.name=name;
+		this.destpath=destpath;
+		this.inputs=inputs;
+	}
+
+	/**
+	 * get job name
+	 * @return
+	 */
+	public String name()
+	{
+		return name;
+	}
+
+	/**
+	 * get output directory
+	 * @return
+	 */
+	public File destinationPath()
+	{
+		return destpath;
+	}
+
+	/**
+	 * set a FDBSS parameter used by this job
+	 * @param key
+	 * parameter name
+	 * @param value
+	 * corresponding value
+	 */
+	public void setParameter(FDBSS.Parameter key,String value)
+	{
+		checkNotSubmitted();
+		params.put(key,value);
+	}
+
+	/**
+	 * select operations performed by this job
+	 * @param ops
+	 * operations, performed in the order of FDBSS.Operation
+	 */
+	public void setOperations(Operation... ops)
+	{
+	Set<Operation> opset;
+
+		checkNotSubmitted();
+		opset=EnumSet.noneOf(Operation.class);
+		for(Operation op:ops) opset.add(op);
+		this.ops=opset.toArray(new Operation[opset.size()]);
+	}
+
+	/**
+	 * get selected operations
+	 * @return
+	 */
+	public Operation[] operations()
+	{
+		return ops.clone();
+	}
+
+	/**
+	 * designate the disk and heap usage instead of the estimation
+	 * @param disk
+	 * disk usage in bytes, 0 to estimate
+	 * @param heap
+	 * heap usage in bytes, 0 to estimate
+	 */
+	public void setBudget(long disk,long heap)
+	{
+		if(disk<0||heap<0) throw new IllegalArgumentException(
+				"budget must be nonnegative: "+disk+", "+heap);
+		checkNotSubmitted();
+		diskestimate=disk;
+		heapestimate=heap;
+	}
+
+	/**
+	 * set if the working directory is kept after the job is finished
+	 * @param keep
+	 * true to keep, false to delete
+	 */
+	public void setKeepWorkingDirectory(boolean keep)
+	{
+		keepworkingdir=keep;
+	}
+
+	/**
+	 * see if the working directory is kept after the job is finished
+	 * @return
+	 */
+	public boolean keepWorkingDirectory()
+	{
+		return keepworkingdir;
+	}
+
+	/**
+	 * get the working directory assigned by the scheduler
+	 * @return
+	 * null if not assigned
+	 */
+	public File workingDirectory()
+	{
+		return workingdir;
+	}
+
+	/**
+	 * get job state
+	 * @return
+	 */
+	public State state()
+	{
+		return state;
+	}
+
+	/**
+	 * get the operation in progress
+	 * @return
+	 * null if no operation is in progress
+	 */
+	public Operation currentOperation()
+	{
+		return currentop;
+	}
+
+	/**
+	 * get the number of completed operations
+	 * @return
+	 */
+	public int numCompletedOperations()
+	{
+		return numcompleted;
+	}
+
+	/**
+	 * get the progress
+	 * @return
+	 * completed operations / selected operations
+	 */
+	public double progress()
+	{
+		if(ops.length==0) return 1;
+		else return (double)numcompleted/ops.length;
+	}
+
+	/**
+	 * get the cause of failure
+	 * @return
+	 * null if not failed
+	 */
+	public Throwable error()
+	{
+		return error;
+	}
+
+	/**
+	 * get the running time
+	 * @return
+	 * in milliseconds
+	 */
+	public long elapsedTime()
+	{
+		if(starttime==0) return 0;
+		else if(endtime==0) return System.currentTimeMillis()-starttime;
+		else return endtime-starttime;
+	}
+
+	/**
+	 * see if the job is finished, failed, or cancelled
+	 * @return
+	 */
+	public boolean isDone()
+	{
+		return state==State.finished||state==State.failed||state==State.cancelled;
+	}
+
+	/**
+	 * Cancel the job. A queued job will not be started, a job waiting for the 
+	 * budget leaves the admission queue, a running job stops before its next 
+	 * operation. Only a queued job is terminated here, otherwise the final 
+	 * state is set by the worker thread.
+	 */
+	public synchronized void cancel()
+	{
+		cancelled=true;
+		//FutureTask.cancel(false) also returns true for a running task
+		if(state==State.queued&&future!=null&&future.cancel(false)) terminate(State.cancelled,null);
+	}
+
+	/**
+	 * wait until the job is done
+	 * @throws InterruptedException
+	 */
+	public void waitFor() throws InterruptedException
+	{
+		done.await();
+	}
+
+	public String toString()
+	{
+	StringBuilder s;
+
+		s=new StringBuilder(name);
+		s.append(": ").append(state);
+		if(currentop!=null) s.append(" (").append(currentop).append(")");
+		s.append(", ").append(numcompleted).append("/").append(ops.length).append(" operations");
+		if(error!=null) s.append(", ").append(error);
+		return s.toString();
+	}
+
+	/**
+	 * throw exception if the job is submitted
+	 */
+	private void checkNotSubmitted()
+	{
+		if(state!=State.created) throw new IllegalStateException("job already submitted: "+name);
+	}
+
+	/**
+	 * called by the scheduler before the job is passed to the thread pool
+	 * @param workingdir
+	 * assigned working directory
+	 */
+	void queued(File workingdir)
+	{
+		checkNotSubmitted();
+		this.workingdir=workingdir;
+		state=State.queued;
+	}
+
+	/**
+	 * called by the scheduler after the job is passed to the thread pool
+	 * @param future
+	 * the corresponding task
+	 */
+	synchronized void setFuture(Future<?> future)
+	{
+		this.future=future;
+		//cancelled before the task is available
+		if(cancelled) cancel();
+	}
+
+	/**
+	 * see if the job is cancelled
+	 * @return
+	 */
+	boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	/**
+	 * construct the algorithm with parameters of this job
+	 * @return
+	 */
+	FDBSS newFDBSS()
+	{
+	FDBSS fdbss;
+
+		fdbss=new FDBSS(workingdir);
+		for(Map.Entry<FDBSS.Parameter,String> entry:params.entrySet())
+			fdbss.setParameter(entry.getKey(),entry.getValue());
+		return fdbss;
+	}
+
+	/**
+	 * get the number of channels and samples of input files
+	 * @return
+	 * {number of channels, number of samples}
+	 * @throws IOException
+	 */
+	private long[] inputSize() throws IOException
+	{
+	AudioFileFormat format;
+	long numch=0,len=0;
+
+		for(File f:inputs)
+		{
+			try
+			{
+				format=AudioSystem.getAudioFileFormat(f);
+			}
+			catch(UnsupportedAudioFileException e)
+			{
+				throw new IOException("unsupported audio file: "+f,e);
+			}
+			numch+=format.getFormat().getChannels();
+			len=Math.max(len,format.getFrameLength());
+		}
+		return new long[] {numch,len};
+	}
+
+	/**
+	 * Estimate disk usage of the working directory, mainly the sensor STFT
+	 * files in raw half spectrum format, doubled if the bin-major layout is
+	 * also generated.
+	 * @param fdbss
+	 * the algorithm used by this job
+	 * @return
+	 * in bytes
+	 * @throws IOException
+	 */
+	long diskEstimate(FDBSS fdbss) throws IOException
+	{
+	long size;
+
+		if(diskestimate>0) return diskestimate;
+		//real and imaginary part in raw format
+		size=stftSize(fdbss,16);
+		if("bin".equals(fdbss.getParameter(FDBSS.Parameter.stft_layout))) size*=2;
+		return size;
+	}
+
+	/**
+	 * Estimate heap usage, all frequency bins loaded as boxed complex numbers, 
+	 * or the ICA memory budget if it is smaller, plus features precomputed in 
+	 * heap buffers for alignment.
+	 * @param fdbss
+	 * the algorithm used by this job
+	 * @return
+	 * in bytes
+	 * @throws IOException
+	 */
+	long heapEstimate(FDBSS fdbss) throws IOException
+	{
+	long size,budget;
+
+		if(heapestimate>0) return heapestimate;
+		size=stftSize(fdbss,COMPLEX_BYTES);
+		budget=Long.parseLong(fdbss.getParameter(FDBSS.Parameter.ica_memory_budget))*1024*1024;
+		if(budget>0) size=Math.min(size,budget);
+		
+		//power ratio and envelop of each source, at most as many as sensors
+		if("memory".equals(fdbss.getParameter(FDBSS.Parameter.feature_store))) 
+			size+=2*stftSize(fdbss,8);
+		return size;
+	}
+
+	/**
+	 * calculate the size of sensor STFT data in bytes
+	 * @param fdbss
+	 * the algorithm used by this job
+	 * @param entrysize
+	 * bytes of a STFT entry
+	 * @return
+	 * @throws IOException
+	 */
+	private long stftSize(FDBSS fdbss,int entrysize) throws IOException
+	{
+	long[] size;
+	long numframes;
+
+		size=inputSize();
+		numframes=size[1]/(fdbss.stftSize()-fdbss.stftOverlap())+1;
+		//bins 0..fftsize/2
+		return size[0]*numframes*(fdbss.fftSize()/2+1)*entrysize;
+	}
+
+	/**
+	 * perform selected operations, called by the worker thread
+	 * @param fdbss
+	 * the algorithm
+	 * @throws IOException
+	 * @throws UnsupportedAudioFileException
+	 */
+	void run(FDBSS fdbss) throws IOException, UnsupportedAudioFileException
+	{
+	WaveSource[] sigs;
+	AudioFormat format;
+
+		sigs=new WaveSource[inputs.length];
+		try
+		{
+			for(int i=0;i<sigs.length;i++) sigs[i]=new WaveSource(inputs[i],true);
+			format=sigs[0].audioFormat();
+
+			for(Operation op:ops)
+			{
+				if(cancelled) return;
+				currentop=op;
+
+				switch(op)
+				{
+					case stft:
+						fdbss.separate(new SignalMixer(sigs),Operation.stft);
+						break;
+					case demix:
+						if(!destpath.exists()) destpath.mkdirs();
+						fdbss.outputEstimatedSignals(destpath,format);
+						break;
+					default:
+						fdbss.separate(null,op);
+				}
+
+				numcompleted++;
+			}
+			currentop=null;
+		}
+		finally
+		{
+			for(WaveSource s:sigs)
+				try
+				{
+					if(s!=null) s.close();
+				}
+				catch(IOException e)
+				{}
+		}
+	}
+
+	/**
+	 * called by the worker thread when it picks up the job and starts to wait 
+	 * for the budget
+	 * @throws CancellationException
+	 * the job is cancelled
+	 */
+	synchronized void waiting()
+	{
+		if(cancelled) throw new CancellationException("job cancelled: "+name);
+		state=State.waiting;
+	}
+
+	/**
+	 * called by the worker thread when operations are started
+	 * @throws CancellationException
+	 * the job is cancelled
+	 */
+	synchronized void started()
+	{
+		if(cancelled) throw new CancellationException("job cancelled: "+name);
+		starttime=System.currentTimeMillis();
+		state=State.running;
+	}
+
+	/**
+	 * called when the job is terminated
+	 * @param state
+	 * the final state
+	 * @param error
+	 * the cause of failure, or null
+	 */
+	synchronized void terminate(State state,Throwable error)
+	{
+		if(isDone()) return;
+
+		if(starttime>0) endtime=System.currentTimeMillis();
+		this.error=error;
+		currentop=null;
+		this.state=state;
+		done.countDown();
+	}
+}
@@ -0,0 +1,375 @@
+package cn.edu.bjtu.cit.bss;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+/**
+ * <h1>Description</h1>
+ * Run separation jobs concurrently on a bounded thread pool. Each job gets its
+ * own working directory under the temp directory of the scheduler, which is
+ * deleted when the job is done. The total disk and heap usage of running jobs
+ * can be capped: a job estimates its usage before it starts, and waits until
+ * the budget is available. Jobs are admitted in submission order, a job larger
+ * than the budget runs alone.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 19, 2026 4:08:53 PM, revision:
+ */
+public class SeparationScheduler implements Serializable
+{
+private static final long serialVersionUID=5190402358865233498L;
+private static final Logger logger=Logger.getLogger("cn.edu.bjtu.cit.bss");
+private File tempdir;//root directory for working directories of jobs
+private transient ExecutorService pool;//worker threads
+private AtomicInteger jobid=new AtomicInteger();//used to name working directories
+private List<SeparationJob> jobs=new ArrayList<SeparationJob>();//submitted jobs
+
+/*
+ * budget
+ */
+private long diskbudget=0;//maximum disk usage in bytes, 0 for unlimited
+private long heapbudget=0;//maximum heap usage in bytes, 0 for unlimited
+private long diskinuse=0,heapinuse=0;//usage of running jobs
+private LinkedList<SeparationJob> admission=new LinkedList<SeparationJob>();//jobs not admitted, in submission order
+
+	/**
+	 * @param tempdir
+	 * root directory for working directories of jobs
+	 * @param numthreads
+	 * maximum number of jobs running concurrently
+	 */
+	public SeparationScheduler(File tempdir,int numthreads)
+	{
+		if(numthreads<1) throw new IllegalArgumentException(
+				"number of threads must be positive: "+numthreads);
+		if(!tempdir.exists()&&!tempdir.mkdirs()) throw new IllegalArgumentException(
+				"failed to create temp directory: "+tempdir);
+
+		this.tempdir=tempdir;
+		pool=Executors.newFixedThreadPool(numthreads);
+	}
+
+	/**
+	 * get the root directory for working directories of jobs
+	 * @return
+	 */
+	public File tempDirectory()
+	{
+		return tempdir;
+	}
+
+	/**
+	 * get the maximum disk usage of running jobs
+	 * @return
+	 * in bytes, 0 for unlimited
+	 */
+	public synchronized long diskBudget()
+	{
+		return diskbudget;
+	}
+
+	/**
+	 * set the maximum disk usage of running jobs
+	 * @param budget
+	 * in bytes, 0 for unlimited
+	 */
+	public synchronized void setDiskBudget(long budget)
+	{
+		if(budget<0) throw new IllegalArgumentException("budget must be nonnegative: "+budget);
+		diskbudget=budget;
+		notifyAll();
+	}
+
+	/**
+	 * get the maximum heap usage of running jobs
+	 * @return
+	 * in bytes, 0 for unlimited
+	 */
+	public synchronized long heapBudget()
+	{
+		return heapbudget;
+	}
+
+	/**
+	 * set the maximum heap usage of running jobs
+	 * @param budget
+	 * in bytes, 0 for unlimited
+	 */
+	public synchronized void setHeapBudget(long budget)
+	{
+		if(budget<0) throw new IllegalArgumentException("budget must be nonnegative: "+budget);
+		heapbudget=budget;
+		notifyAll();
+	}
+
+	/**
+	 * get the estimated disk usage of running jobs
+	 * @return
+	 * in bytes
+	 */
+	public synchronized long diskInUse()
+	{
+		return diskinuse;
+	}
+
+	/**
+	 * get the estimated heap usage of running jobs
+	 * @return
+	 * in bytes
+	 */
+	public synchronized long heapInUse()
+	{
+		return heapinuse;
+	}
+
+	/**
+	 * submit a job
+	 * @param job
+	 * a job not submitted before
+	 * @return
+	 * the job
+	 */
+	public SeparationJob submit(final SeparationJob job)
+	{
+	File workingdir;
+	Future<?> future;
+
+		workingdir=new File(tempdir,"job"+jobid.getAndIncrement()+"-"+
+				job.name().replaceAll("[^A-Za-z0-9_.-]","_"));
+		job.queued(workingdir);
+
+		synchronized(this)
+		{
+			jobs.add(job);
+			admission.add(job);
+		}
+		future=pool.submit(new Runnable()
+		{
+			public void run()
+			{
+				runJob(job);
+			}
+		});
+		job.setFuture(future);
+		return job;
+	}
+
+	/**
+	 * get all submitted jobs
+	 * @return
+	 */
+	public synchronized List<SeparationJob> jobs()
+	{
+		return new ArrayList<SeparationJob>(jobs);
+	}
+
+	/**
+	 * get the number of unfinished jobs
+	 * @return
+	 */
+	public synchronized int numPendingJobs()
+	{
+	int count=0;
+
+		for(SeparationJob job:jobs) if(!job.isDone()) count++;
+		return count;
+	}
+
+	/**
+	 * no more jobs are accepted, submitted jobs are still performed
+	 */
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+
+	/**
+	 * wait until all submitted jobs are done after shutdown
+	 * @param timeout
+	 * in milliseconds
+	 * @return
+	 * false if timeout
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(long timeout) throws InterruptedException
+	{
+		return pool.awaitTermination(timeout,TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * perform a job in a worker thread
+	 * @param job
+	 * the job
+	 */
+	private void runJob(SeparationJob job)
+	{
+	FDBSS fdbss;
+	long[] usage=null;
+
+		try
+		{
+			//throws if the job is cancelled before picked up
+			job.waiting();
+			if(!job.workingDirectory().exists()&&!job.workingDirectory().mkdirs())
+				throw new IOException("failed to create working directory: "+job.workingDirectory());
+			fdbss=job.newFDBSS();
+			usage=acquire(job,job.diskEstimate(fdbss),job.heapEstimate(fdbss));
+
+			job.started();
+			logger.info("job "+job.name()+" started, estimated disk: "+usage[0]+
+					" bytes, heap: "+usage[1]+" bytes");
+			job.run(fdbss);
+
+			if(job.isCancelled()&&job.numCompletedOperations()<job.operations().length)
+				job.terminate(SeparationJob.State.cancelled,null);
+			else job.terminate(SeparationJob.State.finished,null);
+			logger.info("job "+job.name()+" "+job.state()+" in "+job.elapsedTime()+" ms");
+		}
+		catch(CancellationException e)
+		{
+			job.terminate(SeparationJob.State.cancelled,null);
+		}
+		catch(InterruptedException e)
+		{
+			job.terminate(SeparationJob.State.cancelled,null);
+			Thread.currentThread().interrupt();
+		}
+		catch(Throwable e)
+		{
+			logger.log(Level.WARNING,"job "+job.name()+" failed",e);
+			job.terminate(SeparationJob.State.failed,e);
+		}
+		finally
+		{
+			if(usage!=null) release(usage);
+			else removeFromAdmission(job);
+			if(!job.keepWorkingDirectory()) delete(job.workingDirectory());
+		}
+	}
+
+	/**
+	 * wait until the budget is available for a job
+	 * @param job
+	 * the job
+	 * @param disk
+	 * estimated disk usage
+	 * @param heap
+	 * estimated heap usage
+	 * @return
+	 * {disk, heap} acquired
+	 * @throws InterruptedException
+	 * @throws CancellationException
+	 * the job is cancelled while waiting
+	 */
+	private synchronized long[] acquire(SeparationJob job,long disk,long heap) throws InterruptedException
+	{
+		try
+		{
+			for(;;)
+			{
+				if(job.isCancelled()) throw new CancellationException("job cancelled: "+job.name());
+				
+				//jobs cancelled before started
+				while(admission.getFirst()!=job&&admission.getFirst().isDone()) admission.removeFirst();
+				
+				//a job larger than the budget runs alone
+				if(diskbudget>0) disk=Math.min(disk,diskbudget);
+				if(heapbudget>0) heap=Math.min(heap,heapbudget);
+
+				//admitted in submission order
+				if(admission.getFirst()==job&&
+						(diskbudget==0||diskinuse+disk<=diskbudget)&&
+						(heapbudget==0||heapinuse+heap<=heapbudget)) break;
+				//jobs cancelled in queue are not notified
+				wait(1000);
+			}
+
+			diskinuse+=disk;
+			heapinuse+=heap;
+			return new long[] {disk,heap};
+		}
+		finally
+		{
+			admission.remove(job);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * remove a job not admitted from the admission queue
+	 * @param job
+	 * the job
+	 */
+	private synchronized void removeFromAdmission(SeparationJob job)
+	{
+		admission.remove(job);
+		notifyAll();
+	}
+
+	/**
+	 * return the budget used by a job
+	 * @param usage
+	 * {disk, heap} acquired
+	 */
+	private synchronized void release(long[] usage)
+	{
+		diskinuse-=usage[0];
+		heapinuse-=usage[1];
+		notifyAll();
+	}
+
+	/**
+	 * delete a directory recursively
+	 * @param path
+	 * file or directory
+	 */
+	private static void delete(File path)
+	{
+	File[] files;
+
+		if(path==null||!path.exists()) return;
+		files=path.listFiles();
+		if(files!=null) for(File f:files) delete(f);
+		if(!path.delete()) logger.warning("failed to delete: "+path);
+	}
+
+	public static void main(String[] args) throws InterruptedException
+	{
+	int numjobs=6;
+	SeparationScheduler scheduler;
+	SeparationJob job=null;
+
+		scheduler=new SeparationScheduler(new File("temp/jobs"),3);
+		//about 14 MB for each job, so at most two jobs are running
+		scheduler.setDiskBudget(30L*1024*1024);
+
+		for(int i=0;i<numjobs;i++)
+		{
+			job=new SeparationJob(
+					"rsm2-"+i,
+					new File("temp/jobs/out"+i),
+					new File("data/rsm2_mA.wav"),
+					new File("data/rsm2_mB.wav"));
+			job.setParameter(FDBSS.Parameter.stft_size,"512");
+			job.setParameter(FDBSS.Parameter.stft_overlap,"384");
+			job.setParameter(FDBSS.Parameter.fft_size,"1024");
+			scheduler.submit(job);
+		}
+		//the last job waits for the budget, it should leave without running
+		job.cancel();
+		scheduler.shutdown();
+
+		while(!scheduler.awaitTermination(1000))
+		{
+			for(SeparationJob j:scheduler.jobs()) System.out.println(j);
+			System.out.println("disk in use: "+scheduler.diskInUse()+" bytes");
+		}
+		for(SeparationJob j:scheduler.jobs())
+			System.out.println(j+", "+j.elapsedTime()+" ms");
+	}
+}
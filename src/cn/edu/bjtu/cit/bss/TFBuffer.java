@@ -181,7 +181,10 @@ eof:	for(;;)
 			{
 				try
 				{
-					stftin[m].readFrame(stftframe);
+					//the conjugate half is not needed
+					if(stftin[m] instanceof HalfSpectrumSignalSource) 
+						((HalfSpectrumSignalSource)stftin[m]).readHalfFrame(stftframe);
+					else stftin[m].readFrame(stftframe);
 				}
 				catch(EOFException e)
 				{
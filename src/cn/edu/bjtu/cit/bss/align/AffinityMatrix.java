@@ -365,6 +365,17 @@ private static final long serialVersionUID=2011971348657677262L;
 	{
 		return rowMajorIterator();
 	}
+
+	/**
+	 * create an empty affinity matrix of the same kind of implementation
+	 * @param size
+	 * matrix size
+	 * @return
+	 */
+	public AffinityMatrix newAffinityMatrix(int size)
+	{
+		return new DenseAffinityMatrix(size);
+	}
 	
 	/**
 	 * convert the affinity matrix to image for visualization
@@ -18,6 +18,7 @@ public abstract class AffinityMatrixBuilder implements Serializable
 {
 private static final long serialVersionUID=7304387386488236468L;
 private FDBSS fdbss;//bss algorithm reference
+private boolean compact=false;//true to build compressed sparse affinity matrices
 
 	/**
 	 * @param fdbss
@@ -37,6 +38,37 @@ private FDBSS fdbss;//bss algorithm reference
 		return fdbss;
 	}
 	
+	/**
+	 * see if affinity matrices are built in compressed sparse format
+	 * @return
+	 */
+	public boolean isCompact()
+	{
+		return compact;
+	}
+	
+	/**
+	 * set the format of affinity matrices
+	 * @param compact
+	 * true to build CSRAffinityMatrix, false to build DenseAffinityMatrix
+	 */
+	public void setCompact(boolean compact)
+	{
+		this.compact=compact;
+	}
+	
+	/**
+	 * create an empty affinity matrix according to the format setting
+	 * @param size
+	 * matrix size
+	 * @return
+	 */
+	protected AffinityMatrix newAffinityMatrix(int size)
+	{
+		if(compact) return new CSRAffinityMatrix(size);
+		else return new DenseAffinityMatrix(size);
+	}
+	
 	/**
 	 * construct affinity matrix for estimated data in a specified frequency subbands
 	 * @param demixm
@@ -59,7 +59,25 @@ private FDBSSAlgorithm fdbss;//the bss algorithm reference
 	{
 		return fdbss.fftSize();
 	}
-	
+
+	/**
+	 * create the default power ratio correlation affinity matrix builder,
+	 * correlations are calculated with the same number of threads as ICA
+	 * @param fdbss
+	 * bss algorithm reference
+	 * @param neighborhood
+	 * neighborhood threshold
+	 * @return
+	 */
+	protected AffinityMatrixBuilder newAffinityMatrixBuilder(FDBSS fdbss,int neighborhood)
+	{
+	CorrelationAffinityMatrixBuilder builder;
+
+		builder=new CorrelationAffinityMatrixBuilder(fdbss,neighborhood);
+		builder.setParallelism(Integer.parseInt(fdbss.getParameter(FDBSS.Parameter.ica_parallelism)));
+		return builder;
+	}
+
 	/**
 	 * generate the indices permutation of P(n,n)
 	 * @param n
@@ -0,0 +1,668 @@
+package cn.edu.bjtu.cit.bss.align;
+import java.io.*;
+import java.util.*;
+
+/**
+ * <h1>Description</h1>
+ * Sparse affinity matrix stored in primitive arrays with a build-then-freeze
+ * lifecycle. While building, entries set by setAffinity are appended to
+ * coordinate lists, a later assignment to the same entry overrides the former
+ * one. The matrix is frozen by freeze() or by the first read access, entries are
+ * then compacted into the compressed sparse row format, with a compressed sparse
+ * column index pointing to the same values. After freezing, values of existing
+ * entries can still be modified, but no entry can be added. Row and column
+ * traversal by Cursor does not allocate objects.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 18, 2026 9:12:45 AM, revision:
+ */
+public class CSRAffinityMatrix extends AffinityMatrix
+{
+private static final long serialVersionUID=-8305913373474025160L;
+private int size;//matrix size
+/*
+ * coordinate lists used in building
+ */
+private int[] coorow,coocol;
+private double[] cooval;
+private int numcoo=0;//number of entries in coordinate lists
+/*
+ * compressed sparse row format, available after frozen
+ */
+private int[] rowptr;//row i is in [rowptr[i], rowptr[i+1])
+private int[] colidx;//column index of each entry
+private double[] values;//entry values
+/*
+ * compressed sparse column index
+ */
+private int[] colptr;//column j is in [colptr[j], colptr[j+1])
+private int[] rowidx;//row index of each entry
+private int[] cscpos;//position of each entry in the value array
+
+	/**
+	 * <h1>Description</h1>
+	 * Allocation free cursor to traverse a row or a column. Move the cursor to a
+	 * row or a column, then call next() before visit each entry.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 18, 2026 9:30:02 AM, revision:
+	 */
+	public class Cursor implements Serializable
+	{
+	private static final long serialVersionUID=-1306432917707051217L;
+	private boolean byrow=true;//true for row traversal, false for column traversal
+	private int fixed=-1;//the row or column index
+	private int pos=-1,end=-1;//current position and end position
+
+		/**
+		 * move the cursor to the beginning of a row
+		 * @param idx1
+		 * row index
+		 * @return
+		 * the cursor itself
+		 */
+		public Cursor row(int idx1)
+		{
+			freeze();
+			checkBounds(idx1);
+			byrow=true;
+			fixed=idx1;
+			pos=rowptr[idx1]-1;
+			end=rowptr[idx1+1];
+			return this;
+		}
+
+		/**
+		 * move the cursor to the beginning of a column
+		 * @param idx2
+		 * column index
+		 * @return
+		 * the cursor itself
+		 */
+		public Cursor column(int idx2)
+		{
+			freeze();
+			checkBounds(idx2);
+			byrow=false;
+			fixed=idx2;
+			pos=colptr[idx2]-1;
+			end=colptr[idx2+1];
+			return this;
+		}
+
+		/**
+		 * move to the next entry
+		 * @return
+		 * false if no entry left
+		 */
+		public boolean next()
+		{
+			if(pos>=end) return false;
+			return ++pos<end;
+		}
+
+		/**
+		 * get row index of current entry
+		 * @return
+		 */
+		public int rowIndex()
+		{
+			return byrow?fixed:rowidx[pos];
+		}
+
+		/**
+		 * get column index of current entry
+		 * @return
+		 */
+		public int columnIndex()
+		{
+			return byrow?colidx[pos]:fixed;
+		}
+
+		/**
+		 * get value of current entry
+		 * @return
+		 */
+		public double value()
+		{
+			return values[byrow?pos:cscpos[pos]];
+		}
+
+		/**
+		 * set value of current entry
+		 * @param value
+		 * new value
+		 */
+		public void setValue(double value)
+		{
+			values[byrow?pos:cscpos[pos]]=value;
+		}
+	}
+
+	/**
+	 * <h1>Description</h1>
+	 * Entry refers to a position in the value array.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 18, 2026 9:41:17 AM, revision:
+	 */
+	private class CSREntry extends Entry
+	{
+	private static final long serialVersionUID=4412092566960817286L;
+	private int pos;//position in the value array
+
+		/**
+		 * @param idx1
+		 * row index
+		 * @param idx2
+		 * column index
+		 * @param pos
+		 * position in the value array
+		 */
+		public CSREntry(int idx1,int idx2,int pos)
+		{
+			super(idx1,idx2);
+			this.pos=pos;
+		}
+
+		public double value()
+		{
+			return values[pos];
+		}
+	}
+
+	/**
+	 * <h1>Description</h1>
+	 * Used to traverse a row.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 18, 2026 9:45:53 AM, revision:
+	 */
+	private class CSRRowIterator extends RowIterator
+	{
+	private int idx1;//row index
+	private int pos;//current position
+
+		/**
+		 * @param idx1
+		 * row index
+		 */
+		public CSRRowIterator(int idx1)
+		{
+			this.idx1=idx1;
+			pos=rowptr[idx1];
+		}
+
+		public boolean hasNext()
+		{
+			return pos<rowptr[idx1+1];
+		}
+
+		public Entry next()
+		{
+			if(!hasNext()) throw new NoSuchElementException();
+			pos++;
+			return new CSREntry(idx1,colidx[pos-1],pos-1);
+		}
+	}
+
+	/**
+	 * <h1>Description</h1>
+	 * Used to traverse a column.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 18, 2026 9:47:20 AM, revision:
+	 */
+	private class CSRColumnIterator extends ColumnIterator
+	{
+	private int idx2;//column index
+	private int pos;//current position
+
+		/**
+		 * @param idx2
+		 * column index
+		 */
+		public CSRColumnIterator(int idx2)
+		{
+			this.idx2=idx2;
+			pos=colptr[idx2];
+		}
+
+		public boolean hasNext()
+		{
+			return pos<colptr[idx2+1];
+		}
+
+		public Entry next()
+		{
+			if(!hasNext()) throw new NoSuchElementException();
+			pos++;
+			return new CSREntry(rowidx[pos-1],idx2,cscpos[pos-1]);
+		}
+	}
+
+	/**
+	 * @param size
+	 * matrix size
+	 */
+	public CSRAffinityMatrix(int size)
+	{
+		this(size,16);
+	}
+
+	/**
+	 * @param size
+	 * matrix size
+	 * @param capacity
+	 * expected number of assignments in building
+	 */
+	public CSRAffinityMatrix(int size,int capacity)
+	{
+		if(size<0) throw new IllegalArgumentException("illegal matrix size: "+size);
+		this.size=size;
+		capacity=Math.max(capacity,16);
+		coorow=new int[capacity];
+		coocol=new int[capacity];
+		cooval=new double[capacity];
+	}
+
+	/**
+	 * make a frozen copy of another affinity matrix
+	 * @param another
+	 * another affinity matrix
+	 */
+	public CSRAffinityMatrix(AffinityMatrix another)
+	{
+	this(another.size(),another.numNonzeroEntries());
+
+		if(another instanceof CSRAffinityMatrix)
+		{
+		CSRAffinityMatrix csr;
+		Cursor c;
+
+			csr=(CSRAffinityMatrix)another;
+			c=csr.new Cursor();
+			for(int i=0;i<size;i++)
+				for(c.row(i);c.next();) setAffinity(i,c.columnIndex(),c.value());
+		}
+		else for(Entry e:another) setAffinity(e.rowIndex(),e.columnIndex(),e.value());
+		freeze();
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * check affinity matrix index bounds
+	 * @param idx
+	 * affinity matrix index
+	 */
+	private void checkBounds(int idx)
+	{
+		if(idx<0||idx>=size) throw new IndexOutOfBoundsException(idx+", "+size);
+	}
+
+	/**
+	 * see if the matrix is frozen
+	 * @return
+	 */
+	public boolean isFrozen()
+	{
+		return rowptr!=null;
+	}
+
+	/**
+	 * Compact the coordinate lists into compressed sparse row and column format.
+	 * Duplicated entries are merged, the last assignment is used, zero entries are
+	 * dropped. Nothing happens if the matrix is already frozen.
+	 */
+	public void freeze()
+	{
+	int[] count,order;
+	long[] keys;
+	int nnz=0,start,len,idx,col;
+
+		if(isFrozen()) return;
+
+		/*
+		 * counting sort by row, the assignment order is kept
+		 */
+		count=new int[size+1];
+		for(int p=0;p<numcoo;p++) count[coorow[p]+1]++;
+		for(int i=0;i<size;i++) count[i+1]+=count[i];
+		order=new int[numcoo];
+		{
+		int[] next;
+
+			next=Arrays.copyOf(count,size);
+			for(int p=0;p<numcoo;p++) order[next[coorow[p]]++]=p;
+		}
+
+		/*
+		 * sort each row by column, the last assignment of an entry is kept
+		 */
+		rowptr=new int[size+1];
+		colidx=new int[numcoo];
+		values=new double[numcoo];
+		keys=new long[16];
+		for(int i=0;i<size;i++)
+		{
+			rowptr[i]=nnz;
+			start=count[i];
+			len=count[i+1]-start;
+			if(keys.length<len) keys=new long[Math.max(len,keys.length*2)];
+			for(int p=0;p<len;p++) keys[p]=((long)coocol[order[start+p]]<<32)|order[start+p];
+			Arrays.sort(keys,0,len);
+
+			for(int p=0;p<len;p++)
+			{
+				col=(int)(keys[p]>>>32);
+				//an entry assigned later overrides the former one
+				if(p+1<len&&(int)(keys[p+1]>>>32)==col) continue;
+				idx=(int)keys[p];
+				if(cooval[idx]==0) continue;
+				colidx[nnz]=col;
+				values[nnz]=cooval[idx];
+				nnz++;
+			}
+		}
+		rowptr[size]=nnz;
+		colidx=Arrays.copyOf(colidx,nnz);
+		values=Arrays.copyOf(values,nnz);
+
+		//release the coordinate lists
+		coorow=null;
+		coocol=null;
+		cooval=null;
+		numcoo=0;
+
+		/*
+		 * build the column index
+		 */
+		colptr=new int[size+1];
+		for(int p=0;p<nnz;p++) colptr[colidx[p]+1]++;
+		for(int j=0;j<size;j++) colptr[j+1]+=colptr[j];
+		rowidx=new int[nnz];
+		cscpos=new int[nnz];
+		{
+		int[] next;
+
+			next=Arrays.copyOf(colptr,size);
+			for(int i=0;i<size;i++)
+				for(int p=rowptr[i];p<rowptr[i+1];p++)
+				{
+					idx=next[colidx[p]]++;
+					rowidx[idx]=i;
+					cscpos[idx]=p;
+				}
+		}
+	}
+
+	/**
+	 * get the number of stored entries, entries set to zero after frozen
+	 * are still counted
+	 */
+	public int numNonzeroEntries()
+	{
+		freeze();
+		return values.length;
+	}
+
+	/**
+	 * find an entry in the value array
+	 * @param idx1
+	 * row index
+	 * @param idx2
+	 * column index
+	 * @return
+	 * position in the value array, or negative if not exists
+	 */
+	private int find(int idx1,int idx2)
+	{
+		checkBounds(idx1);
+		checkBounds(idx2);
+		freeze();
+		return Arrays.binarySearch(colidx,rowptr[idx1],rowptr[idx1+1],idx2);
+	}
+
+	public double getAffinity(int idx1,int idx2)
+	{
+	int pos;
+
+		pos=find(idx1,idx2);
+		if(pos<0) return 0;else return values[pos];
+	}
+
+	/**
+	 * Set affinity for a specified entry. Before frozen, the assignment is
+	 * recorded. After frozen, only existing entries can be modified.
+	 */
+	public void setAffinity(int idx1,int idx2,double value)
+	{
+	int pos;
+
+		if(!isFrozen())
+		{
+			checkBounds(idx1);
+			checkBounds(idx2);
+			if(numcoo>=coorow.length)
+			{
+				coorow=Arrays.copyOf(coorow,coorow.length*2);
+				coocol=Arrays.copyOf(coocol,coocol.length*2);
+				cooval=Arrays.copyOf(cooval,cooval.length*2);
+			}
+			coorow[numcoo]=idx1;
+			coocol[numcoo]=idx2;
+			cooval[numcoo]=value;
+			numcoo++;
+		}
+		else
+		{
+			pos=find(idx1,idx2);
+			if(pos>=0) values[pos]=value;
+			else if(value!=0) throw new IllegalStateException(
+					"can not add entry to a frozen matrix: ("+idx1+", "+idx2+")");
+		}
+	}
+
+	public RowIterator rowIterator(int idx1)
+	{
+		freeze();
+		checkBounds(idx1);
+		return new CSRRowIterator(idx1);
+	}
+
+	public ColumnIterator columnIterator(int idx2)
+	{
+		freeze();
+		checkBounds(idx2);
+		return new CSRColumnIterator(idx2);
+	}
+
+	/**
+	 * get a cursor to traverse rows or columns without allocation
+	 * @return
+	 */
+	public Cursor cursor()
+	{
+		return new Cursor();
+	}
+
+	/**
+	 * get the degree of each node, i.e. the row sum
+	 * @param d
+	 * space for the result, null to allocate new space
+	 * @return
+	 */
+	public double[] rowSum(double[] d)
+	{
+		freeze();
+		if(d==null) d=new double[size];
+		else if(d.length!=size) throw new IllegalArgumentException(
+				"vector size not match: "+d.length+", required: "+size);
+
+		for(int i=0;i<size;i++)
+		{
+			d[i]=0;
+			for(int p=rowptr[i];p<rowptr[i+1];p++) d[i]+=values[p];
+		}
+		return d;
+	}
+
+	/**
+	 * calculate y=A*x
+	 * @param x
+	 * a vector
+	 * @param y
+	 * space for the result, null to allocate new space
+	 * @return
+	 */
+	public double[] multiply(double[] x,double[] y)
+	{
+	double temp;
+
+		freeze();
+		if(x.length!=size) throw new IllegalArgumentException(
+				"vector size not match: "+x.length+", required: "+size);
+		if(y==null) y=new double[size];
+		else if(y.length!=size) throw new IllegalArgumentException(
+				"vector size not match: "+y.length+", required: "+size);
+
+		for(int i=0;i<size;i++)
+		{
+			temp=0;
+			for(int p=rowptr[i];p<rowptr[i+1];p++) temp+=values[p]*x[colidx[p]];
+			y[i]=temp;
+		}
+		return y;
+	}
+
+	public AffinityMatrix newAffinityMatrix(int size)
+	{
+		return new CSRAffinityMatrix(size);
+	}
+
+	/**
+	 * estimate used heap memory
+	 * @return
+	 * used memory in bytes
+	 */
+	private static long usedMemory()
+	{
+	Runtime rt;
+
+		rt=Runtime.getRuntime();
+		for(int i=0;i<3;i++) System.gc();
+		return rt.totalMemory()-rt.freeMemory();
+	}
+
+	public static void main(String[] args)
+	{
+	int numsources=2,neighborhood=20,rounds=20;
+	int[] lens={128,512,2049};
+	Random rand;
+	List<int[]> coo;//entries generated as the neighborhood affinity builders
+	AffinityMatrix sparse,csr;
+	long mem0,mem1,mem2,t1,t2;
+	double[] sum;
+	int numvisits;
+
+		System.out.println(
+				"bins, nonzeros, treemap bytes, csr bytes, treemap build ms, csr build ms, "+
+				"treemap iteration entries/s, csr iteration entries/s, csr cursor entries/s");
+
+		for(int len:lens)
+		{
+			rand=new Random(0);
+			coo=new ArrayList<int[]>();
+			for(int bin1=0;bin1<len;bin1++)
+				for(int bin2=bin1+1;bin2<Math.min(len,bin1+neighborhood+1);bin2++)
+					for(int i=0;i<numsources;i++)
+						for(int j=0;j<numsources;j++) coo.add(new int[]{i*len+bin1,j*len+bin2});
+
+			/*
+			 * build both with the same entries
+			 */
+			sparse=null;
+			csr=null;
+			mem0=usedMemory();
+			t1=System.nanoTime();
+			sparse=new SparseAffinityMatrix(numsources*len);
+			for(int[] e:coo)
+			{
+				sparse.setAffinity(e[0],e[1],(e[0]*31+e[1])%97+1);
+				sparse.setAffinity(e[1],e[0],(e[0]*31+e[1])%97+1);
+			}
+			t1=System.nanoTime()-t1;
+			mem1=usedMemory();
+
+			t2=System.nanoTime();
+			csr=new CSRAffinityMatrix(numsources*len,2*coo.size());
+			for(int[] e:coo)
+			{
+				csr.setAffinity(e[0],e[1],(e[0]*31+e[1])%97+1);
+				csr.setAffinity(e[1],e[0],(e[0]*31+e[1])%97+1);
+			}
+			((CSRAffinityMatrix)csr).freeze();
+			t2=System.nanoTime()-t2;
+			mem2=usedMemory();
+			System.out.print(len+", "+sparse.numNonzeroEntries()+", "+(mem1-mem0)+", "+(mem2-mem1)+", "+
+					(t1/1000000)+", "+(t2/1000000)+", ");
+
+			/*
+			 * iteration throughput
+			 */
+			sum=new double[3];
+			for(int k=0;k<2;k++)
+			{
+			AffinityMatrix am;
+
+				am=k==0?sparse:csr;
+				numvisits=0;
+				t1=System.nanoTime();
+				for(int r=0;r<rounds;r++)
+					for(int i=0;i<am.size();i++)
+						for(Entry e:am.rowIterator(i))
+						{
+							sum[k]+=e.value();
+							numvisits++;
+						}
+				System.out.print((long)(numvisits/((System.nanoTime()-t1)/1e9))+", ");
+			}
+
+			{
+			CSRAffinityMatrix.Cursor c;
+
+				c=((CSRAffinityMatrix)csr).cursor();
+				numvisits=0;
+				t1=System.nanoTime();
+				for(int r=0;r<rounds;r++)
+					for(int i=0;i<csr.size();i++)
+						for(c.row(i);c.next();)
+						{
+							sum[2]+=c.value();
+							numvisits++;
+						}
+				System.out.println((long)(numvisits/((System.nanoTime()-t1)/1e9))+
+						", sum difference: "+Math.max(Math.abs(sum[0]-sum[1]),Math.abs(sum[0]-sum[2])));
+			}
+		}
+	}
+}
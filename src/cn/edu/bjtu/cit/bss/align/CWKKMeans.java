@@ -85,8 +85,11 @@ private AlignPolicy initializer=null;//used to initialize cluster centers if not
 	public AffinityMatrixBuilder affinityMatrixBuilder()
 	{
 		if(ambuilder==null) 
-			ambuilder=new DefaultAffinityMatrixBuilder((FDBSS)this.getFDBSSAlgorithm(),neighborhood);
+		{
+			ambuilder=newAffinityMatrixBuilder((FDBSS)this.getFDBSSAlgorithm(),neighborhood);
 //			ambuilder=new PhaseAffinityMatrixBuilder((FDBSS)this.getFDBSSAlgorithm(),neighborhood,0);
+			ambuilder.setCompact(true);
+		}
 		
 		return ambuilder;
 	}
@@ -42,7 +42,8 @@ private FDBSSAlgorithm fdbss;//bss algorithm reference
 	}
 	
 	/**
-	 * calculate power ratio for a specified frequency bin
+	 * calculate power ratio for a specified frequency bin, precomputed 
+	 * features are used if the bss algorithm has a feature store
 	 * @param model
 	 * demixing model
 	 * @param binidx
@@ -53,19 +54,34 @@ private FDBSSAlgorithm fdbss;//bss algorithm reference
 	 */
 	public double[][] powerRatio(DemixingModel model,int binidx) throws IOException
 	{
-	Complex[][] bindata;//observed frequency bin data
+	FeatureStore store;
+	
+		store=fdbss.featureStore();
+		if(store!=null) return store.powerRatio(model,binidx);
+		else return powerRatio(model.getDemixingMatrix(binidx),fdbss.binData(binidx,null));
+	}
+	
+	/**
+	 * calculate power ratio for a frequency bin
+	 * @param demix
+	 * demixing matrix of the frequency bin
+	 * @param bindata
+	 * observed frequency bin data
+	 * @return
+	 * Number of rows is the same as the number of estimated signals.
+	 */
+	public static double[][] powerRatio(Complex[][] demix,Complex[][] bindata)
+	{
 	Complex[][] estdata;//estimated frequency bin data
 	Complex[][] mix;//the mixing matrix
 	Complex[] a,powv=null;
 	double[][] powr;//the power ratio
 	double sum;
 		
-		//load frequency bin data
-		bindata=fdbss.binData(binidx,null);
 		//calculate estimated frequency bin data
-		estdata=BLAS.multiply(model.getDemixingMatrix(binidx),bindata,null);
+		estdata=BLAS.multiply(demix,bindata,null);
 		//corresponding mixing system
-		mix=BLAS.pinv(model.getDemixingMatrix(binidx),null);
+		mix=BLAS.pinv(demix,null);
 
 		a=new Complex[mix.length];//a column of mixing matrix
 		powr=new double[estdata.length][estdata[0].length];
@@ -209,7 +225,8 @@ private FDBSSAlgorithm fdbss;//bss algorithm reference
 	}
 		
 	/**
-	 * calculate the envelop for a specified frequency bin
+	 * calculate the envelop for a specified frequency bin, precomputed 
+	 * features are used if the bss algorithm has a feature store
 	 * @param model
 	 * demixing model
 	 * @param binidx
@@ -219,14 +236,28 @@ private FDBSSAlgorithm fdbss;//bss algorithm reference
 	 */
 	public double[][] envelop(DemixingModel model,int binidx) throws IOException
 	{
-	Complex[][] bindata;//observed frequency bin data
+	FeatureStore store;
+	
+		store=fdbss.featureStore();
+		if(store!=null) return store.envelop(model,binidx);
+		else return envelop(model.getDemixingMatrix(binidx),fdbss.binData(binidx,null));
+	}
+	
+	/**
+	 * calculate the envelop for a frequency bin
+	 * @param demix
+	 * demixing matrix of the frequency bin
+	 * @param bindata
+	 * observed frequency bin data
+	 * @return
+	 */
+	public static double[][] envelop(Complex[][] demix,Complex[][] bindata)
+	{
 	Complex[][] estdata;//estimated frequency bin data
 	double[][] e;
 		
-		//load frequency bin data
-		bindata=fdbss.binData(binidx,null);
 		//calculate estimated frequency bin data
-		estdata=BLAS.multiply(model.getDemixingMatrix(binidx),bindata,null);
+		estdata=BLAS.multiply(demix,bindata,null);
 
 		e=new double[estdata.length][estdata[0].length];
 		for(int i=0;i<e.length;i++) 
@@ -348,7 +379,8 @@ private FDBSSAlgorithm fdbss;//bss algorithm reference
 	}
 	
 	/**
-	 * phase information of mixing matrices
+	 * phase information of mixing matrices, precomputed features are used 
+	 * if the bss algorithm has a feature store
 	 * @param demixm
 	 * demixing model
 	 * @param binidx
@@ -360,12 +392,30 @@ private FDBSSAlgorithm fdbss;//bss algorithm reference
 	 */
 	public double[][] mixPhase(DemixingModel demixm,int binidx,int refidx)
 	{
+	FeatureStore store;
+	
+		store=fdbss.featureStore();
+		if(store!=null) return store.mixPhase(demixm,binidx,refidx);
+		else return mixPhase(demixm.getDemixingMatrix(binidx),refidx);
+	}
+	
+	/**
+	 * phase information of a mixing matrix
+	 * @param demix
+	 * demixing matrix of a frequency bin
+	 * @param refidx
+	 * reference channel index
+	 * @return
+	 * each row is a feature for an output channel
+	 */
+	public static double[][] mixPhase(Complex[][] demix,int refidx)
+	{
 	Complex[][] esth;
 	double[][] phase;
 	int pidx;
 	
 		//estimated mixing matrix for the specified frequency bin
-		esth=BLAS.pinv(demixm.getDemixingMatrix(binidx),null);
+		esth=BLAS.pinv(demix,null);
 		
 		phase=new double[esth[0].length][esth.length-1];
 		for(int sourcei=0;sourcei<phase.length;sourcei++)
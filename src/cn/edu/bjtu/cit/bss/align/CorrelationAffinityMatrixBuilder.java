@@ -0,0 +1,444 @@
+package cn.edu.bjtu.cit.bss.align;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.sound.sampled.*;
+import cn.edu.bjtu.cit.bss.*;
+import cn.edu.bjtu.cit.bss.FDBSS.Operation;
+import cn.edu.bjtu.cit.bss.FDBSS.Parameter;
+import cn.edu.bjtu.cit.bss.signalio.*;
+
+/**
+ * <h1>Description</h1>
+ * Build the same affinity matrix as DefaultAffinityMatrixBuilder, but in a
+ * batched manner. Power ratio of each frequency bin is standardized only once
+ * into a row of a primitive matrix: z=(v-mu)/(sigma*sqrt(n)), then the
+ * correlation coefficient of two rows is just their inner product.
+ * Correlations between a frequency bin and its neighbors are calculated as
+ * the matrix product of the bin's rows and its neighbors' rows, frequency
+ * bins are divided into row blocks and processed concurrently.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 18, 2026 3:12:47 PM, revision:
+ */
+public class CorrelationAffinityMatrixBuilder extends AffinityMatrixBuilder
+{
+private static final long serialVersionUID=-2260924187359178346L;
+private double eps=1e-10;//absolute value smaller than this threshold will be regarded as zero
+private int neighborhood;//neighbor bins in affinity matrix construction
+private int parallelism=1;//number of threads, 1 for sequential
+
+	/**
+	 * @param fdbss
+	 * bss algorithm reference
+	 * @param neighborhood
+	 * neighborhood threshold
+	 */
+	public CorrelationAffinityMatrixBuilder(FDBSS fdbss,int neighborhood)
+	{
+		super(fdbss);
+		this.neighborhood=neighborhood;
+	}
+
+	/**
+	 * get the number of threads used to calculate correlations
+	 * @return
+	 */
+	public int parallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * set the number of threads used to calculate correlations
+	 * @param parallelism
+	 * number of threads, 1 for sequential
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if(parallelism<1) throw new IllegalArgumentException(
+				"parallelism must be positive: "+parallelism);
+		this.parallelism=parallelism;
+	}
+
+	public AffinityMatrix buildAffinityMatrix(DemixingModel demixm,int offset,int len)
+	{
+	AlignPolicy policy;
+	CommonFeature feature;
+	AffinityMatrix am;
+	int numsources,numframes=0,numneighbors,idx1,idx2;
+	double[] z;//standardized features, [(bin-offset)*numsources+source][frame]
+	double[] sigma;//standard deviation of each row
+	double[][] cor;//correlations for all bins in the subbands
+	double[][] f;
+	double sim;
+
+		policy=this.fdbssAlgorithm().alignPolicy();
+		policy.checkDemixingModel(demixm);
+		policy.checkSubbandSize(offset,len);
+		numsources=policy.numSources();
+
+		/*
+		 * load and standardize features, bin data buffers are not thread safe
+		 */
+		feature=new CommonFeature(this.fdbssAlgorithm());
+		z=null;
+		sigma=new double[len*numsources];
+		for(int binidx=offset;binidx<offset+len;binidx++)
+		{
+			try
+			{
+				f=feature.powerRatio(demixm,binidx);
+			}
+			catch(IOException e)
+			{
+				throw new RuntimeException("failed to calculate power ratio",e);
+			}
+
+			if(z==null)
+			{
+				numframes=f[0].length;
+				z=new double[len*numsources*numframes];
+			}
+			for(int i=0;i<numsources;i++)
+				sigma[(binidx-offset)*numsources+i]=standardize(
+						f[i],z,((binidx-offset)*numsources+i)*numframes);
+		}
+
+		/*
+		 * calculate correlations
+		 */
+		cor=new double[len][];
+		if(parallelism<=1||len<2) new CorrelationTask(z,numsources,numframes,len,0,len,cor).invoke();
+		else parallelCorrelation(z,numsources,numframes,len,cor);
+
+		/*
+		 * fill the affinity matrix
+		 */
+		am=this.newAffinityMatrix(numsources*len);
+		for(int binidx1=offset;binidx1<offset+len;binidx1++)
+		{
+			numneighbors=Math.min(neighborhood,offset+len-1-binidx1);
+			for(int i=0;i<numsources;i++)
+			{
+				idx1=policy.b2i(i,binidx1,offset,len);
+
+				for(int delta=0;delta<numneighbors;delta++)
+					for(int j=0;j<numsources;j++)
+					{
+						idx2=policy.b2i(j,binidx1+1+delta,offset,len);
+
+						sim=correlation(
+								cor[binidx1-offset][i*numneighbors*numsources+delta*numsources+j],
+								sigma[(binidx1-offset)*numsources+i],
+								sigma[(binidx1+1+delta-offset)*numsources+j]);
+						am.setAffinity(idx1,idx2,sim);
+						am.setAffinity(idx2,idx1,sim);
+					}
+			}
+			cor[binidx1-offset]=null;
+		}
+
+		return am;
+	}
+
+	/**
+	 * standardize a feature vector, the same statistics as used in
+	 * DefaultAffinityMatrixBuilder.similarity() are calculated
+	 * @param v
+	 * a feature vector
+	 * @param z
+	 * destination
+	 * @param zoffset
+	 * offset in destination
+	 * @return
+	 * standard deviation of the feature vector
+	 */
+	private double standardize(double[] v,double[] z,int zoffset)
+	{
+	double mu=0,sigma=0,scale;
+
+		for(int i=0;i<v.length;i++)
+		{
+			mu+=v[i];
+			sigma+=v[i]*v[i];
+		}
+		mu/=v.length;
+		sigma/=v.length;
+		sigma=Math.sqrt(sigma-mu*mu);
+
+		//rows with zero variance are handled by correlation(), not used here
+		if(sigma>0) scale=1.0/(sigma*Math.sqrt(v.length));
+		else scale=0;
+		for(int i=0;i<v.length;i++) z[zoffset+i]=(v[i]-mu)*scale;
+
+		return sigma;
+	}
+
+	/**
+	 * get the affinity from the inner product of standardized features
+	 * @param r
+	 * inner product of two standardized rows
+	 * @param sigma1
+	 * standard deviation of the first row
+	 * @param sigma2
+	 * standard deviation of the second row
+	 * @return
+	 */
+	private double correlation(double r,double sigma1,double sigma2)
+	{
+	double denominator,cor;
+
+		denominator=sigma1*sigma2;
+		if(Math.abs(denominator)<eps) cor=1-eps;
+		else if(Double.isNaN(denominator)) cor=Double.NaN;
+		else cor=r;
+
+		if(cor<0) return 0;
+		else if(cor>1) return 1;
+		else return cor;
+	}
+
+	/**
+	 * calculate correlations concurrently, frequency bins are divided into
+	 * contiguous row blocks
+	 * @param z
+	 * standardized features
+	 * @param numsources
+	 * number of sources
+	 * @param numframes
+	 * number of stft frames
+	 * @param len
+	 * number of frequency bins
+	 * @param cor
+	 * destination
+	 */
+	private void parallelCorrelation(double[] z,int numsources,int numframes,int len,double[][] cor)
+	{
+	List<CorrelationTask> tasks;
+	ForkJoinPool pool;
+	int numblocks,blocksize;
+
+		numblocks=Math.min(parallelism,len);
+		blocksize=(int)Math.ceil((double)len/numblocks);
+		tasks=new ArrayList<CorrelationTask>(numblocks);
+		for(int start=0;start<len;start+=blocksize) tasks.add(new CorrelationTask(
+				z,numsources,numframes,len,start,Math.min(start+blocksize,len),cor));
+
+		pool=new ForkJoinPool(parallelism);
+		try
+		{
+			for(CorrelationTask task:tasks) pool.execute(task);
+			for(CorrelationTask task:tasks) task.join();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * <h1>Description</h1>
+	 * Calculate correlations between a block of frequency bins and their
+	 * neighbors. For each bin, rows of the bin are multiplied with rows of its
+	 * neighbors, which are contiguous in the standardized feature matrix.
+	 * The product is blocked by 2x2 rows, so each loaded feature value is used
+	 * twice.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 18, 2026 3:40:05 PM, revision:
+	 */
+	private class CorrelationTask extends RecursiveAction
+	{
+	private static final long serialVersionUID=-3457000129818398262L;
+	private double[] z;//standardized features
+	private int numsources;//number of sources
+	private int numframes;//number of stft frames
+	private int len;//number of frequency bins
+	private int binstart;//the first relative bin index, inclusive
+	private int binend;//the last relative bin index, exclusive
+	private double[][] cor;//destination
+
+		/**
+		 * @param z
+		 * standardized features
+		 * @param numsources
+		 * number of sources
+		 * @param numframes
+		 * number of stft frames
+		 * @param len
+		 * number of frequency bins
+		 * @param binstart
+		 * the first relative bin index, inclusive
+		 * @param binend
+		 * the last relative bin index, exclusive
+		 * @param cor
+		 * destination, [relative bin index][source*neighbor rows+neighbor row]
+		 */
+		public CorrelationTask(double[] z,int numsources,int numframes,int len,int binstart,int binend,double[][] cor)
+		{
+			this.z=z;
+			this.numsources=numsources;
+			this.numframes=numframes;
+			this.len=len;
+			this.binstart=binstart;
+			this.binend=binend;
+			this.cor=cor;
+		}
+
+		protected void compute()
+		{
+		int numrows,aoffset,boffset;
+
+			for(int binidx=binstart;binidx<binend;binidx++)
+			{
+				numrows=Math.min(neighborhood,len-1-binidx)*numsources;
+				cor[binidx]=new double[numsources*numrows];
+				if(numrows==0) continue;
+
+				aoffset=binidx*numsources*numframes;
+				boffset=(binidx+1)*numsources*numframes;
+				multiply(aoffset,numsources,boffset,numrows,cor[binidx]);
+			}
+		}
+
+		/**
+		 * c=a*b', where a and b are row blocks of the standardized features
+		 * @param aoffset
+		 * offset of the first row of a
+		 * @param arows
+		 * number of rows in a
+		 * @param boffset
+		 * offset of the first row of b
+		 * @param brows
+		 * number of rows in b
+		 * @param c
+		 * destination, arows x brows in row major
+		 */
+		private void multiply(int aoffset,int arows,int boffset,int brows,double[] c)
+		{
+		int i,j,a0,a1,b0,b1;
+		double c00,c01,c10,c11,x0,x1,y0,y1;
+
+			for(i=0;i+1<arows;i+=2)
+			{
+				a0=aoffset+i*numframes;
+				a1=a0+numframes;
+
+				for(j=0;j+1<brows;j+=2)
+				{
+					b0=boffset+j*numframes;
+					b1=b0+numframes;
+					c00=0;c01=0;c10=0;c11=0;
+					for(int k=0;k<numframes;k++)
+					{
+						x0=z[a0+k];
+						x1=z[a1+k];
+						y0=z[b0+k];
+						y1=z[b1+k];
+						c00+=x0*y0;
+						c01+=x0*y1;
+						c10+=x1*y0;
+						c11+=x1*y1;
+					}
+					c[i*brows+j]=c00;
+					c[i*brows+j+1]=c01;
+					c[(i+1)*brows+j]=c10;
+					c[(i+1)*brows+j+1]=c11;
+				}
+
+				//the last odd row of b
+				if(j<brows)
+				{
+					c[i*brows+j]=dot(a0,boffset+j*numframes);
+					c[(i+1)*brows+j]=dot(a1,boffset+j*numframes);
+				}
+			}
+
+			//the last odd row of a
+			if(i<arows)
+				for(j=0;j<brows;j++)
+					c[i*brows+j]=dot(aoffset+i*numframes,boffset+j*numframes);
+		}
+
+		/**
+		 * inner product of two rows
+		 * @param offset1
+		 * offset of the first row
+		 * @param offset2
+		 * offset of the second row
+		 * @return
+		 */
+		private double dot(int offset1,int offset2)
+		{
+		double s=0;
+
+			for(int k=0;k<numframes;k++) s+=z[offset1+k]*z[offset2+k];
+			return s;
+		}
+	}
+
+	public static void main(String[] args) throws IOException, UnsupportedAudioFileException
+	{
+	int[] neighborhoods={1,3,5,10,20,40};
+	int repeat=5;
+	SignalSource x;
+	FDBSS fdbss;
+	DemixingModel demixm;
+	DefaultAffinityMatrixBuilder builder1;
+	CorrelationAffinityMatrixBuilder builder2;
+	AffinityMatrix am1=null,am2=null;
+	int len;
+	long t1,t2,t3;
+	double maxdiff;
+
+		fdbss=new FDBSS(new File("temp"));
+		fdbss.setParameter(Parameter.stft_size,"512");
+		fdbss.setParameter(Parameter.stft_overlap,"384");
+		fdbss.setParameter(Parameter.fft_size,"1024");
+
+		x=new SignalMixer(
+				new WaveSource(new File("data/rsm2_mA.wav"),true),
+				new WaveSource(new File("data/rsm2_mB.wav"),true));
+		fdbss.separate(x,Operation.stft,Operation.ica);
+		x.close();
+		demixm=fdbss.loadDemixingModelNotAligned();
+		len=demixm.fftSize()/2+1;
+
+		//keep bin data loading out of the comparison
+		fdbss.setFeatureStore(new FeatureStore(fdbss,demixm,null,1));
+
+		System.out.println("neighborhood, default (ms), batched (ms), batched parallel (ms), max difference");
+		for(int neighborhood:neighborhoods)
+		{
+			builder1=new DefaultAffinityMatrixBuilder(fdbss,neighborhood);
+			builder2=new CorrelationAffinityMatrixBuilder(fdbss,neighborhood);
+
+			t1=System.currentTimeMillis();
+			for(int i=0;i<repeat;i++) am1=builder1.buildAffinityMatrix(demixm,0,len);
+			t1=System.currentTimeMillis()-t1;
+
+			t2=System.currentTimeMillis();
+			for(int i=0;i<repeat;i++) am2=builder2.buildAffinityMatrix(demixm,0,len);
+			t2=System.currentTimeMillis()-t2;
+
+			maxdiff=0;
+			for(int i=0;i<am1.size();i++)
+				for(int j=0;j<am1.size();j++)
+					maxdiff=Math.max(maxdiff,Math.abs(am1.getAffinity(i,j)-am2.getAffinity(i,j)));
+
+			builder2.setParallelism(Runtime.getRuntime().availableProcessors());
+			t3=System.currentTimeMillis();
+			for(int i=0;i<repeat;i++) builder2.buildAffinityMatrix(demixm,0,len);
+			t3=System.currentTimeMillis()-t3;
+
+			System.out.println(neighborhood+", "+(t1/repeat)+", "+(t2/repeat)+", "+(t3/repeat)+", "+maxdiff);
+		}
+	}
+}
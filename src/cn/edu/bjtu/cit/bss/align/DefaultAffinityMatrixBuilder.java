@@ -96,7 +96,7 @@ private int neighborhood;//neighbor bins in affinity matrix construction
 		policy.checkSubbandSize(offset,len);
 		
 		feature=new CommonFeature(this.fdbssAlgorithm());
-		am=new DenseAffinityMatrix(policy.numSources()*len);
+		am=this.newAffinityMatrix(policy.numSources()*len);
 		fn=new LinkedList<double[][]>();
 
 		//initialize
@@ -99,7 +99,7 @@ private int neighborhood;//neighbor bins in affinity matrix construction
 		policy.checkDemixingModel(demixm);
 		policy.checkSubbandSize(offset,len);
 		
-		am=new DenseAffinityMatrix(policy.numSources()*len);
+		am=this.newAffinityMatrix(policy.numSources()*len);
 		fn=new LinkedList<double[][]>();
 
 		//initialize
@@ -0,0 +1,514 @@
+package cn.edu.bjtu.cit.bss.align;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.sound.sampled.*;
+import org.apache.commons.math.complex.*;
+import pp.util.BLAS;
+import cn.edu.bjtu.cit.bss.*;
+import cn.edu.bjtu.cit.bss.FDBSS.Operation;
+import cn.edu.bjtu.cit.bss.FDBSS.Parameter;
+import cn.edu.bjtu.cit.bss.signalio.*;
+
+/**
+ * <h1>Description</h1>
+ * Precomputed features of all frequency bins used in alignment: power ratio,
+ * envelop and phase of the mixing matrix for every reference sensor. Features
+ * are calculated once by a parallel pass over all frequency bins. Power ratio
+ * and envelop are stored either on the heap or in a memory mapped file, which
+ * is mapped as multiple regions, so its size is not limited by a single
+ * mapping. Features of a bin are never modified after published, so queries
+ * from multiple threads need no lock.
+ * <br>
+ * Alignment policies permute rows of the demixing matrices, so the demixing
+ * matrix used to calculate features is kept for each bin. If the queried
+ * demixing matrix is a row permutation of it, the stored features are
+ * permuted accordingly, otherwise features of the bin are calculated again.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 18, 2026 10:26:53 AM, revision:
+ */
+public class FeatureStore implements Serializable
+{
+private static final long serialVersionUID=-7415330587437104683L;
+private static final int REGION_SIZE=1<<30;//max size of a mapped region in bytes
+private FDBSSAlgorithm fdbss;//bss algorithm reference
+private int numbins;//number of frequency bins
+private int numsources;//number of sources
+private int numsensors;//number of sensors
+private int numframes;//number of stft frames
+private AtomicReferenceArray<BinFeatures> entries;//features of each frequency bin
+/*
+ * Mapped regions, each one holds power ratio and envelop of several bins: 
+ * [binidx][power ratio, envelop][sourcei][tau].
+ */
+private transient MappedByteBuffer[] mapped=null;
+private transient DoubleBuffer[] regions=null;//double views of mapped regions
+private int binsperregion;//number of frequency bins in a mapped region
+private File path=null;//file path for memory mapped buffers, null for heap buffers
+
+	/**
+	 * <h1>Description</h1>
+	 * Features of a frequency bin, never modified after published, so queries 
+	 * need no lock. If the demixing matrix changes other than a row permutation, 
+	 * a new entry is calculated and replaces the old one.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 25, 2026 4:12:37 PM, revision:
+	 */
+	private static class BinFeatures implements Serializable
+	{
+	private static final long serialVersionUID=-2519637541406880125L;
+	private Complex[][] demix;//demixing matrix used to calculate features
+	private double[][] powr;//power ratio [sourcei][tau], null if stored in the mapped file
+	private double[][] envelop;//envelop [sourcei][tau], null if stored in the mapped file
+	private double[][][] phase;//mixing matrix phase [refidx][sourcei][sensor index without reference]
+	}
+
+	/**
+	 * @param fdbss
+	 * bss algorithm reference
+	 * @param model
+	 * demixing model
+	 * @param path
+	 * file used to map features, null to store features on the heap
+	 * @param parallelism
+	 * number of threads used to calculate features
+	 * @throws IOException
+	 */
+	public FeatureStore(FDBSSAlgorithm fdbss,DemixingModel model,File path,int parallelism) throws IOException
+	{
+	Complex[][] bindata;
+	long binsize;
+
+		if(parallelism<1) throw new IllegalArgumentException(
+				"parallelism must be positive: "+parallelism);
+		this.fdbss=fdbss;
+		this.path=path;
+		numbins=model.fftSize()/2+1;
+		numsources=model.numSources();
+		numsensors=model.numSensors();
+		entries=new AtomicReferenceArray<BinFeatures>(numbins);
+
+		//the number of stft frames is known after the first bin is loaded
+		synchronized(fdbss)
+		{
+			bindata=fdbss.binData(0,null);
+		}
+		numframes=bindata[0].length;
+
+		/*
+		 * map the file as multiple regions of whole bins
+		 */
+		if(path!=null)
+		{
+		RandomAccessFile file=null;
+		FileChannel channel;
+		long len;
+
+			binsize=2L*numsources*numframes*8;
+			if(binsize>Integer.MAX_VALUE) throw new IllegalArgumentException(
+					"too many features in a frequency bin for a memory mapped file: "+binsize);
+			binsperregion=(int)Math.max(1,REGION_SIZE/binsize);
+			mapped=new MappedByteBuffer[(numbins+binsperregion-1)/binsperregion];
+			regions=new DoubleBuffer[mapped.length];
+			try
+			{
+				file=new RandomAccessFile(path,"rw");
+				file.setLength(numbins*binsize);
+				channel=file.getChannel();
+				for(int i=0;i<mapped.length;i++)
+				{
+					len=Math.min(binsperregion,numbins-(long)i*binsperregion)*binsize;
+					mapped[i]=channel.map(FileChannel.MapMode.READ_WRITE,i*binsperregion*binsize,len);
+					regions[i]=mapped[i].asDoubleBuffer();
+				}
+			}
+			finally
+			{
+				//mapped buffers are still valid after the file is closed
+				if(file!=null) file.close();
+			}
+		}
+
+		entries.set(0,extract(model.getDemixingMatrix(0),bindata,0));
+		if(parallelism<=1) new ExtractionTask(model,1,numbins).invoke();
+		else parallelExtract(model,parallelism);
+	}
+
+	/**
+	 * calculate features of other frequency bins concurrently
+	 * @param model
+	 * demixing model
+	 * @param parallelism
+	 * number of threads
+	 */
+	private void parallelExtract(DemixingModel model,int parallelism)
+	{
+	List<ExtractionTask> tasks;
+	ForkJoinPool pool;
+	int chunksize;
+
+		chunksize=(int)Math.ceil((double)(numbins-1)/parallelism);
+		tasks=new ArrayList<ExtractionTask>(parallelism);
+		for(int offset=1;offset<numbins;offset+=chunksize)
+			tasks.add(new ExtractionTask(model,offset,Math.min(offset+chunksize,numbins)));
+
+		pool=new ForkJoinPool(parallelism);
+		try
+		{
+			for(ExtractionTask task:tasks) pool.execute(task);
+			for(ExtractionTask task:tasks) task.join();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * <h1>Description</h1>
+	 * Calculate features for a contiguous range of frequency bins. Bin data
+	 * buffers are not thread safe, so a window of consecutive bins is loaded
+	 * while holding the lock of the bss algorithm, the window is as large as
+	 * the algorithm loads from storage at once.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 18, 2026 10:41:09 AM, revision:
+	 */
+	private class ExtractionTask extends RecursiveAction
+	{
+	private static final long serialVersionUID=3587240906381574128L;
+	private DemixingModel model;//demixing model
+	private int binstart;//the first frequency bin index, inclusive
+	private int binend;//the last frequency bin index, exclusive
+
+		/**
+		 * @param model
+		 * demixing model
+		 * @param binstart
+		 * the first frequency bin index, inclusive
+		 * @param binend
+		 * the last frequency bin index, exclusive
+		 */
+		public ExtractionTask(DemixingModel model,int binstart,int binend)
+		{
+			this.model=model;
+			this.binstart=binstart;
+			this.binend=binend;
+		}
+
+		protected void compute()
+		{
+		Complex[][][] window;//bin data of the current window
+		int winend;
+
+			window=new Complex[Math.min(Math.max(fdbss.binDataWindow(),1),binend-binstart)][][];
+			for(int winstart=binstart;winstart<binend;winstart=winend)
+			{
+				winend=Math.min(winstart+window.length,binend);
+
+				//load the whole window at once
+				synchronized(fdbss)
+				{
+					for(int binidx=winstart;binidx<winend;binidx++)
+						window[binidx-winstart]=fdbss.binData(binidx,window[binidx-winstart]);
+				}
+
+				for(int binidx=winstart;binidx<winend;binidx++) entries.set(binidx,
+						extract(model.getDemixingMatrix(binidx),window[binidx-winstart],binidx));
+			}
+		}
+	}
+
+	/**
+	 * calculate features of a frequency bin
+	 * @param demix
+	 * demixing matrix of the frequency bin
+	 * @param bindata
+	 * observed frequency bin data
+	 * @param binidx
+	 * Frequency bin index to write power ratio and envelop into the mapped 
+	 * file, -1 to keep them on the heap. Only used before the store is 
+	 * published, because the mapped file is read without lock.
+	 * @return
+	 */
+	private BinFeatures extract(Complex[][] demix,Complex[][] bindata,int binidx)
+	{
+	BinFeatures f;
+	DoubleBuffer view;
+
+		f=new BinFeatures();
+		f.demix=BLAS.copy(demix,null);
+		f.powr=CommonFeature.powerRatio(demix,bindata);
+		f.envelop=CommonFeature.envelop(demix,bindata);
+		f.phase=new double[numsensors][][];
+		for(int refidx=0;refidx<numsensors;refidx++) 
+			f.phase[refidx]=CommonFeature.mixPhase(demix,refidx);
+
+		if(regions!=null&&binidx>=0)
+		{
+			view=region(binidx);
+			for(double[] row:f.powr) view.put(row);
+			for(double[] row:f.envelop) view.put(row);
+			f.powr=null;
+			f.envelop=null;
+		}
+		return f;
+	}
+
+	/**
+	 * get an independent view of the mapped file positioned at a frequency bin
+	 * @param binidx
+	 * frequency bin index
+	 * @return
+	 */
+	private DoubleBuffer region(int binidx)
+	{
+	DoubleBuffer view;
+
+		//the position of a duplicated buffer is independent
+		view=regions[binidx/binsperregion].duplicate();
+		view.position((binidx%binsperregion)*2*numsources*numframes);
+		return view;
+	}
+
+	/**
+	 * get the number of frequency bins
+	 * @return
+	 */
+	public int numBins()
+	{
+		return numbins;
+	}
+
+	/**
+	 * get the number of stft frames
+	 * @return
+	 */
+	public int numSTFTFrames()
+	{
+		return numframes;
+	}
+
+	/**
+	 * see if features are stored in a memory mapped file
+	 * @return
+	 */
+	public boolean isMapped()
+	{
+		return path!=null;
+	}
+
+	/**
+	 * Get features of a frequency bin for a demixing matrix, features of the 
+	 * bin are calculated again if the demixing matrix is not a row permutation 
+	 * of the one used to calculate them.
+	 * @param demix
+	 * demixing matrix
+	 * @param binidx
+	 * frequency bin index
+	 * @param p
+	 * space for the row permutation: row i of the demixing matrix is row p[i] 
+	 * of features
+	 * @return
+	 */
+	private BinFeatures features(Complex[][] demix,int binidx,int[] p)
+	{
+	BinFeatures f;
+	Complex[][] bindata;
+	boolean[] used;
+
+		f=entries.get(binidx);
+		used=new boolean[numsources];
+
+nextrow:for(int i=0;i<numsources;i++)
+		{
+			for(int j=0;j<numsources;j++)
+				if(!used[j]&&Arrays.equals(demix[i],f.demix[j]))
+				{
+					p[i]=j;
+					used[j]=true;
+					continue nextrow;
+				}
+
+			/*
+			 * Not a row permutation, features are out of date. Concurrent 
+			 * queries may calculate the same entry, any of them is valid.
+			 */
+			synchronized(fdbss)
+			{
+				bindata=fdbss.binData(binidx,null);
+			}
+			f=extract(demix,bindata,-1);
+			entries.set(binidx,f);
+			for(int k=0;k<p.length;k++) p[k]=k;
+			break;
+		}
+
+		return f;
+	}
+
+	/**
+	 * copy rows of power ratio or envelop in the specified order
+	 * @param f
+	 * features of a frequency bin
+	 * @param binidx
+	 * frequency bin index
+	 * @param featidx
+	 * 0 for power ratio, 1 for envelop
+	 * @param p
+	 * row permutation
+	 * @return
+	 */
+	private double[][] rows(BinFeatures f,int binidx,int featidx,int[] p)
+	{
+	double[][] rows,f2;
+	DoubleBuffer view;
+
+		rows=new double[numsources][];
+		f2=featidx==0?f.powr:f.envelop;
+		
+		if(f2!=null) 
+			for(int sourcei=0;sourcei<numsources;sourcei++) rows[sourcei]=f2[p[sourcei]].clone();
+		else
+		{
+			view=region(binidx);
+			for(int sourcei=0;sourcei<numsources;sourcei++)
+			{
+				rows[sourcei]=new double[numframes];
+				view.position((binidx%binsperregion*2+featidx)*numsources*numframes+p[sourcei]*numframes);
+				view.get(rows[sourcei]);
+			}
+		}
+
+		return rows;
+	}
+
+	/**
+	 * get power ratio of a frequency bin
+	 * @param model
+	 * demixing model
+	 * @param binidx
+	 * frequency bin index
+	 * @return
+	 * Number of rows is the same as the number of estimated signals.
+	 */
+	public double[][] powerRatio(DemixingModel model,int binidx)
+	{
+	int[] p;
+	
+		p=new int[numsources];
+		return rows(features(model.getDemixingMatrix(binidx),binidx,p),binidx,0,p);
+	}
+
+	/**
+	 * get envelop of a frequency bin
+	 * @param model
+	 * demixing model
+	 * @param binidx
+	 * frequency bin index
+	 * @return
+	 */
+	public double[][] envelop(DemixingModel model,int binidx)
+	{
+	int[] p;
+	
+		p=new int[numsources];
+		return rows(features(model.getDemixingMatrix(binidx),binidx,p),binidx,1,p);
+	}
+
+	/**
+	 * get phase information of the mixing matrix of a frequency bin
+	 * @param model
+	 * demixing model
+	 * @param binidx
+	 * frequency bin index
+	 * @param refidx
+	 * reference sensor index
+	 * @return
+	 * each row is a feature for an output channel
+	 */
+	public double[][] mixPhase(DemixingModel model,int binidx,int refidx)
+	{
+	int[] p;
+	BinFeatures f;
+	double[][] rows;
+
+		if(refidx<0||refidx>=numsensors) throw new IndexOutOfBoundsException(
+				"reference sensor index out of bounds: "+refidx+", "+numsensors);
+		p=new int[numsources];
+		f=features(model.getDemixingMatrix(binidx),binidx,p);
+
+		rows=new double[numsources][];
+		for(int sourcei=0;sourcei<numsources;sourcei++) 
+			rows[sourcei]=f.phase[refidx][p[sourcei]].clone();
+		return rows;
+	}
+
+	/**
+	 * release buffers and delete the mapped file if it is used, must not be 
+	 * called while the store is queried
+	 */
+	public void close()
+	{
+		if(mapped!=null) for(MappedByteBuffer buffer:mapped) MappedSignalSource.unmap(buffer);
+		mapped=null;
+		regions=null;
+		if(path!=null) path.delete();
+	}
+
+	public static void main(String[] args) throws IOException, UnsupportedAudioFileException
+	{
+	String[] policies={
+			NJWAlign.class.getName(),
+			CWKKMeans.class.getName(),
+			RegionGrow.class.getName(),
+			SpectralOrdering.class.getName()};
+	String[] modes={"none","memory","mapped"};
+	SignalSource x;
+	FDBSS fdbss;
+	long reads,t;
+
+		fdbss=new FDBSS(new File("temp"));
+		fdbss.setParameter(Parameter.stft_size,"512");
+		fdbss.setParameter(Parameter.stft_overlap,"384");
+		fdbss.setParameter(Parameter.fft_size,"1024");
+		fdbss.setParameter(Parameter.ica_parallelism,
+				Integer.toString(Runtime.getRuntime().availableProcessors()));
+
+		x=new SignalMixer(
+				new WaveSource(new File("data/rsm2_mA.wav"),true),
+				new WaveSource(new File("data/rsm2_mB.wav"),true));
+		fdbss.separate(x,Operation.stft,Operation.ica);
+		x.close();
+
+		System.out.println("policy, feature store, bin data reads, time (ms)");
+		for(String policy:policies)
+			for(String mode:modes)
+			{
+				fdbss.setParameter(Parameter.align_policy,policy);
+				fdbss.setParameter(Parameter.feature_store,mode);
+
+				reads=fdbss.numBinDataReads();
+				t=System.currentTimeMillis();
+				fdbss.separate(null,Operation.align);
+				t=System.currentTimeMillis()-t;
+				reads=fdbss.numBinDataReads()-reads;
+
+				System.out.println(policy+", "+mode+", "+reads+", "+t);
+			}
+	}
+}
@@ -0,0 +1,569 @@
+package cn.edu.bjtu.cit.bss.align;
+import java.io.*;
+import java.util.*;
+import org.apache.commons.math.linear.*;
+import org.apache.commons.math.util.*;
+import pp.util.BLAS;
+
+/**
+ * <h1>Description</h1>
+ * Calculate the largest k eigenvalues and corresponding eigenvectors of a
+ * symmetric affinity matrix by the block Lanczos method with full
+ * reorthogonalization, the block size is k. Nonzero entries are collected from
+ * the row iterators once, then only matrix-vector products are needed, so the
+ * cost is about the number of nonzero entries times the Krylov subspace dimension,
+ * instead of O(n^3) of the full eigen decomposition. Eigenvalues with multiplicity
+ * up to k, e.g. from disconnected components, are found by the block iteration.
+ * If an invariant subspace is found, the iteration is continued with random
+ * vectors orthogonal to it. The subspace dimension is bounded, when it is
+ * reached the iteration is restarted from the leading Ritz vectors, so the
+ * memory is bounded by the max subspace dimension times the matrix size. Not
+ * safe for multithread access.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 17, 2026 11:32:08 PM, revision:
+ */
+public class LanczosEigensolver implements Serializable
+{
+private static final long serialVersionUID=-2430768313586935152L;
+private double tol=1e-10;//relative residual threshold for convergence
+private long seed=0;//seed for the starting vectors
+private int maxsubspace=100;//max Krylov subspace dimension before restart
+/*
+ * the matrix in compressed row format
+ */
+private int[] rowptr;
+private int[] colidx;
+private double[] values;
+
+	/**
+	 * get the relative residual threshold
+	 * @return
+	 */
+	public double getTolerance()
+	{
+		return tol;
+	}
+
+	/**
+	 * set the relative residual threshold, a Ritz pair (theta, x) is regarded
+	 * as converged if |Ax-theta*x|<=tol*||A||
+	 * @param tol
+	 * a positive threshold
+	 */
+	public void setTolerance(double tol)
+	{
+		if(tol<=0) throw new IllegalArgumentException("tolerance must be positive: "+tol);
+		this.tol=tol;
+	}
+
+	/**
+	 * get the max Krylov subspace dimension before restart
+	 * @return
+	 */
+	public int getMaxSubspaceDimension()
+	{
+		return maxsubspace;
+	}
+
+	/**
+	 * Set the max Krylov subspace dimension. When it is exceeded, the subspace 
+	 * is shrunk to the leading Ritz vectors and the iteration is continued 
+	 * with the next block. A smaller dimension takes less memory but may need 
+	 * more matrix-vector products. At least three times the number of 
+	 * eigenvalues required is used.
+	 * @param maxsubspace
+	 * a positive dimension
+	 */
+	public void setMaxSubspaceDimension(int maxsubspace)
+	{
+		if(maxsubspace<1) throw new IllegalArgumentException(
+				"max subspace dimension must be positive: "+maxsubspace);
+		this.maxsubspace=maxsubspace;
+	}
+
+	/**
+	 * collect nonzero entries of an affinity matrix
+	 * @param am
+	 * an affinity matrix
+	 */
+	private void load(AffinityMatrix am)
+	{
+	int n,nnz=0;
+	double value;
+
+		n=am.size();
+		rowptr=new int[n+1];
+		
+		//already compressed
+		if(am instanceof CSRAffinityMatrix)
+		{
+		CSRAffinityMatrix.Cursor c;
+		
+			colidx=new int[am.numNonzeroEntries()];
+			values=new double[colidx.length];
+			c=((CSRAffinityMatrix)am).cursor();
+			for(int i=0;i<n;i++)
+			{
+				rowptr[i]=nnz;
+				for(c.row(i);c.next();)
+				{
+					colidx[nnz]=c.columnIndex();
+					values[nnz]=c.value();
+					nnz++;
+				}
+			}
+			rowptr[n]=nnz;
+			return;
+		}
+		
+		colidx=new int[Math.max(am.numNonzeroEntries(),16)];
+		values=new double[colidx.length];
+
+		for(int i=0;i<n;i++)
+		{
+			rowptr[i]=nnz;
+			for(AffinityMatrix.Entry entry:am.rowIterator(i))
+			{
+				value=entry.value();
+				if(value==0) continue;
+
+				if(nnz>=colidx.length)
+				{
+					colidx=Arrays.copyOf(colidx,colidx.length*2);
+					values=Arrays.copyOf(values,values.length*2);
+				}
+				colidx[nnz]=entry.columnIndex();
+				values[nnz]=value;
+				nnz++;
+			}
+		}
+		rowptr[n]=nnz;
+	}
+
+	/**
+	 * calculate y=A*x
+	 * @param x
+	 * a vector
+	 * @param y
+	 * space for the result
+	 */
+	private void multiply(double[] x,double[] y)
+	{
+	double temp;
+
+		for(int i=0;i<y.length;i++)
+		{
+			temp=0;
+			for(int p=rowptr[i];p<rowptr[i+1];p++) temp+=values[p]*x[colidx[p]];
+			y[i]=temp;
+		}
+	}
+
+	/**
+	 * orthogonalize a vector against a set of orthonormal vectors, classical
+	 * Gram-Schmidt is applied twice
+	 * @param basis
+	 * orthonormal vectors
+	 * @param w
+	 * the vector to be orthogonalized
+	 */
+	private static void orthogonalize(List<double[]> basis,double[] w)
+	{
+	double temp;
+
+		for(int pass=0;pass<2;pass++)
+			for(double[] q:basis)
+			{
+				temp=BLAS.innerProduct(q,w);
+				for(int i=0;i<w.length;i++) w[i]-=temp*q[i];
+			}
+	}
+
+	/**
+	 * generate a random unit vector orthogonal to a set of orthonormal vectors
+	 * @param rand
+	 * random number generator
+	 * @param basis
+	 * orthonormal vectors
+	 * @param q
+	 * space for the result
+	 * @return
+	 * false if the basis already spans the whole space
+	 */
+	private static boolean randomStart(Random rand,List<double[]> basis,double[] q)
+	{
+	double norm;
+
+		for(int trial=0;trial<3;trial++)
+		{
+			for(int i=0;i<q.length;i++) q[i]=rand.nextDouble()-0.5;
+			orthogonalize(basis,q);
+			norm=BLAS.norm2(q);
+			if(norm>1e-8)
+			{
+				BLAS.scalarMultiply(1.0/norm,q,q);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * eigen decomposition of the projected matrix
+	 * @param h
+	 * the projected matrix
+	 * @param dim
+	 * subspace dimension
+	 * @return
+	 */
+	private static EigenDecompositionImpl rayleighRitz(double[][] h,int dim)
+	{
+	Array2DRowRealMatrix hm;
+
+		hm=new Array2DRowRealMatrix(dim,dim);
+		for(int i=0;i<dim;i++) 
+			for(int j=0;j<dim;j++) hm.setEntry(i,j,h[i][j]);
+		return new EigenDecompositionImpl(hm,MathUtils.SAFE_MIN);
+	}
+
+	/**
+	 * Calculate the largest k eigenvalues and corresponding eigenvectors.
+	 * @param am
+	 * a symmetric affinity matrix
+	 * @param k
+	 * number of eigenvalues required
+	 * @param ed
+	 * space for eigenvalues in descending order, null if not needed
+	 * @return
+	 * eigenvectors with unit norm, each row is an eigenvector, the i-th
+	 * row corresponds to the i-th eigenvalue
+	 */
+	public double[][] topEigenvectors(AffinityMatrix am,int k,double[] ed)
+	{
+	int n,dim=0,nextcheck,ritzdim=0;
+	int maxdim;//max subspace dimension
+	List<double[]> basis;//lanczos vectors
+	List<double[]> abasis;//A times lanczos vectors
+	double[][] h;//the projected matrix Q'*A*Q
+	double[][] block;//the next block of lanczos vectors
+	EigenDecompositionImpl eigen=null;
+	double norm;
+	Random rand;
+
+		n=am.size();
+		if(k<1||k>n) throw new IllegalArgumentException(
+				"illegal number of eigenvalues: "+k+", matrix size: "+n);
+		if(ed!=null&&ed.length<k) throw new IllegalArgumentException(
+				"not enough space for eigenvalues: "+ed.length+", required: "+k);
+
+		load(am);
+		basis=new ArrayList<double[]>();
+		abasis=new ArrayList<double[]>();
+		maxdim=Math.min(n,Math.max(maxsubspace,3*k));
+		h=new double[maxdim][maxdim];
+		rand=new Random(seed);
+		nextcheck=2*k;
+
+		/*
+		 * the starting block
+		 */
+		block=new double[k][n];
+		for(int i=0;i<k;i++) 
+		{
+			randomStart(rand,basis,block[i]);
+			basis.add(block[i]);
+		}
+
+		for(;;)
+		{
+			/*
+			 * expand the Krylov subspace and the projected matrix
+			 */
+			for(int j=dim;j<basis.size();j++)
+			{
+			double[] aq;
+
+				aq=new double[n];
+				multiply(basis.get(j),aq);
+				abasis.add(aq);
+
+				for(int i=0;i<=j;i++) 
+				{
+					h[i][j]=BLAS.innerProduct(basis.get(i),aq);
+					h[j][i]=h[i][j];
+				}
+			}
+			dim=basis.size();
+
+			//Rayleigh-Ritz on the subspace, performed when the subspace grows enough
+			if(dim>=nextcheck||dim>=n)
+			{
+				eigen=rayleighRitz(h,dim);
+				ritzdim=dim;
+				nextcheck=Math.max(dim+k,(int)(dim*1.2));
+			}
+			if(dim>=n) break;
+
+			/*
+			 * convergence test: |A*x-theta*x|<=tol*||A|| for all the top k Ritz pairs
+			 */
+			if(ritzdim==dim)
+			{
+			double[] theta,x,ax,q,aq;
+			RealMatrix s;
+			double anorm=0,sij;
+			boolean converged=true;
+
+				theta=eigen.getRealEigenvalues();
+				s=eigen.getV();
+				for(double t:theta) anorm=Math.max(anorm,Math.abs(t));
+				anorm=Math.max(anorm,MathUtils.SAFE_MIN);
+				x=new double[n];
+				ax=new double[n];
+
+				for(int i=0;i<k;i++)
+				{
+					Arrays.fill(x,0);
+					Arrays.fill(ax,0);
+					for(int j=0;j<dim;j++)
+					{
+						sij=s.getEntry(j,i);
+						if(sij==0) continue;
+						q=basis.get(j);
+						aq=abasis.get(j);
+						for(int ii=0;ii<n;ii++) 
+						{
+							x[ii]+=sij*q[ii];
+							ax[ii]+=sij*aq[ii];
+						}
+					}
+					for(int ii=0;ii<n;ii++) ax[ii]-=theta[i]*x[ii];
+					if(BLAS.norm2(ax)>tol*anorm) 
+					{
+						converged=false;
+						break;
+					}
+				}
+				if(converged) break;
+			}
+
+			/*
+			 * The next block, orthogonalized against all lanczos vectors. If a vector 
+			 * vanishes, an invariant subspace is found, it is replaced by a random 
+			 * vector, so eigenvalues outside the invariant subspace are still reachable.
+			 */
+			block=new double[k][];
+			for(int i=0;i<k&&basis.size()<n;i++)
+			{
+				block[i]=Arrays.copyOf(abasis.get(dim-k+i),n);
+				orthogonalize(basis,block[i]);
+				norm=BLAS.norm2(block[i]);
+				if(norm>Math.sqrt(MathUtils.EPSILON)*BLAS.norm2(abasis.get(dim-k+i))&&
+						norm>MathUtils.SAFE_MIN) BLAS.scalarMultiply(1.0/norm,block[i],block[i]);
+				else if(!randomStart(rand,basis,block[i])) break;
+				basis.add(block[i]);
+			}
+			//the whole space is spanned
+			if(basis.size()==dim)
+			{
+				eigen=rayleighRitz(h,dim);
+				break;
+			}
+
+			/*
+			 * Restart if the subspace exceeds the max dimension: the lanczos 
+			 * vectors are replaced by the leading Ritz vectors, their A-products 
+			 * are combined from the current ones, and the projected matrix 
+			 * becomes diagonal. The new block is orthogonal to the whole old 
+			 * subspace, so it is kept and the Krylov subspace is continued.
+			 */
+			if(basis.size()>maxdim)
+			{
+			List<double[]> ritz,aritz;
+			double[] theta,x,ax;
+			RealMatrix s;
+			double sij;
+			int keep;
+
+				if(ritzdim!=dim) eigen=rayleighRitz(h,dim);
+				theta=eigen.getRealEigenvalues();
+				s=eigen.getV();
+				keep=Math.min(Math.max(2*k,maxdim/2),maxdim-k);
+				ritz=new ArrayList<double[]>(maxdim);
+				aritz=new ArrayList<double[]>(maxdim);
+				for(int i=0;i<keep;i++)
+				{
+					x=new double[n];
+					ax=new double[n];
+					for(int j=0;j<dim;j++)
+					{
+						sij=s.getEntry(j,i);
+						if(sij==0) continue;
+						for(int ii=0;ii<n;ii++) 
+						{
+							x[ii]+=sij*basis.get(j)[ii];
+							ax[ii]+=sij*abasis.get(j)[ii];
+						}
+					}
+					ritz.add(x);
+					aritz.add(ax);
+				}
+				ritz.addAll(basis.subList(dim,basis.size()));
+				basis=ritz;
+				abasis=aritz;
+
+				for(int i=0;i<maxdim;i++) Arrays.fill(h[i],0);
+				for(int i=0;i<keep;i++) h[i][i]=theta[i];
+				dim=keep;
+				ritzdim=0;
+				nextcheck=dim+k;
+			}
+		}
+
+		/*
+		 * Ritz vectors of the largest Ritz values
+		 */
+		{
+		double[][] ev;
+		double[] theta;
+		RealMatrix s;
+		double sij;
+
+			theta=eigen.getRealEigenvalues();
+			s=eigen.getV();
+			ev=new double[k][n];
+			for(int i=0;i<k;i++)
+			{
+				for(int j=0;j<dim;j++)
+				{
+					sij=s.getEntry(j,i);
+					if(sij==0) continue;
+					for(int ii=0;ii<n;ii++) ev[i][ii]+=sij*basis.get(j)[ii];
+				}
+				BLAS.normalize(ev[i]);
+				if(ed!=null) ed[i]=theta[i];
+			}
+
+			//release the matrix
+			rowptr=null;
+			colidx=null;
+			values=null;
+
+			return ev;
+		}
+	}
+
+	/**
+	 * build a synthetic affinity matrix of the same structure as alignment:
+	 * each bin is connected to its neighbor bins, strong within a source
+	 * @param numsources
+	 * number of sources
+	 * @param numbins
+	 * number of frequency bins
+	 * @param neighborhood
+	 * number of neighbor bins
+	 * @param rand
+	 * random number generator
+	 * @return
+	 */
+	private static AffinityMatrix syntheticAffinityMatrix(int numsources,int numbins,int neighborhood,Random rand)
+	{
+	SparseAffinityMatrix am;
+	int[][] perm;
+	int idx1,idx2;
+	double sim;
+
+		/*
+		 * random permutation in each bin
+		 */
+		perm=new int[numbins][numsources];
+		for(int binidx=0;binidx<numbins;binidx++)
+		{
+			for(int i=0;i<numsources;i++) perm[binidx][i]=i;
+			for(int i=numsources-1;i>0;i--)
+			{
+			int j,temp;
+
+				j=rand.nextInt(i+1);
+				temp=perm[binidx][i];perm[binidx][i]=perm[binidx][j];perm[binidx][j]=temp;
+			}
+		}
+
+		am=new SparseAffinityMatrix(numsources*numbins);
+		for(int bin1=0;bin1<numbins;bin1++)
+			for(int bin2=bin1+1;bin2<Math.min(numbins,bin1+neighborhood+1);bin2++)
+				for(int i=0;i<numsources;i++)
+					for(int j=0;j<numsources;j++)
+					{
+						idx1=i*numbins+bin1;
+						idx2=j*numbins+bin2;
+						if(perm[bin1][i]==perm[bin2][j]) sim=0.6+0.4*rand.nextDouble();
+						else sim=0.3*rand.nextDouble();
+						am.setAffinity(idx1,idx2,sim);
+						am.setAffinity(idx2,idx1,sim);
+					}
+		return am;
+	}
+
+	public static void main(String[] args)
+	{
+	int[] fftsizes={512,1024,2048,4096,8192};
+	int numsources=2,k=2,neighborhood=20;
+	Random rand;
+	AffinityMatrix am;
+	LanczosEigensolver solver;
+	double[] ed1,ed2;
+	double[][] ev;
+	long t1,t2;
+
+		rand=new Random(0);
+		solver=new LanczosEigensolver();
+		System.out.println("fft size, matrix size, lanczos ms, full ms, max eigenvalue difference");
+
+		for(int fftsize:fftsizes)
+		{
+			am=syntheticAffinityMatrix(numsources,fftsize/2+1,neighborhood,rand);
+
+			ed1=new double[k];
+			t1=System.nanoTime();
+			ev=solver.topEigenvectors(am,k,ed1);
+			t1=System.nanoTime()-t1;
+
+			/*
+			 * the full eigen decomposition is too slow for large matrices
+			 */
+			if(am.size()<=1100)
+			{
+			EigenDecompositionImpl eigen;
+			double maxdiff=0;
+
+				t2=System.nanoTime();
+				eigen=new EigenDecompositionImpl(am.toCommonosMatrix(),MathUtils.SAFE_MIN);
+				t2=System.nanoTime()-t2;
+				ed2=eigen.getRealEigenvalues();
+				for(int i=0;i<k;i++) maxdiff=Math.max(maxdiff,Math.abs(ed1[i]-ed2[i]));
+				System.out.println(fftsize+", "+am.size()+", "+(t1/1000000)+", "+(t2/1000000)+", "+maxdiff);
+			}
+			else
+			{
+			double[] y;
+			double res=0;
+
+				//report the residual instead
+				y=new double[am.size()];
+				for(int i=0;i<k;i++)
+				{
+					Arrays.fill(y,0);
+					for(AffinityMatrix.Entry entry:am)
+						y[entry.rowIndex()]+=entry.value()*ev[i][entry.columnIndex()];
+					for(int j=0;j<y.length;j++) res=Math.max(res,Math.abs(y[j]-ed1[i]*ev[i][j]));
+				}
+				System.out.println(fftsize+", "+am.size()+", "+(t1/1000000)+", -, residual: "+res);
+			}
+		}
+	}
+}
@@ -28,6 +28,7 @@ private double eps=1e-10;//absolute value smaller than this threshold will be re
 private int neighborhood=20;//neighbor bins in affinity matrix construction
 private AffinityMatrixBuilder ambuilder=null;//used to construct affinity matrix
 private int numband=15;//number of frequency band
+private LanczosEigensolver eigensolver=new LanczosEigensolver();//used to get the top k eigenvectors
 //private boolean debug=false;//true to draw mapped dataset
 
 	/**
@@ -37,8 +38,10 @@ private int numband=15;//number of frequency band
 	public AffinityMatrixBuilder affinityMatrixBuilder()
 	{
 		if(ambuilder==null) 
-			ambuilder=new DefaultAffinityMatrixBuilder(
-					(FDBSS)this.getFDBSSAlgorithm(),neighborhood);
+		{
+			ambuilder=newAffinityMatrixBuilder((FDBSS)this.getFDBSSAlgorithm(),neighborhood);
+			ambuilder.setCompact(true);
+		}
 		return ambuilder;
 	}
 	
@@ -96,33 +99,53 @@ private int numband=15;//number of frequency band
 	 */
 	public int[] njw(AffinityMatrix am,int k)
 	{
-	EigenDecompositionImpl eigen;
+	double[][] eigen;
 
 		//build the normalized Laplacian matrix
 		{
 		double[] d;
 		double temp;
 		
-			/*
-			 * calculate the diagonal matrix D
-			 */
-			d=new double[am.size()];
-			for(AffinityMatrix.Entry entry:am) d[entry.rowIndex()]+=entry.value();
-
-			//calculate D^(-1/2)	
-			for(int i=0;i<d.length;i++) d[i]=1.0/Math.sqrt(d[i]);
+			if(am instanceof CSRAffinityMatrix)
+			{
+			CSRAffinityMatrix csr;
+			CSRAffinityMatrix.Cursor c;
 			
-			//calculate L=D^(-1/2)*S*D^(-1/2) into similarity matrix
-			for(AffinityMatrix.Entry entry:am)
+				/*
+				 * calculate D^(-1/2) and L=D^(-1/2)*S*D^(-1/2) in place
+				 */
+				csr=(CSRAffinityMatrix)am;
+				d=csr.rowSum(null);
+				for(int i=0;i<d.length;i++) d[i]=1.0/Math.sqrt(d[i]);
+				c=csr.cursor();
+				for(int i=0;i<d.length;i++) 
+					for(c.row(i);c.next();) c.setValue(d[i]*c.value()*d[c.columnIndex()]);
+			}
+			else
 			{
-				if(entry.rowIndex()>=entry.columnIndex()) continue;//symmetric, diagonal is 0
-				temp=d[entry.rowIndex()]*entry.value()*d[entry.columnIndex()];
-				am.setAffinity(entry.rowIndex(),entry.columnIndex(),temp);
-				am.setAffinity(entry.columnIndex(),entry.rowIndex(),temp);
+				/*
+				 * calculate the diagonal matrix D
+				 */
+				d=new double[am.size()];
+				for(AffinityMatrix.Entry entry:am) d[entry.rowIndex()]+=entry.value();
+
+				//calculate D^(-1/2)	
+				for(int i=0;i<d.length;i++) d[i]=1.0/Math.sqrt(d[i]);
+			
+				//calculate L=D^(-1/2)*S*D^(-1/2) into similarity matrix
+				for(AffinityMatrix.Entry entry:am)
+				{
+					if(entry.rowIndex()>=entry.columnIndex()) continue;//symmetric, diagonal is 0
+					temp=d[entry.rowIndex()]*entry.value()*d[entry.columnIndex()];
+					am.setAffinity(entry.rowIndex(),entry.columnIndex(),temp);
+					am.setAffinity(entry.columnIndex(),entry.rowIndex(),temp);
+				}
 			}
 			
-			//calculate the eigen decomposition
-			eigen=new EigenDecompositionImpl(am.toCommonosMatrix(),MathUtils.SAFE_MIN);
+			//calculate the top k eigenvectors
+			if(k>am.size()) throw new IllegalArgumentException(
+					"too many clusters: "+k+", should smaller than or equal to: "+am.size());
+			eigen=eigensolver.topEigenvectors(am,k,null);
 		}
 
 		//perform k-means clustering on new dataset
@@ -149,23 +172,24 @@ private int numband=15;//number of frequency band
 	}
 
 	/**
-	 * build mapped dataset from eigen decomposition
+	 * build mapped dataset from eigenvectors
 	 * @param eigen
-	 * the eigen decomposition of Laplacian matrix from original dataset
+	 * the top eigenvectors of Laplacian matrix from original dataset, each 
+	 * row is an eigenvector, sorted according to decendent eigenvalue order
 	 * @param k
 	 * number of clusters prefered
 	 * @return
 	 */
-	private List<double[]> buildMappedDataset(EigenDecomposition eigen,int k)
+	private List<double[]> buildMappedDataset(double[][] eigen,int k)
 	{
 	int numsamples;
 	List<double[]> dataset;
-	RealVector ev;
+	double[] ev;
 	
 		/*
 		 * build empty dataset
 		 */
-		numsamples=eigen.getEigenvector(0).getDimension();
+		numsamples=eigen[0].length;
 		if(k>numsamples) throw new IllegalArgumentException(
 				"too many clusters: "+k+", should smaller than or equal to: "+numsamples);
 		dataset=new ArrayList<double[]>(numsamples);
@@ -177,8 +201,8 @@ private int numband=15;//number of frequency band
 			 * Get the top-k largest eigenvalue corresponding eigenvector, 
 			 * the eigenvalues are already sorted according to decendent order.
 			 */
-			ev=eigen.getEigenvector(j);
-			for(int i=0;i<numsamples;i++) dataset.get(i)[j]=ev.getEntry(i);
+			ev=eigen[j];
+			for(int i=0;i<numsamples;i++) dataset.get(i)[j]=ev[i];
 		}
 		//normalize to unit vector
 		for(int i=0;i<dataset.size();i++) BLAS.normalize(dataset.get(i));
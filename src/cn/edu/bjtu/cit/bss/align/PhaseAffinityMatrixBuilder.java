@@ -53,7 +53,7 @@ private CommonFeature feature;//used to calculate features
 		policy.checkDemixingModel(demixm);
 		policy.checkSubbandSize(offset,len);
 			
-		am=new DenseAffinityMatrix(policy.numSources()*len);
+		am=this.newAffinityMatrix(policy.numSources()*len);
 		fn=new LinkedList<double[][]>();
 
 		//initialize
@@ -35,7 +35,7 @@ private int numchout;//number of output channels
 	int fblen,binidx;
 	AffinityMatrix.Entry entry,nb;
 	
-		am2=new DenseAffinityMatrix(am.size());
+		am2=am.newAffinityMatrix(am.size());
 		nbmap=new HashMap<Integer,AffinityMatrix.Entry>();
 		fblen=am.size()/numchout;//frequency band length
 		
@@ -242,6 +242,11 @@ private int numnonzero=0;//number of nonzero entries
 		return new SparseColumnIterator(idx2);
 	}
 	
+	public AffinityMatrix newAffinityMatrix(int size)
+	{
+		return new SparseAffinityMatrix(size);
+	}
+	
 	/**
 	 * calculate this+another
 	 * @param another
@@ -24,6 +24,7 @@ private static final long serialVersionUID=7952464139458320836L;
 private int neighborhood=20;//neighbor bins in affinity matrix construction
 private AffinityMatrixBuilder builder=null;//used to build affinity matrix
 private int numband=10;//number of frequency bands
+private LanczosEigensolver eigensolver=new LanczosEigensolver();//used to get the top eigenvectors
 
 	public void align(DemixingModel demixm)
 	{
@@ -74,7 +75,7 @@ private int numband=10;//number of frequency bands
 	 */
 	public AffinityMatrixBuilder affinityMatrixBuilder()
 	{
-		if(builder==null) builder=new DefaultAffinityMatrixBuilder((FDBSS)this.getFDBSSAlgorithm(),neighborhood);
+		if(builder==null) builder=newAffinityMatrixBuilder((FDBSS)this.getFDBSSAlgorithm(),neighborhood);
 		return builder;
 	}
 	
@@ -121,16 +122,13 @@ private int numband=10;//number of frequency bands
 		
 		//get the order
 		{
-		EigenDecompositionImpl eigen;
 		double[] q1;
 		int[][] indicator;
 		PEntry[] pentry;
 		int idx;
 		
-			//calculate the eigen decomposition
-			eigen=new EigenDecompositionImpl(laplacian.toCommonosMatrix(),MathUtils.SAFE_MIN);
-
-			q1=eigen.getEigenvector(1).getData();
+			//eigenvector of the second largest eigenvalue
+			q1=eigensolver.topEigenvectors(laplacian,2,null)[1];
 			BLAS.entryMultiply(d,q1,q1);
 
 			indicator=new int[this.numSources()][am.size()/this.numSources()];
@@ -130,7 +130,7 @@ private static final long serialVersionUID=-1487046616812377562L;
 	{
 	AffinityMatrix am2;
 	
-		am2=new DenseAffinityMatrix(am.size());
+		am2=am.newAffinityMatrix(am.size());
 		for(AffinityMatrix.Entry entry:am) 
 			if(entry.value()>=th) 
 				am2.setAffinity(entry.rowIndex(),entry.columnIndex(),entry.value());
@@ -51,7 +51,7 @@ private static final long serialVersionUID=7351365047677060915L;
 				"data/SawadaDataset/s2.wav");
 
 		//load a virtual room for mixing environment
-		evaluator.setMixingFilters(new VirtualRoom(new File("data/VirtualRooms/2x2/SawadaRoom2x2.txt")));
+		evaluator.setMixingFilters(new File("data/VirtualRooms/2x2/SawadaRoom2x2.txt"));
 	
 		/*
 		 * or use random generated filters to mix signals
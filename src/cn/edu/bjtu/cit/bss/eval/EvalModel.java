@@ -166,7 +166,7 @@ private BSSModel demixm;//corresponding demixing model
 	DemixingModel demixm;
 	EvalModel eval;
 	
-		mixm=new MixingModel((new VirtualRoom(new File("data/VirtualRooms/2x2/SawadaRoom.txt"))).tdFilters(),4096);
+		mixm=new MixingModel(RIRCache.defaultCache().loadVirtualRoom(new File("data/VirtualRooms/2x2/SawadaRoom.txt")).tdFilters(),4096);
 		demixm=(new FDBSS(new File("temp"))).loadDemixingModel();
 		eval=new EvalModel(mixm,demixm);
 
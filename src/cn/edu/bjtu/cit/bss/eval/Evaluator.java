@@ -711,6 +711,35 @@ private MixingModel model;//the mixing model
 		model=new MixingModel(room.tdFilters(),fftSize());
 	}
 	
+	/**
+	 * set mixing filters from a virtual room in text format, the parsed room 
+	 * is cached on disk
+	 * @param roomfile
+	 * a virtual room in text format
+	 * @throws IOException
+	 */
+	public void setMixingFilters(File roomfile) throws IOException
+	{
+		setMixingFilters(RIRCache.defaultCache().loadVirtualRoom(roomfile));
+	}
+	
+	/**
+	 * set mixing filters from a generated virtual room, rooms are cached on disk
+	 * @param rirg
+	 * the generator
+	 * @param sourceloc
+	 * N x 3 array for source locations
+	 * @param sensorloc
+	 * M x 3 array for sensor locations
+	 * @param len
+	 * filter length in taps
+	 * @throws IOException
+	 */
+	public void setMixingFilters(RIRGenerator rirg,double[][] sourceloc,double[][] sensorloc,int len) throws IOException
+	{
+		setMixingFilters(RIRCache.defaultCache().generateVirtualRoom(rirg,sourceloc,sensorloc,len));
+	}
+	
 	/**
 	 * set mixing filters directly
 	 * @param tdmixf
@@ -1592,7 +1621,7 @@ eof:		for(;;)
 //				0,1,2,3,4,5,6,7,8,9,10,11,12,13,14,15);
 		
 //		evaluator.setMixingFilters(
-//				new VirtualRoom(new File("data/VirtualRooms/2x2/SawadaRoom2x2.txt")));
+//				new File("data/VirtualRooms/2x2/SawadaRoom2x2.txt"));
 		
 		/*
 		 * mix in frequency domain for experiments
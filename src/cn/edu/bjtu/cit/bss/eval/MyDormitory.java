@@ -34,7 +34,7 @@ private static final long serialVersionUID=6643880371071326530L;
 	VirtualRoom room;
 	
 		rirg=new RIRGenerator(c,fs,roomsize,rt60);
-		room=rirg.generateVirtualRoom(sourceloc,sensorloc,len);
+		room=RIRCache.defaultCache().generateVirtualRoom(rirg,sourceloc,sensorloc,len);
 		room.save(new File("data/VirtualRooms/2x2/MyDormitory.txt"));
 		System.out.println(room);
 	}	
@@ -33,7 +33,7 @@ private static final long serialVersionUID=-8678933766283420354L;
 	MixingModel mixm;
 	
 		rirg=new RIRGenerator(c,fs,roomsize,rt60);
-		room=rirg.generateVirtualRoom(sourceloc,sensorloc,len);
+		room=RIRCache.defaultCache().generateVirtualRoom(rirg,sourceloc,sensorloc,len);
 		room.save(new File("data/VirtualRooms/2x2/OurLab.txt"));
 		
 		System.out.println(room);
@@ -0,0 +1,515 @@
+package cn.edu.bjtu.cit.bss.eval;
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import java.util.logging.*;
+
+/**
+ * <h1>Description</h1>
+ * On disk cache of virtual rooms generated by RIRGenerator. An entry is named
+ * by the SHA-1 digest of all parameters which affect the impulse responses:
+ * c, fs, room size, rt60, kernel resolution, source and sensor locations, and
+ * the filter length. An entry starts with these parameters, which are compared
+ * field by field when loaded, followed by the binary format of VirtualRoom.
+ * Rooms loaded from text files are cached in the same way, the parameters are
+ * the canonical path, length and last modified time of the text file, so an
+ * edited file is parsed again.
+ * The total size of entries is bounded, the
+ * least recently used entries are deleted first, the last modified time of an
+ * entry file is used as its last access time, so it is kept across runs.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 18, 2026 9:05:44 PM, revision:
+ */
+public class RIRCache implements Serializable
+{
+private static final long serialVersionUID=2918645315406736672L;
+private static final String SUFFIX=".rir";//entry file suffix
+private static final int FORMAT_VERSION=2;//changed when generated filters or entry layout are changed
+private static final File DEFAULT_PATH=new File("data/VirtualRooms/cache");
+private static final long DEFAULT_CAPACITY=512L*1024*1024;
+private static RIRCache defaultcache;//the default cache
+private static final Logger logger=Logger.getLogger(RIRCache.class.getName());
+private File path;//cache directory
+private long capacity;//maximum total size in bytes
+private long hits=0,misses=0;//statistics
+
+	/**
+	 * @param path
+	 * cache directory, will be created if not exists
+	 * @param capacity
+	 * maximum total size of entries in bytes
+	 */
+	public RIRCache(File path,long capacity)
+	{
+		if(capacity<=0) throw new IllegalArgumentException(
+				"cache capacity must be positive: "+capacity);
+		if(!path.exists()&&!path.mkdirs()) throw new IllegalArgumentException(
+				"failed to create cache directory: "+path);
+		if(!path.isDirectory()) throw new IllegalArgumentException(
+				"not a directory: "+path);
+
+		this.path=path;
+		this.capacity=capacity;
+	}
+
+	/**
+	 * get the default cache in data/VirtualRooms/cache, at most 512 MB
+	 * @return
+	 */
+	public static synchronized RIRCache defaultCache()
+	{
+		if(defaultcache==null) defaultcache=new RIRCache(DEFAULT_PATH,DEFAULT_CAPACITY);
+		return defaultcache;
+	}
+
+	/**
+	 * get the cache directory
+	 * @return
+	 */
+	public File path()
+	{
+		return path;
+	}
+
+	/**
+	 * get the maximum total size of entries
+	 * @return
+	 * in bytes
+	 */
+	public long capacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * get the number of cache hits
+	 * @return
+	 */
+	public synchronized long numHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * get the number of cache misses
+	 * @return
+	 */
+	public synchronized long numMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * get the total size of entries currently in the cache
+	 * @return
+	 * in bytes
+	 */
+	public synchronized long size()
+	{
+	long size=0;
+
+		for(File entry:entries()) size+=entry.length();
+		return size;
+	}
+
+	/**
+	 * calculate the key of a virtual room, which is the digest of its parameters
+	 * @param rirg
+	 * the generator
+	 * @param sourceloc
+	 * N x 3 array for source locations
+	 * @param sensorloc
+	 * M x 3 array for sensor locations
+	 * @param len
+	 * filter length in taps
+	 * @return
+	 * hex string of the digest
+	 */
+	public static String key(RIRGenerator rirg,double[][] sourceloc,double[][] sensorloc,int len)
+	{
+		return digest(parameters(rirg,sourceloc,sensorloc,len));
+	}
+
+	/**
+	 * calculate the digest of serialized parameters
+	 * @param params
+	 * serialized parameters
+	 * @return
+	 * hex string of the digest
+	 */
+	private static String digest(byte[] params)
+	{
+	MessageDigest md;
+	StringBuilder key;
+
+		try
+		{
+			md=MessageDigest.getInstance("SHA-1");
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException("SHA-1 not supported",e);
+		}
+
+		key=new StringBuilder();
+		for(byte b:md.digest(params))
+			key.append(Character.forDigit((b>>4)&0x0f,16)).append(Character.forDigit(b&0x0f,16));
+		return key.toString();
+	}
+
+	/**
+	 * serialize all parameters which affect the impulse responses
+	 * @param rirg
+	 * the generator
+	 * @param sourceloc
+	 * N x 3 array for source locations
+	 * @param sensorloc
+	 * M x 3 array for sensor locations
+	 * @param len
+	 * filter length in taps
+	 * @return
+	 */
+	private static byte[] parameters(RIRGenerator rirg,double[][] sourceloc,double[][] sensorloc,int len)
+	{
+	ByteArrayOutputStream bytes;
+	DataOutputStream out;
+
+		bytes=new ByteArrayOutputStream();
+		out=new DataOutputStream(bytes);
+		try
+		{
+			out.writeInt(FORMAT_VERSION);
+			out.writeDouble(rirg.propagationVelocity());
+			out.writeDouble(rirg.samplingRate());
+			for(double d:rirg.roomSize()) out.writeDouble(d);
+			out.writeDouble(rirg.reverberationTime());
+			out.writeInt(rirg.kernelResolution());
+
+			out.writeInt(sourceloc.length);
+			for(double[] loc:sourceloc)
+				for(double d:loc) out.writeDouble(d);
+			out.writeInt(sensorloc.length);
+			for(double[] loc:sensorloc)
+				for(double d:loc) out.writeDouble(d);
+			out.writeInt(len);
+			out.flush();
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException("failed to write key",e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * serialize the identity of a virtual room text file
+	 * @param roomfile
+	 * the text file
+	 * @return
+	 * @throws IOException
+	 */
+	private static byte[] parameters(File roomfile) throws IOException
+	{
+	ByteArrayOutputStream bytes;
+	DataOutputStream out;
+
+		bytes=new ByteArrayOutputStream();
+		out=new DataOutputStream(bytes);
+		out.writeInt(FORMAT_VERSION);
+		out.writeUTF(roomfile.getCanonicalPath());
+		out.writeLong(roomfile.length());
+		out.writeLong(roomfile.lastModified());
+		out.flush();
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * get an entry from the cache and update the statistics
+	 * @param entry
+	 * entry file
+	 * @param params
+	 * serialized parameters of the required room
+	 * @return
+	 * null if not cached
+	 */
+	private synchronized VirtualRoom get(File entry,byte[] params)
+	{
+	VirtualRoom room=null;
+
+		if(entry.exists())
+			try
+			{
+				//guard against digest collisions and stale files
+				room=load(entry,params);
+			}
+			catch(IOException e)
+			{
+				logger.warning("failed to load cache entry "+entry+": "+e);
+			}
+
+		if(room!=null)
+		{
+			hits++;
+			entry.setLastModified(System.currentTimeMillis());
+		}
+		else misses++;
+		return room;
+	}
+
+	/**
+	 * get a virtual room from the cache, or generate and put it into the cache
+	 * @param rirg
+	 * the generator
+	 * @param sourceloc
+	 * N x 3 array for source locations
+	 * @param sensorloc
+	 * M x 3 array for sensor locations
+	 * @param len
+	 * filter length in taps
+	 * @return
+	 * @throws IOException
+	 */
+	public VirtualRoom generateVirtualRoom(RIRGenerator rirg,double[][] sourceloc,double[][] sensorloc,int len) throws IOException
+	{
+	byte[] params;
+	File entry;
+	VirtualRoom room=null;
+
+		params=parameters(rirg,sourceloc,sensorloc,len);
+		entry=new File(path,digest(params)+SUFFIX);
+		room=get(entry,params);
+		if(room!=null) return room;
+
+		/*
+		 * generate outside the lock, the generator is parallel itself
+		 */
+		room=rirg.generateVirtualRoom(sourceloc,sensorloc,len);
+		put(entry,params,room);
+		return room;
+	}
+
+	/**
+	 * Get a virtual room saved in text format from the cache, or parse the 
+	 * text file and put it into the cache. Parsing the filters is much slower 
+	 * than reading the binary entry.
+	 * @param roomfile
+	 * a virtual room in text format
+	 * @return
+	 * @throws IOException
+	 */
+	public VirtualRoom loadVirtualRoom(File roomfile) throws IOException
+	{
+	byte[] params;
+	File entry;
+	VirtualRoom room;
+
+		if(!roomfile.isFile()) throw new FileNotFoundException(roomfile.getPath());
+		params=parameters(roomfile);
+		entry=new File(path,digest(params)+SUFFIX);
+		room=get(entry,params);
+		if(room!=null) return room;
+
+		room=new VirtualRoom(roomfile);
+		put(entry,params,room);
+		return room;
+	}
+
+	/**
+	 * load an entry if it is generated by the required parameters
+	 * @param entry
+	 * entry file
+	 * @param params
+	 * serialized parameters of the required room
+	 * @return
+	 * null if any parameter not match
+	 * @throws IOException
+	 */
+	private VirtualRoom load(File entry,byte[] params) throws IOException
+	{
+	DataInputStream in=null;
+	byte[] params2;
+	VirtualRoom room;
+
+		try
+		{
+			in=new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+
+			//every parameter is compared, including the kernel resolution
+			if(in.readInt()!=params.length) return null;
+			params2=new byte[params.length];
+			in.readFully(params2);
+			if(!Arrays.equals(params,params2)) return null;
+
+			room=VirtualRoom.readBinary(in);
+			if(in.read()!=-1) throw new IOException("cache entry size not match: "+entry);
+			return room;
+		}
+		catch(EOFException e)
+		{
+			throw new IOException("cache entry size not match: "+entry);
+		}
+		finally
+		{
+			try
+			{
+				if(in!=null) in.close();
+			}
+			catch(IOException e)
+			{}
+		}
+	}
+
+	/**
+	 * write an entry and evict the least recently used entries if the cache
+	 * is full, the entry is written to a temporary file first, then renamed,
+	 * so other processes never see partial entries
+	 * @param entry
+	 * entry file
+	 * @param params
+	 * serialized parameters of the room
+	 * @param room
+	 * the virtual room
+	 * @throws IOException
+	 */
+	private synchronized void put(File entry,byte[] params,VirtualRoom room) throws IOException
+	{
+	File temp;
+	DataOutputStream out=null;
+	List<File> entries;
+	long size=0;
+
+		temp=File.createTempFile("rir",".tmp",path);
+		try
+		{
+			try
+			{
+				out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+				out.writeInt(params.length);
+				out.write(params);
+				room.writeBinary(out);
+				out.flush();
+			}
+			finally
+			{
+				if(out!=null) out.close();
+			}
+			if(temp.length()>capacity)
+			{
+				logger.info("virtual room is larger than the cache capacity, not cached: "+temp.length());
+				return;
+			}
+			if(entry.exists()) entry.delete();
+			if(!temp.renameTo(entry)) throw new IOException(
+					"failed to rename "+temp+" to "+entry);
+		}
+		finally
+		{
+			if(temp.exists()) temp.delete();
+		}
+
+		/*
+		 * evict least recently used entries
+		 */
+		entries=entries();
+		for(File f:entries) size+=f.length();
+		if(size<=capacity) return;
+
+		Collections.sort(entries,new Comparator<File>()
+		{
+			public int compare(File f1,File f2)
+			{
+				if(f1.lastModified()<f2.lastModified()) return -1;
+				else if(f1.lastModified()>f2.lastModified()) return 1;
+				else return 0;
+			}
+		});
+		for(File f:entries)
+		{
+			if(size<=capacity) break;
+			if(f.equals(entry)) continue;
+
+			size-=f.length();
+			if(!f.delete()) logger.warning("failed to delete cache entry: "+f);
+		}
+	}
+
+	/**
+	 * get all entry files
+	 * @return
+	 */
+	private List<File> entries()
+	{
+	File[] files;
+
+		files=path.listFiles(new FileFilter()
+		{
+			public boolean accept(File f)
+			{
+				return f.isFile()&&f.getName().endsWith(SUFFIX);
+			}
+		});
+
+		if(files==null) return new ArrayList<File>();
+		else return new ArrayList<File>(Arrays.asList(files));
+	}
+
+	/**
+	 * delete all entries
+	 */
+	public synchronized void clear()
+	{
+		for(File f:entries()) f.delete();
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+	double c=340;
+	double fs=8000;
+	double[] roomsize={3.55,4.45,2.5};
+	double[] rt60s={0.13,0.3,0.6};
+	double[][] sourceloc={{0.37,3.09,1.35},{3,3.09,1.35}};
+	double[][] sensorloc={{1.36,2.34,1.35},{2.1,2.34,1.35}};
+	int len=2048;
+	RIRCache cache;
+	RIRGenerator rirg;
+	VirtualRoom room1,room2;
+	File text;
+	long t1,t2,t3;
+
+		cache=new RIRCache(new File("temp/rircache"),64L*1024*1024);
+		cache.clear();
+		text=new File("temp/rircache.txt");
+
+		System.out.println("rt60 (s), generate (ms), cache hit (ms), parse text (ms), identical");
+		for(double rt60:rt60s)
+		{
+			rirg=new RIRGenerator(c,fs,roomsize,rt60);
+
+			t1=System.currentTimeMillis();
+			room1=cache.generateVirtualRoom(rirg,sourceloc,sensorloc,len);
+			t1=System.currentTimeMillis()-t1;
+
+			t2=System.currentTimeMillis();
+			room2=cache.generateVirtualRoom(rirg,sourceloc,sensorloc,len);
+			t2=System.currentTimeMillis()-t2;
+
+			room1.save(text);
+			t3=System.currentTimeMillis();
+			new VirtualRoom(text);
+			t3=System.currentTimeMillis()-t3;
+
+			System.out.println(rt60+", "+t1+", "+t2+", "+t3+", "+
+					Arrays.deepEquals(room1.tdFilters(),room2.tdFilters()));
+		}
+		text.delete();
+
+		System.out.println("hits: "+cache.numHits()+", misses: "+cache.numMisses()+
+				", size: "+cache.size()+" bytes");
+	}
+}
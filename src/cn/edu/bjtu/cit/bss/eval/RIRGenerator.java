@@ -1,12 +1,17 @@
 package cn.edu.bjtu.cit.bss.eval;
 import java.io.*;
 import java.util.*;
-import cn.edu.bjtu.cit.bss.util.*;
+import java.util.concurrent.*;
 
 /**
  * <h1>Description</h1>
  * Room Impulse Response generator, modified from E.A.P. Habets' code.
  * See: http://home.tiscali.nl/ehabets/rir_generator.html
+ * <br>
+ * Instance methods generate impulse responses concurrently: image sources are
+ * divided by their x shell index among threads, each thread accumulates into
+ * its own buffer, and the buffers are summed when all threads finished. Shells
+ * which are too far to reach the required filter length are skipped.
  * <h1>abstract</h1>
  * <h1>keywords</h1>
  * @author nay0648<br>
@@ -22,6 +27,9 @@ private double c;//signal propagation speed (m/s)
 private double fs;//sampling rate (Hz)
 private double[] roomsize;//room size x, y, z (m)
 private double rt60;//reverberation time (s)
+private int parallelism=Runtime.getRuntime().availableProcessors();//number of threads
+private int kernelresolution=0;//tabulated fractional delays per sample, 0 to evaluate the kernel exactly
+private transient double[][] kernel;//tabulated low-pass interpolation kernel, [fractional delay][tap]
 
 	/**
 	 * @param c
@@ -81,6 +89,77 @@ private double rt60;//reverberation time (s)
 		return rt60;
 	}
 
+	/**
+	 * get the number of threads used to generate impulse responses
+	 * @return
+	 */
+	public int parallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * set the number of threads used to generate impulse responses
+	 * @param parallelism
+	 * number of threads
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if(parallelism<1) throw new IllegalArgumentException(
+				"parallelism must be positive: "+parallelism);
+		this.parallelism=parallelism;
+	}
+
+	/**
+	 * get the resolution of the tabulated fractional delay kernel
+	 * @return
+	 * 0 if the kernel is evaluated exactly for every image source
+	 */
+	public int kernelResolution()
+	{
+		return kernelresolution;
+	}
+
+	/**
+	 * Set the resolution of the tabulated fractional delay kernel. The windowed
+	 * sinc kernel is tabulated for resolution+1 fractional delays in [0, 1], and
+	 * linearly interpolated for each image source, instead of evaluating 
+	 * 2*round(0.004*fs)+1 sines per image source.
+	 * @param resolution
+	 * number of tabulated fractional delays per sample, 0 to evaluate the 
+	 * kernel exactly
+	 */
+	public synchronized void setKernelResolution(int resolution)
+	{
+		if(resolution<0) throw new IllegalArgumentException(
+				"kernel resolution must not be negative: "+resolution);
+		kernelresolution=resolution;
+		kernel=null;
+	}
+
+	/**
+	 * get the tabulated fractional delay kernel
+	 * @param tw
+	 * kernel length is tw+1
+	 * @param hanning
+	 * the hanning window
+	 * @return
+	 * null if the kernel is evaluated exactly
+	 */
+	private synchronized double[][] kernelTable(int tw,double[] hanning)
+	{
+		if(kernelresolution==0) return null;
+
+		if(kernel==null)
+		{
+			kernel=new double[kernelresolution+1][tw+1];
+			for(int i=0;i<=kernelresolution;i++)
+				for(int n=0;n<tw+1;n++) kernel[i][n]=
+					hanning[n]*sinc(M_PI*(n-(double)i/kernelresolution-(tw/2)));
+		}
+		return kernel;
+	}
+
 	/**
 	 * show usage
 	 */
@@ -524,7 +603,29 @@ private double rt60;//reverberation time (s)
 	}
 	
 	/**
-	 * generate a mixing system
+	 * Generate room impulse response concurrently, the result is the same as 
+	 * the static method with the same room parameters, up to rounding errors 
+	 * of different summation order, or the tabulated kernel error if it is used.
+	 * @param sensorloc
+	 * sensor location (x, y, z) in meters
+	 * @param sourceloc
+	 * source location (x, y, z) in meters
+	 * @param len
+	 * rir length in taps
+	 * @return
+	 */
+	public double[] rir(double[] sensorloc,double[] sourceloc,int len)
+	{
+	ImageSources images;
+	
+		images=new ImageSources(sensorloc,sourceloc,len);
+		execute(images.tasks);
+		return images.response();
+	}
+
+	/**
+	 * generate a mixing system, impulse responses of all source sensor pairs 
+	 * are generated concurrently
 	 * @param sourceloc
 	 * N x 3 array for source locations
 	 * @param sensorloc
@@ -536,34 +637,368 @@ private double rt60;//reverberation time (s)
 	 */
 	public VirtualRoom generateVirtualRoom(double[][] sourceloc,double[][] sensorloc,int len)
 	{
+	ImageSources[][] images;
+	List<ShellTask> tasks;
 	double[][][] filters;
 	
+		images=new ImageSources[sensorloc.length][sourceloc.length];
+		tasks=new LinkedList<ShellTask>();
+		for(int sensorj=0;sensorj<sensorloc.length;sensorj++) 
+			for(int sourcei=0;sourcei<sourceloc.length;sourcei++) 
+			{
+				images[sensorj][sourcei]=new ImageSources(sensorloc[sensorj],sourceloc[sourcei],len);
+				tasks.addAll(images[sensorj][sourcei].tasks);
+			}
+		execute(tasks);
+
 		/*
-		 * generate rir filters
+		 * collect rir filters
 		 */
 		filters=new double[sensorloc.length][sourceloc.length][];
-		
 		for(int sensorj=0;sensorj<sensorloc.length;sensorj++) 
 			for(int sourcei=0;sourcei<sourceloc.length;sourcei++) 
-				filters[sensorj][sourcei]=rir(c,fs,sensorloc[sensorj],sourceloc[sourcei],roomsize,rt60,len);
+				filters[sensorj][sourcei]=images[sensorj][sourcei].response();
 
 		return new VirtualRoom(c,fs,roomsize,rt60,sourceloc,sensorloc,filters);
 	}
 
+	/**
+	 * run tasks in a thread pool
+	 * @param tasks
+	 * tasks
+	 */
+	private void execute(List<ShellTask> tasks)
+	{
+	ForkJoinPool pool;
+	
+		if(parallelism<=1)
+		{
+			for(ShellTask task:tasks) task.invoke();
+			return;
+		}
+
+		pool=new ForkJoinPool(parallelism);
+		try
+		{
+			for(ShellTask task:tasks) pool.execute(task);
+			for(ShellTask task:tasks) task.join();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * <h1>Description</h1>
+	 * Image sources of a source sensor pair, with constants precomputed from 
+	 * the room parameters. Only omnidirectional microphones, maximum 
+	 * reflection order and the high-pass filter are supported, as the static 
+	 * methods.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 18, 2026 7:26:38 PM, revision:
+	 */
+	private class ImageSources
+	{
+	private double cts;//distance in meters of a sample
+	private double[] r=new double[3];//sensor location in samples
+	private double[] s=new double[3];//source location in samples
+	private double[] l=new double[3];//room size in samples
+	private int n1,n2,n3;//number of shells in each dimension
+	private int len;//rir length in taps
+	private int bound;//number of samples calculated, no more than len
+	private int limit;//image sources as far as this distance can not affect the result
+	private int tw;//kernel length is tw+1
+	private double[] hanning;//hanning window
+	private double[][] kernel;//tabulated kernel, null to evaluate exactly
+	private double[] betapow;//powers of the reflection coefficient
+	private List<ShellTask> tasks;//tasks to calculate image sources
+	
+		/**
+		 * @param sensorloc
+		 * sensor location (x, y, z) in meters
+		 * @param sourceloc
+		 * source location (x, y, z) in meters
+		 * @param len
+		 * rir length in taps
+		 */
+		public ImageSources(double[] sensorloc,double[] sourceloc,int len)
+		{
+		double v,area,alfa,beta;
+		int nsamples,numtasks;
+		
+			/*
+			 * reflection coefficient from reverberation time
+			 */
+			v=roomsize[0]*roomsize[1]*roomsize[2];
+			area=2*(roomsize[0]*roomsize[2]+roomsize[1]*roomsize[2]+roomsize[0]*roomsize[1]);
+			alfa=24*v*Math.log(10.0)/(c*area*rt60);
+			if(alfa>1) throw new IllegalArgumentException(
+					"Error: The reflection coefficients cannot be calculated using the current "+
+					"room parameters, i.e. room size and reverberation time.Please "+
+					"specify the reflection coefficients or change the room parameters.");
+			beta=Math.sqrt(1-alfa);
+			nsamples=(int)(rt60*fs);
+			
+			cts=c/fs;
+			for(int i=0;i<3;i++)
+			{
+				r[i]=sensorloc[i]/cts;
+				s[i]=sourceloc[i]/cts;
+				l[i]=roomsize[i]/cts;
+			}
+			n1=(int)Math.ceil(nsamples/(2*l[0]));
+			n2=(int)Math.ceil(nsamples/(2*l[1]));
+			n3=(int)Math.ceil(nsamples/(2*l[2]));
+			
+			/*
+			 * Samples after the filter length are not needed, the high-pass 
+			 * filter is causal, so the first bound samples are not affected.
+			 */
+			this.len=len;
+			bound=Math.min(nsamples,len);
+			tw=2*(int)Math.round(0.004*fs);
+			limit=Math.min(nsamples,bound+tw/2);
+
+			hanning=new double[tw+1];
+			for(int n=0;n<tw+1;n++) hanning[n]=0.5*(1+Math.cos(2*M_PI*(n+tw/2)/tw));
+			kernel=kernelTable(tw,hanning);
+
+			betapow=new double[Math.max(n1,Math.max(n2,n3))+2];
+			for(int i=0;i<betapow.length;i++) betapow[i]=Math.pow(beta,i);
+			
+			/*
+			 * x shells are interleaved among tasks for load balance
+			 */
+			numtasks=Math.min(2*n1+1,4*parallelism);
+			tasks=new ArrayList<ShellTask>(numtasks);
+			for(int i=0;i<numtasks;i++) tasks.add(new ShellTask(this,-n1+i,numtasks));
+		}
+		
+		/**
+		 * sum results of all tasks and apply the high-pass filter, must be 
+		 * called after all tasks are finished
+		 * @return
+		 */
+		public double[] response()
+		{
+		double[] imp;
+		double w,r1,b1,b2,a1,x0,y0=0,y1=0,y2=0;
+		
+			imp=new double[len];
+			for(ShellTask task:tasks) 
+			{
+				for(int n=0;n<bound;n++) imp[n]+=task.buffer[n];
+				task.buffer=null;
+			}
+			
+			//'Original' high-pass filter as proposed by Allen and Berkley.
+			w=2*M_PI*100/fs;
+			r1=Math.exp(-w);
+			b1=2*r1*Math.cos(w);
+			b2=-r1*r1;
+			a1=-(1+r1);
+			for(int n=0;n<bound;n++)
+			{
+				x0=imp[n];
+				y2=y1;
+				y1=y0;
+				y0=b1*y1+b2*y2+x0;
+				imp[n]=y0+a1*y1+r1*y2;
+			}
+			
+			return imp;
+		}
+	}
+	
+	/**
+	 * <h1>Description</h1>
+	 * Accumulate image sources of some x shells into its own buffer.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 18, 2026 7:58:12 PM, revision:
+	 */
+	private class ShellTask extends RecursiveAction
+	{
+	private static final long serialVersionUID=-4936427731925430473L;
+	private ImageSources images;//image sources
+	private int first;//the first x shell index
+	private int step;//shell index increment
+	private double[] buffer;//accumulated response
+	
+		/**
+		 * @param images
+		 * image sources
+		 * @param first
+		 * the first x shell index
+		 * @param step
+		 * shell index increment
+		 */
+		public ShellTask(ImageSources images,int first,int step)
+		{
+			this.images=images;
+			this.first=first;
+			this.step=step;
+		}
+		
+		protected void compute()
+		{
+		ImageSources im;
+		double[] lpi;
+		double hx,hy,hz,ix,iy,iz,dx2,dy2,dz2,lim2,refl0,refl1,refl2,dist,strength,pos,weight;
+		int fdist,offset,tidx;
+		double[] k0,k1;
+		
+			im=images;
+			buffer=new double[im.bound];
+			lpi=new double[im.tw+1];
+			lim2=(double)im.limit*im.limit;
+			
+			for(int mx=first;mx<=im.n1;mx+=step)
+			{
+				hx=2*mx*im.l[0];
+				//skip the shell if all its image sources are too far
+				dx2=Math.min(sq(im.s[0]-im.r[0]+hx),sq(-im.s[0]-im.r[0]+hx));
+				if(dx2>=lim2) continue;
+				
+				for(int my=-im.n2;my<=im.n2;my++)
+				{
+					hy=2*my*im.l[1];
+					dy2=Math.min(sq(im.s[1]-im.r[1]+hy),sq(-im.s[1]-im.r[1]+hy));
+					if(dx2+dy2>=lim2) continue;
+					
+					for(int mz=-im.n3;mz<=im.n3;mz++)
+					{
+						hz=2*mz*im.l[2];
+						dz2=Math.min(sq(im.s[2]-im.r[2]+hz),sq(-im.s[2]-im.r[2]+hz));
+						if(dx2+dy2+dz2>=lim2) continue;
+						
+						for(int q=0;q<=1;q++)
+						{
+							ix=(1-2*q)*im.s[0]-im.r[0]+hx;
+							refl0=im.betapow[Math.abs(mx-q)]*im.betapow[Math.abs(mx)];
+							
+							for(int j=0;j<=1;j++)
+							{
+								iy=(1-2*j)*im.s[1]-im.r[1]+hy;
+								refl1=im.betapow[Math.abs(my-j)]*im.betapow[Math.abs(my)];
+								
+								for(int k=0;k<=1;k++)
+								{
+									iz=(1-2*k)*im.s[2]-im.r[2]+hz;
+									refl2=im.betapow[Math.abs(mz-k)]*im.betapow[Math.abs(mz)];
+
+									dist=Math.sqrt(ix*ix+iy*iy+iz*iz);
+									fdist=(int)Math.floor(dist);
+									if(fdist>=im.limit) continue;
+									
+									strength=refl0*refl1*refl2/(4*M_PI*dist*im.cts);
+									
+									/*
+									 * low-pass interpolation kernel
+									 */
+									if(im.kernel==null)
+										for(int n=0;n<im.tw+1;n++) 
+											lpi[n]=im.hanning[n]*sinc(M_PI*(n-(dist-fdist)-(im.tw/2)));
+									else
+									{
+										pos=(dist-fdist)*(im.kernel.length-1);
+										tidx=Math.min((int)pos,im.kernel.length-2);
+										weight=pos-tidx;
+										k0=im.kernel[tidx];
+										k1=im.kernel[tidx+1];
+										for(int n=0;n<im.tw+1;n++) lpi[n]=k0[n]+weight*(k1[n]-k0[n]);
+									}
+									
+									offset=fdist-(im.tw/2);
+									for(int n=Math.max(0,-offset);n<im.tw+1&&offset+n<im.bound;n++) 
+										buffer[offset+n]+=strength*lpi[n];
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	private static double sq(double x)
+	{
+		return x*x;
+	}
+
 	public static void main(String[] args)
 	{
 	double c=340;
 	double fs=16000;
-	double[] rl={2,1.5,2};
-	double[] sl={2,3.5,2};
+	double[][] sensorloc={{2,1.5,2},{2.1,1.5,2}};
+	double[][] sourceloc={{2,3.5,2},{3.5,2.5,2}};
 	double[] rsize={5,4,6};
-	double rt60=0.2;
-	int len=2048;
+	double[] rt60s={0.2,0.4,0.8};
+	int[] lens={2048,8192};
+	RIRGenerator rirg;
+	VirtualRoom room;
+	double[][][] h;
+	long t1,t2,t3;
+	double peak,maxdiff1,maxdiff2;
+	double[] h2;
 	
-	double[] h;
-	
-		h=rir(c,fs,rl,sl,rsize,rt60,len);
-		Util.plotSignals(h);
-		System.out.println(h.length);
+		System.out.println("rt60 (s), taps, serial (ms), parallel (ms), tabulated (ms), "+
+				"max relative difference, tabulated max relative difference");
+		for(double rt60:rt60s)
+			for(int len:lens)
+			{
+				/*
+				 * serial version
+				 */
+				h=new double[sensorloc.length][sourceloc.length][];
+				t1=System.currentTimeMillis();
+				for(int j=0;j<sensorloc.length;j++)
+					for(int i=0;i<sourceloc.length;i++)
+						h[j][i]=rir(c,fs,sensorloc[j],sourceloc[i],rsize,rt60,len);
+				t1=System.currentTimeMillis()-t1;
+				
+				rirg=new RIRGenerator(c,fs,rsize,rt60);
+				t2=System.currentTimeMillis();
+				room=rirg.generateVirtualRoom(sourceloc,sensorloc,len);
+				t2=System.currentTimeMillis()-t2;
+				
+				peak=0;
+				maxdiff1=0;
+				for(int j=0;j<sensorloc.length;j++)
+					for(int i=0;i<sourceloc.length;i++)
+					{
+						h2=room.tdFilters()[j][i];
+						for(int tau=0;tau<len;tau++) 
+						{
+							peak=Math.max(peak,Math.abs(h[j][i][tau]));
+							maxdiff1=Math.max(maxdiff1,Math.abs(h[j][i][tau]-h2[tau]));
+						}
+					}
+				
+				rirg.setKernelResolution(1024);
+				t3=System.currentTimeMillis();
+				room=rirg.generateVirtualRoom(sourceloc,sensorloc,len);
+				t3=System.currentTimeMillis()-t3;
+
+				maxdiff2=0;
+				for(int j=0;j<sensorloc.length;j++)
+					for(int i=0;i<sourceloc.length;i++)
+					{
+						h2=room.tdFilters()[j][i];
+						for(int tau=0;tau<len;tau++) 
+							maxdiff2=Math.max(maxdiff2,Math.abs(h[j][i][tau]-h2[tau]));
+					}
+
+				System.out.println(rt60+", "+len+", "+t1+", "+t2+", "+t3+", "+
+						maxdiff1/peak+", "+maxdiff2/peak);
+			}
 	}
 }
@@ -56,7 +56,7 @@ private static final long serialVersionUID=-6749433290434860199L;
 	VirtualRoom room;
 	
 		rirg=new RIRGenerator(c,fs,roomsize,rt60);
-		room=rirg.generateVirtualRoom(sourceloc,sensorloc,len);
+		room=RIRCache.defaultCache().generateVirtualRoom(rirg,sourceloc,sensorloc,len);
 		room.save(new File("data/VirtualRooms/3x3/SawadaRoom3x3.txt"));
 		System.out.println(room);
 	}
@@ -23,6 +23,7 @@ private static final String RT60="reverberation time:";
 private static final String SOURCELOCS="source locations:";
 private static final String SENSORLOCS="sensor locations:";
 private static final String FILTERS="filters:";
+private static final int BINARY_MAGIC=0x52495231;//"RIR1", header of the binary format
 
 private double c;//signal propagation velocity
 private double fs;//sampling rate
@@ -211,6 +212,142 @@ private double[][][] tdmixf;//mixing filters [sensor index][source index][tap in
 		}
 	}
 	
+	/**
+	 * load virtual room from a file in binary format
+	 * @param path
+	 * file path
+	 * @return
+	 * @throws IOException
+	 */
+	public static VirtualRoom loadBinary(File path) throws IOException
+	{
+	DataInputStream in=null;
+	VirtualRoom room;
+	
+		try
+		{
+			in=new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+			room=readBinary(in);
+			if(in.read()!=-1) throw new IOException("binary virtual room file size not match: "+path);
+			return room;
+		}
+		catch(EOFException e)
+		{
+			throw new IOException("binary virtual room file size not match: "+path);
+		}
+		finally
+		{
+			try
+			{
+				if(in!=null) in.close();
+			}
+			catch(IOException e)
+			{}
+		}
+	}
+	
+	/**
+	 * read a virtual room in binary format, see saveBinary(File)
+	 * @param in
+	 * input, the room is read from its current position
+	 * @return
+	 * @throws IOException
+	 */
+	public static VirtualRoom readBinary(DataInput in) throws IOException
+	{
+	int numsensors,numsources,len;
+	double c,fs,rt60;
+	double[] roomsize;
+	double[][] sourceloc,sensorloc;
+	double[][][] tdmixf;
+	
+		/*
+		 * header
+		 */
+		if(in.readInt()!=BINARY_MAGIC) throw new IOException("not a binary virtual room");
+		numsensors=in.readInt();
+		numsources=in.readInt();
+		len=in.readInt();
+		if(numsensors<1||numsources<1||len<1) throw new IOException(
+				"illegal binary virtual room size: "+numsensors+" x "+numsources+" x "+len);
+
+		c=in.readDouble();
+		fs=in.readDouble();
+		roomsize=new double[3];
+		for(int i=0;i<roomsize.length;i++) roomsize[i]=in.readDouble();
+		rt60=in.readDouble();
+		
+		sourceloc=new double[numsources][3];
+		for(double[] loc:sourceloc) 
+			for(int i=0;i<loc.length;i++) loc[i]=in.readDouble();
+		sensorloc=new double[numsensors][3];
+		for(double[] loc:sensorloc) 
+			for(int i=0;i<loc.length;i++) loc[i]=in.readDouble();
+		
+		tdmixf=new double[numsensors][numsources][len];
+		for(int sensorj=0;sensorj<numsensors;sensorj++) 
+			for(int sourcei=0;sourcei<numsources;sourcei++) 
+				for(int tap=0;tap<len;tap++) tdmixf[sensorj][sourcei][tap]=in.readDouble();
+
+		return new VirtualRoom(c,fs,roomsize,rt60,sourceloc,sensorloc,tdmixf);
+	}
+	
+	/**
+	 * get signal propagation velocity in m/s
+	 * @return
+	 */
+	public double propagationVelocity()
+	{
+		return c;
+	}
+	
+	/**
+	 * get sampling rate in Hz
+	 * @return
+	 */
+	public double samplingRate()
+	{
+		return fs;
+	}
+	
+	/**
+	 * get room size x, y, z in meters
+	 * @return
+	 */
+	public double[] roomSize()
+	{
+		return roomsize;
+	}
+	
+	/**
+	 * get room reverberation time in seconds
+	 * @return
+	 */
+	public double reverberationTime()
+	{
+		return rt60;
+	}
+	
+	/**
+	 * get source locations, data are not copied
+	 * @return
+	 * N x 3 array
+	 */
+	public double[][] sourceLocations()
+	{
+		return sourceloc;
+	}
+	
+	/**
+	 * get sensor locations, data are not copied
+	 * @return
+	 * M x 3 array
+	 */
+	public double[][] sensorLocations()
+	{
+		return sensorloc;
+	}
+	
 	/**
 	 * get the number of sources
 	 * @return
@@ -298,6 +435,68 @@ private double[][][] tdmixf;//mixing filters [sensor index][source index][tap in
 		}
 	}
 	
+	/**
+	 * Save the virtual room in binary format: magic number, number of sensors, 
+	 * number of sources, filter length as ints, then c, fs, room size, rt60, 
+	 * source locations, sensor locations and filters as doubles, all in big 
+	 * endian.
+	 * @param path
+	 * destination file path
+	 * @throws IOException
+	 */
+	public void saveBinary(File path) throws IOException
+	{
+	DataOutputStream out=null;
+	
+		try
+		{
+			out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+			writeBinary(out);
+			out.flush();
+		}
+		finally
+		{
+			try
+			{
+				if(out!=null) out.close();
+			}
+			catch(IOException e)
+			{}
+		}
+	}
+	
+	/**
+	 * write the virtual room in binary format, see saveBinary(File)
+	 * @param out
+	 * output
+	 * @throws IOException
+	 */
+	public void writeBinary(DataOutput out) throws IOException
+	{
+		out.writeInt(BINARY_MAGIC);
+		out.writeInt(numSensors());
+		out.writeInt(numSources());
+		out.writeInt(filterLength());
+		
+		out.writeDouble(c);
+		out.writeDouble(fs);
+		for(double d:roomsize) out.writeDouble(d);
+		out.writeDouble(rt60);
+		for(double[] loc:sourceloc) 
+			for(double d:loc) out.writeDouble(d);
+		for(double[] loc:sensorloc) 
+			for(double d:loc) out.writeDouble(d);
+		
+		for(int sensorj=0;sensorj<tdmixf.length;sensorj++) 
+			for(int sourcei=0;sourcei<tdmixf[sensorj].length;sourcei++) 
+			{
+				if(tdmixf[sensorj][sourcei].length!=filterLength()) 
+					throw new IllegalStateException("filter length not match: "+
+							tdmixf[sensorj][sourcei].length+", "+filterLength());
+				for(double d:tdmixf[sensorj][sourcei]) out.writeDouble(d);
+			}
+	}
+	
 	public String toString()
 	{
 	StringBuilder s;
@@ -0,0 +1,668 @@
+package cn.edu.bjtu.cit.bss.ica;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.sound.sampled.*;
+import org.apache.commons.math.complex.*;
+import cn.edu.bjtu.cit.bss.*;
+import cn.edu.bjtu.cit.bss.preprocess.*;
+import cn.edu.bjtu.cit.bss.signalio.*;
+import cn.edu.bjtu.cit.bss.util.*;
+import pp.util.BLAS;
+import pp.util.ComplexBLAS;
+
+/**
+ * <h1>Description</h1>
+ * Complex FastICA with symmetric decorrelation for many frequency bins at once.
+ * Whitened data of a batch of bins are stored in a contiguous primitive buffer
+ * in [bin][channel][frame] order, the fixed-point update of all demixing vectors
+ * of a bin is performed in one pass over the frames, the nonlinearity is
+ * evaluated once for each sample and demixing vector, and no objects are
+ * allocated in the iterations. Bins are partitioned into contiguous chunks and
+ * processed on a fork-join pool, each bin converges independently. The
+ * arithmetic is the same as CFastICA, so a bin gets the same iteration count
+ * and demixing matrix as CFastICA with the same seed.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 21, 2026 10:26:37 AM, revision:
+ */
+public class BatchCFastICA implements Serializable
+{
+private static final long serialVersionUID=-8130524463715021287L;
+private Nonlinearity nonlinearity;//the nonlinearity function
+private double epsilon;//convergence threshold
+private int maxiteration;//max iteration times allowed
+private int parallelism=1;//number of threads, 1 for sequential
+
+	/**
+	 * <h1>Description</h1>
+	 * Whitened data of a batch of frequency bins, real and imaginary parts are
+	 * stored in two contiguous arrays in [bin][channel][frame] order.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 21, 2026 10:31:05 AM, revision:
+	 */
+	public static class BinBuffer implements Serializable
+	{
+	private static final long serialVersionUID=4263082731937650512L;
+	private int numbins;//number of frequency bins
+	private int numchannels;//number of channels of each bin
+	private int numframes;//number of frames of each channel
+	private double[] real,imag;//bin data
+
+		/**
+		 * @param numbins
+		 * number of frequency bins
+		 * @param numchannels
+		 * number of channels of each bin
+		 * @param numframes
+		 * number of frames of each channel
+		 */
+		public BinBuffer(int numbins,int numchannels,int numframes)
+		{
+			if(numbins<1||numchannels<1||numframes<1) throw new IllegalArgumentException(
+					"illegal buffer size: "+numbins+" x "+numchannels+" x "+numframes);
+			if((long)numbins*numchannels*numframes>Integer.MAX_VALUE) throw new IllegalArgumentException(
+					"buffer too large: "+numbins+" x "+numchannels+" x "+numframes);
+
+			this.numbins=numbins;
+			this.numchannels=numchannels;
+			this.numframes=numframes;
+			real=new double[numbins*numchannels*numframes];
+			imag=new double[real.length];
+		}
+
+		/**
+		 * get the number of frequency bins
+		 * @return
+		 */
+		public int numBins()
+		{
+			return numbins;
+		}
+
+		/**
+		 * get the number of channels of each bin
+		 * @return
+		 */
+		public int numChannels()
+		{
+			return numchannels;
+		}
+
+		/**
+		 * get the number of frames of each channel
+		 * @return
+		 */
+		public int numFrames()
+		{
+			return numframes;
+		}
+
+		/**
+		 * copy data of a frequency bin into the buffer
+		 * @param index
+		 * bin index in the buffer
+		 * @param sigs
+		 * already centered and whitened signals, each row is a channel
+		 */
+		public void setBinData(int index,Complex[][] sigs)
+		{
+		int offset;
+
+			if(index<0||index>=numbins) throw new IndexOutOfBoundsException(
+					"bin index out of bounds: "+index+", "+numbins);
+			if(sigs.length!=numchannels||sigs[0].length!=numframes) throw new IllegalArgumentException(
+					"bin data size not match: "+sigs.length+" x "+sigs[0].length+
+					", required: "+numchannels+" x "+numframes);
+
+			for(int i=0;i<numchannels;i++)
+			{
+				offset=(index*numchannels+i)*numframes;
+				for(int j=0;j<numframes;j++)
+				{
+					real[offset+j]=sigs[i][j].getReal();
+					imag[offset+j]=sigs[i][j].getImaginary();
+				}
+			}
+		}
+
+		/**
+		 * copy data of a frequency bin in split complex format into the buffer
+		 * @param index
+		 * bin index in the buffer
+		 * @param sigs
+		 * already centered and whitened signals: [2][channel][frame]
+		 */
+		public void setBinData(int index,double[][][] sigs)
+		{
+			if(index<0||index>=numbins) throw new IndexOutOfBoundsException(
+					"bin index out of bounds: "+index+", "+numbins);
+			ComplexBLAS.checkDestinationSize(sigs,numchannels,numframes);
+
+			for(int i=0;i<numchannels;i++)
+			{
+				System.arraycopy(sigs[0][i],0,real,(index*numchannels+i)*numframes,numframes);
+				System.arraycopy(sigs[1][i],0,imag,(index*numchannels+i)*numframes,numframes);
+			}
+		}
+	}
+
+	/**
+	 * @param ica
+	 * the nonlinearity, convergence threshold and max iteration times are
+	 * taken from it, the symmetric decorrelation policy is required
+	 */
+	public BatchCFastICA(CFastICA ica)
+	{
+		if(ica.decorrelation()!=CFastICA.Decorrelation.symmetric) throw new IllegalArgumentException(
+				"symmetric decorrelation policy required: "+ica.decorrelation());
+
+		nonlinearity=ica.nonlinearity();
+		epsilon=ica.convergenceThreshold();
+		maxiteration=ica.maxIteration();
+	}
+
+	/**
+	 * get the number of threads used
+	 * @return
+	 */
+	public int parallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * set the number of threads used
+	 * @param parallelism
+	 * number of threads, 1 for sequential
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if(parallelism<1) throw new IllegalArgumentException(
+				"parallelism must be positive: "+parallelism);
+		this.parallelism=parallelism;
+	}
+
+	/**
+	 * calculate demixing matrices for all frequency bins in a buffer
+	 * @param buffer
+	 * already centered and whitened bin data
+	 * @param seeds
+	 * initial seeds for each bin, each row is a seed
+	 * @param numit
+	 * space for the number of iterations of each bin, -1 if not converged,
+	 * null if not needed
+	 * @return
+	 * demixing matrices for preprocessed signals, null for bins not converged
+	 */
+	public Complex[][][] demixingMatricesPreprocessed(BinBuffer buffer,Complex[][][] seeds,int[] numit)
+	{
+	Complex[][][] demixp;
+	int numchunks,chunksize;
+	List<ChunkTask> tasks;
+	ForkJoinPool pool;
+
+		if(seeds.length!=buffer.numBins()) throw new IllegalArgumentException(
+				"number of seeds not match: "+seeds.length+", required: "+buffer.numBins());
+		for(Complex[][] seed:seeds)
+			if(seed.length!=buffer.numChannels()||seed[0].length!=buffer.numChannels())
+				throw new IllegalArgumentException("illegal seeds size: "+seed.length+" x "+seed[0].length+
+						", required: "+buffer.numChannels()+" x "+buffer.numChannels());
+		if(numit==null) numit=new int[buffer.numBins()];
+		else if(numit.length!=buffer.numBins()) throw new IllegalArgumentException(
+				"iteration count size not match: "+numit.length+", required: "+buffer.numBins());
+
+		demixp=new Complex[buffer.numBins()][][];
+		numchunks=Math.min(parallelism,buffer.numBins());
+		chunksize=(int)Math.ceil((double)buffer.numBins()/numchunks);
+
+		tasks=new ArrayList<ChunkTask>(numchunks);
+		for(int offset=0;offset<buffer.numBins();offset+=chunksize)
+			tasks.add(new ChunkTask(buffer,seeds,demixp,numit,
+					offset,Math.min(offset+chunksize,buffer.numBins())));
+
+		if(tasks.size()==1) tasks.get(0).invoke();
+		else
+		{
+			pool=new ForkJoinPool(parallelism);
+			try
+			{
+				for(ChunkTask task:tasks) pool.execute(task);
+				//results are written into different entries by each task
+				for(ChunkTask task:tasks) task.join();
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+		}
+
+		return demixp;
+	}
+
+	/**
+	 * <h1>Description</h1>
+	 * Calculate demixing matrices for a contiguous chunk of frequency bins in a
+	 * buffer, with its own working space.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 21, 2026 11:02:48 AM, revision:
+	 */
+	private class ChunkTask extends RecursiveAction
+	{
+	private static final long serialVersionUID=6684035208130640119L;
+	private BinBuffer buffer;//bin data
+	private Complex[][][] seeds;//initial seeds
+	private Complex[][][] demixp;//used to store results
+	private int[] numit;//used to store iteration counts
+	private int binstart;//the first bin index, inclusive
+	private int binend;//the last bin index, exclusive
+	/*
+	 * working space
+	 */
+	private double[][] wr,wi;//current demixing vectors, each row is a vector
+	private double[][] w1r,w1i;//new demixing vectors
+	private double[] ur,ui;//w^Hx of each vector for a sample
+	private double[] eg;//the second expectation of each vector
+	private double[][] cr,ci;//X'*X, then (X'*X)^-0.5
+	private double[][] vr,vi;//eigenvectors scaled by D^-0.5
+	private double[] ed;//eigenvalues
+	private double[][] evr,evi;//eigenvectors
+	private HermitianEigensolver eigensolver;
+
+		/**
+		 * @param buffer
+		 * bin data
+		 * @param seeds
+		 * initial seeds
+		 * @param demixp
+		 * used to store results
+		 * @param numit
+		 * used to store iteration counts
+		 * @param binstart
+		 * the first bin index, inclusive
+		 * @param binend
+		 * the last bin index, exclusive
+		 */
+		public ChunkTask(BinBuffer buffer,Complex[][][] seeds,Complex[][][] demixp,int[] numit,int binstart,int binend)
+		{
+			this.buffer=buffer;
+			this.seeds=seeds;
+			this.demixp=demixp;
+			this.numit=numit;
+			this.binstart=binstart;
+			this.binend=binend;
+		}
+
+		protected void compute()
+		{
+		int n;
+
+			n=buffer.numChannels();
+			wr=new double[n][n];
+			wi=new double[n][n];
+			w1r=new double[n][n];
+			w1i=new double[n][n];
+			ur=new double[n];
+			ui=new double[n];
+			eg=new double[n];
+			cr=new double[n][n];
+			ci=new double[n][n];
+			vr=new double[n][n];
+			vi=new double[n][n];
+			ed=new double[n];
+			evr=new double[n][n];
+			evi=new double[n][n];
+			eigensolver=new JacobiEigensolver();
+
+			for(int binidx=binstart;binidx<binend;binidx++)
+			{
+				numit[binidx]=demixingMatrix(binidx);
+				if(numit[binidx]>0) demixp[binidx]=demixingMatrix();
+			}
+		}
+
+		/**
+		 * perform the symmetric fixed-point iteration on a bin
+		 * @param binidx
+		 * bin index in the buffer
+		 * @return
+		 * number of iterations, -1 if not converged
+		 */
+		private int demixingMatrix(int binidx)
+		{
+		Complex[][] demix;
+		double[][] swap;
+		double sr,si,cos,mincos;
+		int n;
+
+			n=buffer.numChannels();
+
+			/*
+			 * the initial demixing matrix
+			 */
+			demix=BLAS.copy(seeds[binidx],null);
+			BLAS.orthogonalize(demix);
+			for(int i=0;i<n;i++)
+				for(int j=0;j<n;j++)
+				{
+					wr[i][j]=demix[i][j].getReal();
+					wi[i][j]=demix[i][j].getImaginary();
+				}
+
+			for(int it=1;it<=maxiteration;it++)
+			{
+				oneStepIteration(binidx);
+				symmetricDecorrelation();
+
+				/*
+				 * to see if the direction converges
+				 */
+				mincos=1;
+				for(int i=0;i<n;i++)
+				{
+					sr=0;
+					si=0;
+					for(int k=0;k<n;k++)
+					{
+						sr+=wr[i][k]*w1r[i][k]+wi[i][k]*w1i[i][k];
+						si+=wr[i][k]*w1i[i][k]-wi[i][k]*w1r[i][k];
+					}
+					//the same modulus as CFastICA
+					cos=new Complex(sr,si).abs();
+					if(cos<mincos) mincos=cos;
+				}
+				if(Math.abs(1-mincos)<=epsilon) return it;
+
+				/*
+				 * not converge, continue the iteration
+				 */
+				swap=w1r;
+				w1r=wr;
+				wr=swap;
+				swap=w1i;
+				w1i=wi;
+				wi=swap;
+			}
+			return -1;
+		}
+
+		/**
+		 * perform one step iteration for all demixing vectors of a bin in one
+		 * pass over the frames
+		 * @param binidx
+		 * bin index in the buffer
+		 */
+		private void oneStepIteration(int binidx)
+		{
+		double[] real,imag;
+		int n,numframes,offset;
+		double xr,xi,abs2,dg,ddg,er,ei,scale;
+
+			real=buffer.real;
+			imag=buffer.imag;
+			n=buffer.numChannels();
+			numframes=buffer.numFrames();
+			offset=binidx*n*numframes;
+
+			for(int i=0;i<n;i++)
+			{
+				Arrays.fill(w1r[i],0);
+				Arrays.fill(w1i[i],0);
+			}
+			Arrays.fill(eg,0);
+
+			//traverse each sample
+			for(int j=0;j<numframes;j++)
+			{
+				/*
+				 * w^Hx for all demixing vectors
+				 */
+				Arrays.fill(ur,0);
+				Arrays.fill(ui,0);
+				for(int k=0;k<n;k++)
+				{
+					xr=real[offset+k*numframes+j];
+					xi=imag[offset+k*numframes+j];
+					for(int i=0;i<n;i++)
+					{
+						ur[i]+=wr[i][k]*xr+wi[i][k]*xi;
+						ui[i]+=wr[i][k]*xi-wi[i][k]*xr;
+					}
+				}
+
+				/*
+				 * accumulate x*conj(u)*g(|u|^2), the nonlinearity is evaluated
+				 * once for each demixing vector
+				 */
+				for(int i=0;i<n;i++)
+				{
+					abs2=ur[i]*ur[i]+ui[i]*ui[i];
+					dg=nonlinearity.dg(abs2);
+					ddg=nonlinearity.ddg(abs2);
+					for(int k=0;k<n;k++)
+					{
+						xr=real[offset+k*numframes+j];
+						xi=imag[offset+k*numframes+j];
+						w1r[i][k]+=(xr*ur[i]+xi*ui[i])*dg;
+						w1i[i][k]+=(xi*ur[i]-xr*ui[i])*dg;
+					}
+					eg[i]+=dg+abs2*ddg;
+				}
+			}
+
+			/*
+			 * the new direction: E{x*conj(u)*g}-E{g+|u|^2*g'}*w
+			 */
+			scale=1.0/numframes;
+			for(int i=0;i<n;i++)
+			{
+				eg[i]/=(double)numframes;
+				for(int k=0;k<n;k++)
+				{
+					er=w1r[i][k]*scale;
+					ei=w1i[i][k]*scale;
+					w1r[i][k]=er+wr[i][k]*(-eg[i]);
+					w1i[i][k]=ei+wi[i][k]*(-eg[i]);
+				}
+			}
+		}
+
+		/**
+		 * Symmetric decorrelation of the new demixing vectors: X=X*(X'*X)^(-0.5),
+		 * where X=W', the same as CFastICA.
+		 */
+		private void symmetricDecorrelation()
+		{
+		double sr,si,d;
+		int n;
+
+			n=w1r.length;
+
+			/*
+			 * X'*X
+			 */
+			for(int a=0;a<n;a++)
+				for(int b=0;b<n;b++)
+				{
+					sr=0;
+					si=0;
+					for(int i=0;i<n;i++)
+					{
+						sr+=w1r[i][a]*w1r[i][b]+w1i[i][a]*w1i[i][b];
+						si+=w1r[i][a]*w1i[i][b]-w1i[i][a]*w1r[i][b];
+					}
+					cr[a][b]=sr;
+					ci[a][b]=si;
+				}
+
+			/*
+			 * (X'*X)^-0.5=E*D^-0.5*E'
+			 */
+			eigensolver.eig(cr,ci,ed,evr,evi);
+			for(int j=0;j<n;j++)
+			{
+				d=1.0/Math.sqrt(ed[j]);
+				for(int i=0;i<n;i++)
+				{
+					vr[i][j]=evr[i][j]*d;
+					vi[i][j]=evi[i][j]*d;
+				}
+			}
+
+			for(int i=0;i<n;i++)
+				for(int j=0;j<n;j++)
+				{
+					sr=0;
+					si=0;
+					for(int k=0;k<n;k++)
+					{
+						sr+=vr[i][k]*evr[j][k]+vi[i][k]*evi[j][k];
+						si+=vi[i][k]*evr[j][k]-vr[i][k]*evi[j][k];
+					}
+					cr[i][j]=sr;
+					ci[i][j]=si;
+				}
+
+			/*
+			 * X*(X'*X)^-0.5, row by row
+			 */
+			for(int i=0;i<n;i++)
+			{
+				for(int j=0;j<n;j++)
+				{
+					sr=0;
+					si=0;
+					for(int k=0;k<n;k++)
+					{
+						sr+=w1r[i][k]*cr[k][j]-w1i[i][k]*ci[k][j];
+						si+=w1r[i][k]*ci[k][j]+w1i[i][k]*cr[k][j];
+					}
+					ur[j]=sr;
+					ui[j]=si;
+				}
+				System.arraycopy(ur,0,w1r[i],0,n);
+				System.arraycopy(ui,0,w1i[i],0,n);
+			}
+		}
+
+		/**
+		 * get the converged demixing matrix
+		 * @return
+		 */
+		private Complex[][] demixingMatrix()
+		{
+		Complex[][] demix;
+
+			//row vectors will be used, so complex conjugate is required
+			demix=new Complex[wr.length][wr[0].length];
+			for(int i=0;i<demix.length;i++)
+				for(int j=0;j<demix[i].length;j++)
+					demix[i][j]=new Complex(wr[i][j],-wi[i][j]);
+			return demix;
+		}
+	}
+
+	/**
+	 * Validate against CFastICA on frequency bins of the demo mixtures: iteration
+	 * counts and demixing matrices of each bin are compared with the same seed.
+	 */
+	public static void main(String[] args) throws IOException, UnsupportedAudioFileException
+	{
+	FDBSS fdbss;
+	WaveSource[] sources;
+	int numbins;
+	Complex[][] bindata;
+	Complex[][][] sigsp,seeds,demixp1,demixp2;
+	Whitening preprocessor;
+	CFastICA ica;
+	BatchCFastICA batch;
+	BinBuffer buffer;
+	int[] numit1,numit2;
+	int mismatch=0;
+	double diff,maxdiff=0;
+	long t1,t2;
+
+		/*
+		 * whitened bin data of the demo mixtures
+		 */
+		fdbss=new FDBSS(new File("temp"));
+		fdbss.setParameter(FDBSS.Parameter.stft_size,"512");
+		fdbss.setParameter(FDBSS.Parameter.stft_overlap,"384");
+		fdbss.setParameter(FDBSS.Parameter.fft_size,"1024");
+		sources=new WaveSource[] {
+				new WaveSource(new File("data/rsm2_mA.wav"),true),
+				new WaveSource(new File("data/rsm2_mB.wav"),true)};
+		fdbss.separate(new SignalMixer(sources),FDBSS.Operation.stft);
+
+		numbins=fdbss.fftSize()/2+1;
+		preprocessor=new Whitening();
+		sigsp=new Complex[numbins][][];
+		seeds=new Complex[numbins][][];
+		for(int binidx=0;binidx<numbins;binidx++)
+		{
+			bindata=fdbss.binData(binidx,null);
+			sigsp[binidx]=preprocessor.preprocess(bindata,fdbss.numSources());
+			seeds[binidx]=BLAS.eyeComplex(fdbss.numSources(),fdbss.numSources());
+		}
+
+		/*
+		 * CFastICA bin by bin
+		 */
+		ica=new CFastICA();
+		demixp1=new Complex[numbins][][];
+		numit1=new int[numbins];
+		t1=System.currentTimeMillis();
+		for(int binidx=0;binidx<numbins;binidx++)
+			try
+			{
+				demixp1[binidx]=ica.demixingMatrixPreprocessed(sigsp[binidx],seeds[binidx]);
+				numit1[binidx]=ica.numIterations();
+			}
+			catch(AlgorithmNotConvergeException e)
+			{
+				numit1[binidx]=-1;
+			}
+		t1=System.currentTimeMillis()-t1;
+
+		/*
+		 * all bins at once
+		 */
+		batch=new BatchCFastICA(ica);
+		batch.setParallelism(Runtime.getRuntime().availableProcessors());
+		numit2=new int[numbins];
+		t2=System.currentTimeMillis();
+		buffer=new BinBuffer(numbins,sigsp[0].length,sigsp[0][0].length);
+		for(int binidx=0;binidx<numbins;binidx++) buffer.setBinData(binidx,sigsp[binidx]);
+		demixp2=batch.demixingMatricesPreprocessed(buffer,seeds,numit2);
+		t2=System.currentTimeMillis()-t2;
+
+		for(int binidx=0;binidx<numbins;binidx++)
+		{
+			if(numit1[binidx]!=numit2[binidx]) mismatch++;
+			if(demixp1[binidx]==null||demixp2[binidx]==null) continue;
+			for(int i=0;i<demixp1[binidx].length;i++)
+				for(int j=0;j<demixp1[binidx][i].length;j++)
+				{
+					diff=demixp1[binidx][i][j].subtract(demixp2[binidx][i][j]).abs();
+					if(diff>maxdiff) maxdiff=diff;
+				}
+		}
+
+		System.out.println("bins: "+numbins+", frames: "+buffer.numFrames()+
+				", parallelism: "+batch.parallelism());
+		System.out.println("CFastICA: "+t1+" ms, batched: "+t2+" ms");
+		System.out.println("iteration count mismatches: "+mismatch+
+				", max demixing matrix difference: "+maxdiff);
+	}
+}
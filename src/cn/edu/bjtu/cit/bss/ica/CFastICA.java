@@ -133,6 +133,7 @@ private double epsilon=1e-15;//convergence threshold of the fast ica algorithm
 private int maxiteration=1000;//max iteration times allowed
 //private Decorrelation decorrelation=Decorrelation.symmetric;//decorrelation policy
 private Decorrelation decorrelation=Decorrelation.symmetric;//decorrelation policy
+private int numit=0;//number of iterations of the last invocation
 
 	/**
 	 * <h1>Description</h1>
@@ -156,6 +157,52 @@ private Decorrelation decorrelation=Decorrelation.symmetric;//decorrelation poli
 		symmetric
 	}
 	
+	/**
+	 * get the nonlinearity function
+	 * @return
+	 */
+	public Nonlinearity nonlinearity()
+	{
+		return nonlinearity;
+	}
+	
+	/**
+	 * get the convergence threshold
+	 * @return
+	 */
+	public double convergenceThreshold()
+	{
+		return epsilon;
+	}
+	
+	/**
+	 * get the max iteration times allowed
+	 * @return
+	 */
+	public int maxIteration()
+	{
+		return maxiteration;
+	}
+	
+	/**
+	 * get the decorrelation policy
+	 * @return
+	 */
+	public Decorrelation decorrelation()
+	{
+		return decorrelation;
+	}
+	
+	/**
+	 * get the number of iterations of the last converged invocation of the 
+	 * symmetric policy
+	 * @return
+	 */
+	public int numIterations()
+	{
+		return numit;
+	}
+	
 	/**
 	 * the objective function of this algorithm
 	 * @param sigs
@@ -314,7 +361,7 @@ private Decorrelation decorrelation=Decorrelation.symmetric;//decorrelation poli
 	double cos,mincos;
 	Complex[][] swap;
 	
-		eigensolver=new CommonsEigensolver();
+		eigensolver=new JacobiEigensolver();
 	
 		/*
 		 * the initial demixing matrix
@@ -369,7 +416,11 @@ private Decorrelation decorrelation=Decorrelation.symmetric;//decorrelation poli
 				cos=BLAS.innerProduct(demix[i],demix1[i]).abs();
 				if(cos<mincos) mincos=cos;
 			}
-			if(Math.abs(1-mincos)<=epsilon) break;
+			if(Math.abs(1-mincos)<=epsilon) 
+			{
+				this.numit=numit;
+				break;
+			}
 			
 			/*
 			 * not converge, continue the iteration
@@ -506,6 +557,11 @@ private Decorrelation decorrelation=Decorrelation.symmetric;//decorrelation poli
 		return demix;
 	}
 	
+	public ICA copy()
+	{
+		return new CFastICA();
+	}
+	
 	public ICAResult icaPreprocessed(Complex[][] sigsp,Complex[][] seeds)
 	{
 	ICAResult icares;
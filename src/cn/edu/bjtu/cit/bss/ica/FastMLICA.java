@@ -251,7 +251,7 @@ private double stopthres=1e-10;//stop threshold
 		/*
 		 * (W*W')^-0.5
 		 */
-		eigensolver=new CommonsEigensolver();
+		eigensolver=new JacobiEigensolver();
 		decomp=eigensolver.eig(wh);
 			
 		//construct D^(-0.5)
@@ -269,6 +269,11 @@ private double stopthres=1e-10;//stop threshold
 		wp=BLAS.multiply(wh,wp,wp);		
 	}
 	
+	public ICA copy()
+	{
+		return new FastMLICA();
+	}
+	
 	public ICAResult icaPreprocessed(Complex[][] sigsp,Complex[][] seeds)
 	{
 	ICAResult icares;
@@ -15,7 +15,14 @@ import org.apache.commons.math.complex.*;
 public abstract class ICA implements Serializable
 {
 private static final long serialVersionUID=4408263879099542601L;
-	
+
+	/**
+	 * Get a new instance with the same settings, states of the last invocation
+	 * are not copied. Used to give each thread its own ICA instance.
+	 * @return
+	 */
+	public abstract ICA copy();
+
 	/**
 	 * Perform ICA on already preprocessed signals and return results.
 	 * @param sigsp
@@ -33,7 +33,7 @@ private static final long serialVersionUID=5619052344980807251L;
 	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
 	 * @version created on: Mar 6, 2012 3:35:53 PM, revision:
 	 */
-	public static class STanh implements CNonlinearity
+	public static class STanh implements SplitCNonlinearity
 	{
 	private static final long serialVersionUID=-4076175300571900249L;
 
@@ -41,6 +41,15 @@ private static final long serialVersionUID=5619052344980807251L;
 		{
 			return new Complex(Math.tanh(u.getReal()),Math.tanh(u.getImaginary()));
 		}
+		
+		public void g(double[] ur,double[] ui,double[] gr,double[] gi)
+		{
+			for(int i=0;i<ur.length;i++) 
+			{
+				gr[i]=Math.tanh(ur[i]);
+				gi[i]=Math.tanh(ui[i]);
+			}
+		}
 	
 		public Complex dg(Complex u)
 		{
@@ -102,7 +111,41 @@ private double pcath=1e-6;//threshold used in PCA
 private double epsilon=1e-10;//convergence threshold of the ica algorithm
 private double eta=0.01;//step size for gradient method
 private int maxiteration=5000;//max iteration times allowed
+private int numit=0;//number of iterations of the last invocation
+private MiniBatchNaturalGradient minibatch=null;//mini-batch mode, null for full-batch
 
+	/**
+	 * get the mini-batch mode
+	 * @return
+	 * null for full-batch
+	 */
+	public MiniBatchNaturalGradient miniBatch()
+	{
+		return minibatch;
+	}
+	
+	/**
+	 * Set the mini-batch mode. Each iteration uses a mini-batch of frames 
+	 * instead of all frames, with shuffling, momentum, adaptive learning rate 
+	 * and early stopping, see MiniBatchNaturalGradient.
+	 * @param minibatch
+	 * null for full-batch
+	 */
+	public void setMiniBatch(MiniBatchNaturalGradient minibatch)
+	{
+		this.minibatch=minibatch;
+	}
+	
+	/**
+	 * get the number of full-batch iterations of the last converged invocation, 
+	 * or the number of epochs in mini-batch mode
+	 * @return
+	 */
+	public int numIterations()
+	{
+		return numit;
+	}
+	
 	/**
 	 * apply nonlinearity on each entry of a vector
 	 * @param y
@@ -162,6 +205,13 @@ private int maxiteration=5000;//max iteration times allowed
 		if(seed.length!=sigs.length||seed[0].length!=sigs.length) throw new IllegalArgumentException(
 				"illegal seeds size: "+seed.length+" x "+seed[0].length+", required: "+sigs.length+" x "+sigs.length);
 
+		if(minibatch!=null)
+		{
+			w=minibatch.demixingMatrix(sigs,seed,nonlinearity,null);
+			numit=minibatch.numEpochs();
+			return w;
+		}
+
 		w=seed;
 		w1=new Complex[w.length][w[0].length];
 		tempg=new Complex[w.length][w[0].length];
@@ -205,7 +255,11 @@ private int maxiteration=5000;//max iteration times allowed
 			 */
 //			System.out.println("iteration "+it+", norm="+norm(w,w1));
 			
-			if(norm(w,w1)<=epsilon) return w;
+			if(norm(w,w1)<=epsilon) 
+			{
+				numit=it;
+				return w;
+			}
 			else
 			{
 				swap=w;
@@ -321,6 +375,15 @@ private int maxiteration=5000;//max iteration times allowed
 		return demix;
 	}
 	
+	public ICA copy()
+	{
+	InfomaxICA copy;
+	
+		copy=new InfomaxICA();
+		if(minibatch!=null) copy.setMiniBatch(new MiniBatchNaturalGradient(minibatch));
+		return copy;
+	}
+	
 	public ICAResult icaPreprocessed(Complex[][] sigsp,Complex[][] seeds)
 	{
 	ICAResult icares;
@@ -269,6 +269,11 @@ private double stopthres=1e-8;//stop threshold
 		return wp;
 	}
 	
+	public ICA copy()
+	{
+		return new MLICA();
+	}
+	
 	public ICAResult icaPreprocessed(Complex[][] sigsp,Complex[][] seeds)
 	{
 	ICAResult icares;
@@ -0,0 +1,756 @@
+package cn.edu.bjtu.cit.bss.ica;
+import java.io.*;
+import java.util.*;
+import javax.sound.sampled.*;
+import org.apache.commons.math.complex.*;
+import cn.edu.bjtu.cit.bss.*;
+import cn.edu.bjtu.cit.bss.eval.*;
+import cn.edu.bjtu.cit.bss.signalio.*;
+
+/**
+ * <h1>Description</h1>
+ * Mini-batch stochastic natural gradient for Infomax like ICA algorithms:
+ * W=W+eta*(I-E{fi(y)y^H})*W, where the expectation is taken over a mini-batch
+ * of frames instead of all frames. Frames are shuffled in each epoch, updates
+ * are smoothed by momentum. A part of frames is held out for validation, the
+ * objective is the norm of the relative gradient I-E{fi(y)y^H} on them, which
+ * is zero at the fixed point. If an epoch diverges, the best demixing matrix
+ * is restored and the learning rate is decreased; if it makes no progress, the
+ * mini-batch is enlarged until it covers all training frames, then the
+ * learning rate is decreased. The iteration stops when the objective is small
+ * enough, or early when it is not improved for several epochs. The best
+ * demixing matrix is then refined by full-batch natural gradient on all
+ * frames with the step size and the convergence criterion of the full-batch
+ * algorithms, it starts near their solution so only a few passes are needed.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 22, 2026 2:14:09 PM, revision:
+ */
+public class MiniBatchNaturalGradient implements Serializable
+{
+private static final long serialVersionUID=-1395740278012945731L;
+private static final double DIVERGENCE=2;//objective ratio regarded as divergence
+private static final double DECAY=0.5;//learning rate factor after a failure
+private static final double TOLERANCE=1e-3;//relative improvement regarded as progress
+private static final double MIN_ETA=1e-8;//minimum learning rate
+private static final double EPSILON=1e-4;//objective regarded as converged
+private static final double SCALE_WEIGHT=0.1;//weight of a mini-batch in the running average of the scale
+private static final double REFINE_ETA=0.01;//step size of refinement, the same as the full-batch algorithms
+private static final double REFINE_EPSILON=1e-8;//change of the demixing matrix regarded as converged in refinement
+private int batchsize=32;//number of frames in a mini-batch
+private double eta=0.05;//initial learning rate
+private double momentum=0.5;//momentum of updates
+private double validation=0.1;//fraction of frames held out for validation
+private int patience=5;//number of epochs without progress before stop
+private int maxepochs=200;//max number of epochs allowed
+private long randomseed=0;//seed for frame shuffling
+private int maxrefinements=5000;//max number of full-batch refinement iterations, 0 for no refinement
+private int numepochs=0;//number of epochs of the last invocation
+private int numrefinements=0;//number of refinement iterations of the last invocation
+
+	public MiniBatchNaturalGradient()
+	{}
+
+	/**
+	 * construct with the same settings of another instance, the number of
+	 * epochs of the last invocation is not copied
+	 * @param another
+	 * another instance
+	 */
+	public MiniBatchNaturalGradient(MiniBatchNaturalGradient another)
+	{
+		batchsize=another.batchsize;
+		eta=another.eta;
+		momentum=another.momentum;
+		validation=another.validation;
+		patience=another.patience;
+		maxepochs=another.maxepochs;
+		maxrefinements=another.maxrefinements;
+		randomseed=another.randomseed;
+	}
+
+	/**
+	 * get the number of frames in a mini-batch
+	 * @return
+	 */
+	public int batchSize()
+	{
+		return batchsize;
+	}
+
+	/**
+	 * set the number of frames in a mini-batch
+	 * @param batchsize
+	 * number of frames
+	 */
+	public void setBatchSize(int batchsize)
+	{
+		if(batchsize<1) throw new IllegalArgumentException(
+				"batch size must be positive: "+batchsize);
+		this.batchsize=batchsize;
+	}
+
+	/**
+	 * get the initial learning rate
+	 * @return
+	 */
+	public double learningRate()
+	{
+		return eta;
+	}
+
+	/**
+	 * set the initial learning rate
+	 * @param eta
+	 * learning rate
+	 */
+	public void setLearningRate(double eta)
+	{
+		if(eta<=0) throw new IllegalArgumentException(
+				"learning rate must be positive: "+eta);
+		this.eta=eta;
+	}
+
+	/**
+	 * get the momentum of updates
+	 * @return
+	 */
+	public double momentum()
+	{
+		return momentum;
+	}
+
+	/**
+	 * set the momentum of updates
+	 * @param momentum
+	 * in [0, 1), 0 for plain stochastic gradient
+	 */
+	public void setMomentum(double momentum)
+	{
+		if(momentum<0||momentum>=1) throw new IllegalArgumentException(
+				"momentum must be in [0, 1): "+momentum);
+		this.momentum=momentum;
+	}
+
+	/**
+	 * get the fraction of frames held out for validation
+	 * @return
+	 */
+	public double validationFraction()
+	{
+		return validation;
+	}
+
+	/**
+	 * set the fraction of frames held out for validation
+	 * @param validation
+	 * in [0, 0.5], 0 to validate on all frames
+	 */
+	public void setValidationFraction(double validation)
+	{
+		if(validation<0||validation>0.5) throw new IllegalArgumentException(
+				"validation fraction must be in [0, 0.5]: "+validation);
+		this.validation=validation;
+	}
+
+	/**
+	 * get the number of epochs without progress before stop
+	 * @return
+	 */
+	public int patience()
+	{
+		return patience;
+	}
+
+	/**
+	 * set the number of epochs without progress before stop
+	 * @param patience
+	 * number of epochs
+	 */
+	public void setPatience(int patience)
+	{
+		if(patience<1) throw new IllegalArgumentException(
+				"patience must be positive: "+patience);
+		this.patience=patience;
+	}
+
+	/**
+	 * get the max number of epochs allowed
+	 * @return
+	 */
+	public int maxEpochs()
+	{
+		return maxepochs;
+	}
+
+	/**
+	 * set the max number of epochs allowed
+	 * @param maxepochs
+	 * number of epochs
+	 */
+	public void setMaxEpochs(int maxepochs)
+	{
+		if(maxepochs<1) throw new IllegalArgumentException(
+				"max epochs must be positive: "+maxepochs);
+		this.maxepochs=maxepochs;
+	}
+
+	/**
+	 * get the max number of full-batch refinement iterations
+	 * @return
+	 */
+	public int maxRefinements()
+	{
+		return maxrefinements;
+	}
+
+	/**
+	 * Set the max number of full-batch refinement iterations after the 
+	 * mini-batch epochs. Each iteration is a pass over all frames.
+	 * @param maxrefinements
+	 * number of iterations, 0 for no refinement
+	 */
+	public void setMaxRefinements(int maxrefinements)
+	{
+		if(maxrefinements<0) throw new IllegalArgumentException(
+				"max refinements must not be negative: "+maxrefinements);
+		this.maxrefinements=maxrefinements;
+	}
+
+	/**
+	 * set the seed for frame shuffling, the same seed gives the same result
+	 * @param randomseed
+	 * random seed
+	 */
+	public void setRandomSeed(long randomseed)
+	{
+		this.randomseed=randomseed;
+	}
+
+	/**
+	 * get the number of epochs of the last invocation, an epoch is a pass
+	 * over the training frames
+	 * @return
+	 */
+	public int numEpochs()
+	{
+		return numepochs;
+	}
+
+	/**
+	 * get the number of full-batch refinement iterations of the last invocation
+	 * @return
+	 */
+	public int numRefinements()
+	{
+		return numrefinements;
+	}
+
+	/**
+	 * calculate the demixing matrix for centered and whitened signals
+	 * @param sigs
+	 * already centered and whitened signals, each row is a channel
+	 * @param seed
+	 * initial demixing matrix, will not be modified
+	 * @param fi
+	 * the nonlinearity function
+	 * @param h
+	 * Used to rescale the demixing matrix after each update as the scaled
+	 * natural gradient: W=W/h(d), where d is the running average of the mean 
+	 * absolute row sum of E{fi(y)y^H} over recent mini-batches, null for no 
+	 * rescaling.
+	 * @return
+	 * the demixing matrix with the best validation objective, refined on all 
+	 * frames
+	 * @throws AlgorithmNotConvergeException
+	 * max epochs reached
+	 */
+	public Complex[][] demixingMatrix(Complex[][] sigs,Complex[][] seed,CNonlinearity fi,Nonlinearity h)
+	{
+	int n,numframes,step;
+	double[][] xr,xi;//signals
+	int[] training,valid;//frame indices
+	double[][] wr,wi;//current demixing matrix
+	double[][] bestr,besti;//demixing matrix with the best objective
+	double[][] vr,vi;//momentum
+	double[][] gr,gi;//E{fi(y)y^H}
+	double[][] dr,di;//(I-G)*W
+	double[][] ws;//workspace for estimated signals and the nonlinearity
+	double rate,obj,bestobj,lastobj,d=0,c;
+	int size,stall=0,temp,idx;
+	int numsteps,to;//number of updates in an epoch, batch end
+	Random random;
+	Complex[][] demix;
+
+		n=sigs.length;
+		numframes=sigs[0].length;
+		if(seed.length!=n||seed[0].length!=n) throw new IllegalArgumentException(
+				"illegal seeds size: "+seed.length+" x "+seed[0].length+", required: "+n+" x "+n);
+
+		xr=new double[n][numframes];
+		xi=new double[n][numframes];
+		for(int i=0;i<n;i++)
+			for(int j=0;j<numframes;j++)
+			{
+				xr[i][j]=sigs[i][j].getReal();
+				xi[i][j]=sigs[i][j].getImaginary();
+			}
+
+		/*
+		 * hold out every step-th frame for validation
+		 */
+		if(validation>0&&numframes*validation>=1)
+		{
+			step=Math.max(2,(int)Math.round(1.0/validation));
+			valid=new int[(numframes+step-1)/step];
+			training=new int[numframes-valid.length];
+			for(int j=0,v=0,t=0;j<numframes;j++)
+				if(j%step==0) valid[v++]=j;
+				else training[t++]=j;
+		}
+		else
+		{
+			training=new int[numframes];
+			for(int j=0;j<numframes;j++) training[j]=j;
+			valid=training;
+		}
+
+		wr=new double[n][n];
+		wi=new double[n][n];
+		for(int i=0;i<n;i++)
+			for(int j=0;j<n;j++)
+			{
+				wr[i][j]=seed[i][j].getReal();
+				wi[i][j]=seed[i][j].getImaginary();
+			}
+		bestr=copy(wr,null);
+		besti=copy(wi,null);
+		vr=new double[n][n];
+		vi=new double[n][n];
+		gr=new double[n][n];
+		gi=new double[n][n];
+		dr=new double[n][n];
+		di=new double[n][n];
+		ws=new double[4][n];
+
+		random=new Random(randomseed);
+		rate=eta;
+		size=Math.min(batchsize,training.length);
+		numsteps=(training.length+size-1)/size;
+		bestobj=Double.MAX_VALUE;
+		lastobj=Double.MAX_VALUE;
+
+		for(numepochs=1;numepochs<=maxepochs;numepochs++)
+		{
+			/*
+			 * shuffle training frames
+			 */
+			for(int j=training.length-1;j>0;j--)
+			{
+				idx=random.nextInt(j+1);
+				temp=training[j];
+				training[j]=training[idx];
+				training[idx]=temp;
+			}
+
+			/*
+			 * The number of updates in an epoch is kept as the initial one, 
+			 * batches wrap around the training frames after the mini-batch 
+			 * is enlarged, otherwise an epoch of full batch is only a single 
+			 * update and the annealing stops far from the fixed point.
+			 */
+			for(int k=0,from=0;k<numsteps;k++,from=to<training.length?to:0)
+			{
+				to=Math.min(from+size,training.length);
+				expectation(xr,xi,training,from,to,wr,wi,fi,gr,gi,ws);
+				naturalGradient(wr,wi,gr,gi,dr,di);
+
+				for(int i=0;i<n;i++)
+					for(int j=0;j<n;j++)
+					{
+						vr[i][j]=momentum*vr[i][j]+rate*dr[i][j];
+						vi[i][j]=momentum*vi[i][j]+rate*di[i][j];
+						wr[i][j]+=vr[i][j];
+						wi[i][j]+=vi[i][j];
+					}
+
+				/*
+				 * Rescale for the scaled natural gradient after each update 
+				 * as the full-batch algorithm does, the scale is estimated by 
+				 * a running average because a single mini-batch is too noisy. 
+				 * The momentum is rescaled too to keep it in the same scale.
+				 */
+				if(h!=null)
+				{
+					if(d==0) d=absRowSum(gr,gi);
+					else d=(1-SCALE_WEIGHT)*d+SCALE_WEIGHT*absRowSum(gr,gi);
+					c=1.0/h.g(d);
+					for(int i=0;i<n;i++)
+						for(int j=0;j<n;j++)
+						{
+							wr[i][j]*=c;
+							wi[i][j]*=c;
+							vr[i][j]*=c;
+							vi[i][j]*=c;
+						}
+				}
+			}
+
+			/*
+			 * adapt the learning rate by the validation objective
+			 */
+			obj=objective(xr,xi,valid,wr,wi,fi,gr,gi,ws);
+			if(Double.isNaN(obj)||obj>DIVERGENCE*bestobj)
+			{
+				//diverged, restore the best one
+				copy(bestr,wr);
+				copy(besti,wi);
+				for(int i=0;i<n;i++)
+				{
+					Arrays.fill(vr[i],0);
+					Arrays.fill(vi[i],0);
+				}
+				rate*=DECAY;
+				stall++;
+				obj=bestobj;
+			}
+			/*
+			 * Progress is measured from the last epoch rather than the best 
+			 * one, the best objective may be a lucky one of small batches 
+			 * which larger batches do not reach at once.
+			 */
+			else if(obj<(1-TOLERANCE)*lastobj)
+			{
+				stall=0;
+			}
+			else
+			{
+				/*
+				 * No progress, enlarge the mini-batch to reduce the gradient 
+				 * noise until all training frames are used, then anneal. 
+				 * Enlarging is not counted as a stall, otherwise it stops at 
+				 * the noise floor of small batches.
+				 */
+				if(size<training.length) size=Math.min(size*2,training.length);
+				else
+				{
+					rate*=DECAY;
+					stall++;
+				}
+			}
+
+			if(obj<bestobj)
+			{
+				copy(wr,bestr);
+				copy(wi,besti);
+				bestobj=obj;
+			}
+			lastobj=obj;
+
+			//early stopping
+			if(bestobj<=EPSILON||stall>=patience||rate<MIN_ETA) break;
+		}
+		if(numepochs>maxepochs) throw new AlgorithmNotConvergeException(
+				"max epochs reached: "+maxepochs);
+		
+		/*
+		 * refine the best one on all frames, validation frames are not needed 
+		 * because the full-batch gradient has no sampling noise
+		 */
+		if(training!=valid)
+		{
+			training=new int[numframes];
+			for(int j=0;j<numframes;j++) training[j]=j;
+		}
+		numrefinements=refine(xr,xi,training,bestr,besti,fi,h,ws);
+
+		demix=new Complex[n][n];
+		for(int i=0;i<n;i++)
+			for(int j=0;j<n;j++) demix[i][j]=new Complex(bestr[i][j],besti[i][j]);
+		return demix;
+	}
+
+	/**
+	 * Refine the demixing matrix by full-batch natural gradient with the step 
+	 * size and the convergence criterion of the full-batch algorithms: stop when 
+	 * the magnitude of some entry of the demixing matrix is not changed any more. 
+	 * Iterating until E{fi(y)y^H}=I exactly gives worse separation than the 
+	 * full-batch algorithms.
+	 * @param xr, xi
+	 * signals
+	 * @param frames
+	 * frame indices
+	 * @param wr, wi
+	 * the demixing matrix, will be replaced by the refined one
+	 * @param fi
+	 * the nonlinearity function
+	 * @param h
+	 * used to rescale the demixing matrix, null for no rescaling
+	 * @param ws
+	 * workspace used by expectation
+	 * @return
+	 * number of iterations
+	 */
+	private int refine(double[][] xr,double[][] xi,int[] frames,double[][] wr,double[][] wi,
+			CNonlinearity fi,Nonlinearity h,double[][] ws)
+	{
+	int n,it;
+	double[][] gr,gi;//E{fi(y)y^H}
+	double[][] dr,di;//(I-G)*W
+	double c,m0,m1,change;
+
+		n=wr.length;
+		gr=new double[n][n];
+		gi=new double[n][n];
+		dr=new double[n][n];
+		di=new double[n][n];
+
+		for(it=0;it<maxrefinements;)
+		{
+			expectation(xr,xi,frames,0,frames.length,wr,wi,fi,gr,gi,ws);
+			naturalGradient(wr,wi,gr,gi,dr,di);
+			c=h==null?1:1.0/h.g(absRowSum(gr,gi));
+			it++;
+
+			change=Double.MAX_VALUE;
+			for(int i=0;i<n;i++)
+				for(int j=0;j<n;j++)
+				{
+					m0=Math.sqrt(wr[i][j]*wr[i][j]+wi[i][j]*wi[i][j]);
+					wr[i][j]=c*(wr[i][j]+REFINE_ETA*dr[i][j]);
+					wi[i][j]=c*(wi[i][j]+REFINE_ETA*di[i][j]);
+					m1=Math.sqrt(wr[i][j]*wr[i][j]+wi[i][j]*wi[i][j]);
+					change=Math.min(change,Math.abs(m1-m0));
+				}
+			if(change<=REFINE_EPSILON) break;
+		}
+		return it;
+	}
+
+	/**
+	 * calculate E{fi(y)y^H} on a part of frames, where y=W*x
+	 * @param xr, xi
+	 * signals
+	 * @param frames
+	 * frame indices
+	 * @param from
+	 * the first index in frames, inclusive
+	 * @param to
+	 * the last index in frames, exclusive
+	 * @param wr, wi
+	 * demixing matrix
+	 * @param fi
+	 * the nonlinearity function
+	 * @param gr, gi
+	 * space for the result
+	 * @param ws
+	 * workspace of size [4][number of channels]
+	 */
+	private static void expectation(double[][] xr,double[][] xi,int[] frames,int from,int to,
+			double[][] wr,double[][] wi,CNonlinearity fi,double[][] gr,double[][] gi,double[][] ws)
+	{
+	int n,j;
+	double[] yr,yi,fr,fi2;
+	Complex fy;
+
+		n=wr.length;
+		yr=ws[0];
+		yi=ws[1];
+		fr=ws[2];
+		fi2=ws[3];
+		for(int i=0;i<n;i++)
+		{
+			Arrays.fill(gr[i],0);
+			Arrays.fill(gi[i],0);
+		}
+
+		for(int t=from;t<to;t++)
+		{
+			j=frames[t];
+
+			//the estimated signals
+			for(int i=0;i<n;i++)
+			{
+				yr[i]=0;
+				yi[i]=0;
+				for(int k=0;k<n;k++)
+				{
+					yr[i]+=wr[i][k]*xr[k][j]-wi[i][k]*xi[k][j];
+					yi[i]+=wr[i][k]*xi[k][j]+wi[i][k]*xr[k][j];
+				}
+			}
+			
+			//the nonlinearity
+			if(fi instanceof SplitCNonlinearity) ((SplitCNonlinearity)fi).g(yr,yi,fr,fi2);
+			else for(int i=0;i<n;i++)
+			{
+				fy=fi.g(new Complex(yr[i],yi[i]));
+				fr[i]=fy.getReal();
+				fi2[i]=fy.getImaginary();
+			}
+
+			//accumulate the outer product
+			for(int ii=0;ii<n;ii++)
+				for(int jj=0;jj<n;jj++)
+				{
+					gr[ii][jj]+=fr[ii]*yr[jj]+fi2[ii]*yi[jj];
+					gi[ii][jj]+=fi2[ii]*yr[jj]-fr[ii]*yi[jj];
+				}
+		}
+
+		for(int i=0;i<n;i++)
+			for(int k=0;k<n;k++)
+			{
+				gr[i][k]/=to-from;
+				gi[i][k]/=to-from;
+			}
+	}
+
+	/**
+	 * calculate the natural gradient: (I-G)*W
+	 * @param wr, wi
+	 * demixing matrix
+	 * @param gr, gi
+	 * E{fi(y)y^H}
+	 * @param dr, di
+	 * space for the result
+	 */
+	private static void naturalGradient(double[][] wr,double[][] wi,double[][] gr,double[][] gi,double[][] dr,double[][] di)
+	{
+	double sr,si;
+
+		for(int i=0;i<wr.length;i++)
+			for(int j=0;j<wr.length;j++)
+			{
+				sr=0;
+				si=0;
+				for(int k=0;k<wr.length;k++)
+				{
+					sr+=gr[i][k]*wr[k][j]-gi[i][k]*wi[k][j];
+					si+=gr[i][k]*wi[k][j]+gi[i][k]*wr[k][j];
+				}
+				dr[i][j]=wr[i][j]-sr;
+				di[i][j]=wi[i][j]-si;
+			}
+	}
+
+	/**
+	 * the objective: norm of I-E{fi(y)y^H} divided by the number of channels
+	 * @param xr, xi
+	 * signals
+	 * @param frames
+	 * frame indices
+	 * @param wr, wi
+	 * demixing matrix
+	 * @param fi
+	 * the nonlinearity function
+	 * @param gr, gi
+	 * working space
+	 * @param ws
+	 * workspace used by expectation
+	 * @return
+	 */
+	private static double objective(double[][] xr,double[][] xi,int[] frames,
+			double[][] wr,double[][] wi,CNonlinearity fi,double[][] gr,double[][] gi,double[][] ws)
+	{
+	double obj=0,re;
+
+		expectation(xr,xi,frames,0,frames.length,wr,wi,fi,gr,gi,ws);
+		for(int i=0;i<gr.length;i++)
+			for(int j=0;j<gr[i].length;j++)
+			{
+				re=(i==j?1:0)-gr[i][j];
+				obj+=re*re+gi[i][j]*gi[i][j];
+			}
+		return Math.sqrt(obj)/gr.length;
+	}
+
+	/**
+	 * calculate the mean absolute row sum of a complex matrix
+	 * @param gr, gi
+	 * the matrix
+	 * @return
+	 */
+	private static double absRowSum(double[][] gr,double[][] gi)
+	{
+	double d=0;
+
+		for(int i=0;i<gr.length;i++)
+			for(int j=0;j<gr[i].length;j++)
+				d+=Math.sqrt(gr[i][j]*gr[i][j]+gi[i][j]*gi[i][j]);
+		return d/gr.length;
+	}
+
+	/**
+	 * copy a matrix
+	 * @param src
+	 * source matrix
+	 * @param dest
+	 * destination, null to allocate new space
+	 * @return
+	 */
+	private static double[][] copy(double[][] src,double[][] dest)
+	{
+		if(dest==null) dest=new double[src.length][src[0].length];
+		for(int i=0;i<src.length;i++) System.arraycopy(src[i],0,dest[i],0,src[i].length);
+		return dest;
+	}
+
+	/**
+	 * Compare the full-batch and mini-batch modes of InfomaxICA and 
+	 * ScaledInfomaxICA by separating a simulated convolutive mixture with the whole 
+	 * FDBSS pipeline, each bin is seeded by the result of the previous bin. 
+	 * Results are measured by the time of ICA and SDR, SIR of estimated 
+	 * sources against the original ones.
+	 */
+	public static void main(String[] args) throws IOException, UnsupportedAudioFileException
+	{
+	String[] icas={"cn.edu.bjtu.cit.bss.ica.InfomaxICA","cn.edu.bjtu.cit.bss.ica.ScaledInfomaxICA"};
+	String[] sizes={"0","32"};
+	FDBSS fdbss;
+	Evaluator evaluator;
+	SignalMixer sensors;
+	double[][] eval;
+	double sdr,sir;
+	long t;
+	
+		for(String icaname:icas)
+			for(String size:sizes)
+			{
+				fdbss=new FDBSS(new File("temp"));
+				fdbss.setParameter(FDBSS.Parameter.stft_size,"512");
+				fdbss.setParameter(FDBSS.Parameter.stft_overlap,"384");
+				fdbss.setParameter(FDBSS.Parameter.fft_size,"512");
+				fdbss.setParameter(FDBSS.Parameter.ica_algorithm,icaname);
+				fdbss.setParameter(FDBSS.Parameter.ica_minibatch_size,size);
+				
+				evaluator=new Evaluator(fdbss.stfTransformer());
+				evaluator.addSources("data/SawadaDataset/s1.wav","data/SawadaDataset/s2.wav");
+				//2 x 2 mixing by 64 taps filters in the filter base
+				evaluator.setMixingFilters(2,2,64,0,1,2,3);
+				
+				sensors=evaluator.openSensorData();
+				fdbss.separate(sensors,FDBSS.Operation.stft);
+				sensors.close();
+				t=System.currentTimeMillis();
+				fdbss.separate(null,FDBSS.Operation.ica);
+				t=System.currentTimeMillis()-t;
+				fdbss.separate(null,FDBSS.Operation.align,FDBSS.Operation.demix);
+				
+				eval=evaluator.bssEval(fdbss);
+				sdr=0;
+				sir=0;
+				for(double[] e:eval)
+				{
+					sdr+=e[0];
+					sir+=e[1];
+				}
+				System.out.println(icaname.substring(icaname.lastIndexOf('.')+1)+
+						("0".equals(size)?" full-batch: ":" mini-batch of "+size+" frames: ")+
+						"ICA "+t+" ms, mean SDR "+sdr/eval.length+" dB, mean SIR "+sir/eval.length+" dB");
+			}
+	}
+}
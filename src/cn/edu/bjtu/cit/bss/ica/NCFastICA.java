@@ -334,7 +334,7 @@ private Decorrelation decorrelation=Decorrelation.symmetric;//decorrelation poli
 	double cos,mincos;
 	Complex[][] swap;
 	
-		eigensolver=new CommonsEigensolver();
+		eigensolver=new JacobiEigensolver();
 	
 		/*
 		 * the initial demixing matrix
@@ -526,6 +526,11 @@ private Decorrelation decorrelation=Decorrelation.symmetric;//decorrelation poli
 		return demix;
 	}
 	
+	public ICA copy()
+	{
+		return new NCFastICA();
+	}
+	
 	public ICAResult icaPreprocessed(Complex[][] sigsp,Complex[][] seeds)
 	{
 	ICAResult icares;
@@ -330,7 +330,7 @@ private Decorrelation decorrelation=Decorrelation.deflation;//decorrelation poli
 	double cos,mincos;
 	Complex[][] swap;
 	
-		eigensolver=new CommonsEigensolver();
+		eigensolver=new JacobiEigensolver();
 	
 		/*
 		 * the initial demixing matrix
@@ -522,6 +522,11 @@ private Decorrelation decorrelation=Decorrelation.deflation;//decorrelation poli
 		return demix;
 	}
 	
+	public ICA copy()
+	{
+		return new NCFastICA2();
+	}
+	
 	public ICAResult icaPreprocessed(Complex[][] sigsp,Complex[][] seeds)
 	{
 	ICAResult icares;
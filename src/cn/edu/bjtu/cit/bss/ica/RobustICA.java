@@ -699,6 +699,11 @@ private double pcath=1e-6;//threshold used in PCA
 		return h;
 	}
 	
+	public ICA copy()
+	{
+		return new RobustICA();
+	}
+	
 	public ICAResult icaPreprocessed(Complex[][] sigsp,Complex[][] seeds)
 	{
 	List<Complex[]> demixpl;//list of demixing vectors for perprocessed signals, column vectors are stored
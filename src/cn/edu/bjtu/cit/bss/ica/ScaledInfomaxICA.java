@@ -32,7 +32,7 @@ private static final long serialVersionUID=-6770840088008205069L;
 	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
 	 * @version created on: Mar 7, 2012 3:56:55 PM, revision:
 	 */
-	public static class Cubic implements CNonlinearity
+	public static class Cubic implements SplitCNonlinearity
 	{
 	private static final long serialVersionUID=-3655190755829748349L;
 
@@ -40,6 +40,18 @@ private static final long serialVersionUID=-6770840088008205069L;
 		{
 			return u.multiply(BLAS.absSquare(u));
 		}
+		
+		public void g(double[] ur,double[] ui,double[] gr,double[] gi)
+		{
+		double a;
+		
+			for(int i=0;i<ur.length;i++) 
+			{
+				a=ur[i]*ur[i]+ui[i]*ui[i];
+				gr[i]=ur[i]*a;
+				gi[i]=ui[i]*a;
+			}
+		}
 
 		public Complex dg(Complex u)
 		{
@@ -62,7 +74,7 @@ private static final long serialVersionUID=-6770840088008205069L;
 	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
 	 * @version created on: Mar 7, 2012 3:58:42 PM, revision:
 	 */
-	public static class Normalize implements CNonlinearity
+	public static class Normalize implements SplitCNonlinearity
 	{
 	private static final long serialVersionUID=-4920156075254400700L;
 
@@ -70,6 +82,18 @@ private static final long serialVersionUID=-6770840088008205069L;
 		{
 			return u.multiply(1.0/u.abs());
 		}
+		
+		public void g(double[] ur,double[] ui,double[] gr,double[] gi)
+		{
+		double a;
+		
+			for(int i=0;i<ur.length;i++) 
+			{
+				a=1.0/Math.hypot(ur[i],ui[i]);
+				gr[i]=ur[i]*a;
+				gi[i]=ui[i]*a;
+			}
+		}
 
 		public Complex dg(Complex u)
 		{
@@ -92,7 +116,7 @@ private static final long serialVersionUID=-6770840088008205069L;
 	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
 	 * @version created on: Mar 7, 2012 3:25:24 PM, revision:
 	 */
-	public static class Tanh implements CNonlinearity
+	public static class Tanh implements SplitCNonlinearity
 	{
 	private static final long serialVersionUID=-4076175300571900249L;
 	private double alpha=1.1;
@@ -101,6 +125,19 @@ private static final long serialVersionUID=-6770840088008205069L;
 		{
 			return u.multiply(Math.tanh(alpha*u.abs())/u.abs());
 		}
+		
+		public void g(double[] ur,double[] ui,double[] gr,double[] gi)
+		{
+		double abs,a;
+		
+			for(int i=0;i<ur.length;i++) 
+			{
+				abs=Math.hypot(ur[i],ui[i]);
+				a=Math.tanh(alpha*abs)/abs;
+				gr[i]=ur[i]*a;
+				gi[i]=ui[i]*a;
+			}
+		}
 
 		public Complex dg(Complex u)
 		{
@@ -216,7 +253,41 @@ private double pcath=1e-6;//threshold used in PCA
 private double epsilon=1e-15;//convergence threshold of the ica algorithm
 private double eta=0.01;//step size for gradient method
 private int maxiteration=50000;//max iteration times allowed
+private int numit=0;//number of iterations of the last invocation
+private MiniBatchNaturalGradient minibatch=null;//mini-batch mode, null for full-batch
 
+	/**
+	 * get the mini-batch mode
+	 * @return
+	 * null for full-batch
+	 */
+	public MiniBatchNaturalGradient miniBatch()
+	{
+		return minibatch;
+	}
+	
+	/**
+	 * Set the mini-batch mode. Each iteration uses a mini-batch of frames 
+	 * instead of all frames, with shuffling, momentum, adaptive learning rate 
+	 * and early stopping, see MiniBatchNaturalGradient.
+	 * @param minibatch
+	 * null for full-batch
+	 */
+	public void setMiniBatch(MiniBatchNaturalGradient minibatch)
+	{
+		this.minibatch=minibatch;
+	}
+	
+	/**
+	 * get the number of full-batch iterations of the last converged invocation, 
+	 * or the number of epochs in mini-batch mode
+	 * @return
+	 */
+	public int numIterations()
+	{
+		return numit;
+	}
+	
 	/**
 	 * apply nonlinearity on each entry of a vector
 	 * @param y
@@ -277,6 +348,13 @@ private int maxiteration=50000;//max iteration times allowed
 		if(seed.length!=sigs.length||seed[0].length!=sigs.length) throw new IllegalArgumentException(
 				"illegal seeds size: "+seed.length+" x "+seed[0].length+", required: "+sigs.length+" x "+sigs.length);
 
+		if(minibatch!=null)
+		{
+			w=minibatch.demixingMatrix(sigs,seed,nonlinearity.fi,nonlinearity.h);
+			numit=minibatch.numEpochs();
+			return w;
+		}
+
 		w=seed;
 		w1=new Complex[w.length][w[0].length];
 		gbar=new Complex[w.length][w[0].length];
@@ -316,7 +394,11 @@ private int maxiteration=50000;//max iteration times allowed
 			w1=BLAS.substract(temp1,temp2,w1);
 			
 			//check convergence
-			if(norm(w,w1)<=epsilon) return w;
+			if(norm(w,w1)<=epsilon) 
+			{
+				numit=it;
+				return w;
+			}
 			else
 			{
 				swap=w;
@@ -439,6 +521,15 @@ private int maxiteration=50000;//max iteration times allowed
 		return demix;
 	}
 	
+	public ICA copy()
+	{
+	ScaledInfomaxICA copy;
+	
+		copy=new ScaledInfomaxICA();
+		if(minibatch!=null) copy.setMiniBatch(new MiniBatchNaturalGradient(minibatch));
+		return copy;
+	}
+	
 	public ICAResult icaPreprocessed(Complex[][] sigsp,Complex[][] seeds)
 	{
 	ICAResult icares;
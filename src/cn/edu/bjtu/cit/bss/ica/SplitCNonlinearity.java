@@ -0,0 +1,25 @@
+package cn.edu.bjtu.cit.bss.ica;
+
+/**
+ * <h1>Description</h1>
+ * Complex valued nonlinearity function which can also be applied on vectors in
+ * split complex format, so algorithms working on primitive arrays need not to
+ * create a complex number for each sample.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 24, 2026 9:20:37 AM, revision:
+ */
+public interface SplitCNonlinearity extends CNonlinearity
+{
+	/**
+	 * apply the function on each entry of a complex vector
+	 * @param ur, ui
+	 * real and imaginary part of the input vector
+	 * @param gr, gi
+	 * space for real and imaginary part of the results
+	 */
+	public void g(double[] ur,double[] ui,double[] gr,double[] gi);
+}
@@ -91,24 +91,27 @@ private static final String LOGGER_NAME="cn.edu.bjtu.cit.bss";
 		}
 	}
 	
-/*
- * supported nonlinearity function
- */
-private static final Map<String,Nonlinearity> NONLINEARITY_MAP=new HashMap<String,Nonlinearity>();
-
-	static
-	{
-		NONLINEARITY_MAP.put("SSL",new SSL());
-		NONLINEARITY_MAP.put("SNP",new SNP());
-	}	
-	
-private Nonlinearity nonlinearity=NONLINEARITY_MAP.get("SNP");//the nonlinearity mapping
+private Nonlinearity nonlinearity=nonlinearity("SNP");//the nonlinearity mapping, not shared among instances
 private int maxiteration=1000;//max iteration times
 private double tol=1e-6;//threshold controls when the algorithm converge
 
 	public FIVABSS()
 	{}
 
+	/**
+	 * get a new instance of a supported nonlinearity, so that algorithm 
+	 * instances do not share it
+	 * @param name
+	 * nonlinearity name: SSL, SNP
+	 * @return
+	 */
+	private static Nonlinearity nonlinearity(String name)
+	{
+		if("SSL".equals(name)) return new SSL();
+		else if("SNP".equals(name)) return new SNP();
+		else throw new IllegalArgumentException("unknown nonlinearity: "+name);
+	}
+
 	/**
 	 * apply IVA on a frequency band
 	 * @param offset
@@ -184,7 +187,7 @@ private double tol=1e-6;//threshold controls when the algorithm converge
 			sumabsy2=new double[xdata[0].length][xdata[0][0].length];
 			e2=new Complex[xdata[0].length];
 			
-			eigensolver=new CommonsEigensolver();
+			eigensolver=new JacobiEigensolver();
 			edm=BLAS.eyeComplex(fdbss.numSources(),fdbss.numSources());
 			
 			logger=Logger.getLogger(LOGGER_NAME);
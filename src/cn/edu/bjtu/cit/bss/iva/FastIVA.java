@@ -1,10 +1,12 @@
 package cn.edu.bjtu.cit.bss.iva;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 import javax.sound.sampled.*;
 import org.apache.commons.math.complex.*;
 import pp.util.BLAS;
+import pp.util.ComplexBLAS;
 import cn.edu.bjtu.cit.bss.*;
 import cn.edu.bjtu.cit.bss.FDBSS.Operation;
 import cn.edu.bjtu.cit.bss.FDBSS.Parameter;
@@ -29,34 +31,10 @@ public class FastIVA extends IVA
 {
 private static final long serialVersionUID=6077091303714944009L;
 private static final String LOGGER_NAME="cn.edu.bjtu.cit.bss";
+private static final String SPILL_PREFIX="ivaspill";//spill file name prefix for preprocessed data
+private static final int COMPLEX_BYTES=40;//estimated heap size of a boxed complex number and its reference
 	
-/*
- * supported nonlinearity calculation methods
- */
-private static final Map<String,NonlinearityTable> 
-	NONLINEARITY_TABLE_MAP=new HashMap<String,NonlinearityTable>();
-
-	static
-	{
-		//G1 nonlinearity used in instantaneous CFastICA
-		NONLINEARITY_TABLE_MAP.put("instg1",new InstG1Nonlinearity());
-		//G2 nonlinearity used in instantaneous CFastICA
-		NONLINEARITY_TABLE_MAP.put("instg2",new InstG2Nonlinearity());
-		
-		//spherically symmetric Laplacian
-		NONLINEARITY_TABLE_MAP.put("ssl",new SSLNonlinearity());
-		//spherically symmetric log
-		NONLINEARITY_TABLE_MAP.put("sslog",new SSLogNonlinearity());
-
-		//nonlinearity on subspace
-		NONLINEARITY_TABLE_MAP.put("subspace",new SubspaceNonlinearity());
-		
-		NONLINEARITY_TABLE_MAP.put("cov",new CovNonlinearity());
-		
-		NONLINEARITY_TABLE_MAP.put("cov1",new Cov1Nonlinearity());
-	}
-
-private NonlinearityTable nonlinearity=NONLINEARITY_TABLE_MAP.get("subspace");//the nonlinearity mapping
+private NonlinearityTable nonlinearity=nonlinearityTable("subspace");//the nonlinearity mapping, not shared among instances
 private int maxiteration=500;//max iteration times
 private double tol=1e-10;//threshold controls when the algorithm converge
 /*
@@ -64,6 +42,10 @@ private double tol=1e-10;//threshold controls when the algorithm converge
  */
 private int subbandsize=100;//subband size in taps, 0 for full frequency band
 private int subbandshift=subbandsize/8;//subband shift taps
+private int parallelism=1;//number of threads used to update frequency bins in a clique, 1 for sequential
+private transient ForkJoinPool pool=null;//used to update frequency bins concurrently
+private long memorybudget=0;//heap budget in bytes for frequency bin data, 0 for unlimited
+private transient File spillfile=null;//spill file of the current invocation, null if not spilled
 	
 	/**
 	 * <h1>Description</h1>
@@ -78,34 +60,72 @@ private int subbandshift=subbandsize/8;//subband shift taps
 	private class IVAStat implements Serializable
 	{
 	private static final long serialVersionUID=2405055568733254664L;
+	private int numsources;//number of sources
+	private int numframes;//number of stft frames
 	private Complex[][][] xdata;//already preprocessed data [binidx][sourcei][tau]
 	private Complex[][][] ydata;//estimated source data [binidx][sourcei][tau]
 	private Complex[][][] wp;//demixing matrices [binidx][][]
-	private Set<Integer> ivabins;//unconverged frequency bins
+	private boolean[] converged;//true if a frequency bin is converged
+	private int binsleft;//number of unconverged frequency bins
 	private double[] cosine;//cosine for each demixing matrix
+	/*
+	 * out-of-core mode
+	 */
+	private transient BinMajorSTFTStore spill=null;//preprocessed data of all bins, null if all bins are in memory
+	private Complex[][][] wy=null;//demixing matrices used to calculate current estimated source data [binidx][][]
 	
 		/**
+		 * all frequency bins are kept in memory
 		 * @param xdata
 		 * already preprocessed data [binidx][sourcei][tau]
 		 */
 		public IVAStat(Complex[][][] xdata)
 		{
+			this(xdata.length,xdata[0].length,xdata[0][0].length);
 			this.xdata=xdata;
-			ydata=new Complex[numBins()][][];
-			cosine=new double[numBins()];
+		}
+		
+		/**
+		 * Only frequency bins in the active subband are kept in memory, others 
+		 * are paged from the spill file.
+		 * @param spill
+		 * preprocessed data of all frequency bins
+		 */
+		public IVAStat(BinMajorSTFTStore spill)
+		{
+			this(spill.fftSize()/2+1,spill.numChannels(),spill.numSTFTFrames());
+			this.spill=spill;
+			xdata=new Complex[numBins()][][];
+			wy=new Complex[numBins()][][];
+		}
+		
+		/**
+		 * @param numbins
+		 * number of frequency bins
+		 * @param numsources
+		 * number of sources
+		 * @param numframes
+		 * number of stft frames
+		 */
+		private IVAStat(int numbins,int numsources,int numframes)
+		{
+			this.numsources=numsources;
+			this.numframes=numframes;
+			ydata=new Complex[numbins][][];
+			cosine=new double[numbins];
 			
 			/*
 			 * initialize demixing matrices
 			 */
-			wp=new Complex[numBins()][][];
+			wp=new Complex[numbins][][];
 			for(int f=0;f<wp.length;f++) 
 				wp[f]=BLAS.eyeComplex(numSources(),numSources());
 			
 			/*
 			 * initialize not converged bins
 			 */
-			ivabins=new HashSet<Integer>();
-			for(int f=0;f<numBins();f++) ivabins.add(f);
+			converged=new boolean[numbins];
+			binsleft=numbins;
 		}
 	
 		/**
@@ -114,7 +134,7 @@ private int subbandshift=subbandsize/8;//subband shift taps
 		 */
 		public int numBins()
 		{
-			return xdata.length;
+			return wp.length;
 		}
 		
 		/**
@@ -123,7 +143,7 @@ private int subbandshift=subbandsize/8;//subband shift taps
 		 */
 		public int numSources()
 		{
-			return xdata[0].length;
+			return numsources;
 		}
 		
 		/**
@@ -132,7 +152,48 @@ private int subbandshift=subbandsize/8;//subband shift taps
 		 */
 		public int numSTFTFrames()
 		{
-			return xdata[0][0].length;
+			return numframes;
+		}
+		
+		/**
+		 * Make frequency bins of a clique resident in memory, bins not in the 
+		 * clique are released. Estimated source data of a converged bin is 
+		 * restored with the demixing matrix used to calculate it, so the 
+		 * results are the same as the in memory mode. Nothing is done if all 
+		 * bins are in memory.
+		 * @param clique
+		 * clique indices
+		 * @throws IOException
+		 */
+		public void setActiveBins(List<Integer> clique) throws IOException
+		{
+		boolean[] active;
+		
+			if(spill==null) return;
+			
+			active=new boolean[numBins()];
+			for(int binidx:clique) active[binidx]=true;
+			
+			/*
+			 * release inactive bins
+			 */
+			for(int binidx=0;binidx<numBins();binidx++) 
+				if(!active[binidx]) 
+				{
+					xdata[binidx]=null;
+					ydata[binidx]=null;
+				}
+			
+			/*
+			 * page in active bins
+			 */
+			for(int binidx:clique) 
+			{
+				if(xdata[binidx]!=null) continue;
+				xdata[binidx]=spill.binData(binidx,null);
+				if(isConverged(binidx)&&wy[binidx]!=null) 
+					ydata[binidx]=BLAS.multiply(wy[binidx],xdata[binidx],null);
+			}
 		}
 		
 		/**
@@ -145,7 +206,10 @@ private int subbandshift=subbandsize/8;//subband shift taps
 		{
 			//separate data with new demixing matrix
 			if(!isConverged(binidx)) 
+			{
 				ydata[binidx]=BLAS.multiply(wp[binidx],xdata[binidx],ydata[binidx]);
+				if(wy!=null) wy[binidx]=BLAS.copy(wp[binidx],wy[binidx]);
+			}
 			
 			return ydata[binidx];
 		}
@@ -184,8 +248,6 @@ private int subbandshift=subbandsize/8;//subband shift taps
 		 */
 		public boolean updateDemixingMatrix(int binidx,Complex[][] wp1)
 		{
-		boolean converged=false;
-		
 			//already converged
 			if(isConverged(binidx)) return true;
 			
@@ -200,14 +262,14 @@ private int subbandshift=subbandsize/8;//subband shift taps
 			//converged
 			if(Math.abs(1-cosine[binidx])<=tol) 
 			{	
-				ivabins.remove(binidx);
-				converged=true;
+				converged[binidx]=true;
+				binsleft--;
 			}
 			
 			//copy demixing matrix
 			wp[binidx]=BLAS.copy(wp1,wp[binidx]);
 			
-			return converged;
+			return converged[binidx];
 		}
 		
 		/**
@@ -218,7 +280,7 @@ private int subbandshift=subbandsize/8;//subband shift taps
 		 */
 		public boolean isConverged(int binidx)
 		{
-			return !ivabins.contains(binidx);
+			return converged[binidx];
 		}
 		
 		/**
@@ -227,7 +289,7 @@ private int subbandshift=subbandsize/8;//subband shift taps
 		 */
 		public int numBinsLeft()
 		{
-			return ivabins.size();
+			return binsleft;
 		}
 		
 		/**
@@ -239,214 +301,625 @@ private int subbandshift=subbandsize/8;//subband shift taps
 		{
 			return BLAS.mean(cosine);
 		}
+		
+		/**
+		 * close the spill file if it is used
+		 * @throws IOException
+		 */
+		public void close() throws IOException
+		{
+			if(spill!=null) spill.close();
+		}
+	}
+
+	/**
+	 * <h1>Description</h1>
+	 * Workspace used to update demixing matrices, intermediate results are kept 
+	 * in primitive arrays and reused, so no object is allocated in the inner 
+	 * loops. Each thread needs its own workspace.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 17, 2026 11:36:05 PM, revision:
+	 */
+	private static class UpdateWorkspace implements Serializable
+	{
+	private static final long serialVersionUID=-4430960218355713728L;
+	private double[] e2r,e2i;//the second expectation
+	private double[][][] w;//new demixing matrix before decorrelation
+	private double[][][] h;//Hermitian transpose of W, then of E
+	private double[][][] c;//W*W', then (W*W')^-0.5
+	private double[][][] v;//eigenvectors scaled by D^-0.5
+	private double[] ed;//eigenvalues of W*W'
+	private double[][][] ev;//eigenvectors of W*W'
+	private double[][][] d;//the decorrelated demixing matrix
+	private HermitianEigensolver eigensolver;//used for decorrelation
+	
+		/**
+		 * @param numsources
+		 * number of sources
+		 */
+		public UpdateWorkspace(int numsources)
+		{
+			e2r=new double[numsources];
+			e2i=new double[numsources];
+			w=ComplexBLAS.newMatrix(numsources,numsources);
+			h=ComplexBLAS.newMatrix(numsources,numsources);
+			c=ComplexBLAS.newMatrix(numsources,numsources);
+			v=ComplexBLAS.newMatrix(numsources,numsources);
+			ed=new double[numsources];
+			ev=ComplexBLAS.newMatrix(numsources,numsources);
+			d=ComplexBLAS.newMatrix(numsources,numsources);
+			eigensolver=new JacobiEigensolver();
+		}
+	}
+
+	/**
+	 * <h1>Description</h1>
+	 * Calculate estimated source data for a range of frequency bins in a clique.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 17, 2026 11:38:52 PM, revision:
+	 */
+	private class SeparationTask extends RecursiveAction
+	{
+	private static final long serialVersionUID=5093129741163893010L;
+	private IVAStat ivastat;
+	private List<Integer> clique;//clique indices
+	private Complex[][][] ydata;//used to store estimated source data
+	private int binstart;//the first index in the clique, inclusive
+	private int binend;//the last index in the clique, exclusive
+	
+		public SeparationTask(IVAStat ivastat,List<Integer> clique,Complex[][][] ydata,int binstart,int binend)
+		{
+			this.ivastat=ivastat;
+			this.clique=clique;
+			this.ydata=ydata;
+			this.binstart=binstart;
+			this.binend=binend;
+		}
+		
+		protected void compute()
+		{
+			for(int binidx=binstart;binidx<binend;binidx++) 
+				ydata[binidx]=ivastat.estimatedSourceData(clique.get(binidx));
+		}
+	}
+	
+	/**
+	 * <h1>Description</h1>
+	 * Calculate new demixing matrices for a range of unconverged frequency bins 
+	 * in a clique. The demixing matrices in the iva status are not modified.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 17, 2026 11:41:17 PM, revision:
+	 */
+	private class UpdateTask extends RecursiveAction
+	{
+	private static final long serialVersionUID=-1750436938213624586L;
+	private IVAStat ivastat;
+	private List<Integer> clique;//clique indices
+	private Complex[][][] ydata;//estimated source data
+	private Complex[][][] wp1;//used to store new demixing matrices
+	private int[] binindices;//indices in the clique of unconverged bins
+	private int binstart;//the first position in the index array, inclusive
+	private int binend;//the last position in the index array, exclusive
+	private UpdateWorkspace ws;
+	
+		public UpdateTask(IVAStat ivastat,List<Integer> clique,Complex[][][] ydata,
+				Complex[][][] wp1,int[] binindices,int binstart,int binend,UpdateWorkspace ws)
+		{
+			this.ivastat=ivastat;
+			this.clique=clique;
+			this.ydata=ydata;
+			this.wp1=wp1;
+			this.binindices=binindices;
+			this.binstart=binstart;
+			this.binend=binend;
+			this.ws=ws;
+		}
+		
+		protected void compute()
+		{
+		int binidx;
+		
+			for(int i=binstart;i<binend;i++) 
+			{
+				binidx=binindices[i];
+				updateBin(ivastat,binidx,clique.get(binidx),ydata[binidx],ws,wp1[binidx]);
+			}
+		}
 	}
 
 	public FastIVA()
 	{}
 	
+	/**
+	 * Get a new instance of a supported nonlinearity. Nonlinearities keep 
+	 * intermediate data such as the estimated sources, so each algorithm 
+	 * instance needs its own.
+	 * @param name
+	 * nonlinearity name: instg1, instg2, ssl, sslog, subspace, cov, cov1
+	 * @return
+	 */
+	private static NonlinearityTable nonlinearityTable(String name)
+	{
+		//G1 nonlinearity used in instantaneous CFastICA
+		if("instg1".equals(name)) return new InstG1Nonlinearity();
+		//G2 nonlinearity used in instantaneous CFastICA
+		else if("instg2".equals(name)) return new InstG2Nonlinearity();
+		//spherically symmetric Laplacian
+		else if("ssl".equals(name)) return new SSLNonlinearity();
+		//spherically symmetric log
+		else if("sslog".equals(name)) return new SSLogNonlinearity();
+		//nonlinearity on subspace
+		else if("subspace".equals(name)) return new SubspaceNonlinearity();
+		else if("cov".equals(name)) return new CovNonlinearity();
+		else if("cov1".equals(name)) return new Cov1Nonlinearity();
+		else throw new IllegalArgumentException("unknown nonlinearity: "+name);
+	}
+	
+	/**
+	 * get number of threads used to update frequency bins in a clique
+	 * @return
+	 */
+	public int parallelism()
+	{
+		return parallelism;
+	}
+	
+	/**
+	 * Set number of threads used to update frequency bins in a clique. In an 
+	 * iteration, frequency bins only share the nonlinearity table, so they 
+	 * can be updated concurrently, the results are the same as the 
+	 * sequential version.
+	 * @param parallelism
+	 * number of threads, 1 for sequential
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if(parallelism<1) throw new IllegalArgumentException(
+				"parallelism must be positive: "+parallelism);
+		this.parallelism=parallelism;
+	}
+	
+	/**
+	 * get heap budget for frequency bin data
+	 * @return
+	 * budget in bytes, 0 for unlimited
+	 */
+	public long memoryBudget()
+	{
+		return memorybudget;
+	}
+	
+	/**
+	 * Set heap budget for frequency bin data. If data of all frequency bins 
+	 * exceeds the budget, preprocessed data are spilled to a bin-major file, 
+	 * only bins in the active subband are kept in memory.
+	 * @param memorybudget
+	 * budget in bytes, 0 for unlimited
+	 */
+	public void setMemoryBudget(long memorybudget)
+	{
+		if(memorybudget<0) throw new IllegalArgumentException(
+				"memory budget must not be negative: "+memorybudget);
+		this.memorybudget=memorybudget;
+	}
+	
+	/**
+	 * run tasks on the thread pool, or in current thread if there is no pool
+	 * @param tasks
+	 * tasks
+	 */
+	private void runTasks(List<? extends RecursiveAction> tasks)
+	{
+		if(pool==null) for(RecursiveAction task:tasks) task.invoke();
+		else
+		{
+			for(RecursiveAction task:tasks) pool.execute(task);
+			for(RecursiveAction task:tasks) task.join();
+		}
+	}
+	
 	/**
 	 * perform IVA on a clique
 	 * @param ivastat
 	 * iva status
 	 * @param clique
 	 * clique indices
+	 * @return
+	 * number of iterations performed
 	 */
-	private void iva(IVAStat ivastat,ArrayList<Integer> clique)
+	private int iva(IVAStat ivastat,ArrayList<Integer> clique)
 	{
 	Complex[][][] ydata;//estimated signals
-	Complex[][] xdata;//sensor data
-	Complex[][] wp,wp1;//the demixing matrix
-	double e1;//the first expectation
-	Complex[] e2;//the second expectation
+	Complex[][][] wp1;//new demixing matrices
+	UpdateWorkspace[] ws;//one for each task
+	int[] binindices;//indices of unconverged bins in the clique
 	int binsleft=0;//number of still not converged bins
-	int realbinidx;//real binidx in the entire frequency band
+	int numtasks,chunksize;
+	List<SeparationTask> stasks;
+	List<UpdateTask> utasks;
 	Logger logger;
 	
 		/*
 		 * initialize
 		 */
 		ydata=new Complex[clique.size()][][];
-		wp1=new Complex[ivastat.numSources()][ivastat.numSources()];
-		e2=new Complex[ivastat.numSources()];
+		wp1=new Complex[clique.size()][ivastat.numSources()][ivastat.numSources()];
+		binindices=new int[clique.size()];
+		ws=new UpdateWorkspace[Math.min(parallelism,clique.size())];
+		for(int i=0;i<ws.length;i++) ws[i]=new UpdateWorkspace(ivastat.numSources());
+		stasks=new ArrayList<SeparationTask>(ws.length);
+		utasks=new ArrayList<UpdateTask>(ws.length);
 		logger=Logger.getLogger(LOGGER_NAME);
 		
 		/*
 		 * number of unconverged frequency bins
 		 */
 		for(int rbinidx:clique) if(!ivastat.isConverged(rbinidx)) binsleft++;
-		if(binsleft<=0) return;
+		if(binsleft<=0) return 0;
 		
 		//perform iteration
 		for(int itcount=0;itcount<maxiteration;itcount++)
 		{
-			//get separated signals
-			for(int binidx=0;binidx<ydata.length;binidx++) 
-				ydata[binidx]=ivastat.estimatedSourceData(clique.get(binidx));
+			/*
+			 * get separated signals
+			 */
+			stasks.clear();
+			chunksize=(int)Math.ceil((double)ydata.length/ws.length);
+			for(int offset=0;offset<ydata.length;offset+=chunksize) 
+				stasks.add(new SeparationTask(
+						ivastat,clique,ydata,offset,Math.min(offset+chunksize,ydata.length)));
+			runTasks(stasks);
 			
 			//prepare for nonlinearity
 			nonlinearity.setYData(ydata);
 			
-			//update layer by layer
+			/*
+			 * Calculate new demixing matrices for unconverged bins, bins are 
+			 * assigned to tasks after skipping the converged ones, so the 
+			 * work is balanced.
+			 */
+			numtasks=0;
 			for(int binidx=0;binidx<ydata.length;binidx++) 
-			{
-				//get the actual bin index
-				realbinidx=clique.get(binidx);
-				//this frequency bin is converged
-				if(ivastat.isConverged(realbinidx)) continue;
-				
-				//sensor data for current frequency bin
-				xdata=ivastat.sensorData(realbinidx);
-				//old demixing matrix for current frequency bin
-				wp=ivastat.demixingMatrix(realbinidx);
-
-				//update source by source
-				for(int sourcei=0;sourcei<ivastat.numSources();sourcei++)
-				{
-					/*
-					 * calculate expectations
-					 */
-					e1=0;
-					Arrays.fill(e2,Complex.ZERO);
-						
-					for(int tau=0;tau<ivastat.numSTFTFrames();tau++) 
-					{
-					double dg,ddg;
-					Complex temp;
-					
-						dg=nonlinearity.dg(binidx,sourcei,tau);
-						ddg=nonlinearity.ddg(binidx,sourcei,tau);
-						
-						//G'+|y|^2*G''
-						e1+=dg+BLAS.absSquare(ydata[binidx][sourcei][tau])*ddg;
-						
-						temp=ydata[binidx][sourcei][tau].conjugate().multiply(dg);
-						for(int ii=0;ii<e2.length;ii++) 
-							e2[ii]=e2[ii].add(xdata[ii][tau].multiply(temp));
-					}
-					
-					e1/=ivastat.numSTFTFrames();
-					e2=BLAS.scalarMultiply(1.0/ivastat.numSTFTFrames(),e2,e2);
-					
-					/*
-					 * update demixing vector for current sourcei
-					 */
-					for(int jj=0;jj<wp1[sourcei].length;jj++) 
-						wp1[sourcei][jj]=
-							wp[sourcei][jj].conjugate().multiply(e1).subtract(e2[jj]).conjugate();
-				}
-
-				//perform symmetric decorrelation
-				symmetricDecorrelation(wp1);
-				
-				//update demixing matrix for current bin
-				if(ivastat.updateDemixingMatrix(realbinidx,wp1)) binsleft--;
-			}
+				if(!ivastat.isConverged(clique.get(binidx))) binindices[numtasks++]=binidx;
+			
+			utasks.clear();
+			chunksize=(int)Math.ceil((double)numtasks/ws.length);
+			for(int offset=0,taskidx=0;offset<numtasks;offset+=chunksize,taskidx++) 
+				utasks.add(new UpdateTask(ivastat,clique,ydata,wp1,binindices,
+						offset,Math.min(offset+chunksize,numtasks),ws[taskidx]));
+			runTasks(utasks);
+			
+			//update demixing matrices and convergence status in the original order
+			for(int i=0;i<numtasks;i++) 
+				if(ivastat.updateDemixingMatrix(clique.get(binindices[i]),wp1[binindices[i]])) binsleft--;
 	
 			logger.info("iteration "+itcount+", obj(->1)="+ivastat.cosine()+
 					", "+ivastat.numBinsLeft()+" frequency bins left");
 			//all bins are converged
-			if(binsleft<=0) return;
+			if(binsleft<=0) return itcount+1;
 		}
 		
+		return maxiteration;
 //		throw new AlgorithmNotConvergeException("maximum iteration times exceeded: "+maxiteration);
 	}
 	
 	/**
-	 * perform symmetric decorrelation
+	 * calculate new demixing matrix for an unconverged frequency bin
+	 * @param ivastat
+	 * iva status
+	 * @param binidx
+	 * frequency bin index in the clique
+	 * @param realbinidx
+	 * real frequency bin index in the entire frequency band
+	 * @param ydata
+	 * estimated source data of this frequency bin
+	 * @param ws
+	 * workspace
 	 * @param wp1
+	 * space for the new demixing matrix
 	 */
-	private void symmetricDecorrelation(Complex[][] wp1)
+	private void updateBin(IVAStat ivastat,int binidx,int realbinidx,Complex[][] ydata,UpdateWorkspace ws,Complex[][] wp1)
 	{
-	HermitianEigensolver eigensolver;//used for decorrelation
-	HermitianEigensolver.EigenDecomposition decomp;	
-	Complex[][] wh=null,edm,ev,evh=null;//used for decorrelation
+	Complex[][] xdata;//sensor data
+	Complex[][] wp;//the old demixing matrix
+	Complex[] ys;//estimated data of a source
+	double e1;//the first expectation
+	double dg,ddg,yr,yi,tr,ti,xr,xi,scale;
+	int numframes;
 	
-		eigensolver=new CommonsEigensolver();
-		edm=BLAS.eyeComplex(wp1.length,wp1.length);
+		//sensor data for current frequency bin
+		xdata=ivastat.sensorData(realbinidx);
+		//old demixing matrix for current frequency bin
+		wp=ivastat.demixingMatrix(realbinidx);
+		numframes=ivastat.numSTFTFrames();
+		scale=1.0/numframes;
+
+		//update source by source
+		for(int sourcei=0;sourcei<ivastat.numSources();sourcei++)
+		{
+			/*
+			 * calculate expectations
+			 */
+			e1=0;
+			Arrays.fill(ws.e2r,0);
+			Arrays.fill(ws.e2i,0);
+			ys=ydata[sourcei];
+				
+			for(int tau=0;tau<numframes;tau++) 
+			{
+				dg=nonlinearity.dg(binidx,sourcei,tau);
+				ddg=nonlinearity.ddg(binidx,sourcei,tau);
+				yr=ys[tau].getReal();
+				yi=ys[tau].getImaginary();
+				
+				//G'+|y|^2*G''
+				e1+=dg+(yr*yr+yi*yi)*ddg;
+				
+				//conj(y)*G'
+				tr=yr*dg;
+				ti=-yi*dg;
+				for(int ii=0;ii<ws.e2r.length;ii++) 
+				{
+					xr=xdata[ii][tau].getReal();
+					xi=xdata[ii][tau].getImaginary();
+					ws.e2r[ii]+=xr*tr-xi*ti;
+					ws.e2i[ii]+=xr*ti+xi*tr;
+				}
+			}
+			
+			e1/=numframes;
+			
+			/*
+			 * update demixing vector for current sourcei: (conj(w)*e1-e2)^*
+			 */
+			for(int jj=0;jj<ws.w[0][sourcei].length;jj++) 
+			{
+				ws.w[0][sourcei][jj]=wp[sourcei][jj].getReal()*e1-ws.e2r[jj]*scale;
+				ws.w[1][sourcei][jj]=wp[sourcei][jj].getImaginary()*e1+ws.e2i[jj]*scale;
+			}
+		}
+
+		//perform symmetric decorrelation
+		symmetricDecorrelation(ws,wp1);
+	}
 	
-		/*
-		 * W*W'
-		 */
-		wh=BLAS.transpose(wp1,wh);
-		wh=BLAS.multiply(wp1,wh,wh);
+	/**
+	 * perform symmetric decorrelation: (W*W')^-0.5*W
+	 * @param ws
+	 * workspace contains the demixing matrix W
+	 * @param wp1
+	 * space for the decorrelated demixing matrix
+	 */
+	private void symmetricDecorrelation(UpdateWorkspace ws,Complex[][] wp1)
+	{
+	double dd;
+	int n;
+	
+		n=ws.w[0].length;
+		
+		//W*W'
+		ComplexBLAS.multiply(ws.w,ComplexBLAS.hermitian(ws.w,ws.h),ws.c);
 		
 		/*
-		 * (W*W')^-0.5
+		 * (W*W')^-0.5=E*D^-0.5*E'
 		 */
-		decomp=eigensolver.eig(wh);
-
-		//construct D^(-0.5)
-		for(int i=0;i<edm.length;i++) 
-			//Hermitian matrix has only real eigenvalues
-			edm[i][i]=new Complex(1.0/Math.sqrt(decomp.eigenvalue(i).getReal()),0);
-			
-		ev=decomp.eigenvectors();
-		wh=BLAS.multiply(ev,edm,wh);
-		evh=BLAS.transpose(ev,evh);
-		wh=BLAS.multiply(wh,evh,wh);
+		ws.eigensolver.eig(ws.c[0],ws.c[1],ws.ed,ws.ev[0],ws.ev[1]);
+		for(int j=0;j<n;j++) 
+		{
+			dd=1.0/Math.sqrt(ws.ed[j]);
+			for(int i=0;i<n;i++) 
+			{
+				ws.v[0][i][j]=ws.ev[0][i][j]*dd;
+				ws.v[1][i][j]=ws.ev[1][i][j]*dd;
+			}
+		}
+		ComplexBLAS.multiply(ws.v,ComplexBLAS.hermitian(ws.ev,ws.h),ws.c);
 
 		//(W*W')^-0.5*W
-		wp1=BLAS.multiply(wh,wp1,wp1);
+		ComplexBLAS.multiply(ws.c,ws.w,ws.d);
+		ComplexBLAS.build(ws.d,wp1);
 	}
 
-	public DemixingModel applyICA()
+	/**
+	 * Estimate the heap size of the preprocessed data and estimated source data 
+	 * of a frequency bin.
+	 * @param numsources
+	 * number of sources
+	 * @param numframes
+	 * number of stft frames
+	 * @return
+	 * size in bytes
+	 */
+	private static long binBytes(int numsources,int numframes)
 	{
-	Complex[][][] xdata;//observed signals [bin index][source index][frame index]
-	Complex[][][] prew;//preprocessing matrix [bin index][][]
-	IVAStat ivastat;
+		//both sensor data and source data are stored as boxed complex numbers
+		return 2L*numsources*numframes*COMPLEX_BYTES;
+	}
 	
-		//load and preprocess data
-		{
-		FDBSSAlgorithm fdbss;
-		Preprocessor preprocessor;
+	/**
+	 * Load and preprocess all frequency bins. If a memory budget is set and 
+	 * the data of all bins exceeds it, preprocessed data are written into 
+	 * a spill file in bin-major order instead of being kept in memory.
+	 * @param prew
+	 * space for preprocessing matrices [bin index][][]
+	 * @return
+	 * @throws IOException
+	 */
+	private IVAStat loadData(Complex[][][] prew) throws IOException
+	{
+	FDBSSAlgorithm fdbss;
+	Preprocessor preprocessor;
+	Logger logger;
+	Complex[][][] xdata;//preprocessed signals [bin index][source index][frame index]
+	Complex[][] bindata=null;//buffer for a frequency bin
+	BinMajorSTFTStore.Writer writer=null;
+	long bytes;
 	
-			fdbss=this.getFDBSSAlgorithm();
-		
-			/*
-			 * load data
-			 */
-			xdata=new Complex[fdbss.fftSize()/2+1][][];
-			for(int binidx=0;binidx<xdata.length;binidx++) 
-				xdata[binidx]=fdbss.binData(binidx,xdata[binidx]);
+		fdbss=this.getFDBSSAlgorithm();
+		preprocessor=this.preprocessor();
+		logger=Logger.getLogger(LOGGER_NAME);
+		xdata=new Complex[prew.length][][];
 		
-			/*
-			 * preprocess
-			 */
-			preprocessor=this.preprocessor();
-			prew=new Complex[xdata.length][][];
+		try
+		{
 			for(int binidx=0;binidx<xdata.length;binidx++) 
 			{
-				xdata[binidx]=preprocessor.preprocess(xdata[binidx],fdbss.numSources());
+				bindata=fdbss.binData(binidx,bindata);
+				xdata[binidx]=preprocessor.preprocess(bindata,fdbss.numSources());
 				prew[binidx]=preprocessor.transferMatrix();
+				
+				//see if all bins can be kept in memory after the first bin is loaded
+				if(binidx==0&&memorybudget>0) 
+				{
+					bytes=binBytes(xdata[0].length,xdata[0][0].length);
+					if(bytes*xdata.length>memorybudget) 
+					{
+						spillfile=createSpillFile();
+						logger.info("data of "+xdata.length+" frequency bins needs "+
+								bytes*xdata.length+" bytes, exceeds the memory budget "+
+								memorybudget+", spill to: "+spillfile);
+						writer=new BinMajorSTFTStore.Writer(
+								spillfile,fdbss.fftSize(),xdata[0].length,xdata[0][0].length);
+					}
+				}
+				
+				if(writer!=null) 
+				{
+					writer.writeBin(xdata[binidx]);
+					xdata[binidx]=null;
+				}
 			}
 		}
+		finally
+		{
+			if(writer!=null) writer.close();
+		}
+		
+		if(writer==null) return new IVAStat(xdata);
+		else return new IVAStat(new BinMajorSTFTStore(spillfile));
+	}
+	
+	/**
+	 * Create a new spill file for preprocessed data, in the working directory 
+	 * of the bss algorithm if available, otherwise in the system temporary 
+	 * directory. File names are unique, so concurrent jobs do not overwrite 
+	 * the spill file of each other.
+	 * @return
+	 * @throws IOException
+	 */
+	private File createSpillFile() throws IOException
+	{
+	FDBSSAlgorithm fdbss;
+	File dir=null;
+	
+		fdbss=this.getFDBSSAlgorithm();
+		if(fdbss instanceof FDBSS) dir=((FDBSS)fdbss).workingDirectory();
+		return File.createTempFile(SPILL_PREFIX,".dat",dir);
+	}
+	
+	/**
+	 * delete the spill file of the current invocation if exists
+	 */
+	private void deleteSpillFile()
+	{
+		if(spillfile!=null) 
+		{
+			spillfile.delete();
+			spillfile=null;
+		}
+	}
+
+	public DemixingModel applyICA()
+	{
+	Complex[][][] prew;//preprocessing matrix [bin index][][]
+	IVAStat ivastat;
+	
+		prew=new Complex[this.getFDBSSAlgorithm().fftSize()/2+1][][];
+		
+		//load and preprocess data
+		try
+		{
+			ivastat=loadData(prew);
+		}
+		catch(IOException e)
+		{
+			deleteSpillFile();
+			throw new RuntimeException("failed to load frequency bins",e);
+		}
 		
 		//apply iva
 		{
 		ArrayList<Integer> clique;
 		Logger logger;
-		int realsubbandsize;
+		int realsubbandsize,numits;
+		long t;
 		
-			//intermediate status for iva
-			ivastat=new IVAStat(xdata);
 			logger=Logger.getLogger(LOGGER_NAME);
+			if(parallelism>1) pool=new ForkJoinPool(parallelism);
 			
-			if(subbandsize<=0) realsubbandsize=ivastat.numBins();
-			else realsubbandsize=subbandsize;
-			for(int offset=ivastat.numBins()-realsubbandsize;;) 
+			try
 			{
-				logger.info("perform IVA on subband: ["+offset+", "+(offset+realsubbandsize-1)+"]");
-			
-				clique=new ArrayList<Integer>(realsubbandsize);
-				for(int f=offset;f<offset+realsubbandsize;f++) clique.add(f);
+				if(subbandsize<=0) realsubbandsize=ivastat.numBins();
+				else realsubbandsize=subbandsize;
 				
-				iva(ivastat,clique);
+				if(memorybudget>0&&
+						binBytes(ivastat.numSources(),ivastat.numSTFTFrames())*realsubbandsize>memorybudget) 
+					logger.warning("active subband of "+realsubbandsize+
+							" frequency bins exceeds the memory budget "+memorybudget);
 				
-				//finished
-				if(offset==0) break;
+				for(int offset=ivastat.numBins()-realsubbandsize;;) 
+				{
+					logger.info("perform IVA on subband: ["+offset+", "+(offset+realsubbandsize-1)+"]");
 				
-				offset-=subbandshift;
-				if(offset<0) offset=0;
+					clique=new ArrayList<Integer>(realsubbandsize);
+					for(int f=offset;f<offset+realsubbandsize;f++) clique.add(f);
+					
+					t=System.currentTimeMillis();
+					ivastat.setActiveBins(clique);
+					numits=iva(ivastat,clique);
+					t=System.currentTimeMillis()-t;
+					logger.info("subband ["+offset+", "+(offset+realsubbandsize-1)+"] finished in "+
+							t+" ms, "+numits+" iterations, "+
+							(numits>0?(double)t/numits:0)+" ms per iteration with parallelism "+parallelism);
+					
+					//finished
+					if(offset==0) break;
+					
+					offset-=subbandshift;
+					if(offset<0) offset=0;
+				}
+			}
+			catch(IOException e)
+			{
+				throw new RuntimeException("failed to load frequency bins from spill file",e);
+			}
+			finally
+			{
+				if(pool!=null) 
+				{
+					pool.shutdown();
+					pool=null;
+				}
+				
+				try
+				{
+					ivastat.close();
+				}
+				catch(IOException e)
+				{}
+				deleteSpillFile();
 			}
 		}
 
@@ -482,6 +955,8 @@ private int subbandshift=subbandsize/8;//subband shift taps
 		fdbss.setParameter(Parameter.stft_overlap,Integer.toString((int)(512*1/2)));//stft overlap
 		fdbss.setParameter(Parameter.fft_size,"1024");//fft size, must be powers of 2
 		fdbss.setParameter(Parameter.ica_algorithm,FastIVA.class.getName());
+		//update frequency bins of a clique on all cores
+		fdbss.setParameter(Parameter.ica_parallelism,Integer.toString(Runtime.getRuntime().availableProcessors()));
 		fdbss.setParameter(Parameter.align_policy,"cn.edu.bjtu.cit.bss.align.IdentityAlign");//without permutation
 
 		t=System.currentTimeMillis();
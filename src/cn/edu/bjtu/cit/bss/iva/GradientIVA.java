@@ -27,29 +27,30 @@ public class GradientIVA extends IVA
 {
 private static final long serialVersionUID=-442082604962831135L;
 private static final String LOGGER_NAME="cn.edu.bjtu.cit.bss";
-/*
- * supported score functions
- */
-private static final Map<String,ScoreFunction> PHI_MAP=new HashMap<String,ScoreFunction>();
-
-	static
-	{
-		PHI_MAP.put("inststanh",new InstSTanh());
-		PHI_MAP.put("insttanh",new InstSTanh());
-		PHI_MAP.put("ssl",new SSLScoreFunction());
-		
-		//chain of local cliques approach
-		PHI_MAP.put("chaincliquessl",new ChainCliqueSSLScoreFunction());
-	}
-
 private int maxiteration=1000;//max iteration time
 private double eta=0.1;//the learning step size
 private double tol=1e-10;//tolerance for algorithm termination
-private ScoreFunction nonlinearity=PHI_MAP.get("chaincliquessl");//used to calculate nonlinearity mapping
+private ScoreFunction nonlinearity=scoreFunction("chaincliquessl");//used to calculate nonlinearity mapping, not shared among instances
 
 	public GradientIVA()
 	{}
 
+	/**
+	 * Get a new instance of a supported score function. Score functions may 
+	 * keep intermediate data, so each algorithm instance needs its own.
+	 * @param name
+	 * score function name: inststanh, insttanh, ssl, chaincliquessl
+	 * @return
+	 */
+	private static ScoreFunction scoreFunction(String name)
+	{
+		if("inststanh".equals(name)||"insttanh".equals(name)) return new InstSTanh();
+		else if("ssl".equals(name)) return new SSLScoreFunction();
+		//chain of local cliques approach
+		else if("chaincliquessl".equals(name)) return new ChainCliqueSSLScoreFunction();
+		else throw new IllegalArgumentException("unknown score function: "+name);
+	}
+
 	/**
 	 * iva algorithm
 	 * @param xdata
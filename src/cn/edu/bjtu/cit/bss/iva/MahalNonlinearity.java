@@ -18,11 +18,6 @@ private static final long serialVersionUID=2246949922728857040L;
 private double a2=0.1;
 private Complex[][][] ydata;//the source data [binidx][sourcei][tau]
 private double[][] quad;//the quadratic form [sourcei][tau]
-/*
- * intermediate results
- */
-private int binidx0=-1,sourcei0=-1,tau0=-1;
-private double g,dg,ddg;
 	
 	/**
 	 * build the transform used to calculate M. distance
@@ -80,58 +75,28 @@ private double g,dg,ddg;
 		}
 	}
 	
-	/**
-	 * initialize nonlinearity
-	 * @param binidx
-	 * frequency bin index
-	 * @param sourcei
-	 * source index
-	 * @param tau
-	 * stft frame index
+	/*
+	 * G=log, values are calculated from the quadratic form directly without 
+	 * caching the last query, so the table can be read by several threads 
+	 * once the source data is set. For SSL, G=sqrt: sqrt(quad), 
+	 * 1/(2*quad*quad), -1/(4*quad^1.5).
 	 */
-	private void initNonlinearity(int binidx,int sourcei,int tau)
-	{
-	double quad;
 	
-		//already initialized
-		if(binidx0==binidx&&sourcei0==sourcei&&tau0==tau) return;
-		
-		binidx0=binidx;
-		sourcei0=sourcei;
-		tau0=tau;
-		
-		quad=this.quad[sourcei][tau];
-		
-		/*
-		 * G=log
-		 */
-		g=Math.log(quad);
-		dg=1.0/quad;
-		ddg=-1.0/(quad*quad);
-		
-		/*
-		 * SSL, G=sqrt
-		 */
-//		g=Math.sqrt(quad);
-//		dg=1.0/(2.0*quad*quad);
-//		ddg=-1.0/(4.0*Math.pow(quad,1.5));	
-	}
-
 	public double g(int binidx,int sourcei,int tau)
 	{
-		initNonlinearity(binidx,sourcei,tau);
-		return g;
+		return Math.log(quad[sourcei][tau]);
 	}
 
 	public double dg(int binidx,int sourcei,int tau)
 	{
-		initNonlinearity(binidx,sourcei,tau);
-		return dg;
+		return 1.0/quad[sourcei][tau];
 	}
 
 	public double ddg(int binidx,int sourcei,int tau)
 	{
-		initNonlinearity(binidx,sourcei,tau);
-		return ddg;
+	double quad;
+	
+		quad=this.quad[sourcei][tau];
+		return -1.0/(quad*quad);
 	}
 }
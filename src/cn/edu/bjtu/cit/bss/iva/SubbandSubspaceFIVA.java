@@ -568,7 +568,7 @@ private int subbandshift=subbandsize/8;//subband shift taps
 	HermitianEigensolver.EigenDecomposition decomp;	
 	Complex[][] wh=null,edm,ev,evh=null;//used for decorrelation
 	
-		eigensolver=new CommonsEigensolver();
+		eigensolver=new JacobiEigensolver();
 		edm=BLAS.eyeComplex(wp1.length,wp1.length);
 	
 		/*
@@ -16,6 +16,11 @@ public class Centering extends Preprocessor
 {
 private static final long serialVersionUID=-4516080440610639938L;
 
+	public Preprocessor copy()
+	{
+		return new Centering();
+	}
+
 	public Complex[][] calculateTransferMatrix(Complex[][] csigs,int numchout)
 	{
 		if(csigs.length!=numchout) throw new IllegalArgumentException(
@@ -23,4 +28,12 @@ private static final long serialVersionUID=-4516080440610639938L;
 		
 		return BLAS.eyeComplex(csigs.length,csigs.length);
 	}
+	
+	public Complex[][] calculateTransferMatrix(double[][][] cov,int numchout)
+	{
+		if(cov[0].length!=numchout) throw new IllegalArgumentException(
+				"number of output channels not match: "+cov[0].length+", "+numchout);
+		
+		return BLAS.eyeComplex(numchout,numchout);
+	}
 }
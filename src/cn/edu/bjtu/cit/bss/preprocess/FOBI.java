@@ -19,6 +19,19 @@ public class FOBI extends Whitening
 {
 private static final long serialVersionUID=-799455622299747639L;
 
+	public Preprocessor copy()
+	{
+		return new FOBI();
+	}
+
+	/**
+	 * FOBI requires the 4th order correlation of the signals.
+	 */
+	public Complex[][] calculateTransferMatrix(double[][][] cov,int numchout)
+	{
+		return null;
+	}
+
 	public Complex[][] calculateTransferMatrix(Complex[][] csigs,int numchout)
 	{
 	Complex[][] whitening;//the whitening matrix
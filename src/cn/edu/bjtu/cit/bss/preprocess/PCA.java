@@ -17,7 +17,12 @@ import pp.util.BLAS;
 public class PCA extends Preprocessor
 {
 private static final long serialVersionUID=-2875404070536455426L;
-private HermitianEigensolver eigensolver=new CommonsEigensolver();
+private HermitianEigensolver eigensolver=new JacobiEigensolver();
+
+	public Preprocessor copy()
+	{
+		return new PCA();
+	}
 	
 	/**
 	 * build transfer matrix for PCA from covariance eigenvectors
@@ -50,12 +55,23 @@ private HermitianEigensolver eigensolver=new CommonsEigensolver();
 	 */
 	public Complex[][] calculateTransferMatrix(Complex[][] csigs,double pcath)
 	{
-	double[][][] cov;//the real and imaginary part of the covariance matrix
+		return calculateTransferMatrix(covarianceMatrix(csigs),pcath);
+	}
+	
+	/**
+	 * calculate the transfer matrix for PCA from the covariance matrix
+	 * @param cov
+	 * the real and imaginary part of the covariance matrix
+	 * @param pcath
+	 * Threshold for PCA, eigenvalues smaller than this threshold will be discarded.
+	 * @return
+	 */
+	public Complex[][] calculateTransferMatrix(double[][][] cov,double pcath)
+	{
 	HermitianEigensolver.EigenDecomposition coveigen;
 	List<HermitianEigensolver.EigenContainer> cl;
 	HermitianEigensolver.EigenContainer[] container;
 		
-		cov=covarianceMatrix(csigs);//calculate the covariance matrix
 		coveigen=eigensolver.eig(cov[0],cov[1]);//perform eigendecomposition
 
 		cl=new LinkedList<HermitianEigensolver.EigenContainer>();
@@ -78,14 +94,32 @@ private HermitianEigensolver eigensolver=new CommonsEigensolver();
 	 */
 	public Complex[][] calculateTransferMatrix(Complex[][] csigs,int numchout)
 	{
-	double[][][] cov;//the real and imaginary part of the covariance matrix
+		return transferMatrix(covarianceMatrix(csigs),numchout);
+	}
+	
+	public Complex[][] calculateTransferMatrix(double[][][] cov,int numchout)
+	{
+		return transferMatrix(cov,numchout);
+	}
+	
+	/**
+	 * Calculate the transfer matrix from the covariance matrix, subclasses 
+	 * may override calculateTransferMatrix(double[][][], int) but still need 
+	 * this one.
+	 * @param cov
+	 * the real and imaginary part of the covariance matrix
+	 * @param numchout
+	 * number of output channels
+	 * @return
+	 */
+	private Complex[][] transferMatrix(double[][][] cov,int numchout)
+	{
 	HermitianEigensolver.EigenDecomposition coveigen;
 	HermitianEigensolver.EigenContainer[] container;
 		
-		if(numchout>csigs[0].length) throw new IllegalArgumentException(
-				"too many output channels: "+numchout+", should no more than: "+csigs[0].length);
+		if(numchout>cov[0].length) throw new IllegalArgumentException(
+				"too many output channels: "+numchout+", should no more than: "+cov[0].length);
 		
-		cov=covarianceMatrix(csigs);//calculate the covariance matrix
 		coveigen=eigensolver.eig(cov[0],cov[1]);//perform eigendecomposition
 
 		container=new HermitianEigensolver.EigenContainer[numchout];
@@ -104,8 +138,14 @@ private HermitianEigensolver eigensolver=new CommonsEigensolver();
 	 */
 	public Complex[][] preprocess(Complex[][] sigs,double pcath)
 	{
-		signalmeans=centering(sigs);
-		transform=calculateTransferMatrix(sigs,pcath);
-		return BLAS.multiply(transform,sigs,null);
+	double[] meanr,meani;
+	
+		//means and the covariance matrix in one pass
+		meanr=new double[sigs.length];
+		meani=new double[sigs.length];
+		transform=calculateTransferMatrix(meanCovarianceMatrix(sigs,meanr,meani),pcath);
+		signalmeans=BLAS.buildComplexVector(meanr,meani);
+		//center and transform in another pass
+		return applyTransferMatrix(transform,sigs,meanr,meani,true,null);
 	}
 }
@@ -1,7 +1,9 @@
 package cn.edu.bjtu.cit.bss.preprocess;
 import java.io.*;
+import java.util.*;
 import org.apache.commons.math.complex.*;
 import pp.util.BLAS;
+import pp.util.ComplexBLAS;
 
 /**
  * <h1>Description</h1>
@@ -163,6 +165,206 @@ protected Complex[][] transform;//the transfer matrix
 		return cov;	
 	}
 	
+	/**
+	 * Calculate the mean value and the covariance matrix of multichannel signals 
+	 * in a single pass, signals are not modified. Means and covariances are 
+	 * updated frame by frame as Welford's algorithm, so the result is as 
+	 * accurate as centering the signals first.
+	 * @param sigs
+	 * multichannel signals, each row is a channel
+	 * @param meanr, meani
+	 * space for the real and imaginary part of the mean value of each channel
+	 * @return
+	 * The covariance matrix of the centered signals, the first channel is for 
+	 * real part, the second one is for imaginary part.
+	 */
+	public static double[][][] meanCovarianceMatrix(Complex[][] sigs,double[] meanr,double[] meani)
+	{
+	double[][] covr,covi;//the real and imaginary part of the covariance matrix
+	double[][][] cov;
+	double[] dr,di;//difference between the current frame and the old means
+	double scale;
+	
+		if(meanr.length!=sigs.length||meani.length!=sigs.length) throw new IllegalArgumentException(
+				"number of channels not match: "+meanr.length+", "+meani.length+", required: "+sigs.length);
+		
+		covr=new double[sigs.length][sigs.length];
+		covi=new double[sigs.length][sigs.length];
+		cov=new double[2][][];
+		cov[0]=covr;
+		cov[1]=covi;
+		dr=new double[sigs.length];
+		di=new double[sigs.length];
+		Arrays.fill(meanr,0);
+		Arrays.fill(meani,0);
+		
+		//traverse each frame
+		for(int j=0;j<sigs[0].length;j++)
+		{
+			/*
+			 * update the means: m=m+d/(j+1), where d=x-m
+			 */
+			scale=1.0/(j+1);
+			for(int i=0;i<sigs.length;i++)
+			{
+				dr[i]=sigs[i][j].getReal()-meanr[i];
+				di[i]=sigs[i][j].getImaginary()-meani[i];
+				meanr[i]+=dr[i]*scale;
+				meani[i]+=di[i]*scale;
+			}
+			
+			/*
+			 * C=C+d(x-m)^H with the new means, where x-m=d*j/(j+1)
+			 */
+			scale=1-scale;
+			for(int ii=0;ii<sigs.length;ii++)
+				//symmetric
+				for(int jj=ii;jj<sigs.length;jj++)
+				{
+					//(a+bi)(c-di): ac+bd, bc-ad
+					covr[ii][jj]+=scale*(dr[ii]*dr[jj]+di[ii]*di[jj]);
+					if(jj!=ii) covi[ii][jj]+=scale*(di[ii]*dr[jj]-dr[ii]*di[jj]);
+				}
+		}
+		
+		for(int i=0;i<covr.length;i++) 
+			//symmetric
+			for(int j=i;j<covr[i].length;j++) 
+			{
+				covr[i][j]/=sigs[0].length;
+				covr[j][i]=covr[i][j];
+				
+				covi[i][j]/=sigs[0].length;
+				covi[j][i]=-covi[i][j];//antisymmetric
+			}
+		
+		return cov;
+	}
+	
+	/**
+	 * Apply the transfer matrix on signals after substracting the means: 
+	 * y=T(x-m), frame by frame with primitive arithmetic. A complex number is 
+	 * created for each output sample, and for each input sample if center is 
+	 * true, use the split complex version to avoid them.
+	 * @param transform
+	 * the transfer matrix
+	 * @param sigs
+	 * input signals, each row is a channel
+	 * @param meanr, meani
+	 * real and imaginary part of the mean value of each channel
+	 * @param center
+	 * true to replace input signals by the centered signals at the same time
+	 * @param buffer
+	 * Space for the result, it is reused if its size is: number of rows of the 
+	 * transfer matrix x number of frames, otherwise new space is allocated.
+	 * @return
+	 */
+	protected static Complex[][] applyTransferMatrix(Complex[][] transform,Complex[][] sigs,
+			double[] meanr,double[] meani,boolean center,Complex[][] buffer)
+	{
+	double[][] tr,ti;//the real and imaginary part of the transfer matrix
+	double[] xr,xi;//centered signals of a frame
+	double yr,yi;
+	
+		if(transform[0].length!=sigs.length) throw new IllegalArgumentException(
+				"transfer matrix size not match: "+transform.length+" x "+transform[0].length+
+				", number of channels: "+sigs.length);
+		if(buffer==null||buffer.length!=transform.length||buffer[0].length!=sigs[0].length) 
+			buffer=new Complex[transform.length][sigs[0].length];
+		
+		tr=new double[transform.length][transform[0].length];
+		ti=new double[transform.length][transform[0].length];
+		for(int i=0;i<transform.length;i++)
+			for(int k=0;k<transform[i].length;k++)
+			{
+				tr[i][k]=transform[i][k].getReal();
+				ti[i][k]=transform[i][k].getImaginary();
+			}
+		xr=new double[sigs.length];
+		xi=new double[sigs.length];
+		
+		//traverse each frame
+		for(int j=0;j<sigs[0].length;j++)
+		{
+			for(int k=0;k<sigs.length;k++)
+			{
+				xr[k]=sigs[k][j].getReal()-meanr[k];
+				xi[k]=sigs[k][j].getImaginary()-meani[k];
+				if(center) sigs[k][j]=new Complex(xr[k],xi[k]);
+			}
+			
+			for(int i=0;i<tr.length;i++)
+			{
+				yr=0;
+				yi=0;
+				for(int k=0;k<xr.length;k++)
+				{
+					yr+=tr[i][k]*xr[k]-ti[i][k]*xi[k];
+					yi+=tr[i][k]*xi[k]+ti[i][k]*xr[k];
+				}
+				buffer[i][j]=new Complex(yr,yi);
+			}
+		}
+		
+		return buffer;
+	}
+	
+	/**
+	 * Apply the transfer matrix on signals after substracting the means: 
+	 * y=T(x-m), the result is stored in split complex format, so no complex 
+	 * number is created.
+	 * @param transform
+	 * the transfer matrix
+	 * @param sigs
+	 * input signals, each row is a channel, not modified
+	 * @param meanr, meani
+	 * real and imaginary part of the mean value of each channel
+	 * @param buffer
+	 * Space for the result: [2][number of rows of the transfer matrix][number 
+	 * of frames], null to allocate new space.
+	 * @return
+	 */
+	protected static double[][][] applyTransferMatrix(Complex[][] transform,Complex[][] sigs,
+			double[] meanr,double[] meani,double[][][] buffer)
+	{
+	double[][][] t;//the transfer matrix in split complex format
+	double[][] yr,yi;//the real and imaginary part of the result
+	double xr,xi;
+	
+		if(transform[0].length!=sigs.length) throw new IllegalArgumentException(
+				"transfer matrix size not match: "+transform.length+" x "+transform[0].length+
+				", number of channels: "+sigs.length);
+		if(buffer==null) buffer=ComplexBLAS.newMatrix(transform.length,sigs[0].length);
+		else ComplexBLAS.checkDestinationSize(buffer,transform.length,sigs[0].length);
+		
+		t=ComplexBLAS.split(transform,null);
+		yr=buffer[0];
+		yi=buffer[1];
+		for(int i=0;i<transform.length;i++)
+		{
+			Arrays.fill(yr[i],0);
+			Arrays.fill(yi[i],0);
+		}
+		
+		/*
+		 * accumulate channel by channel, so each input sample is visited once 
+		 * and the output rows are traversed sequentially
+		 */
+		for(int k=0;k<sigs.length;k++)
+			for(int j=0;j<sigs[k].length;j++)
+			{
+				xr=sigs[k][j].getReal()-meanr[k];
+				xi=sigs[k][j].getImaginary()-meani[k];
+				for(int i=0;i<transform.length;i++)
+				{
+					yr[i][j]+=t[0][i][k]*xr-t[1][i][k]*xi;
+					yi[i][j]+=t[0][i][k]*xi+t[1][i][k]*xr;
+				}
+			}
+		
+		return buffer;
+	}
+	
 	/**
 	 * calculate the pseudo covariance matrix: E{xx^T}
 	 * @param sigs
@@ -215,6 +417,14 @@ protected Complex[][] transform;//the transfer matrix
 		return cov;
 	}
 	
+	/**
+	 * Get a new preprocessor of the same kind, signal means and transfer matrix 
+	 * of the last invocation are not copied. Used to give each thread its own 
+	 * preprocessor.
+	 * @return
+	 */
+	public abstract Preprocessor copy();
+	
 	/**
 	 * calculate the transfer matrix used for preprocessing
 	 * @param sigs
@@ -225,19 +435,128 @@ protected Complex[][] transform;//the transfer matrix
 	 */
 	public abstract Complex[][] calculateTransferMatrix(Complex[][] csigs,int numchout);
 	
+	/**
+	 * Calculate the transfer matrix from the covariance matrix of the signals. 
+	 * Preprocessors which only depend on second order statistics override it, 
+	 * so preprocessing needs not to center the signals before calculating the 
+	 * transfer matrix.
+	 * @param cov
+	 * the real and imaginary part of the covariance matrix
+	 * @param numchout
+	 * number of output channels
+	 * @return
+	 * null if the transfer matrix can not be calculated from the covariance 
+	 * matrix only
+	 */
+	public Complex[][] calculateTransferMatrix(double[][][] cov,int numchout)
+	{
+		return null;
+	}
+	
 	/**
 	 * perform preprocessing 
 	 * @param sigs
-	 * input signals, each row is a channel
+	 * input signals, each row is a channel, will be replaced by the centered 
+	 * signals
 	 * @param numchout
 	 * number of output channels
 	 * @return
 	 */
 	public Complex[][] preprocess(Complex[][] sigs,int numchout)
 	{
-		signalmeans=centering(sigs);
-		transform=calculateTransferMatrix(sigs,numchout);
-		return BLAS.multiply(transform,sigs,null);
+		return preprocess(sigs,numchout,true,null);
+	}
+	
+	/**
+	 * Perform preprocessing without modifying the input signals. Means and the 
+	 * covariance matrix are calculated in one pass, then the transfer matrix 
+	 * is applied on the fly into the buffer, so the input is traversed twice 
+	 * with no temporary copy.
+	 * @param sigs
+	 * input signals, each row is a channel
+	 * @param numchout
+	 * number of output channels
+	 * @param buffer
+	 * Space for the preprocessed signals, it is reused if its size is: 
+	 * numchout x number of frames, null to allocate new space.
+	 * @return
+	 */
+	public Complex[][] preprocess(Complex[][] sigs,int numchout,Complex[][] buffer)
+	{
+		return preprocess(sigs,numchout,false,buffer);
+	}
+	
+	/**
+	 * Perform preprocessing without modifying the input signals, the result is 
+	 * stored in split complex format, so no complex number is created for the 
+	 * preprocessed samples. Used by algorithms working on primitive arrays.
+	 * @param sigs
+	 * input signals, each row is a channel
+	 * @param numchout
+	 * number of output channels
+	 * @param buffer
+	 * space for the preprocessed signals: [2][numchout][number of frames], 
+	 * null to allocate new space
+	 * @return
+	 */
+	public double[][][] splitPreprocess(Complex[][] sigs,int numchout,double[][][] buffer)
+	{
+	double[] meanr,meani;
+	Complex[][] csigs;
+	
+		meanr=new double[sigs.length];
+		meani=new double[sigs.length];
+		transform=calculateTransferMatrix(meanCovarianceMatrix(sigs,meanr,meani),numchout);
+		signalmeans=BLAS.buildComplexVector(meanr,meani);
+		if(transform!=null) return applyTransferMatrix(transform,sigs,meanr,meani,buffer);
+		
+		//the transfer matrix requires the centered signals
+		csigs=new Complex[sigs.length][sigs[0].length];
+		for(int i=0;i<sigs.length;i++)
+			for(int j=0;j<sigs[i].length;j++) 
+				csigs[i][j]=new Complex(sigs[i][j].getReal()-meanr[i],sigs[i][j].getImaginary()-meani[i]);
+		transform=calculateTransferMatrix(csigs,numchout);
+		return applyTransferMatrix(transform,sigs,meanr,meani,buffer);
+	}
+	
+	/**
+	 * perform preprocessing
+	 * @param sigs
+	 * input signals, each row is a channel
+	 * @param numchout
+	 * number of output channels
+	 * @param center
+	 * true to replace input signals by the centered signals
+	 * @param buffer
+	 * space for the preprocessed signals, null to allocate new space
+	 * @return
+	 */
+	private Complex[][] preprocess(Complex[][] sigs,int numchout,boolean center,Complex[][] buffer)
+	{
+	double[] meanr,meani;
+	double[][][] cov;
+	Complex[][] csigs;
+	
+		meanr=new double[sigs.length];
+		meani=new double[sigs.length];
+		cov=meanCovarianceMatrix(sigs,meanr,meani);
+		signalmeans=BLAS.buildComplexVector(meanr,meani);
+		transform=calculateTransferMatrix(cov,numchout);
+		if(transform!=null) return applyTransferMatrix(transform,sigs,meanr,meani,center,buffer);
+		
+		/*
+		 * the transfer matrix requires the centered signals
+		 */
+		if(center) csigs=sigs;
+		else csigs=new Complex[sigs.length][sigs[0].length];
+		for(int i=0;i<sigs.length;i++)
+			for(int j=0;j<sigs[i].length;j++) 
+				csigs[i][j]=new Complex(sigs[i][j].getReal()-meanr[i],sigs[i][j].getImaginary()-meani[i]);
+		
+		transform=calculateTransferMatrix(csigs,numchout);
+		Arrays.fill(meanr,0);
+		Arrays.fill(meani,0);
+		return applyTransferMatrix(transform,csigs,meanr,meani,false,buffer);
 	}
 	
 	/**
@@ -1,6 +1,11 @@
 package cn.edu.bjtu.cit.bss.preprocess;
+import java.io.*;
+import javax.sound.sampled.*;
 import org.apache.commons.math.complex.*;
+import cn.edu.bjtu.cit.bss.*;
+import cn.edu.bjtu.cit.bss.signalio.*;
 import cn.edu.bjtu.cit.bss.util.*;
+import pp.util.BLAS;
 
 /**
  * <h1>Description</h1>
@@ -15,6 +20,11 @@ import cn.edu.bjtu.cit.bss.util.*;
 public class Whitening extends PCA
 {
 private static final long serialVersionUID=-2875404070536455426L;
+
+	public Preprocessor copy()
+	{
+		return new Whitening();
+	}
 		
 	/**
 	 * Construct whitening matrix with designated eigenvalue and eigenvectors of 
@@ -47,4 +57,55 @@ private static final long serialVersionUID=-2875404070536455426L;
 		}
 		return whitening;	
 	}
+	
+	/**
+	 * Compare the fused preprocessing with centering, covariance and whitening 
+	 * in separated passes on all frequency bins of the demo mixtures.
+	 */
+	public static void main(String[] args) throws IOException, UnsupportedAudioFileException
+	{
+	FDBSS fdbss;
+	WaveSource[] sources;
+	Whitening preprocessor;
+	Complex[][] bindata=null,csigs,sigsp1,sigsp2=null,transfer;
+	long t1=0,t2=0,t;
+	double maxdiff=0;
+	
+		fdbss=new FDBSS(new File("temp"));
+		fdbss.setParameter(FDBSS.Parameter.stft_size,"512");
+		fdbss.setParameter(FDBSS.Parameter.stft_overlap,"384");
+		fdbss.setParameter(FDBSS.Parameter.fft_size,"1024");
+		sources=new WaveSource[] {
+				new WaveSource(new File("data/rsm2_mA.wav"),true),
+				new WaveSource(new File("data/rsm2_mB.wav"),true)};
+		fdbss.separate(new SignalMixer(sources),FDBSS.Operation.stft);
+		
+		preprocessor=new Whitening();
+		for(int binidx=0;binidx<fdbss.fftSize()/2+1;binidx++)
+		{
+			bindata=fdbss.binData(binidx,bindata);
+			
+			//separated passes
+			t=System.currentTimeMillis();
+			csigs=BLAS.copy(bindata,null);
+			centering(csigs);
+			transfer=preprocessor.calculateTransferMatrix(csigs,fdbss.numSources());
+			sigsp1=BLAS.multiply(transfer,csigs,null);
+			t1+=System.currentTimeMillis()-t;
+			
+			//fused, with a reused buffer
+			t=System.currentTimeMillis();
+			sigsp2=preprocessor.preprocess(bindata,fdbss.numSources(),sigsp2);
+			t2+=System.currentTimeMillis()-t;
+			
+			for(int i=0;i<sigsp1.length;i++)
+				for(int j=0;j<sigsp1[i].length;j++) 
+					maxdiff=Math.max(maxdiff,sigsp1[i][j].subtract(sigsp2[i][j]).abs());
+		}
+		
+		System.out.println((fdbss.fftSize()/2+1)+" bins, "+bindata[0].length+" frames");
+		System.out.println("separated passes: "+t1+" ms");
+		System.out.println("fused: "+t2+" ms");
+		System.out.println("max difference: "+maxdiff);
+	}
 }
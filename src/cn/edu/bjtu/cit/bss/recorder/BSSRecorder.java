@@ -998,6 +998,24 @@ private File currentdir=null;//base directory of last opened wave file
 		}
 	}
 	
+	/**
+	 * Results are taken through FDBSS.estimatedSourceSignals(), which demixes 
+	 * sensor stft data in a single pass, so estimated stft files are not written.
+	 * @param ops
+	 * selected operations
+	 * @return
+	 * operations without demix
+	 */
+	private static FDBSS.Operation[] modelOperations(FDBSS.Operation[] ops)
+	{
+	List<FDBSS.Operation> opl;
+	
+		opl=new LinkedList<FDBSS.Operation>();
+		for(FDBSS.Operation op:ops) 
+			if(op!=FDBSS.Operation.demix) opl.add(op);
+		return opl.toArray(new FDBSS.Operation[opl.size()]);
+	}
+	
 	/**
 	 * <h1>Description</h1>
 	 * Used to perform bss.
@@ -1036,7 +1054,7 @@ private File currentdir=null;//base directory of last opened wave file
 				paramtable.setParameters(fdbss);//set parameters
 				pmanager.setNumChannels(fdbss.numSources());
 				x=cmanager.bufferSignalSource();
-				fdbss.separate(x,bssop.operations());
+				fdbss.separate(x,modelOperations(bssop.operations()));
 
 				/*
 				 * show results
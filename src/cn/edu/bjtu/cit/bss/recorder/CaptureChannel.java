@@ -19,7 +19,9 @@ private BSSRecorder recorder;//recorder reference
 private CaptureDevice device;//underlying capture device
 private double duration1=0.02;//time duration in seconds for buffer1
 private double[] buffer1;//used to read data from line
-private CircularBuffer buffer2;//used to cache the latest data
+private CircularBuffer buffer2;//used to show and save the latest data
+private double margin=1;//time duration in seconds of the ring besides the circular buffer
+private CaptureRing ring=null;//lock-free buffer written by the recording thread
 private RecordingThread rth=null;//used to read data
 
 	/**
@@ -55,11 +57,8 @@ private RecordingThread rth=null;//used to read data
 				for(;recorder.getRecorderState()==RecorderState.CAPTURE;)
 				{
 					count=wsource.readSamples(buffer1);
-					
-					synchronized(buffer2)
-					{
-						buffer2.write(buffer1,0,count);
-					}					
+					//never blocked by readers
+					ring.write(buffer1,0,count,System.nanoTime());
 				}
 			}
 			catch(LineUnavailableException e)
@@ -161,15 +160,49 @@ private RecordingThread rth=null;//used to read data
 		return buffer2;
 	}
 	
+	/**
+	 * Get the lock-free buffer of captured samples, it is larger than the 
+	 * circular buffer, so readers have enough time to copy a window.
+	 * @return
+	 * null if capture is never started
+	 */
+	public synchronized CaptureRing captureRing()
+	{
+		return ring;
+	}
+	
 	/**
 	 * start capturing sound data from line
 	 */
 	public synchronized void startCapture()
 	{
+	int capacity;
+	
 		if(rth!=null) return;//already started
 		
 		buffer2.clear();
+		//buffer size may be changed since last capture
+		capacity=buffer2.getBufferSize()+(int)(margin*audioFormat().getSampleRate());
+		if(ring==null||ring.capacity()!=capacity||ring.sampleRate()!=audioFormat().getSampleRate()) 
+			ring=new CaptureRing(1,capacity,audioFormat().getSampleRate());
+		else ring.clear();
+		
 		rth=new RecordingThread();
 		rth.start();
 	}
+	
+	/**
+	 * wait until the recording thread exits after the recorder is stopped
+	 * @throws InterruptedException
+	 */
+	public void awaitCaptureStopped() throws InterruptedException
+	{
+	Thread th;
+	
+		synchronized(this)
+		{
+			th=rth;
+		}
+		if(th!=null) th.join();
+	}
 }
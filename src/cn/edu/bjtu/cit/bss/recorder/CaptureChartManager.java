@@ -1,5 +1,6 @@
 package cn.edu.bjtu.cit.bss.recorder;
 import java.util.*;
+import cn.edu.bjtu.cit.bss.signalio.*;
 
 /**
  * <h1>Description</h1>
@@ -95,9 +96,79 @@ private CaptureUpdatingThread cuth=null;//used for updating the chart
 		cmap.clear();
 	}
 	
+	/**
+	 * get buffers of channels binded to capture devices
+	 * @return
+	 * in channel order
+	 */
+	private List<CircularBuffer> capturedBuffers()
+	{
+	List<CircularBuffer> buffers;
+	
+		buffers=new ArrayList<CircularBuffer>();
+		for(int chidx=0;chidx<this.getNumChannels();chidx++) 
+			if(cmap.containsKey(this.channelBuffer(chidx))) buffers.add(this.channelBuffer(chidx));
+		return buffers;
+	}
+	
+	/**
+	 * Get the merger which aligns samples of all binded capture devices by time, 
+	 * in channel order. Must be called after the capture is started.
+	 * @return
+	 */
+	public CaptureMerger captureMerger()
+	{
+	List<CaptureRing> rings;
+	
+		rings=new ArrayList<CaptureRing>();
+		for(CircularBuffer buffer:capturedBuffers()) rings.add(cmap.get(buffer).captureRing());
+		return new CaptureMerger(rings);
+	}
+	
+	/**
+	 * Take a sample-aligned snapshot of the latest samples of all binded capture 
+	 * devices while capturing, the capture is not blocked.
+	 * @return
+	 */
+	public SignalSource captureSignalSource()
+	{
+		if(capturedBuffers().isEmpty()) throw new IllegalStateException("no capture device is binded");
+		return new CircularBufferSource(captureMerger(),capturedBuffers().get(0).getBufferSize());
+	}
+	
+	/**
+	 * copy an aligned snapshot into the buffers of binded channels
+	 * @param merger
+	 * merger of all binded capture devices
+	 * @param buffers
+	 * buffers of binded channels in the same order
+	 * @param frames
+	 * space for the snapshot, null to allocate new space
+	 * @return
+	 * the snapshot
+	 */
+	private double[][] copySnapshot(CaptureMerger merger,List<CircularBuffer> buffers,double[][] frames)
+	{
+	CircularBuffer buffer;
+	
+		if(buffers.isEmpty()) return frames;
+		frames=merger.snapshot(buffers.get(0).getBufferSize(),frames);
+		for(int i=0;i<buffers.size();i++)
+		{
+			buffer=buffers.get(i);
+			synchronized(buffer)
+			{
+				buffer.write(frames[i],0,buffer.getBufferSize());
+			}
+		}
+		return frames;
+	}
+	
 	/**
 	 * <h1>Description</h1>
-	 * Used to updating the chart while capturing.
+	 * Used to updating the chart while capturing. Samples are merged from the 
+	 * capture devices and copied into channel buffers before each update, the 
+	 * last copy is done after all capture devices are stopped.
 	 * <h1>abstract</h1>
 	 * <h1>keywords</h1>
 	 * @author nay0648<br>
@@ -109,14 +180,22 @@ private CaptureUpdatingThread cuth=null;//used for updating the chart
 	{
 		public void run()
 		{
+		List<CircularBuffer> buffers;
+		CaptureMerger merger;
+		double[][] frames=null;
+		
 			//clear all markers left by playback
 			CaptureChartManager.this.clearMarkers();
 			
+			buffers=capturedBuffers();
+			merger=captureMerger();
+			
 			for(;CaptureChartManager.this.recorder().getRecorderState()==RecorderState.CAPTURE;)
 			{
 				
 //				System.out.println("capture updating");
 
+				frames=copySnapshot(merger,buffers,frames);
 				CaptureChartManager.this.updateChart();
 
 				//sleep some interval
@@ -128,6 +207,18 @@ private CaptureUpdatingThread cuth=null;//used for updating the chart
 				{}
 			}
 			
+			/*
+			 * the final snapshot contains all samples captured
+			 */
+			try
+			{
+				for(CaptureChannel ch:cmap.values()) ch.awaitCaptureStopped();
+			}
+			catch(InterruptedException e)
+			{}
+			copySnapshot(merger,buffers,frames);
+			CaptureChartManager.this.updateChart();
+			
 			cuth=null;
 		}
 	}
@@ -148,4 +239,28 @@ private CaptureUpdatingThread cuth=null;//used for updating the chart
 		cuth=new CaptureUpdatingThread();
 		cuth.start();
 	}
+	
+	/**
+	 * wait until the last snapshot is copied into channel buffers, then read 
+	 * them for BSS
+	 */
+	public SignalSource bufferSignalSource()
+	{
+	Thread th;
+	
+		synchronized(this)
+		{
+			th=cuth;
+		}
+		
+		try
+		{
+			if(th!=null) th.join();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		return super.bufferSignalSource();
+	}
 }
@@ -0,0 +1,268 @@
+package cn.edu.bjtu.cit.bss.recorder;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * <h1>Description</h1>
+ * Merge frames captured by several devices into sample-aligned multichannel
+ * windows. Devices start capturing at different moments, so their sequence
+ * numbers are not comparable. The window end is the latest moment captured by
+ * all devices, it is converted to a sequence number of each device by its own
+ * capture clock. Snapshots never block the capture threads, a device window
+ * is copied again if the capture overwrites it during the copy.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 24, 2026 3:05:51 PM, revision:
+ */
+public class CaptureMerger implements Serializable
+{
+private static final long serialVersionUID=2716586339062415072L;
+private static final int MAX_RETRY=100;//max copies of a device window before giving up
+private List<CaptureRing> rings;//each for a device
+private int numch=0;//total number of channels
+private AtomicLong numretries=new AtomicLong();//number of copies invalidated by the capture
+
+	/**
+	 * @param rings
+	 * each for a device, channels are merged in this order
+	 */
+	public CaptureMerger(List<CaptureRing> rings)
+	{
+		this.rings=new ArrayList<CaptureRing>(rings);
+		for(CaptureRing ring:rings)
+		{
+			if(ring.sampleRate()!=rings.get(0).sampleRate()) throw new IllegalArgumentException(
+					"sampling rate not match: "+ring.sampleRate()+", "+rings.get(0).sampleRate());
+			numch+=ring.numChannels();
+		}
+	}
+
+	/**
+	 * get the total number of channels
+	 * @return
+	 */
+	public int numChannels()
+	{
+		return numch;
+	}
+
+	/**
+	 * get the number of device windows copied again because the capture
+	 * overwrote them during copying
+	 * @return
+	 */
+	public long numRetries()
+	{
+		return numretries.get();
+	}
+
+	/**
+	 * Take a snapshot of the latest aligned window. Frames not captured yet or
+	 * already dropped by a device are filled with zeros.
+	 * @param numframes
+	 * number of frames in the window
+	 * @param dest
+	 * destination, each row for a channel, null to allocate new space
+	 * @return
+	 * @throws IllegalStateException
+	 * the capture keeps overwriting a device window, the ring is too small
+	 */
+	public double[][] snapshot(int numframes,double[][] dest)
+	{
+	double end=Double.MAX_VALUE,t;//capture time of the window end
+	long endseq,from;
+	double[][] rows;
+	int ch=0,retry;
+
+		if(dest==null) dest=new double[numch][numframes];
+		else if(dest.length<numch||dest[0].length<numframes) throw new IllegalArgumentException(
+				"destination too small: "+dest.length+" x "+dest[0].length+
+				", required: "+numch+" x "+numframes);
+
+		/*
+		 * the latest moment captured by all devices
+		 */
+		for(CaptureRing ring:rings)
+		{
+			t=ring.captureTime(ring.writeSequence());
+			if(!Double.isNaN(t)&&t<end) end=t;
+		}
+
+		for(CaptureRing ring:rings)
+		{
+			rows=Arrays.copyOfRange(dest,ch,ch+ring.numChannels());
+			ch+=ring.numChannels();
+
+			endseq=end==Double.MAX_VALUE?Long.MIN_VALUE:ring.sequenceAt(end);
+			//the device has not captured anything
+			if(endseq==Long.MIN_VALUE)
+			{
+				for(double[] row:rows) Arrays.fill(row,0,numframes,0);
+				continue;
+			}
+			endseq=Math.min(endseq,ring.writeSequence());
+
+			for(retry=0;;retry++)
+			{
+				if(retry>=MAX_RETRY) throw new IllegalStateException(
+						"failed to copy frames from a device after "+retry+" retries, "+
+						"ring capacity: "+ring.capacity()+", window: "+numframes);
+
+				//frames not captured or already dropped
+				from=Math.max(endseq-numframes,ring.oldestSequence());
+				from=Math.min(from,endseq);
+				for(double[] row:rows) Arrays.fill(row,0,(int)(from-(endseq-numframes)),0);
+
+				if(ring.read(from,(int)(endseq-from),rows,(int)(from-(endseq-numframes)))) break;
+				numretries.incrementAndGet();
+			}
+		}
+
+		return dest;
+	}
+
+	/**
+	 * Stress test: simulated devices start at different moments and deliver
+	 * blocks with random delays, while several threads take snapshots. Each
+	 * sample is the capture time in samples, so a snapshot is consistent if
+	 * every row is contiguous, and aligned if rows are equal.
+	 */
+	public static void main(String[] args) throws InterruptedException, ExecutionException
+	{
+	final double fs=16000;
+	final int numdevices=3,numreaders=3,block=320,window=8000;
+	final long duration=3000;//in milliseconds
+	final long warmup=1000;//time in milliseconds needed to estimate capture clocks
+	final long t0;
+	final List<CaptureRing> rings;
+	final CaptureMerger merger;
+	final AtomicBoolean running=new AtomicBoolean(true);
+	final AtomicLong maxwrite=new AtomicLong();//max time of a write in nanoseconds
+	ExecutorService pool;
+	List<Future<long[]>> readers;
+	long numsnapshots=0,torn=0,misaligned=0,maxmisalign=0,numaligned=0;
+	long[] res;
+
+		rings=new ArrayList<CaptureRing>();
+		//rings one block larger than the window, so the capture may overwrite frames being copied
+		for(int d=0;d<numdevices;d++) rings.add(new CaptureRing(1,window+block,fs));
+		merger=new CaptureMerger(rings);
+		pool=Executors.newFixedThreadPool(numdevices+numreaders);
+		t0=System.nanoTime();
+
+		/*
+		 * simulated capture threads
+		 */
+		for(int d=0;d<numdevices;d++)
+		{
+			final CaptureRing ring=rings.get(d);
+			final long start=t0+d*37000000L;//devices start at different moments
+
+			pool.submit(new Callable<long[]>()
+			{
+				public long[] call() throws InterruptedException
+				{
+				Random random;
+				double[] samples;
+				long first,deliver,t;
+
+					random=new Random(start);
+					samples=new double[block];
+					for(long seq=0;running.get();seq+=block)
+					{
+						//the capture time of the first frame in samples
+						first=Math.round((start-t0)*fs/1e9)+seq;
+						for(int j=0;j<block;j++) samples[j]=first+j;
+
+						//delivered after the last frame is captured, with a random delay
+						deliver=start+(long)((seq+block)*1e9/fs)+(long)(random.nextDouble()*5e6);
+						while((t=System.nanoTime())<deliver) Thread.sleep(Math.max(0,(deliver-t)/1000000));
+
+						t=System.nanoTime();
+						ring.write(samples,0,block,t);
+						t=System.nanoTime()-t;
+						if(t>maxwrite.get()) maxwrite.set(t);
+					}
+					return null;
+				}
+			});
+		}
+
+		/*
+		 * snapshot threads
+		 */
+		readers=new ArrayList<Future<long[]>>();
+		for(int r=0;r<numreaders;r++)
+			readers.add(pool.submit(new Callable<long[]>()
+			{
+				public long[] call()
+				{
+				double[][] frames=null;
+				long count=0,torn=0,misaligned=0,maxmisalign=0,numaligned=0,diff;
+
+					while(running.get())
+					{
+						//leave some time for the capture threads on few processors
+						Thread.yield();
+						
+						frames=merger.snapshot(window,frames);
+						count++;
+
+						for(int i=0;i<frames.length;i++)
+							for(int j=1;j<window;j++)
+								//zeros are frames not captured yet
+								if(frames[i][j-1]!=0&&frames[i][j]!=frames[i][j-1]+1)
+								{
+									torn++;
+									break;
+								}
+
+						//clocks are estimated by few blocks at the beginning
+						if(System.nanoTime()-t0<warmup*1000000) continue;
+						for(int i=1;i<frames.length;i++)
+						{
+							if(frames[i][window-1]==0||frames[0][window-1]==0) continue;
+							numaligned++;
+							diff=Math.abs((long)(frames[i][window-1]-frames[0][window-1]));
+							maxmisalign=Math.max(maxmisalign,diff);
+							//more than 1 ms
+							if(diff>fs/1000) misaligned++;
+						}
+					}
+					return new long[] {count,torn,misaligned,maxmisalign,numaligned};
+				}
+			}));
+
+		try
+		{
+			Thread.sleep(duration);
+			running.set(false);
+			for(Future<long[]> f:readers)
+			{
+				res=f.get();
+				numsnapshots+=res[0];
+				torn+=res[1];
+				misaligned+=res[2];
+				maxmisalign=Math.max(maxmisalign,res[3]);
+				numaligned+=res[4];
+			}
+		}
+		finally
+		{
+			running.set(false);
+			pool.shutdown();
+		}
+
+		System.out.println(numdevices+" devices, "+numreaders+" readers, "+duration+" ms");
+		System.out.println("snapshots: "+numsnapshots+", retries: "+merger.numRetries());
+		System.out.println("torn snapshots: "+torn);
+		System.out.println("after "+warmup+" ms warm-up, device pairs compared: "+numaligned+
+				", misaligned by more than 1 ms: "+misaligned+", max misalignment: "+maxmisalign+" samples");
+		System.out.println("max write time: "+maxwrite.get()/1000+" us");
+	}
+}
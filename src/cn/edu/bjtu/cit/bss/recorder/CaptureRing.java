@@ -0,0 +1,277 @@
+package cn.edu.bjtu.cit.bss.recorder;
+import java.io.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * <h1>Description</h1>
+ * Lock-free ring buffer of multichannel frames captured from a device, with a
+ * single producer and multiple consumers. Each frame has a sequence number,
+ * i.e. the number of frames written before it. The producer never waits for
+ * consumers: it claims the slots of a block before overwriting them, writes
+ * the samples, then publishes the block. A consumer copies frames and then
+ * checks the claimed sequence, the copy is discarded if the producer has
+ * overwritten any of them in the meantime.
+ * <h1>abstract</h1>
+ * Each written block also records the time it is delivered by the device. The
+ * delivery time is later than the capture time by a random delay, so the
+ * capture clock of the device is estimated by the minimum of time-sequence
+ * offsets of recent blocks, which is used to align frames of different devices.
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 24, 2026 9:42:17 AM, revision:
+ */
+public class CaptureRing implements Serializable
+{
+private static final long serialVersionUID=-6053385813254316962L;
+private static final int NUM_ANCHORS=64;//number of recent blocks used to estimate the capture clock
+private int numch;//number of channels of a frame
+private int capacity;//number of frames in the ring
+private double fs;//sampling rate
+private AtomicLongArray data;//interleaved frames, samples are stored as raw long bits
+private AtomicLong claimed=new AtomicLong();//frames before this sequence may be overwritten
+private AtomicLong published=new AtomicLong();//frames before this sequence are readable
+private AtomicLong startseq=new AtomicLong();//frames before this sequence are cleared
+/*
+ * Block number, sequence number after the block, and the time in nanoseconds 
+ * when the block is delivered of recent blocks, the block number is set to -1 
+ * while the entry is being updated.
+ */
+private AtomicLongArray anchorblock,anchorseq,anchortime;
+private AtomicLong numblocks=new AtomicLong();//number of blocks written
+private AtomicLong startblock=new AtomicLong();//blocks before this one are cleared
+
+	/**
+	 * @param numch
+	 * number of channels of a frame
+	 * @param capacity
+	 * number of frames in the ring
+	 * @param fs
+	 * sampling rate
+	 */
+	public CaptureRing(int numch,int capacity,double fs)
+	{
+		if(numch<1) throw new IllegalArgumentException("number of channels must be positive: "+numch);
+		if(capacity<1) throw new IllegalArgumentException("capacity must be positive: "+capacity);
+		if(fs<=0) throw new IllegalArgumentException("sampling rate must be positive: "+fs);
+
+		this.numch=numch;
+		this.capacity=capacity;
+		this.fs=fs;
+		data=new AtomicLongArray(numch*capacity);
+		anchorblock=new AtomicLongArray(NUM_ANCHORS);
+		for(int i=0;i<NUM_ANCHORS;i++) anchorblock.set(i,-1);
+		anchorseq=new AtomicLongArray(NUM_ANCHORS);
+		anchortime=new AtomicLongArray(NUM_ANCHORS);
+	}
+
+	/**
+	 * get the number of channels of a frame
+	 * @return
+	 */
+	public int numChannels()
+	{
+		return numch;
+	}
+
+	/**
+	 * get the number of frames in the ring
+	 * @return
+	 */
+	public int capacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * get the sampling rate
+	 * @return
+	 */
+	public double sampleRate()
+	{
+		return fs;
+	}
+
+	/**
+	 * get the sequence number of the next frame to be written, sequence numbers 
+	 * keep increasing after the ring is cleared
+	 * @return
+	 */
+	public long writeSequence()
+	{
+		return published.get();
+	}
+
+	/**
+	 * get the sequence number of the oldest frame still in the ring
+	 * @return
+	 */
+	public long oldestSequence()
+	{
+		return Math.max(startseq.get(),claimed.get()-capacity);
+	}
+
+	/**
+	 * Discard all frames and delivery times written so far, must not be called 
+	 * concurrently with the producer. Sequence numbers are not reset, so copies 
+	 * in progress are still validated correctly.
+	 */
+	public void clear()
+	{
+		startseq.set(published.get());
+		startblock.set(numblocks.get());
+	}
+
+	/**
+	 * Write a block of frames, must only be called by the producer thread.
+	 * @param samples
+	 * interleaved samples of frames
+	 * @param offset
+	 * offset of the first sample
+	 * @param numframes
+	 * number of frames
+	 * @param timestamp
+	 * time in nanoseconds when the block is delivered by the device,
+	 * i.e. System.nanoTime() after the block is read
+	 */
+	public void write(double[] samples,int offset,int numframes,long timestamp)
+	{
+	long seq;
+	int pos;
+	long blockidx;
+
+		if(numframes<=0) return;
+		if(offset<0||offset+numframes*numch>samples.length) throw new IllegalArgumentException(
+				"block out of bounds: "+offset+", "+numframes+" x "+numch+", "+samples.length);
+
+		seq=published.get();
+		//only the latest frames are kept if the block is longer than the ring
+		if(numframes>capacity)
+		{
+			offset+=(numframes-capacity)*numch;
+			seq+=numframes-capacity;
+			numframes=capacity;
+		}
+
+		//slots of the oldest frames are going to be overwritten
+		claimed.set(seq+numframes);
+
+		pos=(int)(seq%capacity)*numch;
+		for(int i=0;i<numframes*numch;i++)
+		{
+			//readers seeing this sample also see the claimed sequence
+			data.lazySet(pos++,Double.doubleToRawLongBits(samples[offset+i]));
+			if(pos>=data.length()) pos=0;
+		}
+		seq+=numframes;
+
+		/*
+		 * record the delivery time of the block
+		 */
+		blockidx=numblocks.get();
+		pos=(int)(blockidx%NUM_ANCHORS);
+		anchorblock.set(pos,-1);
+		anchorseq.set(pos,seq);
+		anchortime.set(pos,timestamp);
+		anchorblock.set(pos,blockidx);
+		numblocks.set(blockidx+1);
+
+		published.set(seq);
+	}
+
+	/**
+	 * Copy frames without blocking the producer.
+	 * @param seq
+	 * sequence number of the first frame
+	 * @param numframes
+	 * number of frames
+	 * @param dest
+	 * destination, each row for a channel
+	 * @param offset
+	 * offset in destination rows
+	 * @return
+	 * false if some frames are not written yet, or are overwritten before
+	 * the copy is finished, the destination content is undefined then
+	 */
+	public boolean read(long seq,int numframes,double[][] dest,int offset)
+	{
+	int pos;
+
+		if(dest.length<numch) throw new IllegalArgumentException(
+				"not enough channels in destination: "+dest.length+", required: "+numch);
+		if(seq<startseq.get()||numframes>capacity) return false;
+		if(seq+numframes>published.get()) return false;
+
+		pos=(int)(seq%capacity)*numch;
+		for(int j=0;j<numframes;j++)
+			for(int i=0;i<numch;i++)
+			{
+				dest[i][offset+j]=Double.longBitsToDouble(data.get(pos++));
+				if(pos>=data.length()) pos=0;
+			}
+
+		//the producer has not claimed these slots again during the copy
+		return claimed.get()-capacity<=seq;
+	}
+
+	/**
+	 * Estimate the capture time of the frame 0 by recent blocks. Delivery of a 
+	 * block is always later than the capture, so the capture clock is given by 
+	 * the block with the minimum delay.
+	 * @return
+	 * in nanoseconds, Double.NaN if nothing is written
+	 */
+	private double clockOffset()
+	{
+	long n,seq,time;
+	int pos;
+	double offset,minoffset=Double.MAX_VALUE;
+
+		n=numblocks.get();
+		for(long b=Math.max(startblock.get(),n-NUM_ANCHORS);b<n;b++)
+		{
+			pos=(int)(b%NUM_ANCHORS);
+			if(anchorblock.get(pos)!=b) continue;
+			seq=anchorseq.get(pos);
+			time=anchortime.get(pos);
+			//overwritten by a later block during reading
+			if(anchorblock.get(pos)!=b) continue;
+			
+			offset=time-seq*1e9/fs;
+			if(offset<minoffset) minoffset=offset;
+		}
+		
+		if(minoffset==Double.MAX_VALUE) return Double.NaN;
+		else return minoffset;
+	}
+	
+	/**
+	 * estimate the sequence number of the frame captured at a given time
+	 * @param timestamp
+	 * time in nanoseconds
+	 * @return
+	 * estimated sequence number, may be out of the ring, Long.MIN_VALUE if 
+	 * nothing is written
+	 */
+	public long sequenceAt(double timestamp)
+	{
+	double offset;
+	
+		offset=clockOffset();
+		if(Double.isNaN(offset)) return Long.MIN_VALUE;
+		return (long)Math.floor((timestamp-offset)*fs/1e9);
+	}
+	
+	/**
+	 * estimate the capture time of a frame
+	 * @param seq
+	 * sequence number of the frame
+	 * @return
+	 * in nanoseconds, Double.NaN if nothing is written
+	 */
+	public double captureTime(long seq)
+	{
+		return clockOffset()+seq*1e9/fs;
+	}
+}
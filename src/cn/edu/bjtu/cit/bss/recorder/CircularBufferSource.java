@@ -6,7 +6,9 @@ import cn.edu.bjtu.cit.bss.signalio.*;
 
 /**
  * <h1>Description</h1>
- * Read data from circular buffers, not synchronized with circular buffers.
+ * Read data from circular buffers, not synchronized with circular buffers. It 
+ * can also be built from a sample-aligned snapshot of capture devices, which 
+ * is consistent and does not block the capture.
  * <h1>abstract</h1>
  * <h1>keywords</h1>
  * @author nay0648<br>
@@ -42,6 +44,30 @@ private List<Iterator<Double>> itlist;
 		for(CircularBuffer b:bufferlist) itlist.add(b.iterator());
 	}
 		
+	/**
+	 * take a snapshot of the latest samples of capture devices
+	 * @param merger
+	 * used to merge samples from capture devices
+	 * @param numframes
+	 * number of samples of each channel
+	 */
+	public CircularBufferSource(CaptureMerger merger,int numframes)
+	{
+	double[][] frames;
+	CircularBuffer buffer;
+	
+		frames=merger.snapshot(numframes,null);
+		bufferlist=new ArrayList<CircularBuffer>(frames.length);
+		for(double[] row:frames)
+		{
+			buffer=new CircularBuffer(1);
+			buffer.setData(row);
+			bufferlist.add(buffer);
+		}
+		itlist=new ArrayList<Iterator<Double>>(bufferlist.size());
+		for(CircularBuffer b:bufferlist) itlist.add(b.iterator());
+	}
+		
 	public int numChannels()
 	{
 		return bufferlist.size();
@@ -0,0 +1,109 @@
+package cn.edu.bjtu.cit.bss.signalio;
+import java.io.*;
+import org.apache.commons.math.complex.*;
+
+/**
+ * <h1>Description</h1>
+ * Save STFT frames of real signals in raw stream, only frequency bins 0..fftsize/2 
+ * are saved, the other half are complex conjugates. The stream starts with a header: 
+ * magic number, format version, fft size and number of saved bins, each one is an 
+ * int. Then each saved bin is written as two doubles. Frames are written as full 
+ * frames with fftsize channels, see HalfSpectrumSignalSource for reading.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 17, 2026 4:32:15 PM, revision:
+ */
+public class HalfSpectrumSignalSink extends SignalSink
+{
+private DataOutputStream rawout=null;
+private int fftsize;//fft block size
+
+	/**
+	 * @param out
+	 * underlying output stream
+	 * @param fftsize
+	 * fft block size, must be powers of 2
+	 * @throws IOException
+	 */
+	public HalfSpectrumSignalSink(OutputStream out,int fftsize) throws IOException
+	{
+		if(fftsize<2||Integer.bitCount(fftsize)!=1) throw new IllegalArgumentException(
+				"fft size must be powers of 2: "+fftsize);
+		this.fftsize=fftsize;
+		rawout=new DataOutputStream(out);
+		
+		/*
+		 * write the header
+		 */
+		rawout.writeInt(HalfSpectrumSignalSource.MAGIC);
+		rawout.writeInt(HalfSpectrumSignalSource.VERSION);
+		rawout.writeInt(fftsize);
+		rawout.writeInt(fftsize/2+1);
+	}
+	
+	public int numChannels()
+	{
+		return fftsize;
+	}
+	
+	/**
+	 * get the number of frequency bins saved for each frame
+	 * @return
+	 */
+	public int numBins()
+	{
+		return fftsize/2+1;
+	}
+
+	public void writeFrame(double[] frame) throws IOException
+	{
+		this.checkFrameSize(frame.length);
+		for(int binidx=0;binidx<numBins();binidx++) 
+		{
+			rawout.writeDouble(frame[binidx]);
+			rawout.writeDouble(0);
+		}
+	}
+
+	public void writeFrame(Complex[] frame) throws IOException
+	{
+		this.checkFrameSize(frame.length);
+		for(int binidx=0;binidx<numBins();binidx++) 
+		{
+			rawout.writeDouble(frame[binidx].getReal());
+			rawout.writeDouble(frame[binidx].getImaginary());
+		}
+	}
+	
+	/**
+	 * write a frame by its half spectrum
+	 * @param real
+	 * real part of frequency bins 0..fftsize/2
+	 * @param imag
+	 * imaginary part of frequency bins 0..fftsize/2
+	 * @throws IOException
+	 */
+	public void writeHalfFrame(double[] real,double[] imag) throws IOException
+	{
+		if(real.length<numBins()||imag.length<numBins()) throw new IllegalArgumentException(
+				"number of bins not match: "+real.length+", "+imag.length+", required: "+numBins());
+		for(int binidx=0;binidx<numBins();binidx++) 
+		{
+			rawout.writeDouble(real[binidx]);
+			rawout.writeDouble(imag[binidx]);
+		}
+	}
+
+	public void flush() throws IOException
+	{
+		rawout.flush();
+	}
+
+	public void close() throws IOException
+	{
+		rawout.close();
+	}
+}
@@ -0,0 +1,222 @@
+package cn.edu.bjtu.cit.bss.signalio;
+import java.io.*;
+import org.apache.commons.math.complex.*;
+
+/**
+ * <h1>Description</h1>
+ * Read STFT frames saved by HalfSpectrumSignalSink. Full frames are rebuilt 
+ * by the complex conjugate property, or only the saved half spectrum can be read.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 17, 2026 4:40:51 PM, revision:
+ */
+public class HalfSpectrumSignalSource extends SignalSource
+{
+/**
+ * magic number of the half spectrum format: "HSTF"
+ */
+public static final int MAGIC=0x48535446;
+/**
+ * current format version
+ */
+public static final int VERSION=1;
+/**
+ * header size in bytes
+ */
+public static final int HEADER_SIZE=4*4;
+private DataInputStream rawin=null;
+private MappedSignalSource mapped=null;//used instead of the stream if the file is mapped
+private int fftsize;//fft block size
+private int numbins;//number of saved bins for each frame
+private double[][] mapbuffer=null;//split frame buffer for mapped reading
+
+	/**
+	 * @param in
+	 * underlying input stream, the header will be read
+	 * @throws IOException
+	 */
+	public HalfSpectrumSignalSource(InputStream in) throws IOException
+	{
+		rawin=new DataInputStream(in);
+		readHeader(rawin);
+	}
+	
+	/**
+	 * read from a memory mapped file
+	 * @param path
+	 * file path
+	 * @throws IOException
+	 */
+	public HalfSpectrumSignalSource(File path) throws IOException
+	{
+	DataInputStream in=null;
+	
+		try
+		{
+			in=new DataInputStream(new FileInputStream(path));
+			readHeader(in);
+		}
+		finally
+		{
+			if(in!=null) in.close();
+		}
+		
+		mapped=new MappedSignalSource(path,numbins,HEADER_SIZE,MappedSignalSource.DEFAULT_REGION_SIZE);
+	}
+	
+	/**
+	 * read and check the header
+	 * @param in
+	 * input stream
+	 * @throws IOException
+	 */
+	private void readHeader(DataInputStream in) throws IOException
+	{
+	int magic,version;
+	
+		magic=in.readInt();
+		if(magic!=MAGIC) throw new DataFormatException(
+				"not a half spectrum stream: "+Integer.toHexString(magic));
+		version=in.readInt();
+		if(version!=VERSION) throw new DataFormatException(
+				"unsupported half spectrum format version: "+version);
+		fftsize=in.readInt();
+		numbins=in.readInt();
+		if(numbins!=fftsize/2+1) throw new DataFormatException(
+				"number of bins not match: "+numbins+", fft size: "+fftsize);
+	}
+	
+	/**
+	 * to see if a file is saved in half spectrum format
+	 * @param path
+	 * file path
+	 * @return
+	 * @throws IOException
+	 */
+	public static boolean isHalfSpectrumFile(File path) throws IOException
+	{
+	DataInputStream in=null;
+	
+		if(path.length()<4) return false;
+		try
+		{
+			in=new DataInputStream(new FileInputStream(path));
+			return in.readInt()==MAGIC;
+		}
+		finally
+		{
+			try
+			{
+				if(in!=null) in.close();
+			}
+			catch(IOException e)
+			{}
+		}
+	}
+	
+	public int numChannels()
+	{
+		return fftsize;
+	}
+	
+	/**
+	 * get the number of frequency bins saved for each frame
+	 * @return
+	 */
+	public int numBins()
+	{
+		return numbins;
+	}
+	
+	public void readFrame(double[] frame) throws IOException,EOFException
+	{
+		this.checkFrameSize(frame.length);
+		if(mapped!=null) 
+		{
+			if(mapbuffer==null) mapbuffer=new double[2][numbins];
+			mapped.readFrame(frame,mapbuffer[1]);
+		}
+		else
+		{
+			for(int binidx=0;binidx<numbins;binidx++) 
+			{
+				frame[binidx]=rawin.readDouble();
+				rawin.readDouble();
+			}
+		}
+		for(int binidx=1;binidx<fftsize/2;binidx++) frame[fftsize-binidx]=frame[binidx];
+	}
+
+	public void readFrame(Complex[] frame) throws IOException,EOFException
+	{
+		this.checkFrameSize(frame.length);
+		readHalfFrame(frame);
+		//rebuild the complex conjugate counterpart
+		for(int binidx=1;binidx<fftsize/2;binidx++) frame[fftsize-binidx]=frame[binidx].conjugate();
+	}
+	
+	/**
+	 * read only the saved half spectrum of a frame
+	 * @param frame
+	 * space for frequency bins 0..fftsize/2, its length must be at least fftsize/2+1
+	 * @throws IOException
+	 * @throws EOFException
+	 */
+	public void readHalfFrame(Complex[] frame) throws IOException,EOFException
+	{
+	double real,imag;
+	
+		if(frame.length<numbins) throw new IllegalArgumentException(
+				"number of bins not match: "+frame.length+", required: "+numbins);
+		if(mapped!=null) 
+		{
+			//only the first numbins elements are used
+			if(mapbuffer==null) mapbuffer=new double[2][numbins];
+			mapped.readFrame(mapbuffer[0],mapbuffer[1]);
+			for(int binidx=0;binidx<numbins;binidx++) 
+				frame[binidx]=new Complex(mapbuffer[0][binidx],mapbuffer[1][binidx]);
+		}
+		else
+		{
+			for(int binidx=0;binidx<numbins;binidx++) 
+			{
+				real=rawin.readDouble();
+				imag=rawin.readDouble();
+				frame[binidx]=new Complex(real,imag);
+			}
+		}
+	}
+	
+	/**
+	 * read only the saved half spectrum of a frame
+	 * @param real
+	 * space for the real part of frequency bins 0..fftsize/2
+	 * @param imag
+	 * space for the imaginary part of frequency bins 0..fftsize/2
+	 * @throws IOException
+	 * @throws EOFException
+	 */
+	public void readHalfFrame(double[] real,double[] imag) throws IOException,EOFException
+	{
+		if(real.length<numbins||imag.length<numbins) throw new IllegalArgumentException(
+				"number of bins not match: "+real.length+", "+imag.length+", required: "+numbins);
+		if(mapped!=null) mapped.readFrame(real,imag);
+		else
+		{
+			for(int binidx=0;binidx<numbins;binidx++) 
+			{
+				real[binidx]=rawin.readDouble();
+				imag[binidx]=rawin.readDouble();
+			}
+		}
+	}
+
+	public void close() throws IOException
+	{
+		if(mapped!=null) mapped.close();
+		else rawin.close();
+	}
+}
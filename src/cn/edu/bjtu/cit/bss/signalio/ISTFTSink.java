@@ -27,6 +27,8 @@ private double[] ifftr=null;//ifft signal
 private double[] overlapr=null;//buffer for overlapping samples
 private Complex[] overlapc=null;//buffer for overlapping samples
 private FastFourierTransformer fft;//used to perform ifft
+private RealFFT rfft=null;//used to perform ifft for real outputs with the primitive engine
+private double[] real=null,imag=null;//half spectrum
 private double factor;//used to cancel the overlap add effect
 private int numsegs=0;//number of stft blocks outputed
 
@@ -48,6 +50,12 @@ private int numsegs=0;//number of stft blocks outputed
 		}
 		
 		fft=new FastFourierTransformer();
+		if(!complex&&stft.getFFTEngine()==ShortTimeFourierTransformer.FFTEngine.primitive)
+		{
+			rfft=new RealFFT(stft.fftSize());
+			real=new double[stft.fftSize()/2+1];
+			imag=new double[stft.fftSize()/2+1];
+		}
 		//real magnitude=factor x magnitude
 		factor=stft.scalingFactor();
 	}
@@ -83,10 +91,10 @@ private int numsegs=0;//number of stft blocks outputed
 		
 		this.checkFrameSize(frame.length);
 		
-		ifft=fft.inversetransform(frame);//perform ifft
-		
 		if(complex)
 		{
+			ifft=fft.inversetransform(frame);//perform ifft
+			
 			//cancel the windowing effect
 			BLAS.scalarMultiply(factor,ifft,ifft);
 			
@@ -101,23 +109,75 @@ private int numsegs=0;//number of stft blocks outputed
 		}
 		else
 		{
-			for(int i=0;i<ifftr.length;i++) ifftr[i]=ifft[i].getReal();
-			//cancel the windowing effect
-			BLAS.scalarMultiply(factor,ifftr,ifftr);
-			
-			//add overlapping samples
-			for(int i=0;i<overlapr.length;i++) ifftr[i]+=overlapr[i];
-			
-			//write to result stream
-			out.writeSamples(ifftr,0,ifftr.length-overlapr.length);
-			
-			//copy overlapping samples for next window
-			for(int i=0;i<overlapr.length;i++) overlapr[i]=ifftr[ifftr.length-overlapr.length+i];
+			//the real part of ifft
+			if(rfft!=null) 
+			{
+				RealFFT.hermitianHalf(frame,real,imag);
+				rfft.inverseTransform(real,imag,ifftr);
+			}
+			else
+			{
+				ifft=fft.inversetransform(frame);//perform ifft
+				for(int i=0;i<ifftr.length;i++) ifftr[i]=ifft[i].getReal();
+			}
+			overlapAdd();
+		}
+		
+		numsegs++;
+	}
+	
+	/**
+	 * write a stft frame of real signal by its half spectrum, the output must 
+	 * be real signal
+	 * @param hreal
+	 * the real part of bins 0..fftsize/2
+	 * @param himag
+	 * the imaginary part of bins 0..fftsize/2
+	 * @throws IOException
+	 */
+	public void writeHalfFrame(double[] hreal,double[] himag) throws IOException
+	{
+		if(complex) throw new IllegalStateException("half spectrum requires real outputs");
+		if(hreal.length!=stft.fftSize()/2+1||himag.length!=hreal.length) 
+			throw new IllegalArgumentException("half spectrum size not match: "+
+					hreal.length+", "+himag.length+", required: "+(stft.fftSize()/2+1));
+		
+		if(rfft==null) 
+		{
+			writeFrame(RealFFT.fullFrame(hreal,himag,null));
+			return;
 		}
 		
+		System.arraycopy(hreal,0,real,0,real.length);
+		System.arraycopy(himag,0,imag,0,imag.length);
+		//the same as RealFFT.hermitianHalf
+		imag[0]=0;
+		imag[imag.length-1]=0;
+		rfft.inverseTransform(real,imag,ifftr);
+		overlapAdd();
+		
 		numsegs++;
 	}
 	
+	/**
+	 * overlap add the real ifft result to the output stream
+	 * @throws IOException
+	 */
+	private void overlapAdd() throws IOException
+	{
+		//cancel the windowing effect
+		BLAS.scalarMultiply(factor,ifftr,ifftr);
+		
+		//add overlapping samples
+		for(int i=0;i<overlapr.length;i++) ifftr[i]+=overlapr[i];
+		
+		//write to result stream
+		out.writeSamples(ifftr,0,ifftr.length-overlapr.length);
+		
+		//copy overlapping samples for next window
+		for(int i=0;i<overlapr.length;i++) overlapr[i]=ifftr[ifftr.length-overlapr.length+i];
+	}
+	
 	public void flush() throws IOException
 	{
 		//write the last part
@@ -0,0 +1,230 @@
+package cn.edu.bjtu.cit.bss.signalio;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import org.apache.commons.math.complex.*;
+import pp.util.BLAS;
+
+/**
+ * <h1>Description</h1>
+ * Write signals to a raw signal file by memory mapping, the file format is the 
+ * same as RawSignalSink. The file is extended region by region while writing, 
+ * and truncated to the written length when the sink is closed.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 17, 2026 9:18:40 PM, revision:
+ */
+public class MappedSignalSink extends SignalSink
+{
+/**
+ * default size of a mapped region in bytes
+ */
+public static final int DEFAULT_REGION_SIZE=1<<24;
+private File path;//signal file path
+private int numch;//number of channels
+private RandomAccessFile file;
+private FileChannel channel;
+private long offset;//number of bytes before the signal data
+private int regionlen;//number of doubles of a region
+private MappedByteBuffer mregion=null;//current mapped region
+private DoubleBuffer region=null;//double view of current region
+private long regionstart=0;//index of the first double of current region
+private long pos=0;//number of doubles written
+private double[] cframe;//buffer for complex frames
+
+	/**
+	 * @param path
+	 * raw signal file path, old content will be overwritten
+	 * @param numch
+	 * number of channels
+	 * @throws IOException
+	 */
+	public MappedSignalSink(File path,int numch) throws IOException
+	{
+		this(path,numch,0,DEFAULT_REGION_SIZE);
+	}
+	
+	/**
+	 * @param path
+	 * raw signal file path
+	 * @param numch
+	 * number of channels
+	 * @param offset
+	 * number of bytes kept before the signal data, such as file headers
+	 * @param regionsize
+	 * size of a mapped region in bytes, must be a multiple of 8
+	 * @throws IOException
+	 */
+	public MappedSignalSink(File path,int numch,long offset,int regionsize) throws IOException
+	{
+		if(numch<1) throw new IllegalArgumentException("illegal number of channels: "+numch);
+		if(regionsize<8||regionsize%8!=0) throw new IllegalArgumentException(
+				"region size must be a positive multiple of 8: "+regionsize);
+		if(offset<0) throw new IllegalArgumentException("illegal offset: "+offset);
+		
+		this.path=path;
+		this.numch=numch;
+		this.offset=offset;
+		regionlen=regionsize/8;
+		cframe=new double[2*numch];
+		
+		file=new RandomAccessFile(path,"rw");
+		channel=file.getChannel();
+		file.setLength(offset);
+	}
+	
+	/**
+	 * get signal file path
+	 * @return
+	 */
+	public File path()
+	{
+		return path;
+	}
+
+	public int numChannels()
+	{
+		return numch;
+	}
+	
+	/**
+	 * write doubles by bulk copies
+	 * @param src
+	 * source data
+	 * @param off
+	 * offset of the source data
+	 * @param len
+	 * number of doubles
+	 * @throws IOException
+	 */
+	public void writeDoubles(double[] src,int off,int len) throws IOException
+	{
+	int n;
+	
+		if(channel==null) throw new IOException("signal sink is closed: "+path);
+		
+		while(len>0)
+		{
+			//map the next region
+			if(region==null||!region.hasRemaining()) 
+			{
+				if(mregion!=null) 
+				{
+					mregion.force();
+					MappedSignalSource.unmap(mregion);
+				}
+				regionstart=pos;
+				mregion=channel.map(FileChannel.MapMode.READ_WRITE,offset+regionstart*8,(long)regionlen*8);
+				region=mregion.asDoubleBuffer();
+			}
+			
+			n=Math.min(len,region.remaining());
+			region.put(src,off,n);
+			
+			pos+=n;
+			off+=n;
+			len-=n;
+		}
+	}
+
+	public void writeFrame(double[] frame) throws IOException
+	{
+		this.checkFrameSize(frame.length);
+		writeDoubles(frame,0,numch);
+	}
+
+	public void writeFrame(Complex[] frame) throws IOException
+	{
+		this.checkFrameSize(frame.length);
+		for(int i=0;i<numch;i++) 
+		{
+			cframe[2*i]=frame[i].getReal();
+			cframe[2*i+1]=frame[i].getImaginary();
+		}
+		writeDoubles(cframe,0,cframe.length);
+	}
+	
+	/**
+	 * write a complex frame in split format
+	 * @param real
+	 * the real part, at least number of channels long
+	 * @param imag
+	 * the imaginary part, at least number of channels long
+	 * @throws IOException
+	 */
+	public void writeFrame(double[] real,double[] imag) throws IOException
+	{
+		if(real.length<numch||imag.length<numch) throw new IllegalArgumentException(
+				"number of channels not match: "+real.length+", "+imag.length+", required: "+numch);
+		for(int i=0;i<numch;i++) 
+		{
+			cframe[2*i]=real[i];
+			cframe[2*i+1]=imag[i];
+		}
+		writeDoubles(cframe,0,cframe.length);
+	}
+
+	public void flush() throws IOException
+	{
+		if(mregion!=null) mregion.force();
+	}
+
+	public void close() throws IOException
+	{
+		if(channel==null) return;
+		try
+		{
+			flush();
+			//a mapped file can not be truncated on Windows
+			MappedSignalSource.unmap(mregion);
+			mregion=null;
+			region=null;
+			//remove the unused part of the last region
+			channel.truncate(offset+pos*8);
+		}
+		finally
+		{
+			file.close();
+			channel=null;
+		}
+	}
+	
+	public static void main(String[] args) throws IOException
+	{
+	File path;
+	MappedSignalSink sink;
+	MappedSignalSource source;
+	double[][] data,diff;
+	double[] frame;
+	double maxdiff;
+	
+		path=File.createTempFile("mapped",".dat");
+		path.deleteOnExit();
+		data=BLAS.randMatrix(3,1001);
+		
+		/*
+		 * small regions to test frames across region boundaries
+		 */
+		sink=new MappedSignalSink(path,3,16,40);
+		frame=new double[3];
+		for(int tau=0;tau<data[0].length;tau++) 
+		{
+			for(int m=0;m<frame.length;m++) frame[m]=data[m][tau];
+			sink.writeFrame(frame);
+		}
+		sink.close();
+		System.out.println("file size: "+path.length());
+		
+		source=new MappedSignalSource(path,3,16,40);
+		diff=BLAS.substract(data,source.toArray((double[][])null),null);
+		source.close();
+		
+		maxdiff=0;
+		for(double[] row:diff) 
+			for(double d:row) maxdiff=Math.max(maxdiff,Math.abs(d));
+		System.out.println("max difference: "+maxdiff);
+	}
+}
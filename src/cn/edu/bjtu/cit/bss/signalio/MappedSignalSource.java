@@ -0,0 +1,303 @@
+package cn.edu.bjtu.cit.bss.signalio;
+import java.io.*;
+import java.lang.reflect.*;
+import java.nio.*;
+import java.nio.channels.*;
+import org.apache.commons.math.complex.*;
+
+/**
+ * <h1>Description</h1>
+ * Read signals from a raw signal file by memory mapping, the file format is the 
+ * same as RawSignalSource. Frames are read by bulk copies from mapped buffers 
+ * instead of one double at a time. Large files are mapped as multiple regions, 
+ * a frame may cross the region boundary. Mapped regions are unmapped when the 
+ * source is closed, so the file can be deleted or overwritten afterwards even 
+ * on platforms locking mapped files.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 17, 2026 8:55:12 PM, revision:
+ */
+public class MappedSignalSource extends SignalSource
+{
+/**
+ * default size of a mapped region in bytes
+ */
+public static final int DEFAULT_REGION_SIZE=1<<30;
+private File path;//signal file path
+private int numch;//number of channels
+private MappedByteBuffer[] mapped;//mapped regions
+private DoubleBuffer[] regions;//double views of mapped regions
+private int regionlen;//number of doubles of a full region
+private long numdoubles;//total number of doubles in the file
+private long pos=0;//current position in doubles
+private double[] real,imag;//frame buffer for complex frames
+private double[] cframe;//interleaved complex frame buffer
+
+	/**
+	 * @param path
+	 * raw signal file path
+	 * @param numch
+	 * number of channels
+	 * @throws IOException
+	 */
+	public MappedSignalSource(File path,int numch) throws IOException
+	{
+		this(path,numch,0,DEFAULT_REGION_SIZE);
+	}
+	
+	/**
+	 * @param path
+	 * raw signal file path
+	 * @param numch
+	 * number of channels
+	 * @param offset
+	 * number of bytes before the signal data, such as file headers
+	 * @param regionsize
+	 * size of a mapped region in bytes, must be a multiple of 8
+	 * @throws IOException
+	 */
+	public MappedSignalSource(File path,int numch,long offset,int regionsize) throws IOException
+	{
+	RandomAccessFile file=null;
+	FileChannel channel;
+	long len;
+	int numregions;
+	
+		if(numch<1) throw new IllegalArgumentException("illegal number of channels: "+numch);
+		if(regionsize<8||regionsize%8!=0) throw new IllegalArgumentException(
+				"region size must be a positive multiple of 8: "+regionsize);
+		
+		this.path=path;
+		this.numch=numch;
+		regionlen=regionsize/8;
+		
+		try
+		{
+			file=new RandomAccessFile(path,"r");
+			channel=file.getChannel();
+			if(offset<0||offset>channel.size()) throw new IllegalArgumentException(
+					"illegal offset: "+offset+", file size: "+channel.size());
+			numdoubles=(channel.size()-offset)/8;
+			
+			/*
+			 * map regions
+			 */
+			numregions=(int)((numdoubles+regionlen-1)/regionlen);
+			mapped=new MappedByteBuffer[numregions];
+			regions=new DoubleBuffer[numregions];
+			for(int i=0;i<numregions;i++) 
+			{
+				len=Math.min(regionlen,numdoubles-(long)i*regionlen);
+				mapped[i]=channel.map(
+						FileChannel.MapMode.READ_ONLY,
+						offset+(long)i*regionlen*8,
+						len*8);
+				regions[i]=mapped[i].asDoubleBuffer();
+			}
+		}
+		finally
+		{
+			//mapped buffers are still valid after the channel is closed
+			if(file!=null) file.close();
+		}
+	}
+	
+	/**
+	 * get signal file path
+	 * @return
+	 */
+	public File path()
+	{
+		return path;
+	}
+
+	public int numChannels()
+	{
+		return numch;
+	}
+	
+	/**
+	 * get the total number of doubles in the file
+	 * @return
+	 */
+	public long numDoubles()
+	{
+		return numdoubles;
+	}
+	
+	/**
+	 * seek frame index
+	 * @param frameidx
+	 * destination frame index
+	 * @param complex
+	 * true to seek complex frames, false to seek real frames
+	 */
+	public void seek(long frameidx,boolean complex)
+	{
+	long p;
+	
+		p=complex?frameidx*numch*2:frameidx*numch;
+		if(p<0||p>numdoubles) throw new IndexOutOfBoundsException(
+				"frame index out of bounds: "+frameidx);
+		pos=p;
+	}
+	
+	/**
+	 * read doubles from current position by bulk copies
+	 * @param dest
+	 * destination
+	 * @param off
+	 * offset of the destination
+	 * @param len
+	 * number of doubles
+	 * @throws IOException
+	 * @throws EOFException
+	 * if there are not enough doubles left
+	 */
+	public void readDoubles(double[] dest,int off,int len) throws IOException,EOFException
+	{
+	DoubleBuffer region;
+	int ridx,n;
+	
+		if(regions==null) throw new IOException("signal source is closed: "+path);
+		if(pos+len>numdoubles) throw new EOFException();
+		
+		while(len>0)
+		{
+			region=regions[(int)(pos/regionlen)];
+			ridx=(int)(pos%regionlen);
+			n=Math.min(len,region.limit()-ridx);
+			
+			region.position(ridx);
+			region.get(dest,off,n);
+			
+			pos+=n;
+			off+=n;
+			len-=n;
+		}
+	}
+	
+	/**
+	 * Get a read only view of doubles without copy, the view must not 
+	 * cross the region boundary. Current position is not changed. The view 
+	 * must not be accessed after the source is closed.
+	 * @param index
+	 * index of the first double
+	 * @param len
+	 * number of doubles
+	 * @return
+	 * return null if the data crosses the region boundary
+	 */
+	public DoubleBuffer view(long index,int len)
+	{
+	DoubleBuffer region;
+	int ridx;
+	
+		if(regions==null) throw new IllegalStateException("signal source is closed: "+path);
+		if(index<0||len<0||index+len>numdoubles) throw new IndexOutOfBoundsException(
+				"view out of bounds: "+index+", "+len+", total: "+numdoubles);
+		if(index/regionlen!=(index+len-1)/regionlen&&len>0) return null;
+		
+		region=regions[(int)(index/regionlen)].duplicate();
+		ridx=(int)(index%regionlen);
+		region.position(ridx);
+		region.limit(ridx+len);
+		return region.slice().asReadOnlyBuffer();
+	}
+
+	public void readFrame(double[] frame) throws IOException,EOFException
+	{
+		this.checkFrameSize(frame.length);
+		readDoubles(frame,0,numch);
+	}
+
+	public void readFrame(Complex[] frame) throws IOException,EOFException
+	{
+		this.checkFrameSize(frame.length);
+		if(real==null) 
+		{
+			real=new double[numch];
+			imag=new double[numch];
+		}
+		
+		readFrame(real,imag);
+		for(int i=0;i<numch;i++) frame[i]=new Complex(real[i],imag[i]);
+	}
+	
+	/**
+	 * read a complex frame in split format
+	 * @param real
+	 * space for the real part, at least number of channels long
+	 * @param imag
+	 * space for the imaginary part, at least number of channels long
+	 * @throws IOException
+	 * @throws EOFException
+	 */
+	public void readFrame(double[] real,double[] imag) throws IOException,EOFException
+	{
+		if(real.length<numch||imag.length<numch) throw new IllegalArgumentException(
+				"number of channels not match: "+real.length+", "+imag.length+", required: "+numch);
+		if(cframe==null) cframe=new double[2*numch];
+		
+		//the frame may cross the region boundary
+		readDoubles(cframe,0,cframe.length);
+		for(int i=0;i<numch;i++) 
+		{
+			real[i]=cframe[2*i];
+			imag[i]=cframe[2*i+1];
+		}
+	}
+
+	public void close() throws IOException
+	{
+		if(mapped==null) return;
+		for(MappedByteBuffer buffer:mapped) unmap(buffer);
+		mapped=null;
+		regions=null;
+	}
+	
+	/**
+	 * Release a mapped buffer immediately instead of waiting for garbage 
+	 * collection, a mapped file can not be deleted or truncated on Windows 
+	 * before it is released. The buffer and all views of it must not be 
+	 * accessed afterwards. Left to garbage collection if the JVM does not 
+	 * support it.
+	 * @param buffer
+	 * a mapped buffer
+	 */
+	public static void unmap(MappedByteBuffer buffer)
+	{
+	Class<?> unsafeclass;
+	Field theunsafe;
+	Method cleaner;
+	Object c;
+	
+		if(buffer==null) return;
+		try
+		{
+			//java 9 and later
+			unsafeclass=Class.forName("sun.misc.Unsafe");
+			theunsafe=unsafeclass.getDeclaredField("theUnsafe");
+			theunsafe.setAccessible(true);
+			unsafeclass.getMethod("invokeCleaner",ByteBuffer.class).invoke(theunsafe.get(null),buffer);
+		}
+		catch(NoSuchMethodException e)
+		{
+			//java 8 and earlier
+			try
+			{
+				cleaner=buffer.getClass().getMethod("cleaner");
+				cleaner.setAccessible(true);
+				c=cleaner.invoke(buffer);
+				if(c!=null) c.getClass().getMethod("clean").invoke(c);
+			}
+			catch(Exception e1)
+			{}
+		}
+		catch(Exception e)
+		{}
+	}
+}
@@ -2,13 +2,16 @@ package cn.edu.bjtu.cit.bss.signalio;
 import java.io.*;
 import java.util.*;
 import org.apache.commons.math.complex.*;
+import cn.edu.bjtu.cit.bss.util.*;
 
 /**
  * <h1>Description</h1>
  * This is used to concatenate multiple signal sources together to form a 
  * single signal source, instaneous and convolutive mix with zero padding 
  * are also supported to mix signals from different channels. Only real 
- * signals are supported. This class is not safe for multithread access.
+ * signals are supported. Convolutive mixing with long filters is performed 
+ * by the overlap-save FFT convolution automatically. This class is not safe 
+ * for multithread access.
  * <h1>abstract</h1>
  * <h1>keywords</h1>
  * @author nay0648<br>
@@ -25,6 +28,20 @@ private Complex[][] buffc;//buffer for underlying sources, each row is a frame
 private double[] tempr;//temp frame used to concatenate small frames
 private Complex[] tempc;//temp frame used to concatenate small frames
 private Mixer mixer=null;//the mixer
+/**
+ * default filter length from which the FFT convolution is used
+ */
+public static final int DEFAULT_FFT_THRESHOLD=32;
+private int fftthreshold=DEFAULT_FFT_THRESHOLD;//filter length to use the FFT convolution
+/*
+ * for the FFT convolution
+ */
+private FFTConvolver conv=null;//null if not used
+private double[][] inblock,outblock;//input and output blocks, [channel][sample]
+private double[] inframe,outframe;//an input frame and an output frame
+private int outpos=0,outlen=0;//position and length of the output block
+private boolean eof=false;//true if got an eof from underlying sources
+private int tail=0;//number of zero padded samples remaining after the eof
 
 	/**
 	 * <h1>Description</h1>
@@ -454,6 +471,124 @@ private Mixer mixer=null;//the mixer
 		this.mixer=mixer;
 		if(mixer!=null&&mixer.numInputChannels()!=numInputChannels()) throw new IllegalArgumentException(
 				"number of input channels not match: "+mixer.numInputChannels()+", required: "+numInputChannels());
+		initConvolver();
+	}
+	
+	/**
+	 * get the filter length from which the FFT convolution is used
+	 * @return
+	 */
+	public int getFFTThreshold()
+	{
+		return fftthreshold;
+	}
+	
+	/**
+	 * set the filter length from which the FFT convolution is used, 
+	 * must be set before reading any samples
+	 * @param fftthreshold
+	 * filter length threshold
+	 */
+	public void setFFTThreshold(int fftthreshold)
+	{
+		if(fftthreshold<1) throw new IllegalArgumentException(
+				"threshold must be positive: "+fftthreshold);
+		this.fftthreshold=fftthreshold;
+		initConvolver();
+	}
+	
+	/**
+	 * use the FFT convolution for long convolutive mixing filters
+	 */
+	private void initConvolver()
+	{
+	ConvolutiveMixer cm;
+	
+		conv=null;
+		if(!(mixer instanceof ConvolutiveMixer)) return;
+		cm=(ConvolutiveMixer)mixer;
+		if(cm.filterLength()<fftthreshold) return;
+		
+		conv=new FFTConvolver(cm.rmix);
+		inblock=new double[conv.numInputChannels()][conv.blockSize()];
+		outblock=new double[conv.numOutputChannels()][conv.blockSize()];
+		inframe=new double[numchin];
+		outframe=new double[conv.numOutputChannels()];
+		outpos=0;
+		outlen=0;
+		eof=false;
+		tail=0;
+	}
+	
+	/**
+	 * read and concatenate a frame from underlying sources
+	 * @param frame
+	 * space for the frame
+	 * @return
+	 * false if got an eof
+	 * @throws IOException
+	 */
+	private boolean readInputFrame(double[] frame) throws IOException
+	{
+	int idx=0;
+	
+		try
+		{
+			for(int i=0;i<source.length;i++)
+			{
+				source[i].readFrame(buffr[i]);
+				for(int j=0;j<buffr[i].length;j++) frame[idx++]=buffr[i][j];
+			}
+		}
+		catch(EOFException e)
+		{
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * read a frame by the FFT convolution, a block of input frames is 
+	 * processed if the output block is used up
+	 * @param frame
+	 * space for the frame
+	 * @throws IOException
+	 * @throws EOFException
+	 */
+	private void readConvolvedFrame(double[] frame) throws IOException,EOFException
+	{
+	int n=0;
+	
+		if(outpos>=outlen)
+		{
+			/*
+			 * read a block of input frames
+			 */
+			while(n<conv.blockSize()&&!eof)
+			{
+				if(readInputFrame(inframe)) 
+				{
+					for(int j=0;j<inframe.length;j++) inblock[j][n]=inframe[j];
+					n++;
+				}
+				else
+				{
+					eof=true;
+					//pad with zeros to output the remaining data
+					tail=((ConvolutiveMixer)mixer).turncated()?0:conv.filterLength()-1;
+				}
+			}
+			for(;n<conv.blockSize()&&eof&&tail>0;n++,tail--) 
+				for(int j=0;j<inblock.length;j++) inblock[j][n]=0;
+			if(n==0) throw new EOFException();
+			
+			conv.process(inblock,n,outblock);
+			outpos=0;
+			outlen=n;
+		}
+		
+		for(int i=0;i<frame.length;i++) frame[i]=outblock[i][outpos];
+		outpos++;
 	}
 
 	public void readFrame(double[] frame) throws IOException,EOFException
@@ -461,6 +596,11 @@ private Mixer mixer=null;//the mixer
 	int idx=0;
 	
 		this.checkFrameSize(frame.length);
+		if(conv!=null) 
+		{
+			readConvolvedFrame(frame);
+			return;
+		}
 		
 		//concatenate underlying source's frame into a big frame
 		try
@@ -486,6 +626,13 @@ private Mixer mixer=null;//the mixer
 	int idx=0;
 		
 		this.checkFrameSize(frame.length);
+		if(conv!=null) 
+		{
+			//only real signals are supported
+			readConvolvedFrame(outframe);
+			for(int i=0;i<frame.length;i++) frame[i]=new Complex(outframe[i],0);
+			return;
+		}
 			
 		//concatenate underlying source's frame into a big frame
 		try
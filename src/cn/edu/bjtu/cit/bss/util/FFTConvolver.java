@@ -0,0 +1,264 @@
+package cn.edu.bjtu.cit.bss.util;
+import java.io.*;
+import java.util.*;
+import pp.util.BLAS;
+import cn.edu.bjtu.cit.bss.signalio.*;
+
+/**
+ * <h1>Description</h1>
+ * Block convolution of multichannel signals with FIR filters by the overlap-save
+ * method. Each input block is transformed once, multiplied with the spectra of
+ * the filters and accumulated for each output channel, then transformed back.
+ * The last filterlength-1 input samples of each channel are kept as history,
+ * the result is the same as the direct convolution with zero initial states.
+ * Not safe for multithread access.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 17, 2026 10:41:26 PM, revision:
+ */
+public class FFTConvolver implements Serializable
+{
+private static final long serialVersionUID=-6804729561862383066L;
+private int numout;//number of output channels
+private int numin;//number of input channels
+private int filterlen;//filter length
+private int fftsize;//fft block size
+private int blocksize;//number of new samples in a block
+private double[][][] hreal,himag;//half spectrum of filters, [output][input][bin]
+private double[][] segment;//input segment of each channel: history + new block
+private double[][] xreal,ximag;//half spectrum of input segments, [input][bin]
+private double[] yreal,yimag;//half spectrum of an output channel
+private double[] ysig;//time domain output segment
+private RealFFT fft;
+
+	/**
+	 * @param filters
+	 * fir filters, [output channel][input channel][tap]
+	 */
+	public FFTConvolver(double[][][] filters)
+	{
+		this(filters,defaultFFTSize(filters[0][0].length));
+	}
+
+	/**
+	 * @param filters
+	 * fir filters, [output channel][input channel][tap]
+	 * @param fftsize
+	 * fft block size, must be powers of 2 and larger than filter length
+	 */
+	public FFTConvolver(double[][][] filters,int fftsize)
+	{
+	double[] h;
+
+		numout=filters.length;
+		numin=filters[0].length;
+		filterlen=filters[0][0].length;
+		if(fftsize<filterlen+1||!SpectralAnalyzer.isPowerOf2(fftsize))
+			throw new IllegalArgumentException(
+					"fft size must be powers of 2 and larger than filter length: "+fftsize+", "+filterlen);
+		this.fftsize=fftsize;
+		blocksize=fftsize-filterlen+1;
+		fft=new RealFFT(fftsize);
+
+		/*
+		 * filter spectra
+		 */
+		hreal=new double[numout][numin][fftsize/2+1];
+		himag=new double[numout][numin][fftsize/2+1];
+		h=new double[fftsize];
+		for(int i=0;i<numout;i++)
+			for(int j=0;j<numin;j++)
+			{
+				if(filters[i][j].length!=filterlen) throw new IllegalArgumentException(
+						"filter length not match: "+filters[i][j].length+", "+filterlen);
+				Arrays.fill(h,0);
+				System.arraycopy(filters[i][j],0,h,0,filterlen);
+				fft.transform(h,hreal[i][j],himag[i][j]);
+			}
+
+		segment=new double[numin][fftsize];
+		xreal=new double[numin][fftsize/2+1];
+		ximag=new double[numin][fftsize/2+1];
+		yreal=new double[fftsize/2+1];
+		yimag=new double[fftsize/2+1];
+		ysig=new double[fftsize];
+	}
+
+	/**
+	 * get a reasonable fft block size for a filter length
+	 * @param filterlen
+	 * filter length
+	 * @return
+	 */
+	public static int defaultFFTSize(int filterlen)
+	{
+		return Math.max(SpectralAnalyzer.nextPowerOf2(4*filterlen),64);
+	}
+
+	/**
+	 * get number of input channels
+	 * @return
+	 */
+	public int numInputChannels()
+	{
+		return numin;
+	}
+
+	/**
+	 * get number of output channels
+	 * @return
+	 */
+	public int numOutputChannels()
+	{
+		return numout;
+	}
+
+	/**
+	 * get filter length
+	 * @return
+	 */
+	public int filterLength()
+	{
+		return filterlen;
+	}
+
+	/**
+	 * get fft block size
+	 * @return
+	 */
+	public int fftSize()
+	{
+		return fftsize;
+	}
+
+	/**
+	 * get the number of samples processed in a block
+	 * @return
+	 */
+	public int blockSize()
+	{
+		return blocksize;
+	}
+
+	/**
+	 * clear the history, as if all previous inputs are zeros
+	 */
+	public void reset()
+	{
+		for(double[] s:segment) Arrays.fill(s,0);
+	}
+
+	/**
+	 * convolve a block of samples
+	 * @param in
+	 * input samples, [input channel][sample index]
+	 * @param len
+	 * number of samples, no more than the block size
+	 * @param out
+	 * space for output samples, [output channel][sample index], at least len samples
+	 */
+	public void process(double[][] in,int len,double[][] out)
+	{
+	int hist;
+	double ar,ai,br,bi;
+	double[] hr,hi,xr,xi;
+
+		if(len<0||len>blocksize) throw new IllegalArgumentException(
+				"illegal number of samples: "+len+", block size: "+blocksize);
+		if(len==0) return;
+		hist=filterlen-1;
+
+		/*
+		 * transform input segments
+		 */
+		for(int j=0;j<numin;j++)
+		{
+			//drop the oldest samples, the latest filterlen-1 samples are kept
+			System.arraycopy(segment[j],len,segment[j],0,hist+blocksize-len);
+			System.arraycopy(in[j],0,segment[j],hist+blocksize-len,len);
+			fft.transform(segment[j],xreal[j],ximag[j]);
+		}
+
+		/*
+		 * multiply and accumulate in frequency domain for each output
+		 */
+		for(int i=0;i<numout;i++)
+		{
+			Arrays.fill(yreal,0);
+			Arrays.fill(yimag,0);
+			for(int j=0;j<numin;j++)
+			{
+				hr=hreal[i][j];
+				hi=himag[i][j];
+				xr=xreal[j];
+				xi=ximag[j];
+				for(int k=0;k<yreal.length;k++)
+				{
+					ar=hr[k];
+					ai=hi[k];
+					br=xr[k];
+					bi=xi[k];
+					yreal[k]+=ar*br-ai*bi;
+					yimag[k]+=ar*bi+ai*br;
+				}
+			}
+
+			//the last len samples are not affected by circular aliasing
+			fft.inverseTransform(yreal,yimag,ysig);
+			System.arraycopy(ysig,fftsize-len,out[i],0,len);
+		}
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+	int[] lens={16,32,64,128,256,512,1024,2048,4096};
+	int numsamples=16000*4;
+	double[][] x,y1,y2;
+	double[][][] h;
+	SignalMixer mixer;
+	double maxdiff,direct,fftconv;
+	long t;
+
+		x=BLAS.randMatrix(2,numsamples);
+		System.out.println("filter length, direct samples/s, fft samples/s, max difference");
+
+		for(int len:lens)
+		{
+			h=new double[2][2][];
+			for(int i=0;i<h.length;i++)
+				for(int j=0;j<h[i].length;j++) h[i][j]=BLAS.randVector(len);
+
+			/*
+			 * direct convolution
+			 */
+			mixer=new SignalMixer(new ArraySignalSource(x));
+			mixer.setMixer(new SignalMixer.ConvolutiveMixer(h,false));
+			mixer.setFFTThreshold(Integer.MAX_VALUE);
+			t=System.nanoTime();
+			y1=mixer.toArray((double[][])null);
+			direct=numsamples/((System.nanoTime()-t)/1e9);
+
+			/*
+			 * overlap-save
+			 */
+			mixer=new SignalMixer(new ArraySignalSource(x));
+			mixer.setFFTThreshold(1);
+			mixer.setMixer(new SignalMixer.ConvolutiveMixer(h,false));
+			t=System.nanoTime();
+			y2=mixer.toArray((double[][])null);
+			fftconv=numsamples/((System.nanoTime()-t)/1e9);
+
+			maxdiff=0;
+			if(y1[0].length!=y2[0].length) maxdiff=Double.POSITIVE_INFINITY;
+			else
+				for(int i=0;i<y1.length;i++)
+					for(int tau=0;tau<y1[i].length;tau++)
+						maxdiff=Math.max(maxdiff,Math.abs(y1[i][tau]-y2[i][tau]));
+
+			System.out.println(len+", "+(long)direct+", "+(long)fftconv+", "+maxdiff);
+		}
+	}
+}
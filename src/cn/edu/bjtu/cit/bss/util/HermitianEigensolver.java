@@ -268,6 +268,40 @@ private static final long serialVersionUID=-1986289673415670818L;
 	 * @return
 	 */
 	public abstract EigenDecomposition eig(double[][] real,double[][] imag);
+	
+	/**
+	 * calculate eigenvalues and eigenvectors for a Hermitian matrix into 
+	 * designated space, results are sorted according to eigenvalue's 
+	 * magnitude decreasing order
+	 * @param real
+	 * real part of the Hermitian matrix
+	 * @param imag
+	 * imaginary part of the Hermitian matrix
+	 * @param evalues
+	 * space for eigenvalues
+	 * @param evreal
+	 * space for the real part of eigenvectors, each column is an eigenvector
+	 * @param evimag
+	 * space for the imaginary part of eigenvectors, each column is an eigenvector
+	 */
+	public void eig(double[][] real,double[][] imag,double[] evalues,double[][] evreal,double[][] evimag)
+	{
+	EigenDecomposition decomp;
+	Complex[] ev;
+	
+		decomp=eig(real,imag);
+		for(int j=0;j<decomp.size();j++)
+		{
+			//Hermitian matrix has only real eigenvalues
+			evalues[j]=decomp.eigenvalue(j).getReal();
+			ev=decomp.eigenvector(j);
+			for(int i=0;i<ev.length;i++)
+			{
+				evreal[i][j]=ev[i].getReal();
+				evimag[i][j]=ev[i].getImaginary();
+			}
+		}
+	}
 		
 	/**
 	 * calculate eigenvalues and eigenvectors for a Hermitian matrix
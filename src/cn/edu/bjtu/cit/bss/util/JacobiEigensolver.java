@@ -0,0 +1,377 @@
+package cn.edu.bjtu.cit.bss.util;
+import org.apache.commons.math.complex.*;
+import pp.util.BLAS;
+
+/**
+ * <h1>Description</h1>
+ * Eigensolver for small Hermitian matrices, such as covariance matrices used in
+ * whitening and W*W' in symmetric decorrelation. 2 x 2 matrices are solved in
+ * closed form, matrices no larger than 16 x 16 are solved by the cyclic complex
+ * Jacobi method on primitive arrays, larger matrices are passed to
+ * CommonsEigensolver. Working space is kept between invocations, so an instance
+ * should not be shared by threads.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 20, 2026 9:37:15 AM, revision:
+ */
+public class JacobiEigensolver extends HermitianEigensolver
+{
+private static final long serialVersionUID=-5004562916542339613L;
+private static final int MAX_JACOBI_SIZE=16;//larger matrices are solved by commons
+private static final int MAX_SWEEPS=50;//maximum number of Jacobi sweeps
+private static final double EPS=1e-30;//squared relative off-diagonal norm for convergence
+private transient double[][] ar,ai;//the matrix being diagonalized
+private transient double[][] vr,vi;//accumulated rotations, transposed, eigenvectors are rows
+private transient int[] order;//eigenvalue order
+private CommonsEigensolver large=null;//used for large matrices
+
+	public EigenDecomposition eig(double[][] real,double[][] imag)
+	{
+	int n;
+	double[] evalues;
+	double[][] evreal,evimag;
+	EigenDecomposition result;
+	Complex[] ev;
+
+		n=real.length;
+		if(n>MAX_JACOBI_SIZE)
+		{
+			if(large==null) large=new CommonsEigensolver();
+			return large.eig(real,imag);
+		}
+
+		evalues=new double[n];
+		evreal=new double[n][n];
+		evimag=new double[n][n];
+		eig(real,imag,evalues,evreal,evimag);
+
+		result=new EigenDecomposition(n);
+		for(int j=0;j<n;j++)
+		{
+			ev=new Complex[n];
+			for(int i=0;i<n;i++) ev[i]=new Complex(evreal[i][j],evimag[i][j]);
+			result.add(new Complex(evalues[j],0),ev);
+		}
+		return result;
+	}
+
+	public void eig(double[][] real,double[][] imag,double[] evalues,double[][] evreal,double[][] evimag)
+	{
+	int n;
+
+		n=real.length;
+		if(n>MAX_JACOBI_SIZE)
+		{
+			super.eig(real,imag,evalues,evreal,evimag);
+			return;
+		}
+		if(real[0].length!=n||imag.length!=n||imag[0].length!=n) throw new IllegalArgumentException(
+				"square matrix required: "+real.length+" x "+real[0].length+", "+imag.length+" x "+imag[0].length);
+
+		/*
+		 * copy the Hermitian part of the input
+		 */
+		if(ar==null||ar.length!=n)
+		{
+			ar=new double[n][n];
+			ai=new double[n][n];
+			vr=new double[n][n];
+			vi=new double[n][n];
+			order=new int[n];
+		}
+		for(int i=0;i<n;i++)
+		{
+			ar[i][i]=real[i][i];
+			ai[i][i]=0;
+			for(int j=i+1;j<n;j++)
+			{
+				ar[i][j]=(real[i][j]+real[j][i])/2.0;
+				ar[j][i]=ar[i][j];
+				ai[i][j]=(imag[i][j]-imag[j][i])/2.0;
+				ai[j][i]=-ai[i][j];
+			}
+		}
+		for(int i=0;i<n;i++)
+			for(int j=0;j<n;j++)
+			{
+				vr[i][j]=i==j?1:0;
+				vi[i][j]=0;
+			}
+
+		if(n==1);
+		else if(n==2) rotate(0,1);//the closed form is a single rotation
+		else jacobi(n);
+
+		/*
+		 * sort according to eigenvalue's magnitude decreasing order
+		 */
+		for(int i=0;i<n;i++) order[i]=i;
+		for(int i=0;i<n;i++)
+		{
+		int maxidx=i,temp;
+
+			for(int j=i+1;j<n;j++)
+				if(Math.abs(ar[order[j]][order[j]])>Math.abs(ar[order[maxidx]][order[maxidx]])) maxidx=j;
+			temp=order[i];
+			order[i]=order[maxidx];
+			order[maxidx]=temp;
+		}
+
+		for(int j=0;j<n;j++)
+		{
+			evalues[j]=ar[order[j]][order[j]];
+			for(int i=0;i<n;i++)
+			{
+				evreal[i][j]=vr[order[j]][i];
+				evimag[i][j]=vi[order[j]][i];
+			}
+		}
+	}
+
+	/**
+	 * diagonalize the working matrix by cyclic sweeps
+	 * @param n
+	 * matrix size
+	 */
+	private void jacobi(int n)
+	{
+	double off,norm;
+
+		for(int sweep=0;sweep<MAX_SWEEPS;sweep++)
+		{
+			/*
+			 * squared norm of off-diagonal entries and the whole matrix
+			 */
+			off=0;
+			norm=0;
+			for(int p=0;p<n;p++)
+			{
+				norm+=ar[p][p]*ar[p][p];
+				for(int q=p+1;q<n;q++) off+=ar[p][q]*ar[p][q]+ai[p][q]*ai[p][q];
+			}
+			norm+=2*off;
+			if(off<=EPS*norm) return;
+
+			for(int p=0;p<n-1;p++)
+				for(int q=p+1;q<n;q++) rotate(p,q);
+		}
+	}
+
+	/**
+	 * Apply a complex Jacobi rotation G to eliminate entry (p, q): A=G'*A*G,
+	 * V=V*G, V is stored transposed. Let a_pq=|a_pq|*e^(i*phi), then G_pp=G_qq=c, G_pq=s*e^(i*phi),
+	 * G_qp=-s*e^(-i*phi), where c and s are from the real Jacobi rotation of
+	 * [a_pp |a_pq|; |a_pq| a_qq].
+	 * @param p
+	 * row index
+	 * @param q
+	 * column index, larger than p
+	 */
+	private void rotate(int p,int q)
+	{
+	double g,er,ei,theta,t,c,s,app,aqq;
+	double xr,xi,yr,yi;
+	double[] rp,ip,rq,iq;
+
+		g=Math.sqrt(ar[p][q]*ar[p][q]+ai[p][q]*ai[p][q]);
+		if(g==0) return;
+		//negligible compared with diagonal entries
+		if(Math.abs(ar[p][p])+100*g==Math.abs(ar[p][p])&&Math.abs(ar[q][q])+100*g==Math.abs(ar[q][q]))
+		{
+			ar[p][q]=0;
+			ai[p][q]=0;
+			ar[q][p]=0;
+			ai[q][p]=0;
+			return;
+		}
+		er=ar[p][q]/g;
+		ei=ai[p][q]/g;
+
+		theta=(ar[q][q]-ar[p][p])/(2*g);
+		t=(theta>=0?1:-1)/(Math.abs(theta)+Math.sqrt(theta*theta+1));
+		c=1/Math.sqrt(t*t+1);
+		s=t*c;
+		app=ar[p][p]-t*g;
+		aqq=ar[q][q]+t*g;
+
+		/*
+		 * rows: G'*A, rows are contiguous in memory
+		 */
+		rp=ar[p];
+		ip=ai[p];
+		rq=ar[q];
+		iq=ai[q];
+		for(int k=0;k<rp.length;k++)
+		{
+			xr=rp[k];
+			xi=ip[k];
+			yr=rq[k];
+			yi=iq[k];
+			rp[k]=c*xr-s*(er*yr-ei*yi);
+			ip[k]=c*xi-s*(er*yi+ei*yr);
+			rq[k]=s*(er*xr+ei*xi)+c*yr;
+			iq[k]=s*(er*xi-ei*xr)+c*yi;
+		}
+
+		//columns: *G, the result is Hermitian, so they are conjugates of rows
+		for(int k=0;k<rp.length;k++)
+		{
+			ar[k][p]=rp[k];
+			ai[k][p]=-ip[k];
+			ar[k][q]=rq[k];
+			ai[k][q]=-iq[k];
+		}
+
+		/*
+		 * eigenvectors: V*G, V is stored transposed, so its columns are contiguous
+		 */
+		rp=vr[p];
+		ip=vi[p];
+		rq=vr[q];
+		iq=vi[q];
+		for(int k=0;k<rp.length;k++)
+		{
+			xr=rp[k];
+			xi=ip[k];
+			yr=rq[k];
+			yi=iq[k];
+			rp[k]=c*xr-s*(er*yr+ei*yi);
+			ip[k]=c*xi-s*(er*yi-ei*yr);
+			rq[k]=s*(er*xr-ei*xi)+c*yr;
+			iq[k]=s*(er*xi+ei*xr)+c*yi;
+		}
+
+		/*
+		 * exact values for eliminated and diagonal entries
+		 */
+		ar[p][q]=0;
+		ai[p][q]=0;
+		ar[q][p]=0;
+		ai[q][p]=0;
+		ar[p][p]=app;
+		ai[p][p]=0;
+		ar[q][q]=aqq;
+		ai[q][q]=0;
+	}
+
+	/**
+	 * calculate max |A*v-d*v| and max |V'*V-I| of a decomposition
+	 * @param a
+	 * a Hermitian matrix
+	 * @param evalues
+	 * eigenvalues
+	 * @param ev
+	 * eigenvectors as columns
+	 * @return
+	 * {residual, orthogonality error}
+	 */
+	private static double[] errors(Complex[][] a,Complex[] evalues,Complex[][] ev)
+	{
+	double res=0,orth=0;
+	Complex s;
+
+		for(int j=0;j<ev.length;j++)
+			for(int i=0;i<a.length;i++)
+			{
+				s=Complex.ZERO;
+				for(int k=0;k<a.length;k++) s=s.add(a[i][k].multiply(ev[k][j]));
+				res=Math.max(res,s.subtract(ev[i][j].multiply(evalues[j])).abs());
+			}
+
+		for(int i=0;i<ev.length;i++)
+			for(int j=0;j<ev.length;j++)
+			{
+				s=Complex.ZERO;
+				for(int k=0;k<ev.length;k++) s=s.add(ev[k][i].conjugate().multiply(ev[k][j]));
+				orth=Math.max(orth,s.subtract(i==j?Complex.ONE:Complex.ZERO).abs());
+			}
+		return new double[] {res,orth};
+	}
+
+	public static void main(String[] args)
+	{
+	int[] sizes={2,3,4,6,8,12,16};
+	int numtests=2000;
+	Complex[][][] tests;
+	double[][][][] split;
+	HermitianEigensolver commons,jacobi;
+	EigenDecomposition d1,d2;
+	double[] evalues;
+	double[][] evreal,evimag;
+	double[] err1,err2,maxerr1,maxerr2;
+	double maxeddiff;
+	long t1,t2,t3;
+
+		commons=new CommonsEigensolver();
+		jacobi=new JacobiEigensolver();
+
+		//the first round warms up the JIT compiler
+		for(int round=0;round<2;round++)
+		{
+		if(round==1) System.out.println("size, commons (us), jacobi (us), jacobi primitive (us), "+
+				"max eigenvalue difference, commons residual/orthogonality, jacobi residual/orthogonality");
+		for(int n:sizes)
+		{
+			/*
+			 * random Hermitian matrices: X*X'
+			 */
+			tests=new Complex[numtests][][];
+			split=new double[numtests][][][];
+			for(int i=0;i<numtests;i++)
+			{
+				tests[i]=BLAS.buildComplexMatrix(BLAS.randMatrix(n,n),BLAS.randMatrix(n,n));
+				tests[i]=BLAS.multiply(tests[i],BLAS.transpose(tests[i],null),null);
+				split[i]=BLAS.splitComplexMatrix(tests[i]);
+			}
+
+			/*
+			 * warm up and check accuracy
+			 */
+			maxeddiff=0;
+			maxerr1=new double[2];
+			maxerr2=new double[2];
+			for(int i=0;i<numtests;i++)
+			{
+				d1=commons.eig(split[i][0],split[i][1]);
+				d2=jacobi.eig(split[i][0],split[i][1]);
+				for(int j=0;j<n;j++) maxeddiff=Math.max(maxeddiff,
+						Math.abs(d1.eigenvalue(j).getReal()-d2.eigenvalue(j).getReal())/
+						Math.abs(d1.eigenvalue(0).getReal()));
+
+				err1=errors(tests[i],d1.eigenvalues(),d1.eigenvectors());
+				err2=errors(tests[i],d2.eigenvalues(),d2.eigenvectors());
+				for(int j=0;j<2;j++)
+				{
+					maxerr1[j]=Math.max(maxerr1[j],err1[j]);
+					maxerr2[j]=Math.max(maxerr2[j],err2[j]);
+				}
+			}
+
+			/*
+			 * latency
+			 */
+			t1=System.nanoTime();
+			for(int i=0;i<numtests;i++) commons.eig(split[i][0],split[i][1]);
+			t1=System.nanoTime()-t1;
+
+			t2=System.nanoTime();
+			for(int i=0;i<numtests;i++) jacobi.eig(split[i][0],split[i][1]);
+			t2=System.nanoTime()-t2;
+
+			evalues=new double[n];
+			evreal=new double[n][n];
+			evimag=new double[n][n];
+			t3=System.nanoTime();
+			for(int i=0;i<numtests;i++) jacobi.eig(split[i][0],split[i][1],evalues,evreal,evimag);
+			t3=System.nanoTime()-t3;
+
+			if(round==1) System.out.printf("%d, %.2f, %.2f, %.2f, %.3g, %.3g/%.3g, %.3g/%.3g\n",
+					n,t1/1000.0/numtests,t2/1000.0/numtests,t3/1000.0/numtests,
+					maxeddiff,maxerr1[0],maxerr1[1],maxerr2[0],maxerr2[1]);
+		}
+		}
+	}
+}
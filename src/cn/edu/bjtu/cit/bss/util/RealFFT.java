@@ -0,0 +1,317 @@
+package cn.edu.bjtu.cit.bss.util;
+import java.io.*;
+import javax.sound.sampled.*;
+import org.apache.commons.math.complex.*;
+import cn.edu.bjtu.cit.bss.signalio.*;
+
+/**
+ * <h1>Description</h1>
+ * FFT for real signals with precomputed twiddle factors. A real signal of n
+ * points is packed into a complex signal of n/2 points, transformed by an
+ * in-place radix-2 FFT and then split into the half spectrum. Results are
+ * written into caller supplied buffers, only bins 0..n/2 are calculated,
+ * the other half is the complex conjugate. Not safe for multithread access.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 17, 2026 3:05:46 PM, revision:
+ */
+public class RealFFT implements Serializable
+{
+private static final long serialVersionUID=-5208337813839532517L;
+private int fftsize;//fft block size
+private double[] cos;//cos(2*pi*k/fftsize), k=0..fftsize/2
+private double[] sin;//sin(2*pi*k/fftsize), k=0..fftsize/2
+private int[] bitrev;//bit reversal permutation for the fftsize/2 point complex fft
+private double[] zr,zi;//workspace for the packed complex signal
+
+	/**
+	 * @param fftsize
+	 * fft block size, must be powers of 2
+	 */
+	public RealFFT(int fftsize)
+	{
+	int h,bits;
+
+		if(fftsize<2||!SpectralAnalyzer.isPowerOf2(fftsize))
+			throw new IllegalArgumentException("fft size must be powers of 2: "+fftsize);
+		this.fftsize=fftsize;
+		h=fftsize/2;
+
+		/*
+		 * twiddle factors
+		 */
+		cos=new double[h+1];
+		sin=new double[h+1];
+		for(int k=0;k<=h;k++)
+		{
+			cos[k]=Math.cos(2*Math.PI*k/fftsize);
+			sin[k]=Math.sin(2*Math.PI*k/fftsize);
+		}
+
+		/*
+		 * bit reversal table
+		 */
+		bits=Integer.numberOfTrailingZeros(h);
+		bitrev=new int[h];
+		for(int k=0;k<h;k++)
+			bitrev[k]=bits==0?0:Integer.reverse(k)>>>(32-bits);
+
+		zr=new double[h];
+		zi=new double[h];
+	}
+
+	/**
+	 * get fft block size
+	 * @return
+	 */
+	public int fftSize()
+	{
+		return fftsize;
+	}
+
+	/**
+	 * in-place radix-2 complex fft on the workspace, exp(-j*2*pi*k*n/N) is used
+	 */
+	private void complexFFT()
+	{
+	int h,step;
+	double wr,wi,tr,ti;
+	double temp;
+
+		h=zr.length;
+
+		//bit reversal
+		for(int k=0;k<h;k++)
+			if(bitrev[k]>k)
+			{
+				temp=zr[k];zr[k]=zr[bitrev[k]];zr[bitrev[k]]=temp;
+				temp=zi[k];zi[k]=zi[bitrev[k]];zi[bitrev[k]]=temp;
+			}
+
+		//butterflies
+		for(int len=2;len<=h;len<<=1)
+		{
+			step=fftsize/len;
+			for(int start=0;start<h;start+=len)
+				for(int j=0;j<len/2;j++)
+				{
+					wr=cos[j*step];
+					wi=-sin[j*step];
+
+					tr=wr*zr[start+j+len/2]-wi*zi[start+j+len/2];
+					ti=wr*zi[start+j+len/2]+wi*zr[start+j+len/2];
+					zr[start+j+len/2]=zr[start+j]-tr;
+					zi[start+j+len/2]=zi[start+j]-ti;
+					zr[start+j]+=tr;
+					zi[start+j]+=ti;
+				}
+		}
+	}
+
+	/**
+	 * perform fft on a real signal
+	 * @param x
+	 * real signal with fftsize points
+	 * @param real
+	 * space for the real part of bins 0..fftsize/2
+	 * @param imag
+	 * space for the imaginary part of bins 0..fftsize/2
+	 */
+	public void transform(double[] x,double[] real,double[] imag)
+	{
+	int h;
+	double ar,ai,br,bi,er,ei,or,oi;
+
+		h=fftsize/2;
+		if(x.length!=fftsize) throw new IllegalArgumentException(
+				"signal length not match: "+x.length+", required: "+fftsize);
+		if(real.length<h+1||imag.length<h+1) throw new IllegalArgumentException(
+				"half spectrum requires "+(h+1)+" bins: "+real.length+", "+imag.length);
+
+		//pack into complex signal
+		for(int k=0;k<h;k++)
+		{
+			zr[k]=x[2*k];
+			zi[k]=x[2*k+1];
+		}
+		complexFFT();
+
+		/*
+		 * split into the spectrum of even and odd samples
+		 */
+		for(int k=0;k<=h;k++)
+		{
+			ar=zr[k%h];
+			ai=zi[k%h];
+			br=zr[(h-k)%h];
+			bi=zi[(h-k)%h];
+
+			//even part: (Z[k]+conj(Z[h-k]))/2
+			er=(ar+br)/2;
+			ei=(ai-bi)/2;
+			//odd part: (Z[k]-conj(Z[h-k]))/(2j)
+			or=(ai+bi)/2;
+			oi=(br-ar)/2;
+
+			//X[k]=E[k]+exp(-j*2*pi*k/N)*O[k]
+			real[k]=er+cos[k]*or+sin[k]*oi;
+			imag[k]=ei+cos[k]*oi-sin[k]*or;
+		}
+		//imaginary parts of DC and Nyquist bins are 0 for real signals
+		imag[0]=0;
+		imag[h]=0;
+	}
+
+	/**
+	 * perform inverse fft to get a real signal, the result is scaled by 1/fftsize
+	 * @param real
+	 * the real part of bins 0..fftsize/2
+	 * @param imag
+	 * the imaginary part of bins 0..fftsize/2
+	 * @param x
+	 * space for the real signal with fftsize points
+	 */
+	public void inverseTransform(double[] real,double[] imag,double[] x)
+	{
+	int h;
+	double er,ei,dr,di,or,oi;
+
+		h=fftsize/2;
+		if(x.length!=fftsize) throw new IllegalArgumentException(
+				"signal length not match: "+x.length+", required: "+fftsize);
+
+		/*
+		 * rebuild the packed spectrum, conjugate is used to perform inverse fft
+		 */
+		for(int k=0;k<h;k++)
+		{
+			//E[k]=(X[k]+conj(X[h-k]))/2
+			er=(real[k]+real[h-k])/2;
+			ei=(imag[k]-imag[h-k])/2;
+			//O[k]=(X[k]-conj(X[h-k]))/2*exp(j*2*pi*k/N)
+			dr=(real[k]-real[h-k])/2;
+			di=(imag[k]+imag[h-k])/2;
+			or=dr*cos[k]-di*sin[k];
+			oi=dr*sin[k]+di*cos[k];
+
+			//Z[k]=E[k]+j*O[k], conjugated
+			zr[k]=er-oi;
+			zi[k]=-(ei+or);
+		}
+		complexFFT();
+
+		//conjugate back and scale
+		for(int k=0;k<h;k++)
+		{
+			x[2*k]=zr[k]/h;
+			x[2*k+1]=-zi[k]/h;
+		}
+	}
+
+	/**
+	 * Get the half spectrum of a full frequency domain frame. The frame is
+	 * symmetrized as (X[k]+conj(X[N-k]))/2, so the inverse fft of the result
+	 * equals to the real part of the inverse fft of the full frame.
+	 * @param frame
+	 * a full frequency domain frame
+	 * @param real
+	 * space for the real part of bins 0..fftsize/2
+	 * @param imag
+	 * space for the imaginary part of bins 0..fftsize/2
+	 */
+	public static void hermitianHalf(Complex[] frame,double[] real,double[] imag)
+	{
+	int n;
+
+		n=frame.length;
+		real[0]=frame[0].getReal();
+		imag[0]=0;
+		real[n/2]=frame[n/2].getReal();
+		imag[n/2]=0;
+		for(int k=1;k<n/2;k++)
+		{
+			real[k]=(frame[k].getReal()+frame[n-k].getReal())/2;
+			imag[k]=(frame[k].getImaginary()-frame[n-k].getImaginary())/2;
+		}
+	}
+
+	/**
+	 * expand a half spectrum to the full frequency domain frame
+	 * @param real
+	 * the real part of bins 0..fftsize/2
+	 * @param imag
+	 * the imaginary part of bins 0..fftsize/2
+	 * @param frame
+	 * space for the full frame, null to allocate new space
+	 * @return
+	 */
+	public static Complex[] fullFrame(double[] real,double[] imag,Complex[] frame)
+	{
+	int n;
+
+		n=(real.length-1)*2;
+		if(frame==null) frame=new Complex[n];
+		else if(frame.length!=n) throw new IllegalArgumentException(
+				"frame size not match: "+frame.length+", required: "+n);
+
+		for(int k=0;k<=n/2;k++) frame[k]=new Complex(real[k],imag[k]);
+		for(int k=1;k<n/2;k++) frame[n-k]=frame[k].conjugate();
+		return frame;
+	}
+
+	public static void main(String[] args) throws IOException, UnsupportedAudioFileException
+	{
+	String[] paths={"data/source1.wav","data/source2.wav","data/rsm2_mA.wav","data/rsm2_mB.wav"};
+	ShortTimeFourierTransformer stft;
+	WaveSource ws;
+	double[] s=null,s1,s2;
+	Complex[][] f1,f2;
+	double maxdiff;
+	long t1,t2;
+
+		stft=new ShortTimeFourierTransformer(1024,1024*7/8,2048,null);
+
+		for(String path:paths)
+		{
+			ws=new WaveSource(new File(path),true);
+			s=ws.toArray(s);
+			ws.close();
+
+			/*
+			 * stft with both engines, warm up first
+			 */
+			for(ShortTimeFourierTransformer.FFTEngine engine:ShortTimeFourierTransformer.FFTEngine.values())
+			{
+				stft.setFFTEngine(engine);
+				stft.istft(stft.stft(s));
+			}
+
+			stft.setFFTEngine(ShortTimeFourierTransformer.FFTEngine.commons);
+			t1=System.nanoTime();
+			f1=stft.stft(s);
+			t1=System.nanoTime()-t1;
+			s1=stft.istft(f1);
+
+			stft.setFFTEngine(ShortTimeFourierTransformer.FFTEngine.primitive);
+			t2=System.nanoTime();
+			f2=stft.stft(s);
+			t2=System.nanoTime()-t2;
+			s2=stft.istft(f2);
+
+			maxdiff=0;
+			for(int binidx=0;binidx<f1.length;binidx++)
+				for(int tau=0;tau<f1[binidx].length;tau++)
+					maxdiff=Math.max(maxdiff,f1[binidx][tau].subtract(f2[binidx][tau]).abs());
+			System.out.println(path+": "+f1[0].length+" frames, commons: "+(t1/1000000)+
+					" ms, primitive: "+(t2/1000000)+" ms, max stft difference: "+maxdiff);
+
+			maxdiff=0;
+			for(int i=0;i<Math.min(s1.length,s2.length);i++)
+				maxdiff=Math.max(maxdiff,Math.abs(s1[i]-s2[i]));
+			System.out.println("max istft difference: "+maxdiff);
+		}
+	}
+}
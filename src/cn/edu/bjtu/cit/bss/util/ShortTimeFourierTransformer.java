@@ -27,6 +27,29 @@ private int stftoverlap;//stft block overlap
 private int fftsize;//size of fft block
 //filter applied to segments before fft, null means no filter will be used
 private double[] filter=null;
+private FFTEngine engine=FFTEngine.primitive;//fft implementation used
+
+	/**
+	 * <h1>Description</h1>
+	 * FFT implementations can be used.
+	 * <h1>abstract</h1>
+	 * <h1>keywords</h1>
+	 * @author nay0648<br>
+	 * if you have any questions, advices, suggests, or find any bugs, 
+	 * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+	 * @version created on: Oct 17, 2026 3:40:12 PM, revision:
+	 */
+	public enum FFTEngine
+	{
+		/**
+		 * real input fft on primitive arrays, see RealFFT
+		 */
+		primitive,
+		/**
+		 * commons-math FastFourierTransformer
+		 */
+		commons
+	}
 
 	/**
 	 * use default fft size
@@ -71,6 +94,25 @@ private double[] filter=null;
 		this.fftsize=fftsize;	
 	}
 	
+	/**
+	 * get the fft implementation used
+	 * @return
+	 */
+	public FFTEngine getFFTEngine()
+	{
+		return engine;
+	}
+	
+	/**
+	 * set the fft implementation, iterators already created are not affected
+	 * @param engine
+	 * fft implementation
+	 */
+	public void setFFTEngine(FFTEngine engine)
+	{
+		this.engine=engine;
+	}
+	
 	/**
 	 * to see if a number is powers of 2
 	 * @param p
@@ -201,16 +243,38 @@ private double[] filter=null;
 	{
 	Complex[][] fs;
 	int numblocks=0;
+	boolean halfspectrum=true;
+	double[][] real,imag;
 		
 		if(in.numChannels()!=out.length) throw new IllegalArgumentException(
 				"number of channels not match: "+in.numChannels()+", "+out.length);
 
-		for(MultichannelSTFTIterator it=multichannelSTFTIterator(in);it.hasNext();)
+		for(SignalSink sink:out) 
+			if(!(sink instanceof HalfSpectrumSignalSink)) halfspectrum=false;
+		
+		//only half spectrum is needed, write it directly
+		if(halfspectrum) 
 		{
-			fs=it.next();
-			for(int chidx=0;chidx<out.length;chidx++) 
-				out[chidx].writeFrame(fs[chidx]);
-			numblocks++;
+			real=new double[out.length][fftSize()/2+1];
+			imag=new double[out.length][fftSize()/2+1];
+			
+			for(MultichannelSTFTIterator it=multichannelSTFTIterator(in);it.hasNext();)
+			{
+				it.next(real,imag);
+				for(int chidx=0;chidx<out.length;chidx++) 
+					((HalfSpectrumSignalSink)out[chidx]).writeHalfFrame(real[chidx],imag[chidx]);
+				numblocks++;
+			}
+		}
+		else
+		{
+			for(MultichannelSTFTIterator it=multichannelSTFTIterator(in);it.hasNext();)
+			{
+				fs=it.next();
+				for(int chidx=0;chidx<out.length;chidx++) 
+					out[chidx].writeFrame(fs[chidx]);
+				numblocks++;
+			}
 		}
 
 		return numblocks;
@@ -303,6 +367,8 @@ private double[] filter=null;
 	double[] overlapr=null;//buffer for overlapping samples
 	Complex[] overlapc=null;//buffer for overlapping samples
 	FastFourierTransformer fft;
+	RealFFT rfft=null;//used for real outputs with the primitive engine
+	double[] real=null,imag=null;//half spectrum
 	double factor;//used to cancel the windowing effect to signal magnitude
 	int numsegs=0;
 	
@@ -328,6 +394,12 @@ private double[] filter=null;
 		 * perform istft
 		 */
 		fft=new FastFourierTransformer();
+		if(!complex&&engine==FFTEngine.primitive)
+		{
+			rfft=new RealFFT(fftsize);
+			real=new double[fftsize/2+1];
+			imag=new double[fftsize/2+1];
+		}
 		factor=scalingFactor();//real magnitude=factor x magnitude
 		
 		for(;;numsegs++)
@@ -342,10 +414,9 @@ private double[] filter=null;
 				break;
 			}
 			
-			ifft=fft.inversetransform(frame);//perform ifft
-			
 			if(complex)
 			{
+				ifft=fft.inversetransform(frame);//perform ifft
 				BLAS.scalarMultiply(factor,ifft,ifft);//cancel the windowing effect
 				
 				//add overlapping samples
@@ -359,7 +430,17 @@ private double[] filter=null;
 			}
 			else
 			{
-				for(int i=0;i<ifftr.length;i++) ifftr[i]=ifft[i].getReal();
+				//the real part of ifft
+				if(rfft!=null) 
+				{
+					RealFFT.hermitianHalf(frame,real,imag);
+					rfft.inverseTransform(real,imag,ifftr);
+				}
+				else
+				{
+					ifft=fft.inversetransform(frame);//perform ifft
+					for(int i=0;i<ifftr.length;i++) ifftr[i]=ifft[i].getReal();
+				}
 				BLAS.scalarMultiply(factor,ifftr,ifftr);//cancel the windowing effect
 				
 				//add overlapping samples
@@ -621,6 +702,8 @@ private double[] filter=null;
 	private double[] buffer;//buffer used to load samples
 	private double[] signal;//signal for fft
 	private FastFourierTransformer fft;
+	private RealFFT rfft=null;//used by the primitive engine
+	private double[] real,imag;//half spectrum
 	private long sampleidx=0;//max sample index processed
 	//true means next() should be called, false means hasNext() should be called
 	private boolean callnext=false;
@@ -638,7 +721,13 @@ private double[] filter=null;
 			buffer=new double[stftsize];//used to read samples
 			//used to perform fft, has the length of next power of 2 of the signal segment size
 			signal=new double[fftSize()];
-			fft=new FastFourierTransformer();
+			if(engine==FFTEngine.primitive) 
+			{
+				rfft=new RealFFT(fftSize());
+				real=new double[fftSize()/2+1];
+				imag=new double[fftSize()/2+1];
+			}
+			else fft=new FastFourierTransformer();
 			//read overlapping samples for the first segment
 			count=in.readSamples(buffer,0,stftoverlap);
 			if(count>0) sampleidx+=count;
@@ -694,7 +783,41 @@ private double[] filter=null;
 			if(!callnext) throw new IllegalStateException(
 					"the hasNext() method should be called before call this method");
 			callnext=false;
-			return fft.transform(signal);//perform fft
+			
+			//perform fft
+			if(rfft!=null)
+			{
+				rfft.transform(signal,real,imag);
+				return RealFFT.fullFrame(real,imag,null);
+			}
+			else return fft.transform(signal);
+		}
+		
+		/**
+		 * get the next stft frame as half spectrum, without allocating new space
+		 * @param real
+		 * space for the real part of bins 0..fftsize/2
+		 * @param imag
+		 * space for the imaginary part of bins 0..fftsize/2
+		 */
+		public void next(double[] real,double[] imag)
+		{
+		Complex[] frame;
+		
+			if(!callnext) throw new IllegalStateException(
+					"the hasNext() method should be called before call this method");
+			callnext=false;
+			
+			if(rfft!=null) rfft.transform(signal,real,imag);
+			else
+			{
+				frame=fft.transform(signal);
+				for(int k=0;k<=fftSize()/2;k++)
+				{
+					real[k]=frame[k].getReal();
+					imag[k]=frame[k].getImaginary();
+				}
+			}
 		}
 
 		public void remove()
@@ -729,6 +852,8 @@ private double[] filter=null;
 	private double[][] buffer;//buffer used to load samples, each row for a channel
 	private double[] signal;//signal for fft
 	private FastFourierTransformer fft;
+	private RealFFT rfft=null;//used by the primitive engine
+	private double[] real,imag;//half spectrum
 	private long sampleidx=0;//max sample index processed
 	//true means next() should be called, false means hasNext() should be called
 	private boolean callnext=false;	
@@ -748,7 +873,13 @@ private double[] filter=null;
 			
 			//used to perform fft, has the length of next power of 2 of the signal segment size
 			signal=new double[fftSize()];
-			fft=new FastFourierTransformer();
+			if(engine==FFTEngine.primitive) 
+			{
+				rfft=new RealFFT(fftSize());
+				real=new double[fftSize()/2+1];
+				imag=new double[fftSize()/2+1];
+			}
+			else fft=new FastFourierTransformer();
 			//read overlapping samples for the first segment
 			c=in.readSamples(buffer,0,stftoverlap);
 			if(c>0) sampleidx+=c;
@@ -778,6 +909,29 @@ private double[] filter=null;
 			return true;
 		}
 
+		/**
+		 * prepare the windowed signal of a channel for fft
+		 * @param chidx
+		 * channel index
+		 */
+		private void prepareSignal(int chidx)
+		{
+			if(filter==null) System.arraycopy(buffer[chidx],0,signal,0,buffer[chidx].length);//copy samples
+			//apply filter to reduce noise, mirror padding is used
+			else for(int i=0;i<buffer[chidx].length;i++) 
+				signal[i]=Filter.applyFilter(buffer[chidx],filter,i,Filter.Padding.mirror);
+			
+			//pad with 0
+			for(int i=stftoverlap+count;i<signal.length;i++) signal[i]=0;
+			
+			//modulate by window function
+			for(int i=0;i<window.length;i++) signal[i]*=window[i];
+			
+			//produce overlapping with next segment
+			for(int i=0;i<stftoverlap;i++) 
+				buffer[chidx][i]=buffer[chidx][buffer[chidx].length-stftoverlap+i];
+		}
+
 		public Complex[][] next()
 		{
 		Complex[][] res;//stft results
@@ -789,29 +943,52 @@ private double[] filter=null;
 			res=new Complex[in.numChannels()][];
 			for(int chidx=0;chidx<res.length;chidx++) 
 			{			
-				/*
-				 * prepare to perform fft
-				 */
-				if(filter==null) System.arraycopy(buffer[chidx],0,signal,0,buffer[chidx].length);//copy samples
-				//apply filter to reduce noise, mirror padding is used
-				else for(int i=0;i<buffer[chidx].length;i++) 
-					signal[i]=Filter.applyFilter(buffer[chidx],filter,i,Filter.Padding.mirror);
+				prepareSignal(chidx);
 				
-				//pad with 0
-				for(int i=stftoverlap+count;i<signal.length;i++) signal[i]=0;
-				
-				//modulate by window function
-				for(int i=0;i<window.length;i++) signal[i]*=window[i];
-				
-				//produce overlapping with next segment
-				for(int i=0;i<stftoverlap;i++) 
-					buffer[chidx][i]=buffer[chidx][buffer[chidx].length-stftoverlap+i];
-				
-				res[chidx]=fft.transform(signal);//perform fft
+				//perform fft
+				if(rfft!=null)
+				{
+					rfft.transform(signal,real,imag);
+					res[chidx]=RealFFT.fullFrame(real,imag,null);
+				}
+				else res[chidx]=fft.transform(signal);
 			}
 
 			return res;
 		}
+		
+		/**
+		 * get the next stft frames of all channels as half spectrum, without 
+		 * allocating new space
+		 * @param real
+		 * space for the real part, [channel index][bins 0..fftsize/2]
+		 * @param imag
+		 * space for the imaginary part, [channel index][bins 0..fftsize/2]
+		 */
+		public void next(double[][] real,double[][] imag)
+		{
+		Complex[] frame;
+		
+			if(!callnext) throw new IllegalStateException(
+					"the hasNext() method should be called before call this method");
+			callnext=false;
+			
+			for(int chidx=0;chidx<in.numChannels();chidx++) 
+			{
+				prepareSignal(chidx);
+				
+				if(rfft!=null) rfft.transform(signal,real[chidx],imag[chidx]);
+				else
+				{
+					frame=fft.transform(signal);
+					for(int k=0;k<=fftSize()/2;k++)
+					{
+						real[chidx][k]=frame[k].getReal();
+						imag[chidx][k]=frame[k].getImaginary();
+					}
+				}
+			}
+		}
 
 		public void remove()
 		{
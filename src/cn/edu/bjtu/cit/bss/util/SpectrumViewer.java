@@ -152,7 +152,7 @@ private ChartPanel chartpanel;//the panel contain the chart
 	double[] signal;
 	SpectrumViewer viewer;
 	
-		room=new VirtualRoom(new File("data/VirtualRooms/2x2/SawadaRoom2x2.txt"));
+		room=RIRCache.defaultCache().loadVirtualRoom(new File("data/VirtualRooms/2x2/SawadaRoom2x2.txt"));
 		signal=room.tdFilters()[0][0];
 		viewer=new SpectrumViewer(signal,8000);
 		viewer.visualize();
@@ -0,0 +1,726 @@
+package pp.util;
+import java.io.*;
+import org.apache.commons.math.complex.*;
+
+/**
+ * <h1>Description</h1>
+ * Complex linear algebra on primitive arrays. A complex matrix is stored in split
+ * format as double[2][row][column], the first one is its real part, the second one
+ * is its imaginary part, the same as BLAS.splitComplexMatrix(). A complex vector
+ * is stored as double[2][dimension]. Results are written into caller supplied
+ * space, so no object is allocated in these methods.
+ * <h1>abstract</h1>
+ * <h1>keywords</h1>
+ * @author nay0648<br>
+ * if you have any questions, advices, suggests, or find any bugs, 
+ * please mail me: <a href="mailto:nay0648@163.com">nay0648@163.com</a>
+ * @version created on: Oct 17, 2026 2:21:07 PM, revision:
+ */
+public class ComplexBLAS implements Serializable
+{
+private static final long serialVersionUID=-3400624751329574583L;
+
+	/**
+	 * allocate a complex matrix
+	 * @param row
+	 * number of rows
+	 * @param column
+	 * number of columns
+	 * @return
+	 */
+	public static double[][][] newMatrix(int row,int column)
+	{
+		return new double[2][row][column];
+	}
+
+	/**
+	 * allocate a complex vector
+	 * @param d
+	 * vector dimension
+	 * @return
+	 */
+	public static double[][] newVector(int d)
+	{
+		return new double[2][d];
+	}
+
+	/**
+	 * get number of rows of a complex matrix
+	 * @param m
+	 * a complex matrix
+	 * @return
+	 */
+	public static int numRows(double[][][] m)
+	{
+		return m[0].length;
+	}
+
+	/**
+	 * get number of columns of a complex matrix
+	 * @param m
+	 * a complex matrix
+	 * @return
+	 */
+	public static int numColumns(double[][][] m)
+	{
+		return m[0][0].length;
+	}
+
+	/**
+	 * throw exception if the destination matrix size is not correct
+	 * @param dest
+	 * destination matrix
+	 * @param m
+	 * required number of rows
+	 * @param n
+	 * required number of columns
+	 */
+	public static void checkDestinationSize(double[][][] dest,int m,int n)
+	{
+		if(dest.length!=2) throw new IllegalArgumentException(
+				"split complex matrix required: "+dest.length);
+		BLAS.checkDestinationSize(dest[0],m,n);
+		BLAS.checkDestinationSize(dest[1],m,n);
+	}
+
+	/**
+	 * throw exception if the destination vector size is not correct
+	 * @param dest
+	 * destination vector
+	 * @param d
+	 * required dimension
+	 */
+	public static void checkDestinationSize(double[][] dest,int d)
+	{
+		if(dest.length!=2) throw new IllegalArgumentException(
+				"split complex vector required: "+dest.length);
+		BLAS.checkDestinationSize(dest[0],d);
+		BLAS.checkDestinationSize(dest[1],d);
+	}
+
+	/**
+	 * convert a complex matrix into split format
+	 * @param matrix
+	 * a complex matrix
+	 * @param dest
+	 * destination, null to allocate new space
+	 * @return
+	 */
+	public static double[][][] split(Complex[][] matrix,double[][][] dest)
+	{
+		if(dest==null) dest=newMatrix(matrix.length,matrix[0].length);
+		else checkDestinationSize(dest,matrix.length,matrix[0].length);
+
+		for(int i=0;i<matrix.length;i++)
+			for(int j=0;j<matrix[i].length;j++)
+			{
+				dest[0][i][j]=matrix[i][j].getReal();
+				dest[1][i][j]=matrix[i][j].getImaginary();
+			}
+		return dest;
+	}
+
+	/**
+	 * convert a complex vector into split format
+	 * @param v
+	 * a complex vector
+	 * @param dest
+	 * destination, null to allocate new space
+	 * @return
+	 */
+	public static double[][] split(Complex[] v,double[][] dest)
+	{
+		if(dest==null) dest=newVector(v.length);
+		else checkDestinationSize(dest,v.length);
+
+		for(int i=0;i<v.length;i++)
+		{
+			dest[0][i]=v[i].getReal();
+			dest[1][i]=v[i].getImaginary();
+		}
+		return dest;
+	}
+
+	/**
+	 * convert a split complex matrix into Complex objects
+	 * @param m
+	 * a split complex matrix
+	 * @param dest
+	 * destination, null to allocate new space
+	 * @return
+	 */
+	public static Complex[][] build(double[][][] m,Complex[][] dest)
+	{
+		if(dest==null) dest=new Complex[numRows(m)][numColumns(m)];
+		else BLAS.checkDestinationSize(dest,numRows(m),numColumns(m));
+
+		for(int i=0;i<dest.length;i++)
+			for(int j=0;j<dest[i].length;j++)
+				dest[i][j]=new Complex(m[0][i][j],m[1][i][j]);
+		return dest;
+	}
+
+	/**
+	 * convert a split complex vector into Complex objects
+	 * @param v
+	 * a split complex vector
+	 * @param dest
+	 * destination, null to allocate new space
+	 * @return
+	 */
+	public static Complex[] build(double[][] v,Complex[] dest)
+	{
+		if(dest==null) dest=new Complex[v[0].length];
+		else BLAS.checkDestinationSize(dest,v[0].length);
+
+		for(int i=0;i<dest.length;i++) dest[i]=new Complex(v[0][i],v[1][i]);
+		return dest;
+	}
+
+	/**
+	 * copy a complex matrix
+	 * @param m
+	 * a complex matrix
+	 * @param dest
+	 * destination, null to allocate new space
+	 * @return
+	 */
+	public static double[][][] copy(double[][][] m,double[][][] dest)
+	{
+		if(dest==null) dest=newMatrix(numRows(m),numColumns(m));
+		else checkDestinationSize(dest,numRows(m),numColumns(m));
+
+		for(int part=0;part<2;part++)
+			for(int i=0;i<m[part].length;i++)
+				System.arraycopy(m[part][i],0,dest[part][i],0,m[part][i].length);
+		return dest;
+	}
+
+	/**
+	 * set a complex matrix to identity matrix
+	 * @param m
+	 * a complex matrix
+	 * @return
+	 */
+	public static double[][][] eye(double[][][] m)
+	{
+		for(int i=0;i<m[0].length;i++)
+			for(int j=0;j<m[0][i].length;j++)
+			{
+				m[0][i][j]=(i==j)?1:0;
+				m[1][i][j]=0;
+			}
+		return m;
+	}
+
+	/**
+	 * complex matrix multiplication
+	 * @param m1
+	 * the left matrix
+	 * @param m2
+	 * the right matrix
+	 * @param result
+	 * space for result, null to allocate new space, can not be the same
+	 * as any one of the input matrices
+	 * @return
+	 */
+	public static double[][][] multiply(double[][][] m1,double[][][] m2,double[][][] result)
+	{
+	double[] r1r,r1i,rr,ri;
+	double sumr,sumi,ar,ai,br,bi;
+
+		if(numColumns(m1)!=numRows(m2)) throw new IllegalArgumentException(
+				"inconsistant matrix dimension for multiplication: "+numColumns(m1)+", "+numRows(m2));
+		if(result==null) result=newMatrix(numRows(m1),numColumns(m2));
+		else
+		{
+			if(result==m1||result==m2) throw new IllegalArgumentException(
+					"result space and input matrix can not be the same matrix");
+			checkDestinationSize(result,numRows(m1),numColumns(m2));
+		}
+
+		for(int i=0;i<result[0].length;i++)
+		{
+			r1r=m1[0][i];
+			r1i=m1[1][i];
+			rr=result[0][i];
+			ri=result[1][i];
+
+			for(int j=0;j<rr.length;j++)
+			{
+				sumr=0;
+				sumi=0;
+				for(int k=0;k<r1r.length;k++)
+				{
+					ar=r1r[k];
+					ai=r1i[k];
+					br=m2[0][k][j];
+					bi=m2[1][k][j];
+					//(a+bi)(c+di)=(ac-bd)+(ad+bc)i
+					sumr+=ar*br-ai*bi;
+					sumi+=ar*bi+ai*br;
+				}
+				rr[j]=sumr;
+				ri[j]=sumi;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * multiply a complex matrix with a complex column vector
+	 * @param m
+	 * a complex matrix
+	 * @param v
+	 * a complex column vector
+	 * @param result
+	 * space for result, null to allocate new space, can not be the same as the
+	 * input vector
+	 * @return
+	 */
+	public static double[][] multiply(double[][][] m,double[][] v,double[][] result)
+	{
+	double[] mr,mi;
+	double sumr,sumi;
+
+		if(numColumns(m)!=v[0].length) throw new IllegalArgumentException(
+				"inconsistant dimension for multiplication: "+numColumns(m)+", "+v[0].length);
+		if(result==null) result=newVector(numRows(m));
+		else
+		{
+			if(result==v) throw new IllegalArgumentException(
+					"result space and input vector can not be the same vector");
+			checkDestinationSize(result,numRows(m));
+		}
+
+		for(int i=0;i<result[0].length;i++)
+		{
+			mr=m[0][i];
+			mi=m[1][i];
+			sumr=0;
+			sumi=0;
+			for(int k=0;k<mr.length;k++)
+			{
+				sumr+=mr[k]*v[0][k]-mi[k]*v[1][k];
+				sumi+=mr[k]*v[1][k]+mi[k]*v[0][k];
+			}
+			result[0][i]=sumr;
+			result[1][i]=sumi;
+		}
+		return result;
+	}
+
+	/**
+	 * entry by entry multiplication of two complex vectors
+	 * @param v1
+	 * a vector
+	 * @param v2
+	 * another vector
+	 * @param result
+	 * space for result, null to allocate new space, can be the same as the input
+	 * @return
+	 */
+	public static double[][] entryMultiply(double[][] v1,double[][] v2,double[][] result)
+	{
+	double ar,ai,br,bi;
+
+		BLAS.checkSize(v1[0],v2[0]);
+		if(result==null) result=newVector(v1[0].length);
+		else checkDestinationSize(result,v1[0].length);
+
+		for(int i=0;i<result[0].length;i++)
+		{
+			ar=v1[0][i];
+			ai=v1[1][i];
+			br=v2[0][i];
+			bi=v2[1][i];
+			result[0][i]=ar*br-ai*bi;
+			result[1][i]=ar*bi+ai*br;
+		}
+		return result;
+	}
+
+	/**
+	 * add two complex matrices
+	 * @param m1
+	 * a matrix
+	 * @param m2
+	 * another matrix
+	 * @param result
+	 * space for result, null to allocate new space, can be the same as the input
+	 * @return
+	 */
+	public static double[][][] add(double[][][] m1,double[][][] m2,double[][][] result)
+	{
+		checkDestinationSize(m2,numRows(m1),numColumns(m1));
+		if(result==null) result=newMatrix(numRows(m1),numColumns(m1));
+		else checkDestinationSize(result,numRows(m1),numColumns(m1));
+
+		for(int part=0;part<2;part++)
+			for(int i=0;i<result[part].length;i++)
+				for(int j=0;j<result[part][i].length;j++)
+					result[part][i][j]=m1[part][i][j]+m2[part][i][j];
+		return result;
+	}
+
+	/**
+	 * add two complex vectors
+	 * @param v1
+	 * a vector
+	 * @param v2
+	 * another vector
+	 * @param result
+	 * space for result, null to allocate new space, can be the same as the input
+	 * @return
+	 */
+	public static double[][] add(double[][] v1,double[][] v2,double[][] result)
+	{
+		BLAS.checkSize(v1[0],v2[0]);
+		if(result==null) result=newVector(v1[0].length);
+		else checkDestinationSize(result,v1[0].length);
+
+		for(int part=0;part<2;part++)
+			for(int i=0;i<result[part].length;i++)
+				result[part][i]=v1[part][i]+v2[part][i];
+		return result;
+	}
+
+	/**
+	 * substract a complex matrix from another
+	 * @param m1
+	 * a matrix
+	 * @param m2
+	 * another matrix
+	 * @param result
+	 * space for result, null to allocate new space, can be the same as the input
+	 * @return
+	 */
+	public static double[][][] substract(double[][][] m1,double[][][] m2,double[][][] result)
+	{
+		checkDestinationSize(m2,numRows(m1),numColumns(m1));
+		if(result==null) result=newMatrix(numRows(m1),numColumns(m1));
+		else checkDestinationSize(result,numRows(m1),numColumns(m1));
+
+		for(int part=0;part<2;part++)
+			for(int i=0;i<result[part].length;i++)
+				for(int j=0;j<result[part][i].length;j++)
+					result[part][i][j]=m1[part][i][j]-m2[part][i][j];
+		return result;
+	}
+
+	/**
+	 * multiply a complex matrix by a real scalar
+	 * @param s
+	 * a scalar
+	 * @param m
+	 * a complex matrix
+	 * @param result
+	 * space for result, null to allocate new space, can be the same as the input
+	 * @return
+	 */
+	public static double[][][] scalarMultiply(double s,double[][][] m,double[][][] result)
+	{
+		if(result==null) result=newMatrix(numRows(m),numColumns(m));
+		else checkDestinationSize(result,numRows(m),numColumns(m));
+
+		for(int part=0;part<2;part++)
+			for(int i=0;i<result[part].length;i++)
+				for(int j=0;j<result[part][i].length;j++)
+					result[part][i][j]=s*m[part][i][j];
+		return result;
+	}
+
+	/**
+	 * get the complex conjugate
+	 * @param m
+	 * a complex matrix
+	 * @param result
+	 * space for result, null to allocate new space, can be the same as the input
+	 * @return
+	 */
+	public static double[][][] conjugate(double[][][] m,double[][][] result)
+	{
+		if(result==null) result=newMatrix(numRows(m),numColumns(m));
+		else checkDestinationSize(result,numRows(m),numColumns(m));
+
+		for(int i=0;i<result[0].length;i++)
+			for(int j=0;j<result[0][i].length;j++)
+			{
+				result[0][i][j]=m[0][i][j];
+				result[1][i][j]=-m[1][i][j];
+			}
+		return result;
+	}
+
+	/**
+	 * get the Hermitian transpose
+	 * @param m
+	 * a complex matrix
+	 * @param result
+	 * space for result, null to allocate new space, can not be the same as the input
+	 * @return
+	 */
+	public static double[][][] hermitian(double[][][] m,double[][][] result)
+	{
+		if(result==null) result=newMatrix(numColumns(m),numRows(m));
+		else
+		{
+			if(result==m) throw new IllegalArgumentException(
+					"result space and input matrix can not be the same matrix");
+			checkDestinationSize(result,numColumns(m),numRows(m));
+		}
+
+		for(int i=0;i<m[0].length;i++)
+			for(int j=0;j<m[0][i].length;j++)
+			{
+				result[0][j][i]=m[0][i][j];
+				result[1][j][i]=-m[1][i][j];
+			}
+		return result;
+	}
+
+	/**
+	 * Calculate the inverse matrix by Gauss-Jordan elimination with partial
+	 * pivoting.
+	 * @param m
+	 * a square complex matrix
+	 * @param inv
+	 * space for result, null to allocate new space, can not be the same as the input
+	 * @param work
+	 * workspace with the same size as the input matrix, null to allocate new space
+	 * @return
+	 * null if the matrix is singular
+	 */
+	public static double[][][] inv(double[][][] m,double[][][] inv,double[][][] work)
+	{
+	int n,pivot;
+	double max,abs2,pr,pi,fr,fi,ar,ai;
+	double[] temp;
+
+		n=numRows(m);
+		if(n!=numColumns(m)) throw new IllegalArgumentException("a square matrix is required");
+		if(inv==null) inv=newMatrix(n,n);
+		else
+		{
+			if(inv==m) throw new IllegalArgumentException(
+					"result space and input matrix can not be the same matrix");
+			checkDestinationSize(inv,n,n);
+		}
+		work=copy(m,work);
+		eye(inv);
+
+		for(int col=0;col<n;col++)
+		{
+			/*
+			 * find the pivot
+			 */
+			pivot=col;
+			max=-1;
+			for(int i=col;i<n;i++)
+			{
+				abs2=work[0][i][col]*work[0][i][col]+work[1][i][col]*work[1][i][col];
+				if(abs2>max)
+				{
+					max=abs2;
+					pivot=i;
+				}
+			}
+			if(max<=0) return null;//singular
+
+			/*
+			 * swap rows, only row references are exchanged
+			 */
+			if(pivot!=col)
+			{
+				for(int part=0;part<2;part++)
+				{
+					temp=work[part][col];work[part][col]=work[part][pivot];work[part][pivot]=temp;
+					temp=inv[part][col];inv[part][col]=inv[part][pivot];inv[part][pivot]=temp;
+				}
+			}
+
+			/*
+			 * normalize the pivot row by 1/p
+			 */
+			pr=work[0][col][col]/max;
+			pi=-work[1][col][col]/max;
+			for(int j=0;j<n;j++)
+			{
+				ar=work[0][col][j];
+				ai=work[1][col][j];
+				work[0][col][j]=ar*pr-ai*pi;
+				work[1][col][j]=ar*pi+ai*pr;
+
+				ar=inv[0][col][j];
+				ai=inv[1][col][j];
+				inv[0][col][j]=ar*pr-ai*pi;
+				inv[1][col][j]=ar*pi+ai*pr;
+			}
+
+			/*
+			 * eliminate other rows
+			 */
+			for(int i=0;i<n;i++)
+			{
+				if(i==col) continue;
+				fr=work[0][i][col];
+				fi=work[1][i][col];
+				if(fr==0&&fi==0) continue;
+
+				for(int j=0;j<n;j++)
+				{
+					ar=work[0][col][j];
+					ai=work[1][col][j];
+					work[0][i][j]-=fr*ar-fi*ai;
+					work[1][i][j]-=fr*ai+fi*ar;
+
+					ar=inv[0][col][j];
+					ai=inv[1][col][j];
+					inv[0][i][j]-=fr*ar-fi*ai;
+					inv[1][i][j]-=fr*ai+fi*ar;
+				}
+			}
+		}
+
+		return inv;
+	}
+
+	/**
+	 * perform Gram-Schmidt orthogonalization on rows of the input matrix,
+	 * the same as BLAS.orthogonalize(Complex[][])
+	 * @param m
+	 * a complex matrix, will be modified
+	 */
+	public static void orthogonalize(double[][][] m)
+	{
+	double[] rir,rii,rjr,rji;
+	double ipr,ipi,norm;
+
+		for(int i=0;i<m[0].length;i++)
+		{
+			rir=m[0][i];
+			rii=m[1][i];
+
+			//orthogonalization
+			for(int j=0;j<i;j++)
+			{
+				rjr=m[0][j];
+				rji=m[1][j];
+
+				//<rj,ri>=rj'*ri
+				ipr=0;
+				ipi=0;
+				for(int k=0;k<rir.length;k++)
+				{
+					ipr+=rjr[k]*rir[k]+rji[k]*rii[k];
+					ipi+=rjr[k]*rii[k]-rji[k]*rir[k];
+				}
+
+				//ri=ri-<rj,ri>rj
+				for(int k=0;k<rir.length;k++)
+				{
+					rir[k]-=ipr*rjr[k]-ipi*rji[k];
+					rii[k]-=ipr*rji[k]+ipi*rjr[k];
+				}
+			}
+
+			//normalization
+			norm=0;
+			for(int k=0;k<rir.length;k++) norm+=rir[k]*rir[k]+rii[k]*rii[k];
+			if(norm==0) continue;//zero vector
+			norm=1.0/Math.sqrt(norm);
+			for(int k=0;k<rir.length;k++)
+			{
+				rir[k]*=norm;
+				rii[k]*=norm;
+			}
+		}
+	}
+
+	/**
+	 * calculate the maximum absolute difference between entries of two matrices
+	 * @param m1
+	 * a split complex matrix
+	 * @param m2
+	 * a complex matrix
+	 * @return
+	 */
+	public static double maxDifference(double[][][] m1,Complex[][] m2)
+	{
+	double diff=0;
+
+		for(int i=0;i<m2.length;i++)
+			for(int j=0;j<m2[i].length;j++)
+				diff=Math.max(diff,Math.hypot(
+						m1[0][i][j]-m2[i][j].getReal(),m1[1][i][j]-m2[i][j].getImaginary()));
+		return diff;
+	}
+
+	/**
+	 * measure average time of an operation in ns
+	 * @param op
+	 * the operation
+	 * @param iterations
+	 * number of iterations for each round
+	 * @return
+	 */
+	private static double benchmark(Runnable op,int iterations)
+	{
+	long t;
+
+		//warm up
+		for(int round=0;round<5;round++)
+			for(int k=0;k<iterations;k++) op.run();
+
+		t=System.nanoTime();
+		for(int round=0;round<10;round++)
+			for(int k=0;k<iterations;k++) op.run();
+		t=System.nanoTime()-t;
+
+		return (double)t/(iterations*10);
+	}
+
+	public static void main(String[] args)
+	{
+	final Complex[][][] cm=new Complex[3][][];
+	final double[][][][] sm=new double[4][][][];
+	int iterations;
+
+		for(int n:new int[]{2,4,8,16})
+		{
+			cm[0]=BLAS.randComplexMatrix(n,n);
+			cm[1]=BLAS.randComplexMatrix(n,n);
+			cm[2]=new Complex[n][n];
+			sm[0]=split(cm[0],null);
+			sm[1]=split(cm[1],null);
+			sm[2]=newMatrix(n,n);
+			sm[3]=newMatrix(n,n);
+
+			/*
+			 * check the results
+			 */
+			System.out.println(n+" x "+n+" max difference, multiply: "+
+					maxDifference(multiply(sm[0],sm[1],sm[2]),BLAS.multiply(cm[0],cm[1],null))+
+					", inv: "+maxDifference(inv(sm[0],sm[2],sm[3]),BLAS.inv(cm[0],null)));
+
+			iterations=Math.max(100000/(n*n*n),100);
+			System.out.printf("%-16s %14s %14s%n","operation","BLAS (ns/op)","ComplexBLAS (ns/op)");
+			System.out.printf("%-16s %14.1f %14.1f%n","multiply",
+					benchmark(new Runnable(){public void run(){BLAS.multiply(cm[0],cm[1],cm[2]);}},iterations),
+					benchmark(new Runnable(){public void run(){multiply(sm[0],sm[1],sm[2]);}},iterations));
+			System.out.printf("%-16s %14.1f %14.1f%n","add",
+					benchmark(new Runnable(){public void run(){BLAS.add(cm[0],cm[1],cm[2]);}},iterations),
+					benchmark(new Runnable(){public void run(){add(sm[0],sm[1],sm[2]);}},iterations));
+			System.out.printf("%-16s %14.1f %14.1f%n","hermitian",
+					benchmark(new Runnable(){public void run(){BLAS.transpose(cm[0],cm[2]);}},iterations),
+					benchmark(new Runnable(){public void run(){hermitian(sm[0],sm[2]);}},iterations));
+			System.out.printf("%-16s %14.1f %14.1f%n","inv",
+					benchmark(new Runnable(){public void run(){BLAS.inv(cm[0],cm[2]);}},iterations),
+					benchmark(new Runnable(){public void run(){inv(sm[0],sm[2],sm[3]);}},iterations));
+			System.out.printf("%-16s %14.1f %14.1f%n","orthogonalize",
+					benchmark(new Runnable(){public void run(){BLAS.orthogonalize(BLAS.copy(cm[0],cm[2]));}},iterations),
+					benchmark(new Runnable(){public void run(){orthogonalize(copy(sm[0],sm[2]));}},iterations));
+			System.out.println();
+		}
+	}
+}